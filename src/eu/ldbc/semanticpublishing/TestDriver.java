@@ -2,10 +2,8 @@ package eu.ldbc.semanticpublishing;
 
 import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStreamWriter;
 import java.lang.reflect.Constructor;
 import java.util.ArrayList;
@@ -13,6 +11,8 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.slf4j.Logger;
@@ -20,11 +20,22 @@ import org.slf4j.LoggerFactory;
 
 import eu.ldbc.semanticpublishing.agents.AbstractAsynchronousAgent;
 import eu.ldbc.semanticpublishing.agents.AggregationAgent;
+import eu.ldbc.semanticpublishing.agents.ArrivalSchedule;
 import eu.ldbc.semanticpublishing.agents.EditorialAgent;
+import eu.ldbc.semanticpublishing.agents.NonBlockingAggregationAgent;
+import eu.ldbc.semanticpublishing.agents.RateLimiter;
+import eu.ldbc.semanticpublishing.endpoint.EndpointRouter;
+import eu.ldbc.semanticpublishing.endpoint.HttpConnectionBase;
+import eu.ldbc.semanticpublishing.endpoint.QueryExecutionPolicy;
+import eu.ldbc.semanticpublishing.endpoint.ResponseCompression;
+import eu.ldbc.semanticpublishing.endpoint.SparqlQueryConnection;
 import eu.ldbc.semanticpublishing.endpoint.SparqlQueryConnection.QueryType;
 import eu.ldbc.semanticpublishing.endpoint.SparqlQueryExecuteManager;
+import eu.ldbc.semanticpublishing.endpoint.embedded.EmbeddedSparqlEndpoint;
+import eu.ldbc.semanticpublishing.endpoint.embedded.RepositoryRequestHandler;
 import eu.ldbc.semanticpublishing.enterprise.ReplicationAndBackupHelper;
 import eu.ldbc.semanticpublishing.generators.data.DataGenerator;
+import eu.ldbc.semanticpublishing.loader.BulkLoader;
 import eu.ldbc.semanticpublishing.properties.Configuration;
 import eu.ldbc.semanticpublishing.properties.Definitions;
 import eu.ldbc.semanticpublishing.refdataset.DataManager;
@@ -32,11 +43,14 @@ import eu.ldbc.semanticpublishing.refdataset.model.Entity;
 import eu.ldbc.semanticpublishing.resultanalyzers.CreativeWorksAnalyzer;
 import eu.ldbc.semanticpublishing.resultanalyzers.LocationsAnalyzer;
 import eu.ldbc.semanticpublishing.resultanalyzers.ReferenceDataAnalyzer;
+import eu.ldbc.semanticpublishing.statistics.IntervalSeriesWriter;
+import eu.ldbc.semanticpublishing.statistics.MetricsEndpoint;
 import eu.ldbc.semanticpublishing.statistics.Statistics;
 import eu.ldbc.semanticpublishing.substitutionparameters.SubstitutionParametersGenerator;
 import eu.ldbc.semanticpublishing.substitutionparameters.SubstitutionQueryParametersManager;
 import eu.ldbc.semanticpublishing.templates.MustacheTemplatesHolder;
 import eu.ldbc.semanticpublishing.util.FileUtils;
+import eu.ldbc.semanticpublishing.util.LoggingUtil;
 import eu.ldbc.semanticpublishing.util.RandomUtil;
 import eu.ldbc.semanticpublishing.util.RdfUtils;
 import eu.ldbc.semanticpublishing.util.ShellUtil;
@@ -58,7 +72,7 @@ public class TestDriver {
 	private final AtomicBoolean inBenchmarkState = new AtomicBoolean(false);
 	private final AtomicBoolean keepReporterAlive = new AtomicBoolean(false);
 	private final AtomicBoolean benchmarkResultIsValid = new AtomicBoolean(false);
-	private final AtomicBoolean maxUpdateRateReached = new AtomicBoolean(false);
+	private RateLimiter editorialRateLimiter = null;
 	
 	private final Configuration configuration = new Configuration();
 	private final Definitions definitions = new Definitions();
@@ -69,6 +83,7 @@ public class TestDriver {
 	
 	private final static Logger LOGGER = LoggerFactory.getLogger(TestDriver.class.getName());
 	private final static Logger RLOGGER = LoggerFactory.getLogger(TestDriverReporter.class.getName());
+	private final static String IN_PROCESS_ENDPOINT_URL = "http://in-process/repositories/in-process";
 	
 	public TestDriver(String[] args) throws IOException {
 		
@@ -95,9 +110,45 @@ public class TestDriver {
 		warmupPeriodSeconds = configuration.getInt(Configuration.WARMUP_PERIOD_SECONDS);
 		benchmarkRunPeriodSeconds = configuration.getInt(Configuration.BENCHMARK_RUN_PERIOD_SECONDS);
 
+		if (configuration.getBoolean(Configuration.HTTP_CONNECTION_POOLING)) {
+			HttpConnectionBase.enableConnectionPool(configuration.getInt(Configuration.HTTP_CONNECTION_POOL_MAX_PER_ENDPOINT), 
+													configuration.getInt(Configuration.HTTP_CONNECTION_POOL_IDLE_TIMEOUT_SECONDS) * 1000L);
+		}
+		
+		if (configuration.getBoolean(Configuration.HTTP_RESPONSE_COMPRESSION)) {
+			ResponseCompression.enable();
+		}
+		
+		SparqlQueryConnection.setUpdateRequestBody(SparqlQueryConnection.parseUpdateRequestBody(configuration.getString(Configuration.UPDATE_REQUEST_BODY)));
+		
+		if (configuration.getInt(Configuration.QUERY_RETRIES) > 0 || configuration.getInt(Configuration.CIRCUIT_BREAKER_FAILURE_THRESHOLD) > 0) {
+			SparqlQueryExecuteManager.enableExecutionPolicy(new QueryExecutionPolicy(configuration.getInt(Configuration.QUERY_RETRIES), 
+																					 configuration.getLong(Configuration.QUERY_RETRY_BACKOFF_MS), 
+																					 configuration.getLong(Configuration.QUERY_RETRY_MAX_BACKOFF_MS), 
+																					 configuration.getInt(Configuration.CIRCUIT_BREAKER_FAILURE_THRESHOLD), 
+																					 configuration.getLong(Configuration.CIRCUIT_BREAKER_OPEN_MS)));
+		}
+
+		//an embedded endpoint replaces the configured endpoints, used to measure the overhead of the driver
+		if (!configuration.getString(Configuration.EMBEDDED_ENDPOINT).trim().isEmpty()) {
+			startEmbeddedEndpoint();
+		}
+		
+		//an in-process repository replaces the configured endpoints, requests are executed without HTTP
+		if (!configuration.getString(Configuration.IN_PROCESS_REPOSITORY).trim().isEmpty()) {
+			startInProcessRepository();
+		}
+
+		//a list of read endpoints enables routing of queries among them, updates are sent to the update endpoint
+		List<String> endpointUrls = EndpointRouter.parseEndpointUrls(configuration.getString(Configuration.ENDPOINT_URL));
+		if (endpointUrls.size() > 1) {
+			HttpConnectionBase.enableEndpointRouting(new EndpointRouter(EndpointRouter.parsePolicy(configuration.getString(Configuration.ENDPOINT_ROUTING)), 
+																		endpointUrls, 
+																		configuration.getString(Configuration.ENDPOINT_UPDATE_URL)));
+		}
 
 		queryExecuteManager = new SparqlQueryExecuteManager(inBenchmarkState,
-				configuration.getString(Configuration.ENDPOINT_URL),
+				endpointUrls.isEmpty() ? "" : endpointUrls.get(0),
 				configuration.getString(Configuration.ENDPOINT_UPDATE_URL),
 				configuration.getInt(Configuration.QUERY_TIMEOUT_SECONDS) * 1000,
 				configuration.getInt(Configuration.SYSTEM_QUERY_TIMEOUT_SECONDS) * 1000,
@@ -107,6 +158,38 @@ public class TestDriver {
 		DataManager.creativeWorksNextId.set(configuration.getLong(Configuration.CREATIVE_WORK_NEXT_ID));		
 	}
 	
+	private void startEmbeddedEndpoint() throws IOException {
+		EmbeddedSparqlEndpoint embeddedEndpoint = new EmbeddedSparqlEndpoint(EmbeddedSparqlEndpoint.parseMode(configuration.getString(Configuration.EMBEDDED_ENDPOINT)), 
+																			 configuration.getInt(Configuration.EMBEDDED_ENDPOINT_RESPONSE_SIZE_BYTES), 
+																			 configuration.getLong(Configuration.EMBEDDED_ENDPOINT_RESPONSE_DELAY_MS));
+		embeddedEndpoint.start(configuration.getInt(Configuration.EMBEDDED_ENDPOINT_PORT));
+		EmbeddedSparqlEndpoint.setRunningEndpoint(embeddedEndpoint);
+		
+		configuration.setString(Configuration.ENDPOINT_URL, embeddedEndpoint.getQueryUrl());
+		configuration.setString(Configuration.ENDPOINT_UPDATE_URL, embeddedEndpoint.getUpdateUrl());
+		System.out.println("Embedded SPARQL endpoint (" + embeddedEndpoint + ") started at : " + embeddedEndpoint.getQueryUrl());
+	}
+	
+	private void startInProcessRepository() throws IOException {
+		RepositoryRequestHandler.StoreType storeType = RepositoryRequestHandler.parseStoreType(configuration.getString(Configuration.IN_PROCESS_REPOSITORY));
+		try {
+			HttpConnectionBase.enableInProcessExecution(RepositoryRequestHandler.create(storeType, configuration.getString(Configuration.IN_PROCESS_REPOSITORY_DATA_DIR)));
+		} catch (Exception e) {
+			throw new IOException("TestDriver : failed to initialize the in-process repository : " + e.getMessage());
+		}
+		
+		//host and port are not used, paths are kept as of a Sesame repository
+		configuration.setString(Configuration.ENDPOINT_URL, IN_PROCESS_ENDPOINT_URL);
+		configuration.setString(Configuration.ENDPOINT_UPDATE_URL, IN_PROCESS_ENDPOINT_URL + "/statements");
+		System.out.println("In-process repository (" + storeType.toString().toLowerCase() + ") initialized, requests are executed without HTTP");
+	}
+	
+	private void stopInProcessRepository() {
+		if (HttpConnectionBase.getInProcessHandler() != null) {
+			HttpConnectionBase.getInProcessHandler().shutDown();
+		}
+	}
+	
 	public SparqlQueryExecuteManager getQueryExecuteManager() { 
 		return queryExecuteManager;
 	}
@@ -132,13 +215,7 @@ public class TestDriver {
 			
 			Collections.sort(collectedFiles);
 			
-			for( File file : collectedFiles ) {
-				System.out.print("\tloading " + file.getName());
-				InputStream input = new FileInputStream(file);
-				
-				RdfUtils.postStatements(endpoint, RdfUtils.CONTENT_TYPE_TURTLE, input);
-				System.out.println();
-			}			
+			createBulkLoader(endpoint).load(collectedFiles);
 		}
 	}
 	
@@ -179,13 +256,7 @@ public class TestDriver {
 			
 			Collections.sort(collectedFiles);
 			
-			for( File file : collectedFiles ) {
-				System.out.print("\tloading " + file.getName());
-				InputStream input = new FileInputStream(file);
-				
-				RdfUtils.postStatements(endpoint, RdfUtils.CONTENT_TYPE_TURTLE, input);
-				System.out.println();
-			}				
+			createBulkLoader(endpoint).load(collectedFiles);
 		}
 	}
 	
@@ -328,30 +399,23 @@ public class TestDriver {
 			File[] files = new File(configuration.getString(Configuration.CREATIVE_WORKS_PATH)).listFiles();
 			
 			Arrays.sort(files);
-			int size=0;
 			long startTime = System.currentTimeMillis();
-			for( File file : files ) {
-				size++;
-				if( file.getName().endsWith(".nq")) {
-					System.out.print("\tloading " + file.getName());
-					InputStream input = new FileInputStream(file);
-					
-					RdfUtils.postStatements(endpoint, RdfUtils.CONTENT_TYPE_SESAME_NQUADS, input);
-					System.out.println();
-				}
-				if( file.getName().endsWith(".ttl")) {
-					System.out.print("\tloading " + file.getName());
-					InputStream input = new FileInputStream(file);
-					
-					RdfUtils.postStatements(endpoint, RdfUtils.CONTENT_TYPE_TURTLE, input);
-					System.out.println();
-				}		
-			}
+			int size = createBulkLoader(endpoint).load(Arrays.asList(files));
 			long endTime = System.currentTimeMillis();
 			System.out.println("Loaded "+size+" files with Creative Works in "+ (endTime - startTime) + " milliseconds");
 		}
 	}
 	
+	private BulkLoader createBulkLoader(String endpoint) {
+		return new BulkLoader(endpoint, 
+							  configuration.getInt(Configuration.LOADER_UPLOAD_STREAMS), 
+							  configuration.getInt(Configuration.LOADER_QUEUE_CAPACITY), 
+							  configuration.getLong(Configuration.LOADER_STATEMENTS_PER_REQUEST), 
+							  configuration.getInt(Configuration.LOADER_MAX_RETRIES), 
+							  configuration.getInt(Configuration.LOADER_REPORT_INTERVAL_SECONDS), 
+							  configuration.getBoolean(Configuration.LOADER_GZIP_CONTENT_ENCODING));
+	}
+	
 	private void executeScripts(boolean enable, String scriptsSubFolder) {
 		if (enable) {
 			try {
@@ -530,16 +594,61 @@ public class TestDriver {
 
 	private final AtomicBoolean runFlag = new AtomicBoolean(true);
 	
-	private void setupAsynchronousAgents() {
-		for(int i = 0; i < aggregationAgentsCount; ++i ) {
-			aggregationAgents.add(new AggregationAgent(inBenchmarkState, queryExecuteManager, randomGenerator, runFlag, mustacheTemplatesHolder.getQueryTemplates(MustacheTemplatesHolder.AGGREGATION), configuration, definitions, substitutionQueryParamtersManager, configuration.getLong(Configuration.BENCHMARK_BY_QUERY_MIX_RUNS)));
+	private void setupAsynchronousAgents() throws IOException {
+		agentsExecutor = ThreadUtil.newThreadPerTaskExecutor(configuration.getBoolean(Configuration.AGENTS_VIRTUAL_THREADS));
+		
+		boolean asynchronousQueryExecution = configuration.getBoolean(Configuration.ASYNCHRONOUS_QUERY_EXECUTION);
+		if (asynchronousQueryExecution && HttpConnectionBase.getInProcessHandler() != null) {
+			System.out.println("TestDriver : asynchronous query execution requires an HTTP endpoint, using blocking aggregation agents with the in-process repository");
+			asynchronousQueryExecution = false;
+		}
+		
+		if (asynchronousQueryExecution) {
+			//a single agent keeps aggregationAgentsCount queries in flight, instead of a thread per query
+			if (aggregationAgentsCount > 0) {
+				queryExecuteManager.enableAsynchronousExecution(configuration.getInt(Configuration.ASYNCHRONOUS_EVENT_LOOP_THREADS), 
+																Runtime.getRuntime().availableProcessors(), 
+																configuration.getInt(Configuration.HTTP_CONNECTION_POOL_IDLE_TIMEOUT_SECONDS) * 1000L);
+				aggregationAgents.add(new NonBlockingAggregationAgent(inBenchmarkState, queryExecuteManager, randomGenerator, runFlag, mustacheTemplatesHolder.getQueryTemplates(MustacheTemplatesHolder.AGGREGATION), configuration, definitions, substitutionQueryParamtersManager, configuration.getLong(Configuration.BENCHMARK_BY_QUERY_MIX_RUNS), aggregationAgentsCount));
+			}
+		} else {
+			for(int i = 0; i < aggregationAgentsCount; ++i ) {
+				aggregationAgents.add(new AggregationAgent(inBenchmarkState, queryExecuteManager, randomGenerator, runFlag, mustacheTemplatesHolder.getQueryTemplates(MustacheTemplatesHolder.AGGREGATION), configuration, definitions, substitutionQueryParamtersManager, configuration.getLong(Configuration.BENCHMARK_BY_QUERY_MIX_RUNS)));
+			}
 		}
 
+		//editorial agents share a limiter of their update rate, it also backs off when the server is busy
+		editorialRateLimiter = new RateLimiter(configuration.getDouble(Configuration.MAX_UPDATE_RATE_THRESHOLD_OPS), configuration.getInt(Configuration.MAX_UPDATE_RATE_BURST_OPS));
 		for(int i = 0; i < editorialAgentsCount; ++i ) {
-			editorialAgents.add(new EditorialAgent(inBenchmarkState, queryExecuteManager, randomGenerator, runFlag, mustacheTemplatesHolder.getQueryTemplates(MustacheTemplatesHolder.EDITORIAL), mustacheTemplatesHolder.getQueryTemplates(MustacheTemplatesHolder.VALIDATION), configuration, definitions, maxUpdateRateReached));
+			editorialAgents.add(new EditorialAgent(inBenchmarkState, queryExecuteManager, randomGenerator, runFlag, mustacheTemplatesHolder.getQueryTemplates(MustacheTemplatesHolder.EDITORIAL), mustacheTemplatesHolder.getQueryTemplates(MustacheTemplatesHolder.VALIDATION), configuration, definitions, editorialRateLimiter));
+		}
+		
+		//in an open loop run, agents of a kind share a schedule and their count limits the number of concurrent operations
+		long seed = configuration.getLong(Configuration.GENERATOR_RANDOM_SEED);
+		ArrivalSchedule aggregationSchedule = ArrivalSchedule.create(configuration.getString(Configuration.ARRIVAL_RATE_MODE), configuration.getDouble(Configuration.AGGREGATION_ARRIVAL_RATE), configuration.getString(Configuration.ARRIVAL_RATE_STEPS), new Random(seed));
+		ArrivalSchedule editorialSchedule = ArrivalSchedule.create(configuration.getString(Configuration.ARRIVAL_RATE_MODE), configuration.getDouble(Configuration.EDITORIAL_ARRIVAL_RATE), configuration.getString(Configuration.ARRIVAL_RATE_STEPS), new Random(seed + 1));
+		for (AbstractAsynchronousAgent agent : aggregationAgents) {
+			agent.setArrivalSchedule(aggregationSchedule);
 		}
+		for (AbstractAsynchronousAgent agent : editorialAgents) {
+			agent.setArrivalSchedule(editorialSchedule);
+		}
+	}
+	
+	private void startMetricsEndpoint() throws IOException {
+		metricsEndpoint = new MetricsEndpoint(aggregationAgents, editorialAgents);
+		metricsEndpoint.start(configuration.getString(Configuration.METRICS_BIND_ADDRESS), configuration.getInt(Configuration.METRICS_PORT));
+		System.out.println("Metrics endpoint started at : " + metricsEndpoint.getUrl());
 	}
 	
+	private void stopMetricsEndpoint() {
+		if (metricsEndpoint != null) {
+			metricsEndpoint.stop();
+		}
+	}
+	
+	private MetricsEndpoint metricsEndpoint;
+	private ExecutorService agentsExecutor;
 	private final List<AbstractAsynchronousAgent> aggregationAgents = new ArrayList<AbstractAsynchronousAgent>();
 	private final List<AbstractAsynchronousAgent> editorialAgents = new ArrayList<AbstractAsynchronousAgent>();
 	private boolean aggregationAgentsStarted = false;
@@ -563,8 +672,8 @@ public class TestDriver {
 			
 			aggregationAgentsStarted = true;
 
-			for(int i = 0; i < aggregationAgentsCount; ++i ) {
-				aggregationAgents.get(i).start();
+			for(AbstractAsynchronousAgent agent : aggregationAgents ) {
+				agent.start(agentsExecutor);
 			}
 
 			ThreadUtil.sleepSeconds(warmupPeriodSeconds);
@@ -616,36 +725,37 @@ public class TestDriver {
 				aggregationAgentsStarted = true;
 				for(AbstractAsynchronousAgent agent : aggregationAgents ) {
 					if( ! agent.isAlive()) {
-						agent.start();
+						agent.start(agentsExecutor);
 					}
 				}
 			}
 			
 			editorialAgentsStarted = true;
 			for(AbstractAsynchronousAgent agent : editorialAgents ) {
-				agent.start();
+				agent.start(agentsExecutor);
 			}
 
 			Thread interrupterThread = new TestDriverInterrupter(Thread.currentThread(), inBenchmarkState, configuration.getString(Configuration.INTERRUPT_SIGNAL_LOCATION));
 			interrupterThread.setDaemon(true);
 			interrupterThread.start();
 			
-			Thread reporterThread = new TestDriverReporter(Statistics.totalAggregateQueryStatistics.getRunsCountAtomicLong(),
+			Thread reporterThread = new TestDriverReporter(Statistics.totalAggregateQueryStatistics.getRunsCounter(),
 														   Statistics.totalCompletedQueryMixRuns,
 													       inBenchmarkState, 
 													       keepReporterAlive,
 													       benchmarkResultIsValid,
 													       configuration.getDouble(Configuration.MIN_UPDATE_RATE_THRESHOLD_REACH_TIME_PERCENT),
 													       configuration.getDouble(Configuration.MIN_UPDATE_RATE_THRESHOLD_OPS),
-														   configuration.getDouble(Configuration.MAX_UPDATE_RATE_THRESHOLD_OPS),
-													       maxUpdateRateReached, 
+													       editorialRateLimiter, 
 													       editorialAgents,																				
 														   aggregationAgents, 
 													       configuration.getLong(Configuration.BENCHMARK_RUN_PERIOD_SECONDS),
 														   definitions.getString(Definitions.QUERY_POOLS),
 														   configuration.getInt(Configuration.CURRENT_RATE_REPORT_PERIOD_SECONDS),
 														   configuration.getInt(Configuration.REPORT_INTERVAL_SECONDS),
-														   configuration.getBoolean(Configuration.VERBOSE));
+														   configuration.getBoolean(Configuration.VERBOSE),
+														   configuration.getBoolean(Configuration.SAVE_LATENCY_HISTOGRAM_LOG) ? LoggingUtil.LOGS_FOLDER : null,
+														   IntervalSeriesWriter.parseFormat(configuration.getString(Configuration.INTERVAL_SERIES_LOG)));
 			reporterThread.setDaemon(true);
 			reporterThread.start();
 			
@@ -740,36 +850,37 @@ public class TestDriver {
 				aggregationAgentsStarted = true;
 				for(AbstractAsynchronousAgent agent : aggregationAgents ) {
 					if( ! agent.isAlive()) {
-						agent.start();
+						agent.start(agentsExecutor);
 					}
 				}
 			}
 			
 			editorialAgentsStarted = true;
 			for(AbstractAsynchronousAgent agent : editorialAgents ) {
-				agent.start();
+				agent.start(agentsExecutor);
 			}
 			
 			Thread interrupterThread = new TestDriverInterrupter(Thread.currentThread(), inBenchmarkState, configuration.getString(Configuration.INTERRUPT_SIGNAL_LOCATION));
 			interrupterThread.setDaemon(true);
 			interrupterThread.start();
 			
-			Thread reporterThread = new TestDriverReporter(Statistics.totalAggregateQueryStatistics.getRunsCountAtomicLong(), 
+			Thread reporterThread = new TestDriverReporter(Statistics.totalAggregateQueryStatistics.getRunsCounter(), 
 														   Statistics.totalCompletedQueryMixRuns,
 													       inBenchmarkState,
 													       keepReporterAlive, 
 													       benchmarkResultIsValid,
 													       configuration.getDouble(Configuration.MIN_UPDATE_RATE_THRESHOLD_REACH_TIME_PERCENT),
 													       0.0,		
-														   configuration.getDouble(Configuration.MAX_UPDATE_RATE_THRESHOLD_OPS),
-														   maxUpdateRateReached, 
+														   editorialRateLimiter, 
 													       editorialAgents,																				
 														   aggregationAgents, 
 														   configuration.getLong(Configuration.BENCHMARK_RUN_PERIOD_SECONDS),
 													       definitions.getString(Definitions.QUERY_POOLS), 
 													       configuration.getInt(Configuration.CURRENT_RATE_REPORT_PERIOD_SECONDS), 
 													       configuration.getInt(Configuration.REPORT_INTERVAL_SECONDS), 
-														   configuration.getBoolean(Configuration.VERBOSE));
+														   configuration.getBoolean(Configuration.VERBOSE),
+														   configuration.getBoolean(Configuration.SAVE_LATENCY_HISTOGRAM_LOG) ? LoggingUtil.LOGS_FOLDER : null,
+														   IntervalSeriesWriter.parseFormat(configuration.getString(Configuration.INTERVAL_SERIES_LOG)));
 			reporterThread.setDaemon(true);
 			reporterThread.start();
 			
@@ -888,15 +999,21 @@ public class TestDriver {
 		
 		if( aggregationAgentsStarted ) {
 			for(AbstractAsynchronousAgent agent : aggregationAgents ) {
-				ThreadUtil.join(agent);
+				agent.join();
 			}
 		}
 		
 		if( editorialAgentsStarted ) {
 			for(AbstractAsynchronousAgent agent : editorialAgents ) {
-				ThreadUtil.join(agent);
+				agent.join();
 			}
-		}		
+		}
+		
+		if (agentsExecutor != null) {
+			agentsExecutor.shutdown();
+		}
+		
+		queryExecuteManager.shutdownAsynchronousExecution();
 	}
 	
 	private void checkConformance(boolean enable) throws IOException {
@@ -913,9 +1030,7 @@ public class TestDriver {
 			System.out.println("Preparing for conformance tests...");
 			for( File file : collectedFiles ) {
 				System.out.print("\tloading " + file.getName());
-				InputStream input = new FileInputStream(file);
-				
-				RdfUtils.postStatements(endpoint, RdfUtils.CONTENT_TYPE_TURTLE, input);
+				RdfUtils.postFile(endpoint, RdfUtils.CONTENT_TYPE_TURTLE, file);
 				System.out.println();
 			}						
 			
@@ -992,12 +1107,17 @@ public class TestDriver {
 		initializeQuerySubstitutionParameters(configuration.getBoolean(Configuration.WARM_UP) || configuration.getBoolean(Configuration.RUN_BENCHMARK) || configuration.getBoolean(Configuration.RUN_BENCHMARK_ONLINE_REPlICATION_AND_BACKUP));
 		validateQueryResults(configuration.getBoolean(Configuration.VALIDATE_QUERY_RESULTS));
 		setupAsynchronousAgents();
+		if (configuration.getInt(Configuration.METRICS_PORT) > 0) {
+			startMetricsEndpoint();
+		}
 		warmUp(configuration.getBoolean(Configuration.WARM_UP));
 		benchmark(configuration.getBoolean(Configuration.RUN_BENCHMARK), configuration.getLong(Configuration.BENCHMARK_BY_QUERY_MIX_RUNS), configuration.getLong(Configuration.BENCHMARK_BY_QUERY_RUNS), definitions.getDouble(Definitions.MILESTONE_QUERY_POSITION));
 		benchmarkOnlineReplicationAndBackup(configuration.getBoolean(Configuration.RUN_BENCHMARK_ONLINE_REPlICATION_AND_BACKUP), configuration.getLong(Configuration.BENCHMARK_BY_QUERY_MIX_RUNS), configuration.getLong(Configuration.BENCHMARK_BY_QUERY_RUNS), definitions.getDouble(Definitions.MILESTONE_QUERY_POSITION));
 		stopAynchronousAgents();
 		checkConformance(configuration.getBoolean(Configuration.CHECK_CONFORMANCE));
 		clearDatabase(configuration.getBoolean(Configuration.CLEAR_DATABASE));
+		stopInProcessRepository();
+		stopMetricsEndpoint();
 		
 		System.out.println("END OF RUN, all agents shut down...");
 		System.exit(0);
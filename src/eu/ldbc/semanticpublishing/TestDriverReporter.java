@@ -1,7 +1,10 @@
 package eu.ldbc.semanticpublishing;
 
+import java.io.File;
+import java.io.IOException;
 import java.text.SimpleDateFormat;
 import java.util.Calendar;
+import java.util.Date;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
@@ -10,22 +13,42 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import eu.ldbc.semanticpublishing.agents.AbstractAsynchronousAgent;
+import eu.ldbc.semanticpublishing.agents.ArrivalSchedule;
+import eu.ldbc.semanticpublishing.agents.NonBlockingAggregationAgent;
+import eu.ldbc.semanticpublishing.agents.RateLimiter;
+import eu.ldbc.semanticpublishing.endpoint.CircuitBreaker;
+import eu.ldbc.semanticpublishing.endpoint.EndpointRouter;
+import eu.ldbc.semanticpublishing.endpoint.HttpConnectionBase;
+import eu.ldbc.semanticpublishing.endpoint.QueryExecutionPolicy;
+import eu.ldbc.semanticpublishing.endpoint.RequestTimings;
+import eu.ldbc.semanticpublishing.endpoint.ResponseCompression;
+import eu.ldbc.semanticpublishing.endpoint.SparqlQueryConnection.QueryType;
+import eu.ldbc.semanticpublishing.endpoint.SparqlQueryExecuteManager;
+import eu.ldbc.semanticpublishing.endpoint.embedded.EmbeddedSparqlEndpoint;
+import eu.ldbc.semanticpublishing.endpoint.pool.HttpConnectionPool;
 import eu.ldbc.semanticpublishing.refdataset.DataManager;
+import eu.ldbc.semanticpublishing.statistics.HistogramLogWriter;
+import eu.ldbc.semanticpublishing.statistics.HistogramSnapshot;
+import eu.ldbc.semanticpublishing.statistics.IntervalSeriesWriter;
+import eu.ldbc.semanticpublishing.statistics.LatencyBreakdown;
+import eu.ldbc.semanticpublishing.statistics.QueryStatistics;
 import eu.ldbc.semanticpublishing.statistics.Statistics;
+import eu.ldbc.semanticpublishing.statistics.StripedCounter;
+import eu.ldbc.semanticpublishing.util.LoggingUtil;
+import eu.ldbc.semanticpublishing.util.ThreadUtil;
 
 /**
  * This class is used to produce a result summary for the benchmark. The thread is scheduled to start at a fixed
  * rate of one second. Results are printed to console and log file.
  */
 public class TestDriverReporter extends Thread {
-	private final AtomicLong totalQueryExecutions;
+	private final StripedCounter totalQueryExecutions;
 	private final AtomicLong totalCompletedQueryMixRuns;
 	private final AtomicBoolean benchmarkState;
 	private final AtomicBoolean keepAlive;
 	private final AtomicBoolean benchmarkResultIsValid;
-	private final AtomicBoolean maxUpdateRateReached;
+	private final RateLimiter editorialRateLimiter;
 	private final String queryPoolsDefinitions;
-	private final double maxUpdateRateThresholdOps;
 	private double minUpdateRateThresholdOps;	
 	private double updateRateReachTimePercent;
 	private boolean verbose;
@@ -40,10 +63,20 @@ public class TestDriverReporter extends Thread {
 	private long totalQueriesFromPrevReport;
 	private Calendar calendar;
 	private int reportIntervalSeconds;
+	private final String latencyHistogramLogPath;
+	private HistogramLogWriter histogramLogWriter;
+	private long lastHistogramIntervalTimeMs;
+	private final IntervalSeriesWriter.Format intervalSeriesFormat;
+	private IntervalSeriesWriter intervalSeriesWriter;
+	private long processCpuTimeAtStartNanos;
+	
+	private static final double[] REPORTED_PERCENTILES = { 50.0, 90.0, 95.0, 99.0, 99.9 };
+	private static final String[] REPORTED_PERCENTILES_NAMES = { "p50", "p90", "p95", "p99", "p99.9" };
+	private static final long INTERVAL_SERIES_CLOSE_WAIT_MILLISECONDS = 5000;
 	
 	private final static Logger LOGGER = LoggerFactory.getLogger(TestDriverReporter.class.getName());
 	
-	public TestDriverReporter(AtomicLong totalQueryExecutions, AtomicLong totalCompletedQueryMixRuns, AtomicBoolean benchmarkState, AtomicBoolean keepAlive, AtomicBoolean benchmarkResultIsValid, double updateQueryRateFirstReachTimePercent, double minUpdateQueriesRateThresholdOps, double maxUpdateRateThresholdOps, AtomicBoolean maxUpdateRateReached, List<AbstractAsynchronousAgent> editorialAgentsList, List<AbstractAsynchronousAgent> aggregationAgentsList, long runPeriodSeconds, /*long benchmarkByQueryMixRuns, long benchmarkByQueryRuns, */String queryPoolsDefinitons, int reportPeriodSeconds, int reportIntervalSeconds, boolean verbose) {
+	public TestDriverReporter(StripedCounter totalQueryExecutions, AtomicLong totalCompletedQueryMixRuns, AtomicBoolean benchmarkState, AtomicBoolean keepAlive, AtomicBoolean benchmarkResultIsValid, double updateQueryRateFirstReachTimePercent, double minUpdateQueriesRateThresholdOps, RateLimiter editorialRateLimiter, List<AbstractAsynchronousAgent> editorialAgentsList, List<AbstractAsynchronousAgent> aggregationAgentsList, long runPeriodSeconds, /*long benchmarkByQueryMixRuns, long benchmarkByQueryRuns, */String queryPoolsDefinitons, int reportPeriodSeconds, int reportIntervalSeconds, boolean verbose, String latencyHistogramLogPath, IntervalSeriesWriter.Format intervalSeriesFormat) {
 		this.totalQueryExecutions = totalQueryExecutions;
 		this.totalCompletedQueryMixRuns = totalCompletedQueryMixRuns;
 		this.benchmarkState = benchmarkState;
@@ -57,14 +90,15 @@ public class TestDriverReporter extends Thread {
 		this.aggregationAgentsList = aggregationAgentsList;
 		this.minUpdateRateThresholdOps = minUpdateQueriesRateThresholdOps;
 		this.minUpdateRatePassesCount = 0;
-		this.maxUpdateRateThresholdOps = maxUpdateRateThresholdOps;
-		this.maxUpdateRateReached = maxUpdateRateReached;
+		this.editorialRateLimiter = editorialRateLimiter;
 		this.initializedCount = 0;
 		this.queryPoolsDefinitions = queryPoolsDefinitons;
 		this.totalOperationsFromPrevReport = 0;
 		this.totalQueriesFromPrevReport = 0;
 		this.currentRateReportPeriodSeconds = reportPeriodSeconds;
 		this.reportIntervalSeconds = reportIntervalSeconds;
+		this.latencyHistogramLogPath = latencyHistogramLogPath;
+		this.intervalSeriesFormat = intervalSeriesFormat;
 	}
 	
 	/* (non-Javadoc)
@@ -76,16 +110,55 @@ public class TestDriverReporter extends Thread {
 	public void run() {
 		try {
 			long timeCorreciton = 0;
+			//elapsed time is measured with the monotonic clock, wall-clock time only labels histogram intervals
 			long startTime = System.currentTimeMillis();
+			long startNanos = System.nanoTime();
+			processCpuTimeAtStartNanos = ThreadUtil.getProcessCpuTimeNanos();
 			showDatasetInfoHeader();
+			openLatencyHistogramLog(startTime);
+			openIntervalSeries(startTime, startNanos);
 			while (benchmarkState.get() || keepAlive.get()) {
 				Thread.sleep(Math.abs(reportIntervalSeconds * 1000 - timeCorreciton));
-				seconds = (long) ((System.currentTimeMillis() - startTime) / 1000);
+				seconds = (long) ((System.nanoTime() - startNanos) / 1000000000L);
 				timeCorreciton = collectAndShowResults(/*(benchmarkByQueryRuns == 0) && (benchmarkByQueryMixRuns == 0)*/);
+				writeIntervals(System.currentTimeMillis(), System.nanoTime());
 			}
+			//values recorded after the last report
+			writeIntervals(System.currentTimeMillis(), System.nanoTime());
 		} catch (Throwable t) {
 			System.out.println("BenchmarkProcessObserver :: encountered a problem : " + t.getMessage());
 			t.printStackTrace();
+		} finally {
+			closeLatencyHistogramLog();
+			closeIntervalSeries();
+		}
+	}
+	
+	private void openLatencyHistogramLog(long startTime) {
+		if (latencyHistogramLogPath == null || latencyHistogramLogPath.trim().isEmpty()) {
+			return;
+		}
+		File file = new File(latencyHistogramLogPath.trim(), String.format("semantic_publishing_benchmark_%s.hlog", new SimpleDateFormat("yyyyMMdd_HHmmss").format(new Date(startTime))));
+		try {
+			//values are recorded in microseconds, the interval max column is in milliseconds
+			histogramLogWriter = new HistogramLogWriter(file, startTime, 1000.0);
+			lastHistogramIntervalTimeMs = startTime;
+		} catch (IOException e) {
+			System.out.println("TestDriverReporter : failed to create latency histogram log : " + file.getAbsolutePath() + ", " + e.getMessage());
+			e.printStackTrace();
+		}
+	}
+	
+	private void openIntervalSeries(long startTime, long startNanos) {
+		if (intervalSeriesFormat == null || intervalSeriesFormat == IntervalSeriesWriter.Format.NONE) {
+			return;
+		}
+		File file = new File(LoggingUtil.LOGS_FOLDER, String.format("semantic_publishing_benchmark_%s.%s", new SimpleDateFormat("yyyyMMdd_HHmmss").format(new Date(startTime)), IntervalSeriesWriter.getFileExtension(intervalSeriesFormat)));
+		try {
+			intervalSeriesWriter = new IntervalSeriesWriter(file, intervalSeriesFormat, startNanos);
+		} catch (IOException e) {
+			System.out.println("TestDriverReporter : failed to create interval series : " + file.getAbsolutePath() + ", " + e.getMessage());
+			e.printStackTrace();
 		}
 	}
 	
@@ -102,6 +175,34 @@ public class TestDriverReporter extends Thread {
 		sb.append(String.format("\tReference Entities\t: %,d\n", DataManager.regularEntitiesList.size()));
 		sb.append(String.format("\tGeo Locations\t\t: %,d\n", DataManager.locationsIdsList.size() + DataManager.geonamesIdsList.size()));
 		sb.append("\n");
+		HttpConnectionPool connectionPool = HttpConnectionBase.getConnectionPool();
+		if (connectionPool != null) {
+			sb.append(String.format("HTTP Transport: pooled (max %d connections per endpoint, idle timeout %d ms)\n", connectionPool.getMaxConnectionsPerEndpoint(), connectionPool.getIdleTimeoutMilliseconds()));
+		} else {
+			sb.append("HTTP Transport: legacy (HttpURLConnection)\n");
+		}
+		EndpointRouter endpointRouter = HttpConnectionBase.getEndpointRouter();
+		if (endpointRouter != null) {
+			sb.append(String.format("Endpoint Routing: %s (%s), updates : %s\n", endpointRouter.getPolicy().toString().toLowerCase(), endpointRouter.getEndpoints(), endpointRouter.getUpdateEndpoint()));
+		}
+		EmbeddedSparqlEndpoint embeddedEndpoint = EmbeddedSparqlEndpoint.getRunningEndpoint();
+		if (embeddedEndpoint != null) {
+			sb.append(String.format("Endpoint: embedded (%s)\n", embeddedEndpoint));
+		}
+		if (HttpConnectionBase.getInProcessHandler() != null) {
+			sb.append(String.format("Endpoint: in-process repository (%s)\n", HttpConnectionBase.getInProcessHandler()));
+		}
+		for (AbstractAsynchronousAgent a : aggregationAgentsList) {
+			if (a instanceof NonBlockingAggregationAgent) {
+				sb.append(String.format("Query Execution: non-blocking (up to %d aggregation queries in flight)\n", ((NonBlockingAggregationAgent)a).getMaxInFlightQueries()));
+			}
+		}
+		ArrivalSchedule editorialSchedule = getArrivalSchedule(editorialAgentsList);
+		ArrivalSchedule aggregationSchedule = getArrivalSchedule(aggregationAgentsList);
+		if (editorialSchedule != null || aggregationSchedule != null) {
+			sb.append(String.format("Arrival Rate: open loop (editorial : %s, aggregation : %s)\n", editorialSchedule != null ? editorialSchedule : "closed loop", aggregationSchedule != null ? aggregationSchedule : "closed loop"));
+		}
+		sb.append("\n");
 		sb.append("Benchmark Results:\n");
 
 		LOGGER.info(sb.toString());
@@ -112,7 +213,7 @@ public class TestDriverReporter extends Thread {
 	 * Editorial and Aggregation operations per second.
 	 */
 	private long collectAndShowResults(/*boolean secondsOrExecutions*/) {
-		long time = System.currentTimeMillis();		
+		long startNanos = System.nanoTime();		
 		StringBuilder sb = new StringBuilder();
 		
 		long insertOpsCount = Statistics.insertCreativeWorksQueryStatistics.getRunsCount();
@@ -136,13 +237,13 @@ public class TestDriverReporter extends Thread {
 		if (!queryPoolsDefinitions.isEmpty()) {
 			sb.append(" (completed query mixes : " + totalCompletedQueryMixRuns.get() + ")");
 		} else {
-			sb.append(" (completed query runs : " + totalQueryExecutions.get() + ")");
+			sb.append(" (completed query runs : " + totalQueryExecutions.sum() + ")");
 		}
 
 		//report each alive thread
 		int editorialAgentsCount = 0;
 		for (AbstractAsynchronousAgent a : editorialAgentsList) {
-			if (a.getState() != Thread.State.TERMINATED) {
+			if (!a.isTerminated()) {
 				editorialAgentsCount++;
 			}
 		}		
@@ -151,22 +252,29 @@ public class TestDriverReporter extends Thread {
 		sb.append(String.format("\t\t%s agents\n\n", editorialAgentsCount));
 		if (verbose) {
 			
-			sb.append(String.format("\t\t%-5d inserts (avg : %-7d ms, min : %-7d ms, max : %-7d ms)\n", insertOpsCount ,Statistics.insertCreativeWorksQueryStatistics.getAvgExecutionTimeMs(), Statistics.insertCreativeWorksQueryStatistics.getMinExecutionTimeMs(), Statistics.insertCreativeWorksQueryStatistics.getMaxExecutionTimeMs()));
-			sb.append(String.format("\t\t%-5d updates (avg : %-7d ms, min : %-7d ms, max : %-7d ms)\n", updateOpsCount ,Statistics.updateCreativeWorksQueryStatistics.getAvgExecutionTimeMs(), Statistics.updateCreativeWorksQueryStatistics.getMinExecutionTimeMs(), Statistics.updateCreativeWorksQueryStatistics.getMaxExecutionTimeMs()));
-			sb.append(String.format("\t\t%-5d deletes (avg : %-7d ms, min : %-7d ms, max : %-7d ms)\n", deleteOpsCount ,Statistics.deleteCreativeWorksQueryStatistics.getAvgExecutionTimeMs(), Statistics.deleteCreativeWorksQueryStatistics.getMinExecutionTimeMs(), Statistics.deleteCreativeWorksQueryStatistics.getMaxExecutionTimeMs()));
+			sb.append(String.format("\t\t%-5d inserts (avg : %-9.3f ms, min : %-9.3f ms, max : %-9.3f ms, %s)\n", insertOpsCount ,microsToMs(Statistics.insertCreativeWorksQueryStatistics.getAvgExecutionTimeMicros()), microsToMs(Statistics.insertCreativeWorksQueryStatistics.getMinExecutionTimeMicros()), microsToMs(Statistics.insertCreativeWorksQueryStatistics.getMaxExecutionTimeMicros()), formatPercentiles(Statistics.insertCreativeWorksQueryStatistics.getExecutionTimeHistogram().getSnapshot())));
+			sb.append(String.format("\t\t%-5d updates (avg : %-9.3f ms, min : %-9.3f ms, max : %-9.3f ms, %s)\n", updateOpsCount ,microsToMs(Statistics.updateCreativeWorksQueryStatistics.getAvgExecutionTimeMicros()), microsToMs(Statistics.updateCreativeWorksQueryStatistics.getMinExecutionTimeMicros()), microsToMs(Statistics.updateCreativeWorksQueryStatistics.getMaxExecutionTimeMicros()), formatPercentiles(Statistics.updateCreativeWorksQueryStatistics.getExecutionTimeHistogram().getSnapshot())));
+			sb.append(String.format("\t\t%-5d deletes (avg : %-9.3f ms, min : %-9.3f ms, max : %-9.3f ms, %s)\n", deleteOpsCount ,microsToMs(Statistics.deleteCreativeWorksQueryStatistics.getAvgExecutionTimeMicros()), microsToMs(Statistics.deleteCreativeWorksQueryStatistics.getMinExecutionTimeMicros()), microsToMs(Statistics.deleteCreativeWorksQueryStatistics.getMaxExecutionTimeMicros()), formatPercentiles(Statistics.deleteCreativeWorksQueryStatistics.getExecutionTimeHistogram().getSnapshot())));
 			sb.append("\n");
-			sb.append(String.format("\t\t%d operations (%d CW Inserts (%d errors), %d CW Updates (%d errors), %d CW Deletions (%d errors))\n", ( insertOpsCount + updateOpsCount + deleteOpsCount ),
-																	  																			 insertOpsCount, failedInsertOpsCount,
-																	  																			 updateOpsCount, failedUpdateOpsCount,
-																	  																			 deleteOpsCount, failedDeleteOpsCount) );
+			sb.append(String.format("\t\t%d operations (%d CW Inserts (%d errors, %d timeouts), %d CW Updates (%d errors, %d timeouts), %d CW Deletions (%d errors, %d timeouts))\n", ( insertOpsCount + updateOpsCount + deleteOpsCount ),
+																	  																			 insertOpsCount, failedInsertOpsCount, Statistics.insertCreativeWorksQueryStatistics.getTimeoutsCount(),
+																	  																			 updateOpsCount, failedUpdateOpsCount, Statistics.updateCreativeWorksQueryStatistics.getTimeoutsCount(),
+																	  																			 deleteOpsCount, failedDeleteOpsCount, Statistics.deleteCreativeWorksQueryStatistics.getTimeoutsCount()) );
 		} else {
 			sb.append(String.format("\t\t%d operations (%d CW Inserts, %d CW Updates, %d CW Deletions)\n", ( insertOpsCount + updateOpsCount + deleteOpsCount ),
 																											 insertOpsCount, 
 																											 updateOpsCount,
 																											 deleteOpsCount) );
 		}
+		
+		QueryStatistics[] editorialStatistics = { Statistics.insertCreativeWorksQueryStatistics, Statistics.updateCreativeWorksQueryStatistics, Statistics.deleteCreativeWorksQueryStatistics };
+		appendExecutionTimePercentiles(sb, editorialStatistics);
+		appendEditorialBatchesInfo(sb, insertOpsCount + updateOpsCount + deleteOpsCount);
+		ArrivalSchedule editorialSchedule = getArrivalSchedule(editorialAgentsList);
+		if (editorialSchedule != null) {
+			appendOpenLoopInfo(sb, editorialSchedule, new String[] { "inserts", "updates", "deletes" }, editorialStatistics);
+		}
 
-		//time correction is not needed for update operations, as they are performed by separate agents and are not counting/parsing results
 		double averageOperationsPerSecond = (double)(insertOpsCount + updateOpsCount + deleteOpsCount) / (double)seconds;
 		
 		if (currentRateReportPeriodSeconds > 0 && seconds % currentRateReportPeriodSeconds == 0) {
@@ -181,28 +289,41 @@ public class TestDriverReporter extends Thread {
 		updateInternalStatus(averageOperationsPerSecond);
 		
 		sb.append(String.format("\t\t%.4f average operations per second\n", averageOperationsPerSecond));
+		appendUpdateRateLimiterInfo(sb, averageOperationsPerSecond);
 
-		//report each alive thread
+		//report each alive thread, a non-blocking agent counts as the number of queries it keeps in flight
 		int aggregationAgentsCount = 0;
+		int inFlightQueriesCount = -1;
 		for (AbstractAsynchronousAgent a : aggregationAgentsList) {
-			if (a.getState() != Thread.State.TERMINATED) {
-				aggregationAgentsCount++;
+			if (!a.isTerminated()) {
+				if (a instanceof NonBlockingAggregationAgent) {
+					aggregationAgentsCount += ((NonBlockingAggregationAgent)a).getMaxInFlightQueries();
+					inFlightQueriesCount = Math.max(inFlightQueriesCount, 0) + ((NonBlockingAggregationAgent)a).getInFlightQueriesCount();
+				} else {
+					aggregationAgentsCount++;
+				}
 			}
 		}		
 		sb.append("\n");
 		sb.append("\tAggregation:\n");
-		sb.append(String.format("\t\t%s agents\n\n", aggregationAgentsCount));
+		if (inFlightQueriesCount >= 0) {
+			sb.append(String.format("\t\t%s agents (non-blocking, %d queries in flight)\n\n", aggregationAgentsCount, inFlightQueriesCount));
+		} else {
+			sb.append(String.format("\t\t%s agents\n\n", aggregationAgentsCount));
+		}
 		if (verbose) {
 			for (int i = 0; i < Statistics.AGGREGATE_QUERIES_COUNT; i++) {
-				sb.append(String.format("\t\t%-5d Q%-2d  queries (avg : %-7d ms, min : %-7d ms, max : %-7d ms, %d errors)\n", Statistics.aggregateQueriesArray[i].getRunsCount(), 
+				sb.append(String.format("\t\t%-5d Q%-2d  queries (avg : %-9.3f ms, min : %-9.3f ms, max : %-9.3f ms, %s, %d errors, %d timeouts)\n", Statistics.aggregateQueriesArray[i].getRunsCount(), 
 																											   				  (i + 1),
-																											   				  Statistics.aggregateQueriesArray[i].getAvgExecutionTimeMs(),
-																											   				  Statistics.aggregateQueriesArray[i].getMinExecutionTimeMs(), 
-																											   				  Statistics.aggregateQueriesArray[i].getMaxExecutionTimeMs(), 
-																											   				  Statistics.aggregateQueriesArray[i].getFailuresCount()));
+																											   				  microsToMs(Statistics.aggregateQueriesArray[i].getAvgExecutionTimeMicros()),
+																											   				  microsToMs(Statistics.aggregateQueriesArray[i].getMinExecutionTimeMicros()), 
+																											   				  microsToMs(Statistics.aggregateQueriesArray[i].getMaxExecutionTimeMicros()), 
+																											   				  formatPercentiles(Statistics.aggregateQueriesArray[i].getExecutionTimeHistogram().getSnapshot()),
+																											   				  Statistics.aggregateQueriesArray[i].getFailuresCount(),
+																											   				  Statistics.aggregateQueriesArray[i].getTimeoutsCount()));
 			}
 			
-			sb.append(String.format("\n\t\t%d total retrieval queries (%d errors)\n", totalAggregateOpsCount, failedTotalAggregateOpsCount));
+			sb.append(String.format("\n\t\t%d total retrieval queries (%d errors, %d timeouts)\n", totalAggregateOpsCount, failedTotalAggregateOpsCount, Statistics.totalAggregateQueryStatistics.getTimeoutsCount()));
 		} else {
 			for (int i = 0; i < Statistics.AGGREGATE_QUERIES_COUNT; i++) {
 				sb.append(String.format("\t\t%-5d Q%-2d  queries\n", Statistics.aggregateQueriesArray[i].getRunsCount(), (i + 1)));
@@ -210,6 +331,17 @@ public class TestDriverReporter extends Thread {
 			
 			sb.append(String.format("\n\t\t%d total retrieval queries\n", totalAggregateOpsCount));
 		}
+		
+		QueryStatistics[] aggregationStatistics = { Statistics.totalAggregateQueryStatistics };
+		appendExecutionTimePercentiles(sb, aggregationStatistics);
+		ArrivalSchedule aggregationSchedule = getArrivalSchedule(aggregationAgentsList);
+		if (aggregationSchedule != null) {
+			String[] aggregationNames = new String[Statistics.AGGREGATE_QUERIES_COUNT];
+			for (int i = 0; i < Statistics.AGGREGATE_QUERIES_COUNT; i++) {
+				aggregationNames[i] = String.format("Q%d", i + 1);
+			}
+			appendOpenLoopInfo(sb, aggregationSchedule, aggregationNames, Statistics.aggregateQueriesArray);
+		}
 			
 		if (currentRateReportPeriodSeconds > 0 && seconds % currentRateReportPeriodSeconds == 0) {
 			double currentQueriesRate = (double)((totalAggregateOpsCount) - totalQueriesFromPrevReport) / (double)currentRateReportPeriodSeconds;
@@ -219,20 +351,120 @@ public class TestDriverReporter extends Thread {
 		//remember stats for previous second
 		totalQueriesFromPrevReport = totalAggregateOpsCount;
 		
-		//considering an average time correction caused by result parsing for each aggregate query by each of aggregate agents, that time is subtracted when calculating the total average		
+		//time spent parsing results is reported per query type in the latency breakdown, it is not subtracted from the run time
 		double averageQueriesPerSecond = 0.0;
 		
 		if (aggregationAgentsCount > 0) {
-			averageQueriesPerSecond = (double)totalAggregateOpsCount / ((double)seconds - (double)(Statistics.timeCorrectionsMS.get() / (double)aggregationAgentsCount / 1000.0 /*ms*/));
-			
-			if ((double)(Statistics.timeCorrectionsMS.get() / 1000) >= (double)seconds) {
-				LOGGER.warn("Time correction interval exceeds total run-time: " + seconds);
-				averageQueriesPerSecond = (double)(totalAggregateOpsCount / (double)seconds) / (currentRateReportPeriodSeconds > 0 ? (double)currentRateReportPeriodSeconds : 1.0);			
-			}			
+			averageQueriesPerSecond = (double)totalAggregateOpsCount / (double)seconds;
 		}
 		
 		sb.append(String.format("\t\t%.4f average queries per second\n", averageQueriesPerSecond));		
 
+		if (Statistics.totalAggregateQueryStatistics.getTimeoutsCount() + editorialStatistics[0].getTimeoutsCount() + editorialStatistics[1].getTimeoutsCount() + editorialStatistics[2].getTimeoutsCount() > 0) {
+			sb.append("\n");
+			sb.append("\tTimeouts:\n");
+			String[] editorialNames = { "inserts", "updates", "deletes" };
+			for (int i = 0; i < editorialStatistics.length; i++) {
+				appendTimeoutsInfo(sb, editorialNames[i], editorialStatistics[i], editorialAgentsCount);
+			}
+			for (int i = 0; i < Statistics.AGGREGATE_QUERIES_COUNT; i++) {
+				appendTimeoutsInfo(sb, String.format("Q%d", i + 1), Statistics.aggregateQueriesArray[i], aggregationAgentsCount);
+			}
+		}
+
+		StringBuilder breakdownSb = new StringBuilder();
+		String[] editorialNames = { "inserts", "updates", "deletes" };
+		for (int i = 0; i < editorialStatistics.length; i++) {
+			appendLatencyBreakdownInfo(breakdownSb, editorialNames[i], editorialStatistics[i]);
+		}
+		appendLatencyBreakdownInfo(breakdownSb, "batches", Statistics.editorialBatchesQueryStatistics);
+		for (int i = 0; i < Statistics.AGGREGATE_QUERIES_COUNT; i++) {
+			appendLatencyBreakdownInfo(breakdownSb, String.format("Q%d", i + 1), Statistics.aggregateQueriesArray[i]);
+		}
+		if (breakdownSb.length() > 0) {
+			sb.append("\n");
+			sb.append("\tLatency Breakdown (avg ms : compile, acquire, send, first byte, transfer, parse):\n");
+			sb.append(breakdownSb);
+		}
+
+		HttpConnectionPool connectionPool = HttpConnectionBase.getConnectionPool();
+		if (connectionPool != null) {
+			sb.append("\n");
+			sb.append("\tHTTP Connections:\n");
+			sb.append(String.format("\t\t%d created, %d reused, %d evicted (%d in use, %d idle)\n", connectionPool.getCreatedCount(), 
+																									 connectionPool.getReusedCount(), 
+																									 connectionPool.getEvictedCount(), 
+																									 connectionPool.getLeasedCount(), 
+																									 connectionPool.getIdleCount()));
+		}
+		
+		if (ResponseCompression.isEnabled()) {
+			sb.append("\n");
+			sb.append("\tResponse Compression:\n");
+			for (QueryType queryType : QueryType.values()) {
+				long responsesCount = ResponseCompression.getResponsesCount(queryType);
+				if (responsesCount > 0) {
+					long receivedBytes = ResponseCompression.getReceivedBytes(queryType);
+					long uncompressedBytes = ResponseCompression.getUncompressedBytes(queryType);
+					sb.append(String.format("\t\t%-9s : %d responses (%d compressed), %.2f MB received, %.2f MB uncompressed (ratio : %.2f)\n", queryType, 
+																																		   responsesCount, 
+																																		   ResponseCompression.getCompressedResponsesCount(queryType), 
+																																		   receivedBytes / 1048576.0, 
+																																		   uncompressedBytes / 1048576.0, 
+																																		   receivedBytes > 0 ? (double)uncompressedBytes / (double)receivedBytes : 1.0));
+				}
+			}
+		}
+		
+		EndpointRouter endpointRouter = HttpConnectionBase.getEndpointRouter();
+		if (endpointRouter != null) {
+			sb.append("\n");
+			sb.append("\tEndpoints:\n");
+			for (EndpointRouter.Endpoint endpoint : endpointRouter.getEndpoints()) {
+				sb.append(String.format("\t\t%-5d requests (avg : %-7d ms, %.4f requests per second, %d in progress, %d errors) %s\n", endpoint.getRequestsCount(), 
+																																	  endpoint.getAvgTimeMs(), 
+																																	  (double)endpoint.getRequestsCount() / (double)seconds, 
+																																	  endpoint.getOutstandingRequests(), 
+																																	  endpoint.getFailuresCount(), 
+																																	  endpoint.getUrl()));
+			}
+		}
+		
+		QueryExecutionPolicy executionPolicy = SparqlQueryExecuteManager.getExecutionPolicy();
+		if (executionPolicy != null) {
+			sb.append("\n");
+			sb.append("\tRetries and Circuit Breakers:\n");
+			for (QueryType queryType : QueryType.values()) {
+				long retriesCount = executionPolicy.getRetriesCount(queryType);
+				long suspendedCount = executionPolicy.getSuspendedCount(queryType);
+				if (retriesCount > 0 || suspendedCount > 0) {
+					sb.append(String.format("\t\t%-9s : %d retries, %d failed after retries, %d suspended by an open circuit\n", queryType, 
+																														 retriesCount, 
+																														 executionPolicy.getFailedRetriesCount(queryType), 
+																														 suspendedCount));
+				}
+			}
+			for (CircuitBreaker circuitBreaker : executionPolicy.getCircuitBreakers()) {
+				sb.append(String.format("\t\t%-9s : opened %d times, %.1f s unavailable, recovered in %d ms the last time, %s\n", circuitBreaker.getState(), 
+																																 circuitBreaker.getOpensCount(), 
+																																 circuitBreaker.getOpenTimeMs() / 1000.0, 
+																																 circuitBreaker.getLastOutageMs(), 
+																																 circuitBreaker.getEndpointUrl()));
+			}
+		}
+		
+		//with an embedded endpoint, the process CPU time is mostly spent by the driver itself
+		EmbeddedSparqlEndpoint embeddedEndpoint = EmbeddedSparqlEndpoint.getRunningEndpoint();
+		long processCpuTimeNanos = ThreadUtil.getProcessCpuTimeNanos();
+		if (embeddedEndpoint != null && processCpuTimeNanos >= 0 && processCpuTimeAtStartNanos >= 0) {
+			long operationsCount = insertOpsCount + updateOpsCount + deleteOpsCount + totalAggregateOpsCount;
+			sb.append("\n");
+			sb.append("\tDriver Overhead:\n");
+			sb.append(String.format("\t\t%.3f ms CPU time per operation (%.1f s process CPU time, %d requests served by the embedded endpoint)\n", (processCpuTimeNanos - processCpuTimeAtStartNanos) / 1000000.0 / Math.max(1, operationsCount), 
+																																				   (processCpuTimeNanos - processCpuTimeAtStartNanos) / 1000000000.0, 
+																																				   embeddedEndpoint.getRequestsCount()));
+		}
+
 		//in case using minUpdateRateThresholdOps option, display a message that benchmark is not 
 		if (minUpdateRateThresholdOps > 0.0) {
 			String message = "";
@@ -247,27 +479,227 @@ public class TestDriverReporter extends Thread {
 					System.out.println(message);
 					System.exit(0);
 				}				
-				return (System.currentTimeMillis() - time);
+				return (System.nanoTime() - startNanos) / 1000000L;
 			}
 		}
 		
 		LOGGER.info(sb.toString());
 		System.out.println(sb.toString());	
 		
-		return (System.currentTimeMillis() - time);		
+		return (System.nanoTime() - startNanos) / 1000000L;		
 	}	
 	
-	private void updateInternalStatus(double averageOperationsPerSecond) {
-		
-		//using maxUpdateRate threshold to control the update rate of editorial agents
-		if (maxUpdateRateThresholdOps > 0.0) {
-		//if maxUpdateRateOps is set to zero, it is disabled
-			if (averageOperationsPerSecond > maxUpdateRateThresholdOps) {
-				maxUpdateRateReached.set(true);
-			} else {
-				maxUpdateRateReached.set(false);
+	private static ArrivalSchedule getArrivalSchedule(List<AbstractAsynchronousAgent> agentsList) {
+		for (AbstractAsynchronousAgent a : agentsList) {
+			if (a.getArrivalSchedule() != null) {
+				return a.getArrivalSchedule();
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * Appends target and intended operations of an open loop run and response times, in total and of each query type. Response times
+	 * are measured from the intended start of each operation and so include time spent waiting for a free agent.
+	 * @param names - names of the query types, in the order of their statistics
+	 */
+	private static void appendOpenLoopInfo(StringBuilder sb, ArrivalSchedule schedule, String[] names, QueryStatistics[] statistics) {
+		HistogramSnapshot[] typeResponseTimes = new HistogramSnapshot[statistics.length];
+		HistogramSnapshot responseTimes = null;
+		for (int i = 0; i < statistics.length; i++) {
+			typeResponseTimes[i] = statistics[i].getResponseTimeHistogram().getSnapshot();
+			responseTimes = responseTimes == null ? typeResponseTimes[i] : responseTimes.add(typeResponseTimes[i]);
+		}
+		sb.append(String.format("\t\t%.2f target operations per second, %d intended operations\n", schedule.getTargetRatePerSecond(System.nanoTime()), schedule.getIntendedOperationsCount())); 
+		sb.append(String.format("\t\tresponse time (avg : %.3f ms, %s, max : %.3f ms)\n", microsToMs(responseTimes.getMean()), formatPercentiles(responseTimes), microsToMs(responseTimes.getMaxValue())));
+		for (int i = 0; i < statistics.length; i++) {
+			if (typeResponseTimes[i].getTotalCount() > 0) {
+				sb.append(String.format("\t\t%-7s response time (avg : %-9.3f ms, %s, max : %-9.3f ms)\n", names[i], microsToMs(typeResponseTimes[i].getMean()), formatPercentiles(typeResponseTimes[i]), microsToMs(typeResponseTimes[i].getMaxValue())));
 			}
 		}
+	}
+	
+	/**
+	 * Appends timed out queries of a query type and the wall-clock time agents have spent on them, also as a share of the time of all agents
+	 */
+	private void appendTimeoutsInfo(StringBuilder sb, String queryName, QueryStatistics statistics, int agentsCount) {
+		if (statistics.getTimeoutsCount() == 0) {
+			return;
+		}
+		double lostSeconds = statistics.getTimeoutsTimeMs() / 1000.0;
+		sb.append(String.format("\t\t%-7s : %d timeouts, %.1f s lost (%.2f%% of agents' time)\n", queryName, 
+																								statistics.getTimeoutsCount(), 
+																								lostSeconds, 
+																								100.0 * lostSeconds / Math.max(1.0, (double)agentsCount * (double)seconds)));
+	}
+	
+	/**
+	 * Appends the average time of each phase of the requests of a query type, compile and parse time is spent by the driver,
+	 * time to first byte mostly by the server, acquire, send and transfer time mostly by the network
+	 */
+	private void appendLatencyBreakdownInfo(StringBuilder sb, String queryName, QueryStatistics statistics) {
+		LatencyBreakdown breakdown = statistics.getLatencyBreakdown();
+		if (breakdown.getRequestsCount() == 0) {
+			return;
+		}
+		sb.append(String.format("\t\t%-7s : %8.3f, %8.3f, %8.3f, %8.3f, %8.3f, %8.3f (%d requests)\n", queryName, 
+																								  breakdown.getAvgTimeMs(RequestTimings.Phase.COMPILE), 
+																								  breakdown.getAvgTimeMs(RequestTimings.Phase.ACQUIRE), 
+																								  breakdown.getAvgTimeMs(RequestTimings.Phase.SEND), 
+																								  breakdown.getAvgTimeMs(RequestTimings.Phase.FIRST_BYTE), 
+																								  breakdown.getAvgTimeMs(RequestTimings.Phase.TRANSFER), 
+																								  breakdown.getAvgTimeMs(RequestTimings.Phase.PARSE), 
+																								  breakdown.getRequestsCount()));
+	}
+	
+	/**
+	 * Appends the achieved rate of editorial operations against their maximum (target) rate, and backoffs requested by the server
+	 */
+	private void appendUpdateRateLimiterInfo(StringBuilder sb, double averageOperationsPerSecond) {
+		if (editorialRateLimiter == null) {
+			return;
+		}
+		double targetRate = editorialRateLimiter.getTargetRatePerSecond();
+		if (targetRate > 0.0) {
+			sb.append(String.format("\t\t%.2f target operations per second (%.1f%% achieved)\n", targetRate, 100.0 * averageOperationsPerSecond / targetRate));
+		}
+		if (editorialRateLimiter.getBackoffsCount() > 0) {
+			sb.append(String.format("\t\t%d backoffs requested by the server (%.1f s)\n", editorialRateLimiter.getBackoffsCount(), editorialRateLimiter.getBackoffTimeMs() / 1000.0));
+		}
+	}
+	
+	private static boolean isEditorialBatching() {
+		return Statistics.editorialBatchesQueryStatistics.getRunsCount() + Statistics.editorialBatchesQueryStatistics.getFailuresCount() > 0;
+	}
+
+	/**
+	 * Appends executed batches of editorial operations and their execution times, if batching is enabled
+	 */
+	private static void appendEditorialBatchesInfo(StringBuilder sb, long operationsCount) {
+		if (!isEditorialBatching()) {
+			return;
+		}
+		QueryStatistics batches = Statistics.editorialBatchesQueryStatistics;
+		sb.append(String.format("\t\t%d batches (%.1f operations per batch, avg : %.3f ms, %s, max : %.3f ms, %d errors)\n", batches.getRunsCount(),
+																														   (double)operationsCount / Math.max(1, batches.getRunsCount()),
+																														   microsToMs(batches.getAvgExecutionTimeMicros()),
+																														   formatPercentiles(batches.getExecutionTimeHistogram().getSnapshot()),
+																														   microsToMs(batches.getMaxExecutionTimeMicros()),
+																														   batches.getFailuresCount()));
+	}
+
+	/**
+	 * Appends percentiles of the execution times of given query types merged together
+	 */
+	private static void appendExecutionTimePercentiles(StringBuilder sb, QueryStatistics[] statistics) {
+		HistogramSnapshot executionTimes = statistics[0].getExecutionTimeHistogram().getSnapshot();
+		for (int i = 1; i < statistics.length; i++) {
+			executionTimes = executionTimes.add(statistics[i].getExecutionTimeHistogram().getSnapshot());
+		}
+		sb.append(String.format("\t\texecution time (%s, max : %.3f ms)\n", formatPercentiles(executionTimes), microsToMs(executionTimes.getMaxValue())));
+	}
+	
+	/**
+	 * Latencies are recorded in microseconds and reported in milliseconds, keeping sub-millisecond latencies visible
+	 */
+	private static double microsToMs(long micros) {
+		return micros / 1000.0;
+	}
+	
+	/**
+	 * @param snapshot - values in microseconds
+	 */
+	private static String formatPercentiles(HistogramSnapshot snapshot) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < REPORTED_PERCENTILES.length; i++) {
+			if (i > 0) {
+				sb.append(", ");
+			}
+			sb.append(String.format("%s : %.3f ms", REPORTED_PERCENTILES_NAMES[i], microsToMs(snapshot.getValueAtPercentile(REPORTED_PERCENTILES[i]))));
+		}
+		return sb.toString();
+	}
+	
+	/**
+	 * Writes values recorded since the previous call to the latency histogram log and the interval series, one interval per query type.
+	 * The interval of each histogram is taken once and written to both.
+	 * @param timeMs - wall-clock time labelling the intervals
+	 * @param timeNanos - end of the intervals by System.nanoTime()
+	 */
+	private void writeIntervals(long timeMs, long timeNanos) {
+		if (histogramLogWriter == null && intervalSeriesWriter == null) {
+			return;
+		}
+		boolean editorialOpenLoop = getArrivalSchedule(editorialAgentsList) != null;
+		boolean aggregationOpenLoop = getArrivalSchedule(aggregationAgentsList) != null;
+		QueryStatistics[] editorialStatistics = { Statistics.insertCreativeWorksQueryStatistics, Statistics.updateCreativeWorksQueryStatistics, Statistics.deleteCreativeWorksQueryStatistics };
+		for (QueryStatistics qs : editorialStatistics) {
+			writeInterval(qs, editorialOpenLoop, timeMs, timeNanos);
+		}
+		for (QueryStatistics qs : Statistics.aggregateQueriesArray) {
+			writeInterval(qs, aggregationOpenLoop, timeMs, timeNanos);
+		}
+		writeInterval(Statistics.totalAggregateQueryStatistics, aggregationOpenLoop, timeMs, timeNanos);
+		if (isEditorialBatching()) {
+			writeInterval(Statistics.editorialBatchesQueryStatistics, false, timeMs, timeNanos);
+		}
+		if (histogramLogWriter != null) {
+			try {
+				histogramLogWriter.flush();
+			} catch (IOException e) {
+				failLatencyHistogramLog(e);
+			}
+		}
+		lastHistogramIntervalTimeMs = timeMs;
+	}
+	
+	private void writeInterval(QueryStatistics qs, boolean openLoop, long timeMs, long timeNanos) {
+		HistogramSnapshot executionTimes = qs.getExecutionTimeHistogram().getIntervalSnapshot();
+		if (histogramLogWriter != null) {
+			try {
+				histogramLogWriter.writeInterval(qs.getQueryName(), executionTimes, lastHistogramIntervalTimeMs, timeMs);
+				if (openLoop) {
+					histogramLogWriter.writeInterval(qs.getQueryName() + "_RESPONSE", qs.getResponseTimeHistogram().getIntervalSnapshot(), lastHistogramIntervalTimeMs, timeMs);
+				}
+			} catch (IOException e) {
+				failLatencyHistogramLog(e);
+			}
+		}
+		if (intervalSeriesWriter != null) {
+			try {
+				intervalSeriesWriter.writeInterval(qs, executionTimes, timeMs, timeNanos);
+			} catch (IOException e) {
+				System.out.println("TestDriverReporter : failed to write interval series, disabling it : " + e.getMessage());
+				closeIntervalSeries();
+			}
+		}
+	}
+	
+	private void failLatencyHistogramLog(IOException e) {
+		System.out.println("TestDriverReporter : failed to write latency histogram log, disabling it : " + e.getMessage());
+		e.printStackTrace();
+		closeLatencyHistogramLog();
+	}
+	
+	private void closeIntervalSeries() {
+		if (intervalSeriesWriter != null) {
+			intervalSeriesWriter.close(INTERVAL_SERIES_CLOSE_WAIT_MILLISECONDS);
+			intervalSeriesWriter = null;
+		}
+	}
+	
+	private void closeLatencyHistogramLog() {
+		if (histogramLogWriter != null) {
+			try {
+				histogramLogWriter.close();
+			} catch (IOException e) {
+				System.out.println("TestDriverReporter : failed to close latency histogram log : " + e.getMessage());
+			}
+			histogramLogWriter = null;
+		}
+	}
+	
+	private void updateInternalStatus(double averageOperationsPerSecond) {
 		
 		if (minUpdateRateThresholdOps <= 0.0 && initializedCount >= 0) {
 			//skip setting same values for AtomicBoolean variable : benchmarkResultIsValid, as it is read from other
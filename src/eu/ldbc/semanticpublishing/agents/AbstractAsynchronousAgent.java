@@ -1,29 +1,169 @@
 package eu.ldbc.semanticpublishing.agents;
 
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Abstract class for extending Aggregation and Editorial agents.
- *
+ * An agent is a task started through an Executor, which allows running agents on
+ * platform or virtual threads (see ThreadUtil.newThreadPerTaskExecutor()).
  */
-public abstract class AbstractAsynchronousAgent extends Thread {
+public abstract class AbstractAsynchronousAgent implements Runnable {
+
+	private static final AtomicInteger agentsCount = new AtomicInteger(0);
 
 	private final AtomicBoolean runFlag;
+	private final AtomicBoolean started = new AtomicBoolean(false);
+	private final CountDownLatch terminatedLatch = new CountDownLatch(1);
+	private volatile String name;
+	private volatile ArrivalSchedule arrivalSchedule = null;
+	
+	private static final long WAIT_MAX_SLEEP_MILLISECONDS = 100;
 	
+	//values returned by awaitNextArrival() instead of a start time, System.nanoTime() may be negative
+	protected static final long CLOSED_LOOP = Long.MIN_VALUE;
+	protected static final long STOPPED_WHILE_WAITING = Long.MIN_VALUE + 1;
+
 	public AbstractAsynchronousAgent( AtomicBoolean runFlag ) {
 		this.runFlag = runFlag;
+		this.name = getClass().getSimpleName() + "-" + agentsCount.getAndIncrement();
+	}
+
+	/**
+	 * Submits the agent for execution, has no effect if already started
+	 * @param executor - executor providing the thread to run the agent in
+	 */
+	public void start(Executor executor) {
+		if (started.compareAndSet(false, true)) {
+			executor.execute(this);
+		}
 	}
 
 	@Override
 	public void run() {
-		while(runFlag.get()) {
-			if(! executeLoop() ) {
-				break;
+		//executing thread takes the name of the agent, it is used in query logs
+		Thread currentThread = Thread.currentThread();
+		String threadName = currentThread.getName();
+		currentThread.setName(name);
+		try {
+			while(runFlag.get()) {
+				if(! executeLoop() ) {
+					break;
+				}
+			}
+			executeFinalize();
+		} finally {
+			currentThread.setName(threadName);
+			terminatedLatch.countDown();
+		}
+	}
+
+	/**
+	 * @return true if the agent has been started and has not terminated yet
+	 */
+	public boolean isAlive() {
+		return started.get() && terminatedLatch.getCount() > 0;
+	}
+
+	public boolean isTerminated() {
+		return terminatedLatch.getCount() == 0;
+	}
+
+	/**
+	 * Waits for a started agent to terminate
+	 */
+	public void join() {
+		if (!started.get()) {
+			return;
+		}
+		try {
+			terminatedLatch.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * When set, the agent runs in an open loop : each operation is started at the time claimed from the schedule,
+	 * otherwise the next operation is started as soon as the previous one has completed.
+	 */
+	public void setArrivalSchedule(ArrivalSchedule arrivalSchedule) {
+		this.arrivalSchedule = arrivalSchedule;
+	}
+	
+	public ArrivalSchedule getArrivalSchedule() {
+		return arrivalSchedule;
+	}
+	
+	/**
+	 * Claims the intended start time of the next operation from the arrival schedule and waits until it is reached.
+	 * @return intended start time (System.nanoTime()), CLOSED_LOOP when no schedule is set, STOPPED_WHILE_WAITING if the agent has been stopped
+	 */
+	protected long awaitNextArrival() {
+		ArrivalSchedule schedule = arrivalSchedule;
+		if (schedule == null) {
+			return CLOSED_LOOP;
+		}
+		
+		long intendedStartNanos = schedule.claimNextStartNanos();
+		if (!awaitNanoTime(intendedStartNanos)) {
+			return STOPPED_WHILE_WAITING;
+		}
+		return intendedStartNanos;
+	}
+	
+	/**
+	 * Waits until given time is reached, checking periodically whether the agent has been stopped
+	 * @param nanoTime - time to wait for, comparable to System.nanoTime()
+	 * @return false if the agent has been stopped while waiting
+	 */
+	protected boolean awaitNanoTime(long nanoTime) {
+		long waitNanos;
+		while ((waitNanos = nanoTime - System.nanoTime()) > 0) {
+			if (!runFlag.get()) {
+				return false;
+			}
+			try {
+				long sleepMs = Math.min(waitNanos / 1000000L, WAIT_MAX_SLEEP_MILLISECONDS);
+				Thread.sleep(sleepMs, sleepMs < WAIT_MAX_SLEEP_MILLISECONDS ? (int)(waitNanos % 1000000L) : 0);
+			} catch (InterruptedException e) {
+				return false;
 			}
 		}
-		executeFinalize();
+		return true;
 	}
 	
+	/**
+	 * @param intendedStartNanos - value returned by awaitNextArrival()
+	 * @param serviceTimeMicros - time spent executing the operation, in microseconds
+	 * @return time from the intended start of the operation until now in microseconds, which includes time the operation was waiting 
+	 *         for a free agent. Equals to service time when running in a closed loop.
+	 */
+	protected static long responseTimeMicros(long intendedStartNanos, long serviceTimeMicros) {
+		if (intendedStartNanos == CLOSED_LOOP) {
+			return serviceTimeMicros;
+		}
+		return Math.max(serviceTimeMicros, (System.nanoTime() - intendedStartNanos) / 1000L);
+	}
+	
+	/**
+	 * @param startNanos - a value of System.nanoTime() taken at the start of an operation
+	 * @return time elapsed since then in microseconds, measured with the monotonic clock so that wall-clock adjustments do not affect it
+	 */
+	protected static long elapsedMicros(long startNanos) {
+		return (System.nanoTime() - startNanos) / 1000L;
+	}
+	
+	public String getName() {
+		return name;
+	}
+
+	public void setName(String name) {
+		this.name = name;
+	}
+
 	/**
 	 * This method will be called repeatedly until either runFlag is set to false
 	 * or this method returns false 
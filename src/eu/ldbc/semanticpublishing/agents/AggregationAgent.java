@@ -11,21 +11,23 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import eu.ldbc.semanticpublishing.TestDriver;
+import eu.ldbc.semanticpublishing.endpoint.CircuitOpenException;
+import eu.ldbc.semanticpublishing.endpoint.RequestTimings;
 import eu.ldbc.semanticpublishing.endpoint.SparqlQueryConnection.QueryType;
 import eu.ldbc.semanticpublishing.endpoint.SparqlQueryConnection;
 import eu.ldbc.semanticpublishing.endpoint.SparqlQueryExecuteManager;
 import eu.ldbc.semanticpublishing.properties.Configuration;
 import eu.ldbc.semanticpublishing.properties.Definitions;
 import eu.ldbc.semanticpublishing.substitutionparameters.SubstitutionQueryParametersManager;
-import eu.ldbc.semanticpublishing.resultanalyzers.sax.SPARQLResultStatementsCounter;
+import eu.ldbc.semanticpublishing.resultanalyzers.ResultFormat;
+import eu.ldbc.semanticpublishing.resultanalyzers.ResultStatementsCounter;
 //import eu.ldbc.semanticpublishing.resultanalyzers.sesame.TurtleResultStatementsCounter;
-import eu.ldbc.semanticpublishing.resultanalyzers.sesame.RDFXMLResultStatementsCounter;
+import eu.ldbc.semanticpublishing.statistics.FlightRecorderEvents;
 import eu.ldbc.semanticpublishing.statistics.Statistics;
 import eu.ldbc.semanticpublishing.statistics.querypool.Pool;
 import eu.ldbc.semanticpublishing.templates.MustacheTemplate;
 import eu.ldbc.semanticpublishing.templates.aggregation.*;
 import eu.ldbc.semanticpublishing.util.RandomUtil;
-import eu.ldbc.semanticpublishing.util.RdfUtils;
 import eu.ldbc.semanticpublishing.util.StringUtil;
 
 /**
@@ -46,9 +48,12 @@ public class AggregationAgent extends AbstractAsynchronousAgent {
 	private Definitions definitions;
 	private SubstitutionQueryParametersManager substitutionQueryParametersMngr;	
 //	private TurtleResultStatementsCounter turtleResultStatementsCounter;
-	private RDFXMLResultStatementsCounter rdfXmlResultStatementsCounter;
-	private SPARQLResultStatementsCounter sparqlResultStatementsCounter;
+	private final ResultFormat tupleResultFormat;
+	private final ResultFormat graphResultFormat;
+	private final ResultStatementsCounter tupleResultStatementsCounter;
+	private final ResultStatementsCounter graphResultStatementsCounter;
 	private final boolean saveDetailedQueryLogs;
+	private FlightRecorderEvents.Event queryEvent;
 	
 	private final static Logger DETAILED_LOGGER = LoggerFactory.getLogger(AggregationAgent.class.getName());
 	private final static Logger BRIEF_LOGGER = LoggerFactory.getLogger(TestDriver.class.getName());
@@ -60,12 +65,14 @@ public class AggregationAgent extends AbstractAsynchronousAgent {
 		this.ru = ru;
 		this.benchmarkingState = benchmarkingState;
 		this.queryTemplates = queryTamplates;
-		this.connection = new SparqlQueryConnection(queryExecuteManager.getEndpointUrl(), queryExecuteManager.getEndpointUpdateUrl(), RdfUtils.CONTENT_TYPE_RDFXML, queryExecuteManager.getTimeoutMilliseconds(), true);
+		this.tupleResultFormat = ResultFormat.parse(configuration.getString(Configuration.SELECT_RESULT_FORMAT), false);
+		this.graphResultFormat = ResultFormat.parse(configuration.getString(Configuration.GRAPH_RESULT_FORMAT), true);
+		this.connection = newConnection();
 		this.definitions = definitions;
 		this.substitutionQueryParametersMngr = substitutionQueryParametersMngr;
 //		this.turtleResultStatementsCounter = new TurtleResultStatementsCounter();
-		this.rdfXmlResultStatementsCounter = new RDFXMLResultStatementsCounter();
-		this.sparqlResultStatementsCounter = new SPARQLResultStatementsCounter();
+		this.tupleResultStatementsCounter = tupleResultFormat.createCounter();
+		this.graphResultStatementsCounter = graphResultFormat.createCounter();
 		this.queryMixPool = new Pool(definitions.getString(Definitions.QUERY_POOLS), Statistics.totalStartedQueryMixRuns, Statistics.totalCompletedQueryMixRuns);
 		this.benchmarkByQueryMixRuns = benchmarkByQueryMixRuns;
 		this.saveDetailedQueryLogs = configuration.getBoolean(Configuration.SAVE_DETAILED_QUERY_LOGS);
@@ -90,6 +97,15 @@ public class AggregationAgent extends AbstractAsynchronousAgent {
 		    }		
 		}
 		
+		//in an open loop run, wait for the intended start time of the query
+		long intendedStartNanos = awaitNextArrival();
+		if (intendedStartNanos == STOPPED_WHILE_WAITING) {
+			if (startedDuringBenchmarkPhase) {
+				queryMixPool.releaseUnavailableItem(aggregateQueryIndex + 1);
+			}
+			return true;
+		}
+		
 		long queryId = 0;
 		MustacheTemplate aggregateQuery = null;
 		String queryString = "";
@@ -154,16 +170,22 @@ public class AggregationAgent extends AbstractAsynchronousAgent {
 					break;	
 			}
 			
+			long compileStartNanos = System.nanoTime();
 			queryString = aggregateQuery.compileMustacheTemplate();
+			connection.getRequestTimings().set(RequestTimings.Phase.COMPILE, System.nanoTime() - compileStartNanos);
 			
-			long executionTimeMs = System.currentTimeMillis();
+			queryEvent = FlightRecorderEvents.beginQuery();
+			long executionStartNanos = System.nanoTime();
 			
 			inputStreamResult = queryExecuteManager.executeQueryWithInputStreamResult(connection, aggregateQuery.getTemplateFileName(), queryString, aggregateQuery.getTemplateQueryType(), true, false);			
 			
-			updateQueryStatistics(true, startedDuringBenchmarkPhase, aggregateQuery.getTemplateQueryType(), aggregateQuery.getTemplateFileName(), queryString, inputStreamResult, saveDetailedQueryLogs, queryId, System.currentTimeMillis() - executionTimeMs, timeStamp);
+			long queryExecutionTimeMicros = elapsedMicros(executionStartNanos);
+			
+			updateQueryStatistics(true, startedDuringBenchmarkPhase, aggregateQuery.getTemplateQueryType(), aggregateQuery.getTemplateFileName(), queryString, inputStreamResult, saveDetailedQueryLogs, queryId, queryExecutionTimeMicros, responseTimeMicros(intendedStartNanos, queryExecutionTimeMicros), timeStamp);
 
 		} catch (Throwable t) {
-			String msg = "WARNING : AggregationAgent [" + Thread.currentThread().getName() +"] reports: " + t.getMessage() + "\n" + "\tfor query : \n" + queryString + "\n...closing current connection and creating a new one..." + "\n----------------------------------------------------------------------------------------------\n";
+			//a query suspended while its endpoint is unavailable has not been sent, the query is not repeated in the log
+			String msg = "WARNING : AggregationAgent [" + Thread.currentThread().getName() +"] reports: " + t.getMessage() + ((t instanceof CircuitOpenException) ? "" : "\n" + "\tfor query : \n" + queryString + "\n...closing current connection and creating a new one..." + "\n----------------------------------------------------------------------------------------------\n");
 			
 			System.out.println(msg);
 			
@@ -171,21 +193,24 @@ public class AggregationAgent extends AbstractAsynchronousAgent {
 			
 			try {
                 
-                updateQueryStatistics(false, startedDuringBenchmarkPhase, aggregateQuery.getTemplateQueryType(), aggregateQuery.getTemplateFileName(), queryString, inputStreamResult, saveDetailedQueryLogs, queryId, 0, timeStamp);
+                updateQueryStatistics(false, startedDuringBenchmarkPhase, aggregateQuery.getTemplateQueryType(), aggregateQuery.getTemplateFileName(), queryString, inputStreamResult, saveDetailedQueryLogs, queryId, 0, 0, timeStamp);
 
-				msg = StringUtil.iostreamToString(inputStreamResult);
-                               
-                System.out.println("===============================");
-                System.out.println("Dump of InputStream:");
-                System.out.println(msg);
-                System.out.println("===============================");					
+				//no response to dump when the endpoint could not be reached
+				if (inputStreamResult != null) {
+					msg = StringUtil.iostreamToString(inputStreamResult);
+	                               
+	                System.out.println("===============================");
+	                System.out.println("Dump of InputStream:");
+	                System.out.println(msg);
+	                System.out.println("===============================");
+				}
 
 			} catch (Throwable t1) {
 				t1.printStackTrace();
 			}
 			
 			connection.disconnect();
-			connection = new SparqlQueryConnection(queryExecuteManager.getEndpointUrl(), queryExecuteManager.getEndpointUpdateUrl(), RdfUtils.CONTENT_TYPE_RDFXML, queryExecuteManager.getTimeoutMilliseconds(), true);
+			connection = newConnection();
 		}
 
 		if (startedDuringBenchmarkPhase) {
@@ -195,12 +220,21 @@ public class AggregationAgent extends AbstractAsynchronousAgent {
 		return true;
 	}
 
+	/**
+	 * @return a connection requesting results in the configured formats
+	 */
+	private SparqlQueryConnection newConnection() {
+		SparqlQueryConnection sparqlQueryConnection = new SparqlQueryConnection(queryExecuteManager.getEndpointUrl(), queryExecuteManager.getEndpointUpdateUrl(), graphResultFormat.getAcceptContentType(), queryExecuteManager.getTimeoutMilliseconds(), true);
+		sparqlQueryConnection.setContentTypeForTupleQuery(tupleResultFormat.getAcceptContentType());
+		return sparqlQueryConnection;
+	}
+	
 	@Override
 	public void executeFinalize() {				
 		connection.disconnect();
 	}
 	
-	private void updateQueryStatistics(boolean reportSuccess, boolean startedDuringBenchmarkPhase, QueryType queryType, String queryName, String queryString, InputStream inputStreamQueryResult, boolean useStringQueryResultOrInputStreamResult, long id, long queryExecutionTimeMs, String timeStamp) {
+	private void updateQueryStatistics(boolean reportSuccess, boolean startedDuringBenchmarkPhase, QueryType queryType, String queryName, String queryString, InputStream inputStreamQueryResult, boolean useStringQueryResultOrInputStreamResult, long id, long queryExecutionTimeMicros, long queryResponseTimeMicros, String timeStamp) {
 		//skip update of statistics for conformance queries
 		if (queryName.startsWith("#")) {
 			return;
@@ -214,6 +248,10 @@ public class AggregationAgent extends AbstractAsynchronousAgent {
 		
 		String queryResultString = "";
 		
+		//the response is read by the counter, or into a string first
+		RequestTimings timings = connection.getRequestTimings();
+		long consumeStartNanos = System.nanoTime();
+		
 		try {
 			if (useStringQueryResultOrInputStreamResult) {
 				//might increase memory footprint of the driver, as each query result will be stored into a String
@@ -224,44 +262,54 @@ public class AggregationAgent extends AbstractAsynchronousAgent {
 			}		
             
             if (reportSuccess) {
-                if (queryType == QueryType.CONSTRUCT || queryType == QueryType.DESCRIBE) {
-                  resultsCount = rdfXmlResultStatementsCounter.getStatementsCount(inputStreamQueryResult);
-                  Statistics.timeCorrectionsMS.addAndGet(rdfXmlResultStatementsCounter.getParseTime());
-                } else {
-                  resultsCount = sparqlResultStatementsCounter.getStatementsCount(inputStreamQueryResult);
-                  Statistics.timeCorrectionsMS.addAndGet(sparqlResultStatementsCounter.getParseTime());
-                }	
+                ResultStatementsCounter resultStatementsCounter = (queryType == QueryType.CONSTRUCT || queryType == QueryType.DESCRIBE) ? graphResultStatementsCounter : tupleResultStatementsCounter;
+                resultsCount = resultStatementsCounter.getStatementsCount(inputStreamQueryResult);
+                
+                //parse time of the query, excluding time spent waiting for the response
+                timings.setParseFromConsumeTime(System.nanoTime() - consumeStartNanos);
             }
 	        
+			//a response aborted at its deadline has been counted partially, if at all
+			long timedOutTimeMs = connection.endDeadline();
+			FlightRecorderEvents.commitQuery(queryEvent, Statistics.aggregateQueriesArray[queryNumber - 1].getQueryName(), id, timedOutTimeMs >= 0 ? timedOutTimeMs * 1000L : queryExecutionTimeMicros, resultsCount, timings.getResponseBytes(),
+												  timedOutTimeMs >= 0 ? FlightRecorderEvents.Outcome.TIMEOUT : (reportSuccess ? FlightRecorderEvents.Outcome.SUCCESS : FlightRecorderEvents.Outcome.FAILURE));
+			queryEvent = null;
+			
 			if (startedDuringBenchmarkPhase) {
-				if (reportSuccess) {
-					Statistics.aggregateQueriesArray[queryNumber - 1].reportSuccess(queryExecutionTimeMs);
-					Statistics.totalAggregateQueryStatistics.reportSuccess(queryExecutionTimeMs);
-					logBrief(timeStamp, queryNameId, queryType, "", queryExecutionTimeMs, resultsCount);
+				if (timedOutTimeMs >= 0) {
+					Statistics.aggregateQueriesArray[queryNumber - 1].reportTimeout(timedOutTimeMs);
+					Statistics.totalAggregateQueryStatistics.reportTimeout(timedOutTimeMs);
+					logBrief(timeStamp, queryNameId, queryType, ", query timed out!", timedOutTimeMs * 1000L, resultsCount);
+				} else if (reportSuccess) {
+					Statistics.aggregateQueriesArray[queryNumber - 1].reportSuccess(queryExecutionTimeMicros, queryResponseTimeMicros);
+					Statistics.aggregateQueriesArray[queryNumber - 1].reportPhases(timings);
+					Statistics.totalAggregateQueryStatistics.reportSuccess(queryExecutionTimeMicros, queryResponseTimeMicros);
+					Statistics.totalAggregateQueryStatistics.reportPhases(timings);
+					logBrief(timeStamp, queryNameId, queryType, "", queryExecutionTimeMicros, resultsCount);
 				} else {				
 					Statistics.aggregateQueriesArray[queryNumber - 1].reportFailure();
 					Statistics.totalAggregateQueryStatistics.reportFailure();
-					logBrief(timeStamp, queryNameId, queryType, ", query error!", queryExecutionTimeMs, resultsCount);
+					logBrief(timeStamp, queryNameId, queryType, ", query error!", queryExecutionTimeMicros, resultsCount);
 				}        
 			} else {
-				if (queryExecutionTimeMs > 0) {
-					DETAILED_LOGGER.info("\tQuery : " + queryName + ", time : " + timeStamp + " (" + queryExecutionTimeMs + " ms), " + "queryResult.length : " + queryResultString.length() + ", results : " + resultsCount + ", has been started during the warmup phase, it will be ignored in the benchmark result!");
-					logBrief(timeStamp, queryNameId, queryType, ", has been started during the warmup phase, it will be ignored in the benchmark result!", queryExecutionTimeMs, resultsCount);
+				if (queryExecutionTimeMicros > 0) {
+					DETAILED_LOGGER.info("\tQuery : " + queryName + ", time : " + timeStamp + " (" + queryExecutionTimeMicros + " us), " + "queryResult.length : " + queryResultString.length() + ", results : " + resultsCount + ", has been started during the warmup phase, it will be ignored in the benchmark result!");
+					logBrief(timeStamp, queryNameId, queryType, ", has been started during the warmup phase, it will be ignored in the benchmark result!", queryExecutionTimeMicros, resultsCount);
 				} else {
-					DETAILED_LOGGER.warn("\tQuery : " + queryName + ", time : " + timeStamp + " (" + queryExecutionTimeMs + " ms), " + "queryResult.length : " + queryResultString.length() + ", results : " + resultsCount + ", has failed to execute... possibly query timeout has been reached!");
-					logBrief(timeStamp, queryNameId, queryType, ", has failed to execute... possibly query timeout has been reached!", queryExecutionTimeMs, resultsCount);
+					DETAILED_LOGGER.warn("\tQuery : " + queryName + ", time : " + timeStamp + " (" + queryExecutionTimeMicros + " us), " + "queryResult.length : " + queryResultString.length() + ", results : " + resultsCount + ", has failed to execute... possibly query timeout has been reached!");
+					logBrief(timeStamp, queryNameId, queryType, ", has failed to execute... possibly query timeout has been reached!", queryExecutionTimeMicros, resultsCount);
 				}
 			}
 			
-			DETAILED_LOGGER.info("\n*** Query [" + queryNameId + "], execution time : " + timeStamp + " (" + queryExecutionTimeMs + " ms), results : " + resultsCount + "\n" + queryString + "\n---------------------------------------------\n*** Result for query [" + queryNameId + "]" + " : \n" + (queryResultString.isEmpty() ? "Query results are not saved, to enable, set 'saveDetailedQueryLogs=true' in test.properties file." : ("Length : " + queryResultString.length() + "\n" + queryResultString)) + "\n\n");
+			DETAILED_LOGGER.info("\n*** Query [" + queryNameId + "], execution time : " + timeStamp + " (" + queryExecutionTimeMicros + " us), results : " + resultsCount + "\n" + queryString + "\n---------------------------------------------\n*** Result for query [" + queryNameId + "]" + " : \n" + (queryResultString.isEmpty() ? "Query results are not saved, to enable, set 'saveDetailedQueryLogs=true' in test.properties file." : ("Length : " + queryResultString.length() + "\n" + queryResultString)) + "\n\n");
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
 	}
 	
-	private void logBrief(String timeStamp, String queryId, QueryType queryType, String appendString, long queryExecutionTimeMs, long resultStatementsCount) {
+	private void logBrief(String timeStamp, String queryId, QueryType queryType, String appendString, long queryExecutionTimeMicros, long resultStatementsCount) {
 		StringBuilder reportSb = new StringBuilder();
-		reportSb.append(String.format("\t%s:\t[%s, %s] Query executed, execution time : %d ms, results : %d %s", timeStamp, queryId, Thread.currentThread().getName(), queryExecutionTimeMs, resultStatementsCount, appendString));
+		reportSb.append(String.format("\t%s:\t[%s, %s] Query executed, execution time : %d us, results : %d, request id : %s %s", timeStamp, queryId, Thread.currentThread().getName(), queryExecutionTimeMicros, resultStatementsCount, connection.getRequestTimings().getRequestId(), appendString));
 		
 		BRIEF_LOGGER.info(reportSb.toString());		
 	}
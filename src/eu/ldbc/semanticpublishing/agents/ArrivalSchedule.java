@@ -0,0 +1,165 @@
+package eu.ldbc.semanticpublishing.agents;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Intended start times of operations for agents running in an open loop, i.e. operations are issued at a target rate
+ * regardless of how fast the endpoint responds. Agents sharing a schedule claim start times concurrently, each agent
+ * waits for its claimed time and executes the operation. When all agents are busy, operations are started late and
+ * the delay is part of their response time, which is measured from the intended start time.
+ */
+public class ArrivalSchedule {
+	public static enum Mode {
+		/** operations are started at fixed intervals */
+		CONSTANT,
+		/** intervals between operations are exponentially distributed, i.e. a Poisson arrival process */
+		POISSON,
+		/** fixed intervals, the rate changes after each step according to arrivalRateSteps */
+		STEPPED
+	}
+
+	private static final long NANOS_PER_SECOND = 1000000000L;
+
+	private final Mode mode;
+	private final double ratePerSecond;
+	private final double[] stepRateFactors;
+	private final long[] stepEndNanos;
+	private final Random random;
+	private final AtomicLong nextStartNanos = new AtomicLong(0);
+	private volatile long scheduleStartNanos = 0;
+
+	/**
+	 * @param mode - arrival process
+	 * @param ratePerSecond - target rate of operations per second
+	 * @param steps - for STEPPED mode only : comma separated list of factor:seconds pairs, e.g. 0.5:60,1:60,2:120 runs at half of
+	 *                the target rate for the first minute, at target rate for the next one, at double rate afterwards
+	 * @param random - source of randomness for POISSON mode
+	 */
+	public ArrivalSchedule(Mode mode, double ratePerSecond, String steps, Random random) {
+		if (ratePerSecond <= 0) {
+			throw new IllegalArgumentException("ArrivalSchedule : arrival rate must be a positive number : " + ratePerSecond);
+		}
+		this.mode = mode;
+		this.ratePerSecond = ratePerSecond;
+		this.random = random;
+
+		if (mode == Mode.STEPPED) {
+			String[] tokens = steps.trim().split(",");
+			stepRateFactors = new double[tokens.length];
+			stepEndNanos = new long[tokens.length];
+			long stepEnd = 0;
+			for (int i = 0; i < tokens.length; i++) {
+				String[] step = tokens[i].trim().split(":");
+				if (step.length != 2) {
+					throw new IllegalArgumentException("ArrivalSchedule : invalid arrival rate step : '" + tokens[i] + "', expected factor:seconds");
+				}
+				stepRateFactors[i] = Double.parseDouble(step[0].trim());
+				if (stepRateFactors[i] <= 0) {
+					throw new IllegalArgumentException("ArrivalSchedule : arrival rate factor must be a positive number : " + tokens[i]);
+				}
+				stepEnd += Long.parseLong(step[1].trim()) * NANOS_PER_SECOND;
+				stepEndNanos[i] = stepEnd;
+			}
+		} else {
+			stepRateFactors = null;
+			stepEndNanos = null;
+		}
+	}
+
+	/**
+	 * Creates a schedule from configuration values
+	 * @param mode - closed, constant, poisson or stepped
+	 * @return the schedule, or null for a closed loop (mode is closed or rate is not positive)
+	 */
+	public static ArrivalSchedule create(String mode, double ratePerSecond, String steps, Random random) {
+		if (mode == null || mode.trim().isEmpty() || mode.trim().equalsIgnoreCase("closed") || ratePerSecond <= 0) {
+			return null;
+		}
+		try {
+			return new ArrivalSchedule(Mode.valueOf(mode.trim().toUpperCase()), ratePerSecond, steps, random);
+		} catch (IllegalArgumentException iae) {
+			throw new IllegalArgumentException("ArrivalSchedule : unsupported arrival rate mode : '" + mode + "', supported : closed, constant, poisson, stepped. " + iae.getMessage());
+		}
+	}
+
+	/**
+	 * Claims the intended start time of the next operation, the schedule starts with the first claim.
+	 * @return intended start time, comparable to System.nanoTime()
+	 */
+	public long claimNextStartNanos() {
+		if (scheduleStartNanos == 0) {
+			long now = System.nanoTime();
+			if (nextStartNanos.compareAndSet(0, now)) {
+				scheduleStartNanos = now;
+			}
+		}
+
+		while (true) {
+			long startNanos = nextStartNanos.get();
+			long intervalNanos = nextIntervalNanos(startNanos);
+			if (nextStartNanos.compareAndSet(startNanos, startNanos + intervalNanos)) {
+				return startNanos;
+			}
+		}
+	}
+
+	/**
+	 * @return target rate of operations per second at given time
+	 */
+	public double getTargetRatePerSecond(long atNanos) {
+		if (mode != Mode.STEPPED) {
+			return ratePerSecond;
+		}
+		long elapsed = scheduleStartNanos == 0 ? 0 : atNanos - scheduleStartNanos;
+		for (int i = 0; i < stepEndNanos.length; i++) {
+			if (elapsed < stepEndNanos[i]) {
+				return ratePerSecond * stepRateFactors[i];
+			}
+		}
+		return ratePerSecond * stepRateFactors[stepRateFactors.length - 1];
+	}
+
+	/**
+	 * @return number of operations which should have been started until now, zero if not started yet
+	 */
+	public long getIntendedOperationsCount() {
+		if (scheduleStartNanos == 0) {
+			return 0;
+		}
+		double elapsedSeconds = (double)(System.nanoTime() - scheduleStartNanos) / NANOS_PER_SECOND;
+		if (mode != Mode.STEPPED) {
+			return (long)(elapsedSeconds * ratePerSecond);
+		}
+		double count = 0;
+		double previousStepEnd = 0;
+		for (int i = 0; i < stepEndNanos.length && previousStepEnd < elapsedSeconds; i++) {
+			double stepEnd = (i == stepEndNanos.length - 1) ? elapsedSeconds : Math.min(elapsedSeconds, (double)stepEndNanos[i] / NANOS_PER_SECOND);
+			count += (stepEnd - previousStepEnd) * ratePerSecond * stepRateFactors[i];
+			previousStepEnd = stepEnd;
+		}
+		return (long)count;
+	}
+
+	public Mode getMode() {
+		return mode;
+	}
+
+	public double getRatePerSecond() {
+		return ratePerSecond;
+	}
+
+	private long nextIntervalNanos(long atNanos) {
+		double rate = getTargetRatePerSecond(atNanos);
+		if (mode == Mode.POISSON) {
+			//inverse transform sampling of the exponential distribution, 1 - nextDouble() is never zero
+			return Math.max(1, (long)(-Math.log(1.0 - random.nextDouble()) / rate * NANOS_PER_SECOND));
+		}
+		return Math.max(1, (long)(NANOS_PER_SECOND / rate));
+	}
+
+	@Override
+	public String toString() {
+		return mode.toString().toLowerCase() + String.format(", %.2f operations per second", ratePerSecond);
+	}
+}
@@ -1,20 +1,29 @@
 package eu.ldbc.semanticpublishing.agents;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import eu.ldbc.semanticpublishing.TestDriver;
+import eu.ldbc.semanticpublishing.endpoint.CircuitOpenException;
+import eu.ldbc.semanticpublishing.endpoint.RequestTimings;
+import eu.ldbc.semanticpublishing.endpoint.ResponseDrainer;
+import eu.ldbc.semanticpublishing.endpoint.ServerBusyException;
 import eu.ldbc.semanticpublishing.endpoint.SparqlQueryConnection;
 import eu.ldbc.semanticpublishing.endpoint.SparqlQueryExecuteManager;
 import eu.ldbc.semanticpublishing.endpoint.SparqlQueryConnection.QueryType;
 import eu.ldbc.semanticpublishing.properties.Configuration;
 import eu.ldbc.semanticpublishing.properties.Definitions;
 import eu.ldbc.semanticpublishing.refdataset.DataManager;
+import eu.ldbc.semanticpublishing.statistics.FlightRecorderEvents;
+import eu.ldbc.semanticpublishing.statistics.QueryStatistics;
 import eu.ldbc.semanticpublishing.statistics.Statistics;
 import eu.ldbc.semanticpublishing.substitutionparameters.SubstitutionParametersGenerator;
+import eu.ldbc.semanticpublishing.templates.MustacheTemplate;
 import eu.ldbc.semanticpublishing.templates.editorial.DeleteTemplate;
 import eu.ldbc.semanticpublishing.templates.editorial.InsertTemplate;
 import eu.ldbc.semanticpublishing.templates.editorial.UpdateTemplate;
@@ -26,6 +35,8 @@ import eu.ldbc.semanticpublishing.validation.EditorialOperationsValidator.Editor
 /**
  * A class that represents an editorial agent. It executes INSERT, UPDATE, DELETE queries 
  * with a defined distribution, updates query execution statistics.
+ * Optionally operations are batched, a number of them is sent as a single SPARQL Update request. Statistics are 
+ * updated for each operation of a batch and for the batch itself.
  */
 public class EditorialAgent extends AbstractAsynchronousAgent {
 	private final SparqlQueryExecuteManager queryExecuteManager;
@@ -36,15 +47,24 @@ public class EditorialAgent extends AbstractAsynchronousAgent {
 	private Definitions definitions;
 	private final boolean enableValidation;
 	private final int editorialOpsValidationInterval;
-	private final AtomicBoolean maxUpdateOperationsReached;
+	private final RateLimiter updateRateLimiter;
 	private EditorialOperationsValidator editorialOperationsValidator;
+	private final ResponseDrainer responseDrainer = new ResponseDrainer();
+	private final boolean saveDetailedQueryLogs;
+	private final int detailedLogSamplingInterval;
+	private long operationsCount = 0;
+	private final int batchSize;
+	private final long batchWindowMs;
+	private final List<BatchedOperation> batch = new ArrayList<BatchedOperation>();
+	private long batchStartNanos = 0;
+	private long batchesCount = 0;
 	
 	private final static Logger DETAILED_LOGGER = LoggerFactory.getLogger(EditorialAgent.class.getName());
 	private final static Logger BRIEF_LOGGER = LoggerFactory.getLogger(TestDriver.class.getName());
 	
-	private final static long SLEEP_TIME_MS = 1000;
+	private final static String BATCH_SEPARATOR = " ;\n";
 	
-	public EditorialAgent(AtomicBoolean benchmarkingState, SparqlQueryExecuteManager queryExecuteManager, RandomUtil ru, AtomicBoolean runFlag, HashMap<String, String> queryTemplates, HashMap<String, String> validationQueryTemplates, Configuration configuration, Definitions definitions, AtomicBoolean maxUpdateOperationsReached) {
+	public EditorialAgent(AtomicBoolean benchmarkingState, SparqlQueryExecuteManager queryExecuteManager, RandomUtil ru, AtomicBoolean runFlag, HashMap<String, String> queryTemplates, HashMap<String, String> validationQueryTemplates, Configuration configuration, Definitions definitions, RateLimiter updateRateLimiter) {
 		super(runFlag);
 		this.queryExecuteManager = queryExecuteManager;
 		this.ru = ru;
@@ -52,10 +72,14 @@ public class EditorialAgent extends AbstractAsynchronousAgent {
 		this.queryTemplates = queryTemplates;
 		this.connection = new SparqlQueryConnection(queryExecuteManager.getEndpointUrl(), queryExecuteManager.getEndpointUpdateUrl(), RdfUtils.CONTENT_TYPE_RDFXML, queryExecuteManager.getTimeoutMilliseconds(), true);
 		this.definitions = definitions;
-		this.maxUpdateOperationsReached = maxUpdateOperationsReached;
+		this.updateRateLimiter = updateRateLimiter;
 		this.enableValidation = configuration.getBoolean(Configuration.ENABLE_EDITORIAL_OPS_VALIDATION);
 		this.editorialOpsValidationInterval = configuration.getInt(Configuration.EDITORIAL_OPS_VALIDATION_INTEVAL);
 		this.editorialOperationsValidator = new EditorialOperationsValidator(queryExecuteManager, ru, queryTemplates, validationQueryTemplates, configuration, definitions);
+		this.saveDetailedQueryLogs = configuration.getBoolean(Configuration.SAVE_DETAILED_QUERY_LOGS);
+		this.detailedLogSamplingInterval = configuration.getInt(Configuration.EDITORIAL_DETAILED_LOG_SAMPLING_INTERVAL);
+		this.batchSize = Math.max(1, configuration.getInt(Configuration.EDITORIAL_BATCH_SIZE));
+		this.batchWindowMs = configuration.getLong(Configuration.EDITORIAL_BATCH_WINDOW_MS);
 	}
 	
 	@Override
@@ -66,25 +90,39 @@ public class EditorialAgent extends AbstractAsynchronousAgent {
 		String queryName = "";
 		String queryString = "";
 		String queryResult = "";
+		long responseLength = 0;
 		QueryType queryType = QueryType.INSERT;
+		MustacheTemplate editorialQuery = null;
 		int validationErrors = 0;
 		String[] validationParameters = null;
+		FlightRecorderEvents.Event queryEvent = null;
 			
 		try {
 			
-			if (maxUpdateOperationsReached.get()) {
-				DETAILED_LOGGER.info(Thread.currentThread().getName() + " : Max update operations per seconds has been reached, skipping current update until update rate drops below configured maximum.");
-				Thread.sleep(SLEEP_TIME_MS);
+			//in an open loop run, wait for the intended start time of the operation
+			long intendedStartNanos = awaitNextArrival();
+			if (intendedStartNanos == STOPPED_WHILE_WAITING) {
 				return true;
 			}
 			
+			//operations of all editorial agents are held at the maximum update rate, and wait while the server asks to back off
+			if (!awaitNanoTime(updateRateLimiter.claimPermitNanos())) {
+				return true;
+			}
+			queryEvent = FlightRecorderEvents.beginQuery();
+			
+			//the operation is rendered directly into the body of its request, unless it is needed as a string for a batch or the detailed log
+			boolean streamRequest = SparqlQueryConnection.isUpdateRequestBodyStreamed() && !isBatching() && !saveDetailedQueryLogs;
+			connection.getRequestTimings().set(RequestTimings.Phase.COMPILE, 0);
+			
 			switch (queryDistribution) {
 				case 0 :
 					InsertTemplate insertQuery = new InsertTemplate("", ru, queryTemplates, definitions);
 					
 					queryType = insertQuery.getTemplateQueryType();
 					queryName = insertQuery.getTemplateFileName();
-					queryString = insertQuery.compileMustacheTemplate();
+					editorialQuery = insertQuery;
+					queryString = streamRequest ? "" : compileQuery(insertQuery);
 					
 					queryId = Statistics.insertCreativeWorksQueryStatistics.getNewQueryId();
 					
@@ -92,7 +130,7 @@ public class EditorialAgent extends AbstractAsynchronousAgent {
 						validationParameters = insertQuery.generateSubstitutionParameters(null, 1).split(SubstitutionParametersGenerator.PARAMS_DELIMITER);
 						validationErrors = editorialOperationsValidator.validateAction(EditorialOperation.INSERT, 0, validationParameters, false);
 						if (validationErrors > 0) {
-							updateQueryStatistics(false, queryType, queryName, "validate insert " + queryId, "", 0, System.currentTimeMillis());				
+							updateQueryStatistics(null, false, queryType, queryName, "validate insert " + queryId, "", 0, 0, 0, 0);				
 						}						
 					}
 					
@@ -105,7 +143,8 @@ public class EditorialAgent extends AbstractAsynchronousAgent {
 					
 					queryType = updateQuery.getTemplateQueryType();
 					queryName = updateQuery.getTemplateFileName();
-					queryString = updateQuery.compileMustacheTemplate();
+					editorialQuery = updateQuery;
+					queryString = streamRequest ? "" : compileQuery(updateQuery);
 					
 					queryId = Statistics.updateCreativeWorksQueryStatistics.getNewQueryId();
 					
@@ -115,7 +154,8 @@ public class EditorialAgent extends AbstractAsynchronousAgent {
 					
 					queryType = deleteQuery.getTemplateQueryType();
 					queryName = deleteQuery.getTemplateFileName();
-					queryString = deleteQuery.compileMustacheTemplate();
+					editorialQuery = deleteQuery;
+					queryString = streamRequest ? "" : compileQuery(deleteQuery);
 					
 					queryId = Statistics.deleteCreativeWorksQueryStatistics.getNewQueryId();
 
@@ -123,28 +163,57 @@ public class EditorialAgent extends AbstractAsynchronousAgent {
 						validationParameters = deleteQuery.generateSubstitutionParameters(null, 1).split(SubstitutionParametersGenerator.PARAMS_DELIMITER);
 						validationErrors = editorialOperationsValidator.validateAction(EditorialOperation.DELETE, 0, validationParameters, false);
 						if (validationErrors > 0) {
-							updateQueryStatistics(false, queryType, queryName, "validate delete " + queryId, "", 0, System.currentTimeMillis());				
+							updateQueryStatistics(null, false, queryType, queryName, "validate delete " + queryId, "", 0, 0, 0, 0);				
 						}										
 					}										
 					
 					break;
 			}
 			
-			long executionTimeMs = System.currentTimeMillis();
+			if (isBatching()) {
+				addToBatch(new BatchedOperation(queryType, queryName, queryString, queryId, intendedStartNanos, queryEvent));
+				return true;
+			}
+			
+			//response is kept for the detailed log of sampled operations only, otherwise it is read and discarded
+			boolean sampleResponse = saveDetailedQueryLogs && detailedLogSamplingInterval > 0 && (++operationsCount % detailedLogSamplingInterval == 0);
+			
+			long executionStartNanos = System.nanoTime();
 			
-			queryResult = queryExecuteManager.executeQueryWithStringResult(connection, queryName, queryString, queryType, true, false);
+			if (sampleResponse) {
+				queryResult = queryExecuteManager.executeQueryWithStringResult(connection, queryName, queryString, queryType, true, false);
+				responseLength = queryResult.length();
+			} else if (streamRequest) {
+				responseLength = queryExecuteManager.executeQueryWithDrainedResult(connection, queryName, editorialQuery, queryType, responseDrainer);
+			} else {
+				responseLength = queryExecuteManager.executeQueryWithDrainedResult(connection, queryName, queryString, queryType, responseDrainer);
+			}
+			
+			long queryExecutionTimeMicros = elapsedMicros(executionStartNanos);
+			updateRateLimiter.onSuccess();
 			
-			updateQueryStatistics(true, queryType, queryName, queryString, queryResult, queryId, System.currentTimeMillis() - executionTimeMs);			
-		} catch (InterruptedException ie) {
-			DETAILED_LOGGER.warn("InterruptedException : " + ie.getMessage());
+			updateQueryStatistics(queryEvent, true, queryType, queryName, queryString, queryResult, responseLength, queryId, queryExecutionTimeMicros, responseTimeMicros(intendedStartNanos, queryExecutionTimeMicros));			
+			if (benchmarkingState.get()) {
+				getQueryStatistics(queryType).reportPhases(connection.getRequestTimings());
+			}
 		} catch (Throwable t) {
-			String msg = "Warning : EditorialAgent [" + Thread.currentThread().getName() +"] reports: " + t.getMessage() + ", attempting a new connection" + "\n" + "\tfor query : \n" + connection.getQueryString();
+			String msg = "Warning : EditorialAgent [" + Thread.currentThread().getName() +"] reports: " + t.getMessage() + ((t instanceof CircuitOpenException) ? "" : ", attempting a new connection" + "\n" + "\tfor query : \n" + connection.getQueryString());
 			
 			System.out.println(msg);
 			
 			DETAILED_LOGGER.warn(msg);
 			
-			updateQueryStatistics(false, queryType, queryName, queryString, queryResult ,queryId, 0);
+			if (t instanceof ServerBusyException) {
+				updateRateLimiter.backOff(((ServerBusyException)t).getRetryAfterMilliseconds());
+			}
+			
+			long timedOutTimeMs = connection.endDeadline();
+			if (timedOutTimeMs >= 0) {
+				recordTimeout(queryEvent, queryType, queryName, queryId, timedOutTimeMs);
+				logDetailed(constructQueryNameId(queryName, queryType, queryId), queryString, queryResult, responseLength, timedOutTimeMs * 1000L);
+			} else {
+				updateQueryStatistics(queryEvent, false, queryType, queryName, queryString, queryResult, responseLength, queryId, 0, 0);
+			}
 			
 			connection.disconnect();
 			connection = new SparqlQueryConnection(queryExecuteManager.getEndpointUrl(), queryExecuteManager.getEndpointUpdateUrl(), RdfUtils.CONTENT_TYPE_RDFXML, queryExecuteManager.getTimeoutMilliseconds(), true);
@@ -155,30 +224,149 @@ public class EditorialAgent extends AbstractAsynchronousAgent {
 	
 	@Override
 	public void executeFinalize() {			
+		if (!batch.isEmpty()) {
+			executeBatch();
+		}
 		connection.disconnect();
 	}
 	
-	private void updateQueryStatistics(boolean reportSuccess, QueryType queryType, String queryName, String queryString, String queryResult, long id, long queryExecutionTimeMs) {
+	private boolean isBatching() {
+		return batchSize > 1 || batchWindowMs > 0;
+	}
+	
+	/**
+	 * Adds an operation to the current batch and executes the batch when it is full, or when the time window since
+	 * its first operation has passed. The window is checked when an operation is added.
+	 */
+	private void addToBatch(BatchedOperation operation) {
+		if (batch.isEmpty()) {
+			batchStartNanos = System.nanoTime();
+		}
+		batch.add(operation);
+		
+		boolean batchFull = batchSize > 1 && batch.size() >= batchSize;
+		boolean windowPassed = batchWindowMs > 0 && System.nanoTime() - batchStartNanos >= batchWindowMs * 1000000L;
+		if (batchFull || windowPassed) {
+			executeBatch();
+		}
+	}
+	
+	/**
+	 * Sends all operations of the current batch as a single SPARQL Update request, operations are separated by ';'
+	 */
+	private void executeBatch() {
+		StringBuilder sb = new StringBuilder();
+		for (BatchedOperation operation : batch) {
+			if (sb.length() > 0) {
+				sb.append(BATCH_SEPARATOR);
+			}
+			sb.append(operation.queryString);
+		}
+		String batchString = sb.toString();
+		String batchNameId = constructQueryNameId("batch of " + batch.size() + " operations", QueryType.UPDATE, ++batchesCount);
+		long responseLength = 0;
+		
+		try {
+			long executionStartNanos = System.nanoTime();
+			
+			responseLength = queryExecuteManager.executeQueryWithDrainedResult(connection, batchNameId, batchString, QueryType.UPDATE, responseDrainer);
+			
+			long endNanos = System.nanoTime();
+			long batchExecutionTimeMicros = (endNanos - executionStartNanos) / 1000L;
+			updateRateLimiter.onSuccess();
+			
+			if (benchmarkingState.get()) {
+				Statistics.editorialBatchesQueryStatistics.reportSuccess(batchExecutionTimeMicros);
+				Statistics.editorialBatchesQueryStatistics.reportPhases(connection.getRequestTimings());
+			}
+			//each operation waited in the batch since it was created, in an open loop run since its intended start
+			for (BatchedOperation operation : batch) {
+				recordStatistics(operation.event, true, operation.queryType, operation.queryName, operation.queryId, 0, batchExecutionTimeMicros, responseTimeMicros(operation.intendedStartNanos, (endNanos - operation.createdNanos) / 1000L));
+			}
+			logBrief(batchNameId, QueryType.UPDATE, "", batchExecutionTimeMicros);
+			logDetailed(batchNameId, batchString, "", responseLength, batchExecutionTimeMicros);
+		} catch (Throwable t) {
+			String msg = "Warning : EditorialAgent [" + Thread.currentThread().getName() +"] reports: " + t.getMessage() + ((t instanceof CircuitOpenException) ? "" : ", attempting a new connection" + "\n" + "\tfor batch of " + batch.size() + " operations : \n" + connection.getQueryString());
+			
+			System.out.println(msg);
+			
+			DETAILED_LOGGER.warn(msg);
+			
+			if (t instanceof ServerBusyException) {
+				updateRateLimiter.backOff(((ServerBusyException)t).getRetryAfterMilliseconds());
+			}
+			
+			long timedOutTimeMs = connection.endDeadline();
+			if (timedOutTimeMs >= 0) {
+				Statistics.editorialBatchesQueryStatistics.reportTimeout(timedOutTimeMs);
+				//time lost on the batch is shared by its operations
+				for (BatchedOperation operation : batch) {
+					recordTimeout(operation.event, operation.queryType, operation.queryName, operation.queryId, timedOutTimeMs / batch.size());
+				}
+			} else {
+				Statistics.editorialBatchesQueryStatistics.reportFailure();
+				for (BatchedOperation operation : batch) {
+					recordStatistics(operation.event, false, operation.queryType, operation.queryName, operation.queryId, 0, 0, 0);
+				}
+			}
+			logDetailed(batchNameId, batchString, "", responseLength, 0);
+			
+			connection.disconnect();
+			connection = new SparqlQueryConnection(queryExecuteManager.getEndpointUrl(), queryExecuteManager.getEndpointUpdateUrl(), RdfUtils.CONTENT_TYPE_RDFXML, queryExecuteManager.getTimeoutMilliseconds(), true);
+		} finally {
+			batch.clear();
+		}
+	}
+	
+	/**
+	 * Compiles the query into a string, the time is recorded as its compile phase
+	 */
+	private String compileQuery(MustacheTemplate query) {
+		long startNanos = System.nanoTime();
+		String queryString = query.compileMustacheTemplate();
+		connection.getRequestTimings().set(RequestTimings.Phase.COMPILE, System.nanoTime() - startNanos);
+		return queryString;
+	}
+	
+	private QueryStatistics getQueryStatistics(QueryType queryType) {
+		if (queryType == QueryType.INSERT) {
+			return Statistics.insertCreativeWorksQueryStatistics;
+		} else if (queryType == QueryType.UPDATE) {
+			return Statistics.updateCreativeWorksQueryStatistics;
+		}
+		return Statistics.deleteCreativeWorksQueryStatistics;
+	}
+	
+	private void updateQueryStatistics(FlightRecorderEvents.Event event, boolean reportSuccess, QueryType queryType, String queryName, String queryString, String queryResult, long responseLength, long id, long queryExecutionTimeMicros, long queryResponseTimeMicros) {
+		recordStatistics(event, reportSuccess, queryType, queryName, id, responseLength, queryExecutionTimeMicros, queryResponseTimeMicros);
+		logDetailed(constructQueryNameId(queryName, queryType, id), queryString, queryResult, responseLength, queryExecutionTimeMicros);
+	}
+	
+	/**
+	 * @param event - Flight Recorder event begun with the operation, or null
+	 */
+	private void recordStatistics(FlightRecorderEvents.Event event, boolean reportSuccess, QueryType queryType, String queryName, long id, long responseLength, long queryExecutionTimeMicros, long queryResponseTimeMicros) {
 
 		String queryNameId = constructQueryNameId(queryName, queryType, id);
+		FlightRecorderEvents.commitQuery(event, getQueryStatistics(queryType).getQueryName(), id, queryExecutionTimeMicros, 0, responseLength, reportSuccess ? FlightRecorderEvents.Outcome.SUCCESS : FlightRecorderEvents.Outcome.FAILURE);
 		
 		//report success
 		if (reportSuccess) {
 			if (queryType == QueryType.INSERT) {
-				if (queryResult.length() >= 0 && benchmarkingState.get()) {
-					Statistics.insertCreativeWorksQueryStatistics.reportSuccess(queryExecutionTimeMs);
+				if (benchmarkingState.get()) {
+					Statistics.insertCreativeWorksQueryStatistics.reportSuccess(queryExecutionTimeMicros, queryResponseTimeMicros);
 				}				
 			} else if (queryType == QueryType.UPDATE) {
-				if (queryResult.length() >= 0 && benchmarkingState.get()) {
-					Statistics.updateCreativeWorksQueryStatistics.reportSuccess(queryExecutionTimeMs);
+				if (benchmarkingState.get()) {
+					Statistics.updateCreativeWorksQueryStatistics.reportSuccess(queryExecutionTimeMicros, queryResponseTimeMicros);
 				}								
 			} else if (queryType == QueryType.DELETE) {
-				if (queryResult.length() >= 0 && benchmarkingState.get()) {
-					Statistics.deleteCreativeWorksQueryStatistics.reportSuccess(queryExecutionTimeMs);
+				if (benchmarkingState.get()) {
+					Statistics.deleteCreativeWorksQueryStatistics.reportSuccess(queryExecutionTimeMicros, queryResponseTimeMicros);
 				}	
 			}
 
-			logBrief(queryNameId, queryType, "", queryExecutionTimeMs);
+			logBrief(queryNameId, queryType, "", queryExecutionTimeMicros);
 
 		//report failure			
 		} else {
@@ -189,14 +377,34 @@ public class EditorialAgent extends AbstractAsynchronousAgent {
 			} else if (queryType == QueryType.DELETE) {
 				Statistics.deleteCreativeWorksQueryStatistics.reportFailure();
 			}
-			logBrief(queryNameId, queryType, ", query error!", queryExecutionTimeMs);
+			logBrief(queryNameId, queryType, ", query error!", queryExecutionTimeMicros);
 		}
-		DETAILED_LOGGER.info("\n*** Query [" + queryNameId  + "], execution time : " + queryExecutionTimeMs + " ms\n" + queryString + "\n---------------------------------------------\n*** Result for query [" + queryNameId + "]" + " : \n" + "Length : " + queryResult.length() + "\n" + queryResult + "\n\n");		
 	}
 	
-	private void logBrief(String queryNameId, QueryType queryType, String appendString, long queryExecutionTimeMs) {
+	/**
+	 * Reports an operation which has not completed before its deadline, separately from failures
+	 * @param event - Flight Recorder event begun with the operation, or null
+	 * @param timedOutTimeMs - time spent on the operation until it has been aborted
+	 */
+	private void recordTimeout(FlightRecorderEvents.Event event, QueryType queryType, String queryName, long id, long timedOutTimeMs) {
+		FlightRecorderEvents.commitQuery(event, getQueryStatistics(queryType).getQueryName(), id, timedOutTimeMs * 1000L, 0, 0, FlightRecorderEvents.Outcome.TIMEOUT);
+		if (queryType == QueryType.INSERT) {
+			Statistics.insertCreativeWorksQueryStatistics.reportTimeout(timedOutTimeMs);
+		} else if (queryType == QueryType.UPDATE) {
+			Statistics.updateCreativeWorksQueryStatistics.reportTimeout(timedOutTimeMs);
+		} else if (queryType == QueryType.DELETE) {
+			Statistics.deleteCreativeWorksQueryStatistics.reportTimeout(timedOutTimeMs);
+		}
+		logBrief(constructQueryNameId(queryName, queryType, id), queryType, ", query timed out!", timedOutTimeMs * 1000L);
+	}
+	
+	private void logDetailed(String queryNameId, String queryString, String queryResult, long responseLength, long queryExecutionTimeMicros) {
+		DETAILED_LOGGER.info("\n*** Query [" + queryNameId  + "], execution time : " + queryExecutionTimeMicros + " us\n" + queryString + "\n---------------------------------------------\n*** Result for query [" + queryNameId + "]" + " : \n" + "Length : " + responseLength + "\n" + (queryResult.isEmpty() ? "CRC32 : " + Long.toHexString(responseDrainer.getChecksum()) + ", response is not saved, to enable sampling of responses, set 'editorialDetailedLogSamplingInterval' in test.properties file." : queryResult) + "\n\n");		
+	}
+	
+	private void logBrief(String queryNameId, QueryType queryType, String appendString, long queryExecutionTimeMicros) {
 		StringBuilder reportSb = new StringBuilder();
-		reportSb.append(String.format("\t[%s, %s] Query executed, execution time : %d ms %s", queryNameId, Thread.currentThread().getName(), queryExecutionTimeMs, appendString));
+		reportSb.append(String.format("\t[%s, %s] Query executed, execution time : %d us, request id : %s %s", queryNameId, Thread.currentThread().getName(), queryExecutionTimeMicros, connection.getRequestTimings().getRequestId(), appendString));
 		
 		BRIEF_LOGGER.info(reportSb.toString());		
 	}	
@@ -208,4 +416,27 @@ public class EditorialAgent extends AbstractAsynchronousAgent {
 		queryId.append("" + id);
 		return queryId.toString();
 	}
+	
+	/**
+	 * An editorial operation waiting in a batch
+	 */
+	private static class BatchedOperation {
+		private final QueryType queryType;
+		private final String queryName;
+		private final String queryString;
+		private final long queryId;
+		private final long intendedStartNanos;
+		private final long createdNanos;
+		private final FlightRecorderEvents.Event event;
+		
+		private BatchedOperation(QueryType queryType, String queryName, String queryString, long queryId, long intendedStartNanos, FlightRecorderEvents.Event event) {
+			this.queryType = queryType;
+			this.queryName = queryName;
+			this.queryString = queryString;
+			this.queryId = queryId;
+			this.intendedStartNanos = intendedStartNanos;
+			this.createdNanos = System.nanoTime();
+			this.event = event;
+		}
+	}
 }
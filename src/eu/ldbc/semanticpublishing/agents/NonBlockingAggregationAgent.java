@@ -0,0 +1,377 @@
+package eu.ldbc.semanticpublishing.agents;
+
+import java.io.InputStream;
+import java.lang.reflect.Constructor;
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import eu.ldbc.semanticpublishing.TestDriver;
+import eu.ldbc.semanticpublishing.endpoint.QueryTimeoutException;
+import eu.ldbc.semanticpublishing.endpoint.ResponseCompression;
+import eu.ldbc.semanticpublishing.endpoint.SparqlQueryConnection;
+import eu.ldbc.semanticpublishing.endpoint.SparqlQueryConnection.QueryType;
+import eu.ldbc.semanticpublishing.endpoint.SparqlQueryExecuteManager;
+import eu.ldbc.semanticpublishing.endpoint.async.AsyncResponse;
+import eu.ldbc.semanticpublishing.endpoint.async.QueryCallback;
+import eu.ldbc.semanticpublishing.properties.Configuration;
+import eu.ldbc.semanticpublishing.properties.Definitions;
+import eu.ldbc.semanticpublishing.resultanalyzers.ResultFormat;
+import eu.ldbc.semanticpublishing.resultanalyzers.ResultStatementsCounter;
+import eu.ldbc.semanticpublishing.statistics.FlightRecorderEvents;
+import eu.ldbc.semanticpublishing.statistics.Statistics;
+import eu.ldbc.semanticpublishing.statistics.querypool.Pool;
+import eu.ldbc.semanticpublishing.substitutionparameters.SubstitutionQueryParametersManager;
+import eu.ldbc.semanticpublishing.templates.MustacheTemplate;
+import eu.ldbc.semanticpublishing.util.RandomUtil;
+import eu.ldbc.semanticpublishing.util.StringUtil;
+
+/**
+ * An aggregation agent which keeps a number of aggregation queries in flight without blocking a thread for each of them.
+ * A single thread prepares queries and sends them through the asynchronous client of SparqlQueryExecuteManager, results
+ * are counted and query statistics are updated in the client's completion pool. Each query in flight (slot) behaves as a
+ * separate AggregationAgent, i.e. it has its own query mix pool.
+ *
+ * Drill-down and faceted search queries of the advanced query mix are executed as a single query in that mode.
+ */
+public class NonBlockingAggregationAgent extends AbstractAsynchronousAgent {
+	private static final long SLOT_WAIT_MILLISECONDS = 100;
+	private static final long FINALIZE_GRACE_MILLISECONDS = 5000;
+
+	private final SparqlQueryExecuteManager queryExecuteManager;
+	private final RandomUtil ru;
+	private final AtomicBoolean benchmarkingState;
+	private final HashMap<String, String> queryTemplates;
+	private final long benchmarkByQueryMixRuns;
+	private final Definitions definitions;
+	private final SubstitutionQueryParametersManager substitutionQueryParametersMngr;
+	private final boolean saveDetailedQueryLogs;
+	private final int maxInFlightQueries;
+	private final LinkedBlockingQueue<QuerySlot> idleSlots;
+	private final Constructor<?>[] queryTemplateConstructors;
+
+	private final ResultFormat tupleResultFormat;
+	private final ResultFormat graphResultFormat;
+
+	//counters are not thread safe, each thread of the completion pool uses its own
+	private final ThreadLocal<ResultStatementsCounter> graphResultStatementsCounter = new ThreadLocal<ResultStatementsCounter>() {
+		@Override
+		protected ResultStatementsCounter initialValue() {
+			return graphResultFormat.createCounter();
+		}
+	};
+	private final ThreadLocal<ResultStatementsCounter> tupleResultStatementsCounter = new ThreadLocal<ResultStatementsCounter>() {
+		@Override
+		protected ResultStatementsCounter initialValue() {
+			return tupleResultFormat.createCounter();
+		}
+	};
+
+	private final static Logger DETAILED_LOGGER = LoggerFactory.getLogger(AggregationAgent.class.getName());
+	private final static Logger BRIEF_LOGGER = LoggerFactory.getLogger(TestDriver.class.getName());
+
+	public NonBlockingAggregationAgent(AtomicBoolean benchmarkingState, SparqlQueryExecuteManager queryExecuteManager, RandomUtil ru, AtomicBoolean runFlag, HashMap<String, String> queryTamplates, Configuration configuration, Definitions definitions, SubstitutionQueryParametersManager substitutionQueryParametersMngr, long benchmarkByQueryMixRuns, int maxInFlightQueries) {
+		super(runFlag);
+		this.queryExecuteManager = queryExecuteManager;
+		this.ru = ru;
+		this.benchmarkingState = benchmarkingState;
+		this.queryTemplates = queryTamplates;
+		this.definitions = definitions;
+		this.substitutionQueryParametersMngr = substitutionQueryParametersMngr;
+		this.benchmarkByQueryMixRuns = benchmarkByQueryMixRuns;
+		this.saveDetailedQueryLogs = configuration.getBoolean(Configuration.SAVE_DETAILED_QUERY_LOGS);
+		this.tupleResultFormat = ResultFormat.parse(configuration.getString(Configuration.SELECT_RESULT_FORMAT), false);
+		this.graphResultFormat = ResultFormat.parse(configuration.getString(Configuration.GRAPH_RESULT_FORMAT), true);
+		this.maxInFlightQueries = maxInFlightQueries;
+
+		this.idleSlots = new LinkedBlockingQueue<QuerySlot>();
+		for (int i = 0; i < maxInFlightQueries; i++) {
+			idleSlots.add(new QuerySlot(i, new Pool(definitions.getString(Definitions.QUERY_POOLS), Statistics.totalStartedQueryMixRuns, Statistics.totalCompletedQueryMixRuns)));
+		}
+
+		this.queryTemplateConstructors = new Constructor<?>[Statistics.AGGREGATE_QUERIES_COUNT];
+		for (int i = 0; i < Statistics.AGGREGATE_QUERIES_COUNT; i++) {
+			try {
+				Class<?> c = Class.forName(String.format("eu.ldbc.semanticpublishing.templates.aggregation.Query%dTemplate", i + 1));
+				queryTemplateConstructors[i] = c.getConstructor(RandomUtil.class, HashMap.class, Definitions.class, String[].class);
+			} catch (Exception e) {
+				throw new IllegalStateException("NonBlockingAggregationAgent : unable to find a template for aggregate query " + (i + 1), e);
+			}
+		}
+	}
+
+	@Override
+	public boolean executeLoop() {
+		QuerySlot slot;
+		try {
+			//wait for a query in flight to complete, check the runFlag regularly
+			slot = idleSlots.poll(SLOT_WAIT_MILLISECONDS, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException ie) {
+			return false;
+		}
+		if (slot == null) {
+			return true;
+		}
+
+		//remember if query was executed before benchmark phase start to skip it later when updating query statistics
+		final boolean startedDuringBenchmarkPhase = benchmarkingState.get();
+
+		//retrieve next query to be executed from the aggregation query mix
+		final int aggregateQueryIndex = Definitions.aggregationOperationsAllocation.getAllocation();
+
+		if (startedDuringBenchmarkPhase && slot.queryMixPool.getItemsCount() > 0) {
+			if (benchmarkByQueryMixRuns > 0 && !slot.queryMixPool.getInProgress() && Statistics.totalStartedQueryMixRuns.get() >= benchmarkByQueryMixRuns) {
+				idleSlots.offer(slot);
+				return true;
+			}
+
+			//aggregateQueryIndex is ZERO based, while query ids in definitions.properties (parameter queryPools) are not
+			if (!slot.queryMixPool.checkAndSetItemUnavailable(aggregateQueryIndex + 1)) {
+				idleSlots.offer(slot);
+				return true;
+			}
+		}
+
+		//in an open loop run, wait for the intended start time of the query. Time spent waiting for a free slot before is part of the response time
+		final long intendedStartNanos = awaitNextArrival();
+		if (intendedStartNanos == STOPPED_WHILE_WAITING) {
+			releaseSlot(slot, startedDuringBenchmarkPhase, aggregateQueryIndex);
+			return true;
+		}
+
+		MustacheTemplate aggregateQuery = null;
+		String queryString = "";
+		FlightRecorderEvents.Event queryEvent = null;
+		final String timeStamp = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(Calendar.getInstance().getTime());
+
+		try {
+			//important : queryDistribution is zero-based, while QueryNTemplate is not!
+			long queryId = Statistics.aggregateQueriesArray[aggregateQueryIndex].getNewQueryId();
+			String[] querySubstParameters = substitutionQueryParametersMngr.getSubstitutionParametersFor(SubstitutionQueryParametersManager.QueryType.AGGREGATE, aggregateQueryIndex).get(queryId);
+			aggregateQuery = (MustacheTemplate) queryTemplateConstructors[aggregateQueryIndex].newInstance(ru, queryTemplates, definitions, querySubstParameters);
+
+			queryString = aggregateQuery.compileMustacheTemplate();
+
+			queryEvent = FlightRecorderEvents.beginQuery();
+			queryExecuteManager.executeQueryAsync(aggregateQuery.getTemplateFileName(), queryString, aggregateQuery.getTemplateQueryType(), tupleResultFormat.getAcceptContentType(), graphResultFormat.getAcceptContentType(), slot.name)
+							   .whenComplete(new QueryCompletion(slot, aggregateQueryIndex, intendedStartNanos, startedDuringBenchmarkPhase, aggregateQuery.getTemplateFileName(), aggregateQuery.getTemplateQueryType(), queryString, queryId, timeStamp, queryEvent));
+		} catch (Throwable t) {
+			String msg = "WARNING : NonBlockingAggregationAgent [" + slot.name + "] reports: " + t.getMessage() + "\n" + "\tfor query : \n" + queryString + "\n----------------------------------------------------------------------------------------------\n";
+			System.out.println(msg);
+			DETAILED_LOGGER.warn(msg);
+
+			if (aggregateQuery != null) {
+				updateQueryStatistics(queryEvent, false, startedDuringBenchmarkPhase, aggregateQuery.getTemplateQueryType(), aggregateQuery.getTemplateFileName(), queryString, "", 0, 0, 0, 0, 0, timeStamp, slot.name);
+			}
+
+			releaseSlot(slot, startedDuringBenchmarkPhase, aggregateQueryIndex);
+		}
+
+		return true;
+	}
+
+	/**
+	 * Waits for the queries in flight to complete
+	 */
+	@Override
+	public void executeFinalize() {
+		long waitUntilNanos = System.nanoTime() + (queryExecuteManager.getTimeoutMilliseconds() + FINALIZE_GRACE_MILLISECONDS) * 1000000L;
+		while (idleSlots.size() < maxInFlightQueries && System.nanoTime() - waitUntilNanos < 0) {
+			try {
+				Thread.sleep(SLOT_WAIT_MILLISECONDS);
+			} catch (InterruptedException ie) {
+				break;
+			}
+		}
+	}
+
+	/**
+	 * @return number of queries sent and not completed yet
+	 */
+	public int getInFlightQueriesCount() {
+		return maxInFlightQueries - idleSlots.size();
+	}
+
+	public int getMaxInFlightQueries() {
+		return maxInFlightQueries;
+	}
+
+	private void releaseSlot(QuerySlot slot, boolean startedDuringBenchmarkPhase, int aggregateQueryIndex) {
+		if (startedDuringBenchmarkPhase) {
+			slot.queryMixPool.releaseUnavailableItem(aggregateQueryIndex + 1);
+		}
+		idleSlots.offer(slot);
+	}
+
+	/**
+	 * @param event - Flight Recorder event begun when the query has been sent, or null
+	 */
+	private void updateQueryStatistics(FlightRecorderEvents.Event event, boolean reportSuccess, boolean startedDuringBenchmarkPhase, QueryType queryType, String queryName, String queryString, String queryResultString, long resultsCount, long responseBytes, long id, long queryExecutionTimeMicros, long queryResponseTimeMicros, String timeStamp, String slotName) {
+		//skip update of statistics for conformance queries
+		if (queryName.startsWith("#")) {
+			return;
+		}
+
+		int queryNumber = getQueryNumber(queryName);
+		String queryNameId = constructQueryNameId(queryName, id);
+		FlightRecorderEvents.commitQuery(event, Statistics.aggregateQueriesArray[queryNumber - 1].getQueryName(), id, queryExecutionTimeMicros, resultsCount, responseBytes,
+										 reportSuccess ? FlightRecorderEvents.Outcome.SUCCESS : FlightRecorderEvents.Outcome.FAILURE);
+
+		if (startedDuringBenchmarkPhase) {
+			if (reportSuccess) {
+				Statistics.aggregateQueriesArray[queryNumber - 1].reportSuccess(queryExecutionTimeMicros, queryResponseTimeMicros);
+				Statistics.aggregateQueriesArray[queryNumber - 1].reportBytesReceived(responseBytes);
+				Statistics.totalAggregateQueryStatistics.reportSuccess(queryExecutionTimeMicros, queryResponseTimeMicros);
+				Statistics.totalAggregateQueryStatistics.reportBytesReceived(responseBytes);
+				logBrief(timeStamp, queryNameId, slotName, "", queryExecutionTimeMicros, resultsCount);
+			} else {
+				Statistics.aggregateQueriesArray[queryNumber - 1].reportFailure();
+				Statistics.totalAggregateQueryStatistics.reportFailure();
+				logBrief(timeStamp, queryNameId, slotName, ", query error!", queryExecutionTimeMicros, resultsCount);
+			}
+		} else {
+			if (reportSuccess) {
+				DETAILED_LOGGER.info("\tQuery : " + queryName + ", time : " + timeStamp + " (" + queryExecutionTimeMicros + " us), " + "queryResult.length : " + queryResultString.length() + ", results : " + resultsCount + ", has been started during the warmup phase, it will be ignored in the benchmark result!");
+				logBrief(timeStamp, queryNameId, slotName, ", has been started during the warmup phase, it will be ignored in the benchmark result!", queryExecutionTimeMicros, resultsCount);
+			} else {
+				DETAILED_LOGGER.warn("\tQuery : " + queryName + ", time : " + timeStamp + " (" + queryExecutionTimeMicros + " us), " + "queryResult.length : " + queryResultString.length() + ", results : " + resultsCount + ", has failed to execute... possibly query timeout has been reached!");
+				logBrief(timeStamp, queryNameId, slotName, ", has failed to execute... possibly query timeout has been reached!", queryExecutionTimeMicros, resultsCount);
+			}
+		}
+
+		DETAILED_LOGGER.info("\n*** Query [" + queryNameId + "], execution time : " + timeStamp + " (" + queryExecutionTimeMicros + " us), results : " + resultsCount + "\n" + queryString + "\n---------------------------------------------\n*** Result for query [" + queryNameId + "]" + " : \n" + (queryResultString.isEmpty() ? "Query results are not saved, to enable, set 'saveDetailedQueryLogs=true' in test.properties file." : ("Length : " + queryResultString.length() + "\n" + queryResultString)) + "\n\n");
+	}
+
+	/**
+	 * Reports a query which has not completed before its deadline, separately from failures
+	 * @param event - Flight Recorder event begun when the query has been sent, or null
+	 * @param timedOutTimeMs - time spent on the query until it has been aborted
+	 */
+	private void reportTimeout(FlightRecorderEvents.Event event, String queryName, long id, long timedOutTimeMs, String timeStamp, String slotName) {
+		//skip update of statistics for conformance queries
+		if (queryName.startsWith("#")) {
+			return;
+		}
+
+		int queryNumber = getQueryNumber(queryName);
+		FlightRecorderEvents.commitQuery(event, Statistics.aggregateQueriesArray[queryNumber - 1].getQueryName(), id, timedOutTimeMs * 1000L, 0, 0, FlightRecorderEvents.Outcome.TIMEOUT);
+		Statistics.aggregateQueriesArray[queryNumber - 1].reportTimeout(timedOutTimeMs);
+		Statistics.totalAggregateQueryStatistics.reportTimeout(timedOutTimeMs);
+		logBrief(timeStamp, constructQueryNameId(queryName, id), slotName, ", query timed out!", timedOutTimeMs * 1000L, 0);
+	}
+
+	private void logBrief(String timeStamp, String queryId, String slotName, String appendString, long queryExecutionTimeMicros, long resultStatementsCount) {
+		BRIEF_LOGGER.info(String.format("\t%s:\t[%s, %s] Query executed, execution time : %d us, results : %d %s", timeStamp, queryId, slotName, queryExecutionTimeMicros, resultStatementsCount, appendString));
+	}
+
+	private int getQueryNumber(String queryName) {
+		return Integer.parseInt(queryName.substring(queryName.indexOf(Statistics.AGGREGATE_QUERY_NAME) + Statistics.AGGREGATE_QUERY_NAME.length(), queryName.indexOf(".")));
+	}
+
+	private String constructQueryNameId(String queryName, long id) {
+		return queryName + ", id:" + id;
+	}
+
+	/**
+	 * A query in flight, plays the role of a blocking AggregationAgent
+	 */
+	private class QuerySlot {
+		private final String name;
+		private final Pool queryMixPool;
+
+		private QuerySlot(int index, Pool queryMixPool) {
+			this.name = getName() + "-slot-" + index;
+			this.queryMixPool = queryMixPool;
+		}
+	}
+
+	/**
+	 * Counts results of a completed query and updates query statistics, runs in the completion pool of the asynchronous client
+	 */
+	private class QueryCompletion implements QueryCallback {
+		private final QuerySlot slot;
+		private final int aggregateQueryIndex;
+		private final long intendedStartNanos;
+		private final boolean startedDuringBenchmarkPhase;
+		private final String queryName;
+		private final QueryType queryType;
+		private final String queryString;
+		private final long queryId;
+		private final String timeStamp;
+		private final FlightRecorderEvents.Event event;
+
+		private QueryCompletion(QuerySlot slot, int aggregateQueryIndex, long intendedStartNanos, boolean startedDuringBenchmarkPhase, String queryName, QueryType queryType, String queryString, long queryId, String timeStamp, FlightRecorderEvents.Event event) {
+			this.slot = slot;
+			this.aggregateQueryIndex = aggregateQueryIndex;
+			this.intendedStartNanos = intendedStartNanos;
+			this.startedDuringBenchmarkPhase = startedDuringBenchmarkPhase;
+			this.queryName = queryName;
+			this.queryType = queryType;
+			this.queryString = queryString;
+			this.queryId = queryId;
+			this.timeStamp = timeStamp;
+			this.event = event;
+		}
+
+		@Override
+		public void onSuccess(AsyncResponse response) {
+			try {
+				if (!response.isSuccessful()) {
+					String msg = "WARNING : NonBlockingAggregationAgent [" + slot.name + "] reports: received error code : " + response.getResponseCode() + " " + response.getResponseMessage() + "\n" + "\tfor query : \n" + queryString + "\n" + StringUtil.iostreamToString(ResponseCompression.decode(response.getBodyInputStream(), response.getHeaderField("Content-Encoding"))) + "\n----------------------------------------------------------------------------------------------\n";
+					System.out.println(msg);
+					DETAILED_LOGGER.warn(msg);
+					updateQueryStatistics(event, false, startedDuringBenchmarkPhase, queryType, queryName, queryString, "", 0, 0, queryId, response.getElapsedTimeMicroseconds(), 0, timeStamp, slot.name);
+					return;
+				}
+
+				String contentEncoding = response.getHeaderField("Content-Encoding");
+				String queryResultString = saveDetailedQueryLogs ? StringUtil.iostreamToString(ResponseCompression.decode(response.getBodyInputStream(), contentEncoding)) : "";
+
+				//a compressed response is decompressed while being counted
+				InputStream body = ResponseCompression.isEnabled() ? ResponseCompression.decode(response.getBodyInputStream(), contentEncoding, queryType) : response.getBodyInputStream();
+				long resultsCount;
+				if (SparqlQueryConnection.isGraphQuery(queryType)) {
+					resultsCount = graphResultStatementsCounter.get().getStatementsCount(body);
+				} else {
+					resultsCount = tupleResultStatementsCounter.get().getStatementsCount(body);
+				}
+
+				long queryExecutionTimeMicros = response.getElapsedTimeMicroseconds();
+				long queryResponseTimeMicros = (intendedStartNanos == CLOSED_LOOP) ? queryExecutionTimeMicros : Math.max(queryExecutionTimeMicros, (response.getResponseEndNanos() - intendedStartNanos) / 1000L);
+
+				updateQueryStatistics(event, true, startedDuringBenchmarkPhase, queryType, queryName, queryString, queryResultString, resultsCount, response.getBodyLength(), queryId, queryExecutionTimeMicros, queryResponseTimeMicros, timeStamp, slot.name);
+			} catch (Throwable t) {
+				reportFailure(t);
+			} finally {
+				releaseSlot(slot, startedDuringBenchmarkPhase, aggregateQueryIndex);
+			}
+		}
+
+		@Override
+		public void onFailure(Throwable failure) {
+			try {
+				reportFailure(failure);
+			} finally {
+				releaseSlot(slot, startedDuringBenchmarkPhase, aggregateQueryIndex);
+			}
+		}
+
+		private void reportFailure(Throwable failure) {
+			String msg = "WARNING : NonBlockingAggregationAgent [" + slot.name + "] reports: " + failure.getMessage() + "\n" + "\tfor query : \n" + queryString + "\n----------------------------------------------------------------------------------------------\n";
+			System.out.println(msg);
+			DETAILED_LOGGER.warn(msg);
+
+			if (failure instanceof QueryTimeoutException && startedDuringBenchmarkPhase) {
+				reportTimeout(event, queryName, queryId, ((QueryTimeoutException)failure).getElapsedTimeMs(), timeStamp, slot.name);
+			} else {
+				updateQueryStatistics(event, false, startedDuringBenchmarkPhase, queryType, queryName, queryString, "", 0, 0, queryId, 0, 0, timeStamp, slot.name);
+			}
+		}
+	}
+}
@@ -0,0 +1,103 @@
+package eu.ldbc.semanticpublishing.agents;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A token bucket shared by agents, holding their operations at a target rate with up to 'burst' operations started
+ * at once. Permits are spread evenly over time, so the load is steady within a second as well. Implemented as a virtual
+ * scheduling algorithm : the next permit time is advanced by a compare-and-set, without locking.
+ *
+ * The limiter also honours backpressure of the server (HTTP 429 or 503), no permits are granted until the time requested
+ * by the server in Retry-After, or an exponentially growing backoff time when the server has not requested any.
+ */
+public class RateLimiter {
+	private static final long NANOS_PER_SECOND = 1000000000L;
+	private static final long INITIAL_BACKOFF_MILLISECONDS = 250;
+	private static final long MAX_BACKOFF_MILLISECONDS = 30000;
+
+	private final double ratePerSecond;
+	private final long intervalNanos;
+	private final long burstToleranceNanos;
+
+	//theoretical time of the next permit, if permits were granted exactly at the target rate
+	private final AtomicLong nextPermitNanos = new AtomicLong(0);
+
+	private final AtomicInteger consecutiveBackoffs = new AtomicInteger(0);
+	private final AtomicLong backoffsCount = new AtomicLong(0);
+	private final AtomicLong backoffTimeMs = new AtomicLong(0);
+
+	/**
+	 * @param ratePerSecond - target rate of operations per second, zero or less for no rate limit (backpressure is honoured only)
+	 * @param burst - number of operations which may be started at once after a period below the target rate
+	 */
+	public RateLimiter(double ratePerSecond, int burst) {
+		this.ratePerSecond = ratePerSecond;
+		this.intervalNanos = ratePerSecond > 0 ? (long)(NANOS_PER_SECOND / ratePerSecond) : 0;
+		this.burstToleranceNanos = intervalNanos * (Math.max(1, burst) - 1);
+	}
+
+	/**
+	 * Claims a permit for the next operation
+	 * @return time the operation may be started at, comparable to System.nanoTime()
+	 */
+	public long claimPermitNanos() {
+		long now = System.nanoTime();
+		while (true) {
+			long next = nextPermitNanos.get();
+			long permitNanos = (next == 0 || next - now < 0) ? now : next;
+			if (nextPermitNanos.compareAndSet(next, permitNanos + intervalNanos)) {
+				return permitNanos - burstToleranceNanos - now > 0 ? permitNanos - burstToleranceNanos : now;
+			}
+		}
+	}
+
+	/**
+	 * The server has rejected an operation as it is overloaded, no permits are granted for the requested time
+	 * @param retryAfterMilliseconds - time requested by the server, -1 if not set, then the backoff time doubles with each consecutive rejection
+	 */
+	public void backOff(long retryAfterMilliseconds) {
+		int backoffs = consecutiveBackoffs.getAndIncrement();
+		long backoffMs = retryAfterMilliseconds >= 0 ? retryAfterMilliseconds : Math.min(MAX_BACKOFF_MILLISECONDS, INITIAL_BACKOFF_MILLISECONDS << Math.min(backoffs, 16));
+		backoffsCount.incrementAndGet();
+		backoffTimeMs.addAndGet(backoffMs);
+
+		long resumeNanos = System.nanoTime() + backoffMs * 1000000L + burstToleranceNanos;
+		while (true) {
+			long next = nextPermitNanos.get();
+			if (next != 0 && next - resumeNanos >= 0) {
+				return;
+			}
+			if (nextPermitNanos.compareAndSet(next, resumeNanos)) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * An operation has been accepted by the server, the backoff time is reset
+	 */
+	public void onSuccess() {
+		if (consecutiveBackoffs.get() != 0) {
+			consecutiveBackoffs.set(0);
+		}
+	}
+
+	/**
+	 * @return target rate of operations per second, zero or less if the rate is not limited
+	 */
+	public double getTargetRatePerSecond() {
+		return ratePerSecond;
+	}
+
+	public long getBackoffsCount() {
+		return backoffsCount.get();
+	}
+
+	/**
+	 * @return total time the server has requested agents to back off for
+	 */
+	public long getBackoffTimeMs() {
+		return backoffTimeMs.get();
+	}
+}
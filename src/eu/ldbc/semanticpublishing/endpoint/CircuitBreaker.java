@@ -0,0 +1,139 @@
+package eu.ldbc.semanticpublishing.endpoint;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Circuit breaker of a single endpoint. After a number of consecutive failures the circuit opens and requests to the endpoint
+ * are suspended for a while. Then a single request is let through as a probe (half-open), the circuit closes when it succeeds
+ * and opens again otherwise. Requests wait while the circuit is not closed, instead of failing against an unavailable endpoint.
+ */
+public class CircuitBreaker {
+	public static enum State {
+		CLOSED, OPEN, HALF_OPEN
+	}
+
+	private static final long WAIT_MAX_SLEEP_MILLISECONDS = 100;
+
+	private final String endpointUrl;
+	private final int failureThreshold;
+	private final long openMilliseconds;
+
+	private final AtomicReference<State> state = new AtomicReference<State>(State.CLOSED);
+	private final AtomicInteger consecutiveFailures = new AtomicInteger(0);
+	//times of System.nanoTime(), so that outages are timed correctly when the wall clock is adjusted
+	private volatile long outageStartedAtNanos = 0;
+	private volatile long openedAtNanos = 0;
+	private volatile long probeStartedAtNanos = 0;
+
+	private final AtomicLong opensCount = new AtomicLong(0);
+	private final AtomicLong openTimeMs = new AtomicLong(0);
+	private volatile long lastOutageMs = 0;
+
+	/**
+	 * @param failureThreshold - consecutive failures opening the circuit
+	 * @param openMilliseconds - time requests are suspended for before a probe request is let through
+	 */
+	public CircuitBreaker(String endpointUrl, int failureThreshold, long openMilliseconds) {
+		this.endpointUrl = endpointUrl;
+		this.failureThreshold = failureThreshold;
+		this.openMilliseconds = openMilliseconds;
+	}
+
+	/**
+	 * Waits until a request may be sent to the endpoint, i.e. the circuit is closed or the request is the probe of a half-open circuit
+	 * @param maxWaitMilliseconds - maximum time to wait
+	 * @throws CircuitOpenException - if the circuit has not closed in time
+	 */
+	public void acquirePermission(long maxWaitMilliseconds) throws CircuitOpenException {
+		long openNanos = openMilliseconds * 1000000L;
+		long waitUntilNanos = System.nanoTime() + maxWaitMilliseconds * 1000000L;
+		while (true) {
+			long now = System.nanoTime();
+			State current = state.get();
+			if (current == State.CLOSED) {
+				return;
+			}
+			//let a probe through when the circuit has been open long enough, or when the last probe has not reported back in time
+			if (current == State.OPEN && now - openedAtNanos >= openNanos && state.compareAndSet(State.OPEN, State.HALF_OPEN)) {
+				probeStartedAtNanos = now;
+				return;
+			}
+			if (current == State.HALF_OPEN && now - probeStartedAtNanos >= openNanos) {
+				probeStartedAtNanos = now;
+				return;
+			}
+			if (now - waitUntilNanos >= 0) {
+				throw new CircuitOpenException("CircuitBreaker : requests to " + endpointUrl + " are suspended, the endpoint is unavailable since " + (now - outageStartedAtNanos) / 1000000L + " ms");
+			}
+			try {
+				Thread.sleep(Math.max(1, Math.min(WAIT_MAX_SLEEP_MILLISECONDS, (waitUntilNanos - now) / 1000000L)));
+			} catch (InterruptedException ie) {
+				throw new CircuitOpenException("CircuitBreaker : interrupted while waiting for " + endpointUrl);
+			}
+		}
+	}
+
+	/**
+	 * The endpoint has responded, even if with an error which is not caused by its unavailability
+	 */
+	public void onSuccess() {
+		consecutiveFailures.set(0);
+		State current = state.get();
+		if (current != State.CLOSED && state.compareAndSet(current, State.CLOSED)) {
+			lastOutageMs = (System.nanoTime() - outageStartedAtNanos) / 1000000L;
+			openTimeMs.addAndGet(lastOutageMs);
+			System.out.println("CircuitBreaker : endpoint " + endpointUrl + " is available again after " + lastOutageMs + " ms");
+		}
+	}
+
+	/**
+	 * The endpoint could not be reached, or has responded with a server error
+	 */
+	public void onFailure() {
+		State current = state.get();
+		if (current == State.HALF_OPEN) {
+			//the probe has failed, suspend requests for another period
+			if (state.compareAndSet(State.HALF_OPEN, State.OPEN)) {
+				openedAtNanos = System.nanoTime();
+			}
+			return;
+		}
+		if (current == State.CLOSED && consecutiveFailures.incrementAndGet() >= failureThreshold && state.compareAndSet(State.CLOSED, State.OPEN)) {
+			outageStartedAtNanos = System.nanoTime();
+			openedAtNanos = outageStartedAtNanos;
+			opensCount.incrementAndGet();
+			System.out.println("CircuitBreaker : endpoint " + endpointUrl + " is unavailable after " + consecutiveFailures.get() + " consecutive failures, requests are suspended");
+		}
+	}
+
+	public String getEndpointUrl() {
+		return endpointUrl;
+	}
+
+	public State getState() {
+		return state.get();
+	}
+
+	/**
+	 * @return number of times the circuit has opened
+	 */
+	public long getOpensCount() {
+		return opensCount.get();
+	}
+
+	/**
+	 * @return total time the circuit has been open or half-open, outages in progress are not included
+	 */
+	public long getOpenTimeMs() {
+		return openTimeMs.get();
+	}
+
+	/**
+	 * @return time from opening until closing of the circuit of the last outage, i.e. the recovery time of the endpoint
+	 */
+	public long getLastOutageMs() {
+		return lastOutageMs;
+	}
+}
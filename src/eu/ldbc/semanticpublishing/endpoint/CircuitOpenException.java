@@ -0,0 +1,14 @@
+package eu.ldbc.semanticpublishing.endpoint;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a request has not been sent as its endpoint has been unavailable for longer than the request could wait
+ */
+public class CircuitOpenException extends IOException {
+	private static final long serialVersionUID = 1L;
+
+	public CircuitOpenException(String message) {
+		super(message);
+	}
+}
@@ -0,0 +1,228 @@
+package eu.ldbc.semanticpublishing.endpoint;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Distributes requests among a number of endpoints of a replicated cluster. Queries are routed to the read endpoints
+ * (replicas) according to the routing policy, updates are always sent to the update endpoint (master).
+ * Requests, errors, execution times and outstanding requests are kept for each endpoint.
+ */
+public class EndpointRouter {
+	public static enum Policy {
+		/** each request goes to the next endpoint */
+		ROUND_ROBIN,
+		/** each request goes to the endpoint with the least requests in progress */
+		LEAST_OUTSTANDING,
+		/** all requests of an agent go to the same endpoint, agents are assigned to endpoints in turn. An agent is a thread, 
+		 *  or a query slot of an agent sending queries asynchronously, identified by its routing key */
+		STICKY
+	}
+
+	private final Policy policy;
+	private final List<Endpoint> readEndpoints;
+	private final Endpoint updateEndpoint;
+	private final List<Endpoint> allEndpoints;
+	private final AtomicLong nextIndex = new AtomicLong(0);
+	private final ThreadLocal<Endpoint> stickyEndpoint = new ThreadLocal<Endpoint>();
+	private final ConcurrentMap<String, Endpoint> stickyEndpointsByKey = new ConcurrentHashMap<String, Endpoint>();
+
+	/**
+	 * @param readEndpointUrls - endpoints queries are routed to
+	 * @param updateEndpointUrl - endpoint all updates are sent to, may also be one of the read endpoints
+	 */
+	public EndpointRouter(Policy policy, List<String> readEndpointUrls, String updateEndpointUrl) {
+		if (readEndpointUrls.isEmpty()) {
+			throw new IllegalArgumentException("EndpointRouter : at least one read endpoint is required");
+		}
+		this.policy = policy;
+		List<Endpoint> endpoints = new ArrayList<Endpoint>();
+		List<Endpoint> reads = new ArrayList<Endpoint>();
+		Endpoint update = null;
+		for (String url : readEndpointUrls) {
+			Endpoint endpoint = new Endpoint(url);
+			reads.add(endpoint);
+			endpoints.add(endpoint);
+			if (url.equals(updateEndpointUrl)) {
+				update = endpoint;
+			}
+		}
+		if (update == null) {
+			update = new Endpoint(updateEndpointUrl);
+			endpoints.add(update);
+		}
+		this.readEndpoints = Collections.unmodifiableList(reads);
+		this.updateEndpoint = update;
+		this.allEndpoints = Collections.unmodifiableList(endpoints);
+	}
+
+	/**
+	 * @param policy - one of round_robin, least_outstanding, sticky (case insensitive)
+	 */
+	public static Policy parsePolicy(String policy) {
+		try {
+			return Policy.valueOf(policy.trim().toUpperCase());
+		} catch (IllegalArgumentException iae) {
+			throw new IllegalArgumentException("EndpointRouter : unsupported endpoint routing policy : '" + policy + "', supported : round_robin, least_outstanding, sticky");
+		}
+	}
+
+	/**
+	 * Parses a comma separated list of endpoint URLs
+	 */
+	public static List<String> parseEndpointUrls(String endpointUrls) {
+		List<String> urls = new ArrayList<String>();
+		for (String url : endpointUrls.split(",")) {
+			if (!url.trim().isEmpty()) {
+				urls.add(url.trim());
+			}
+		}
+		return urls;
+	}
+
+	/**
+	 * Selects the endpoint for the next request, the request must be reported with begin() and end() of the returned endpoint
+	 * @param update - true for update requests
+	 */
+	public Endpoint select(boolean update) {
+		return select(update, null);
+	}
+
+	/**
+	 * Selects the endpoint for the next request, as select(update)
+	 * @param routingKey - identifies the agent sending the request for the sticky policy, e.g. a query slot of an agent sending queries 
+	 *                     asynchronously from a single thread, null if the requests of the calling thread belong to one agent
+	 */
+	public Endpoint select(boolean update, String routingKey) {
+		if (update) {
+			return updateEndpoint;
+		}
+		if (readEndpoints.size() == 1) {
+			return readEndpoints.get(0);
+		}
+		switch (policy) {
+			case LEAST_OUTSTANDING :
+				//ties are broken in round robin order, so idle endpoints share the load
+				int start = (int)(nextIndex.getAndIncrement() % readEndpoints.size());
+				Endpoint selected = null;
+				for (int i = 0; i < readEndpoints.size(); i++) {
+					Endpoint endpoint = readEndpoints.get((start + i) % readEndpoints.size());
+					if (selected == null || endpoint.getOutstandingRequests() < selected.getOutstandingRequests()) {
+						selected = endpoint;
+					}
+				}
+				return selected;
+			case STICKY :
+				if (routingKey != null) {
+					Endpoint keyEndpoint = stickyEndpointsByKey.get(routingKey);
+					if (keyEndpoint == null) {
+						Endpoint assigned = stickyEndpointsByKey.putIfAbsent(routingKey, nextReadEndpoint());
+						keyEndpoint = assigned != null ? assigned : stickyEndpointsByKey.get(routingKey);
+					}
+					return keyEndpoint;
+				}
+				Endpoint endpoint = stickyEndpoint.get();
+				if (endpoint == null) {
+					endpoint = nextReadEndpoint();
+					stickyEndpoint.set(endpoint);
+				}
+				return endpoint;
+			default :
+				return nextReadEndpoint();
+		}
+	}
+
+	private Endpoint nextReadEndpoint() {
+		return readEndpoints.get((int)(nextIndex.getAndIncrement() % readEndpoints.size()));
+	}
+
+	public Policy getPolicy() {
+		return policy;
+	}
+
+	/**
+	 * @return read endpoints followed by the update endpoint if it is not one of them
+	 */
+	public List<Endpoint> getEndpoints() {
+		return allEndpoints;
+	}
+
+	public Endpoint getUpdateEndpoint() {
+		return updateEndpoint;
+	}
+
+	/**
+	 * An endpoint with statistics of the requests sent to it
+	 */
+	public static class Endpoint {
+		private final String url;
+		private final AtomicInteger outstandingRequests = new AtomicInteger(0);
+		private final AtomicLong requestsCount = new AtomicLong(0);
+		private final AtomicLong failuresCount = new AtomicLong(0);
+		private final AtomicLong totalTimeNanos = new AtomicLong(0);
+
+		private Endpoint(String url) {
+			this.url = url;
+		}
+
+		/**
+		 * Called when a request to the endpoint is started
+		 * @return start time of the request, to be passed to end()
+		 */
+		public long begin() {
+			outstandingRequests.incrementAndGet();
+			return System.nanoTime();
+		}
+
+		/**
+		 * Called once for each request started with begin()
+		 */
+		public void end(long startNanos, boolean success) {
+			end(startNanos, System.nanoTime(), success);
+		}
+
+		/**
+		 * Called once for each request started with begin(), when the end of the request has been recorded earlier
+		 */
+		public void end(long startNanos, long endNanos, boolean success) {
+			outstandingRequests.decrementAndGet();
+			if (success) {
+				requestsCount.incrementAndGet();
+				totalTimeNanos.addAndGet(endNanos - startNanos);
+			} else {
+				failuresCount.incrementAndGet();
+			}
+		}
+
+		public String getUrl() {
+			return url;
+		}
+
+		public int getOutstandingRequests() {
+			return outstandingRequests.get();
+		}
+
+		public long getRequestsCount() {
+			return requestsCount.get();
+		}
+
+		public long getFailuresCount() {
+			return failuresCount.get();
+		}
+
+		public long getAvgTimeMs() {
+			long requests = requestsCount.get();
+			return requests > 0 ? totalTimeNanos.get() / requests / 1000000L : 0;
+		}
+
+		@Override
+		public String toString() {
+			return url;
+		}
+	}
+}
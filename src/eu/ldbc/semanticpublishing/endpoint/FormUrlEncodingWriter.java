@@ -0,0 +1,123 @@
+package eu.ldbc.semanticpublishing.endpoint;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+
+/**
+ * Encodes characters as application/x-www-form-urlencoded (UTF-8, as URLEncoder does) while writing them to a stream
+ * through a fixed size buffer, so no encoded copy of the written string is created.
+ */
+public class FormUrlEncodingWriter extends Writer {
+	private static final int BUFFER_SIZE = 8 * 1024;
+	private static final byte[] HEX_DIGITS = { '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'A', 'B', 'C', 'D', 'E', 'F' };
+
+	private final OutputStream out;
+	private final byte[] buffer = new byte[BUFFER_SIZE];
+	private int count = 0;
+
+	//high surrogate of a pair split between two writes
+	private char highSurrogate = 0;
+
+	public FormUrlEncodingWriter(OutputStream out) {
+		this.out = out;
+	}
+
+	@Override
+	public void write(char[] cbuf, int off, int len) throws IOException {
+		for (int i = off; i < off + len; i++) {
+			writeChar(cbuf[i]);
+		}
+	}
+
+	@Override
+	public void write(String str, int off, int len) throws IOException {
+		for (int i = off; i < off + len; i++) {
+			writeChar(str.charAt(i));
+		}
+	}
+
+	@Override
+	public void write(int c) throws IOException {
+		writeChar((char)c);
+	}
+
+	private void writeChar(char c) throws IOException {
+		if (count > BUFFER_SIZE - 12) {
+			flushBuffer();
+		}
+		if (highSurrogate != 0) {
+			char high = highSurrogate;
+			highSurrogate = 0;
+			if (Character.isLowSurrogate(c)) {
+				writeCodePoint(Character.toCodePoint(high, c));
+				return;
+			}
+			//unpaired surrogate, encoded as '?' as URLEncoder does
+			writeCodePoint('?');
+		}
+		if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '.' || c == '-' || c == '*' || c == '_') {
+			buffer[count++] = (byte)c;
+		} else if (c == ' ') {
+			buffer[count++] = '+';
+		} else if (Character.isHighSurrogate(c)) {
+			highSurrogate = c;
+		} else if (Character.isLowSurrogate(c)) {
+			writeCodePoint('?');
+		} else {
+			writeCodePoint(c);
+		}
+	}
+
+	/**
+	 * Writes the percent encoded UTF-8 bytes of given code point
+	 */
+	private void writeCodePoint(int codePoint) {
+		if (codePoint < 0x80) {
+			writeEncodedByte(codePoint);
+		} else if (codePoint < 0x800) {
+			writeEncodedByte(0xC0 | (codePoint >> 6));
+			writeEncodedByte(0x80 | (codePoint & 0x3F));
+		} else if (codePoint < 0x10000) {
+			writeEncodedByte(0xE0 | (codePoint >> 12));
+			writeEncodedByte(0x80 | ((codePoint >> 6) & 0x3F));
+			writeEncodedByte(0x80 | (codePoint & 0x3F));
+		} else {
+			writeEncodedByte(0xF0 | (codePoint >> 18));
+			writeEncodedByte(0x80 | ((codePoint >> 12) & 0x3F));
+			writeEncodedByte(0x80 | ((codePoint >> 6) & 0x3F));
+			writeEncodedByte(0x80 | (codePoint & 0x3F));
+		}
+	}
+
+	private void writeEncodedByte(int b) {
+		buffer[count++] = '%';
+		buffer[count++] = HEX_DIGITS[(b >> 4) & 0x0F];
+		buffer[count++] = HEX_DIGITS[b & 0x0F];
+	}
+
+	private void flushBuffer() throws IOException {
+		if (count > 0) {
+			out.write(buffer, 0, count);
+			count = 0;
+		}
+	}
+
+	@Override
+	public void flush() throws IOException {
+		flushBuffer();
+		out.flush();
+	}
+
+	/**
+	 * Flushes the writer, an unpaired high surrogate at the end is written as '?'. The underlying stream is not closed.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (highSurrogate != 0) {
+			highSurrogate = 0;
+			writeCodePoint('?');
+		}
+		flush();
+	}
+}
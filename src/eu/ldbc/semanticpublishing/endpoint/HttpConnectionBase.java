@@ -1,8 +1,15 @@
 package eu.ldbc.semanticpublishing.endpoint;
 
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.HttpURLConnection;
+import java.net.URL;
+
+import eu.ldbc.semanticpublishing.endpoint.embedded.InProcessURLConnection;
+import eu.ldbc.semanticpublishing.endpoint.embedded.SparqlRequestHandler;
+import eu.ldbc.semanticpublishing.endpoint.pool.HttpConnectionPool;
+import eu.ldbc.semanticpublishing.endpoint.pool.PooledHttpURLConnection;
 
 /**
  * Base class for all HTTP operations.
@@ -15,6 +22,27 @@ public abstract class HttpConnectionBase {
 	protected HttpURLConnection httpUrlConnection;
 	protected boolean verbose;
 	
+	//when set, connections are leased from a pool of keep-alive connections instead of HttpURLConnection's default transport
+	private static volatile HttpConnectionPool connectionPool = null;
+	
+	//when set, requests are executed in the driver's JVM without HTTP, neither pooled nor routed
+	private static volatile SparqlRequestHandler inProcessHandler = null;
+	
+	//when set, requests are distributed among the endpoints of a cluster
+	private static volatile EndpointRouter endpointRouter = null;
+	private EndpointRouter.Endpoint routedEndpoint = null;
+	private EndpointRouter.Endpoint selectedEndpoint = null;
+	private long routedRequestStartNanos = 0;
+	
+	//deadline of the current request, enforced when a timeout is set
+	private QueryDeadlineWatchdog.Deadline deadline = null;
+	
+	//response code of the current request, -1 if no response has been received
+	private int lastResponseCode = -1;
+	
+	//phases and id of the current request
+	protected final RequestTimings requestTimings = new RequestTimings();
+	
 	public HttpConnectionBase(String endpointUrl, String endpointUpdateUrl, String contentTypeForGraphQuery, int timeoutMilliseconds, boolean verbose) {
 		this.endpointUrl = endpointUrl;
 		this.endpointUpdateUrl = endpointUpdateUrl;
@@ -30,28 +58,311 @@ public abstract class HttpConnectionBase {
 	private InputStream getResponse() throws IOException {
 		
 		int code = httpUrlConnection.getResponseCode();
+		lastResponseCode = code;
 		if ((code < 200 || code >= 300) && verbose) {
 			System.out.println("HttpConnectionBase : received error code : " + code + " from server. Error message : " + httpUrlConnection.getResponseMessage());
 		}
-		
+
+		//backpressure of the server is reported separately from other errors, so that agents can back off
+		if (ServerBusyException.isServerBusy(code)) {
+			throw new ServerBusyException("HttpConnectionBase : server is busy, received code : " + code + " " + httpUrlConnection.getResponseMessage(), code, ServerBusyException.parseRetryAfter(httpUrlConnection.getHeaderField("Retry-After")));
+		}
+
 		return httpUrlConnection.getInputStream();
 			
 	}	
 	
+	/**
+	 * Starts enforcing the deadline of the request prepared in httpUrlConnection, if a timeout is set and it has not been started yet.
+	 * Called before the connection is established and the request body is sent, so that time spent on those is within the deadline.
+	 */
+	protected void startDeadline() {
+		if (timeoutMilliseconds > 0 && deadline == null) {
+			deadline = QueryDeadlineWatchdog.register(httpUrlConnection, timeoutMilliseconds);
+		}
+	}
+	
+	/**
+	 * Sends the request, it has to complete within timeoutMilliseconds including connecting, sending of its body and reading 
+	 * of the whole response, otherwise it is aborted and a QueryTimeoutException is thrown
+	 */
 	public InputStream execute() throws IOException {
-		connect();		
-		InputStream returnedStream = getResponse();
-		
-		return returnedStream;
+		lastResponseCode = -1;
+		startDeadline();
+		try {
+			long startNanos = System.nanoTime();
+			connect();		
+			InputStream returnedStream = getResponse();
+			recordFirstByteTime(System.nanoTime() - startNanos);
+			
+			return new ResponseInputStream(returnedStream);
+		} catch (IOException e) {
+			throw failRequest(e);
+		}
 	}	
 	
+	/**
+	 * Time until the response head has been received. A pooled connection acquires a connection and sends a buffered request 
+	 * within that time, those are recorded as separate phases. The JDK's transport sends a buffered request body with 
+	 * the request head, then its send time is included in the time to first byte.
+	 */
+	private void recordFirstByteTime(long nanos) {
+		if (httpUrlConnection instanceof PooledHttpURLConnection) {
+			PooledHttpURLConnection pooledConnection = (PooledHttpURLConnection)httpUrlConnection;
+			requestTimings.add(RequestTimings.Phase.ACQUIRE, pooledConnection.getAcquireNanos());
+			requestTimings.add(RequestTimings.Phase.SEND, pooledConnection.getSendNanos());
+			nanos -= pooledConnection.getAcquireNanos() + pooledConnection.getSendNanos();
+		}
+		requestTimings.add(RequestTimings.Phase.FIRST_BYTE, Math.max(0, nanos));
+	}
+	
+	/**
+	 * Starts timing of a new request
+	 * @return id of the request, to be sent in the X-Request-ID header
+	 */
+	protected String beginRequest() {
+		String requestId = RequestTimings.newRequestId();
+		requestTimings.begin(requestId);
+		return requestId;
+	}
+	
+	/**
+	 * @return phases and id of the current or last request
+	 */
+	public RequestTimings getRequestTimings() {
+		return requestTimings;
+	}
+	
 	public void disconnect() {
-		httpUrlConnection.disconnect();
-		httpUrlConnection = null;
+		long timedOutTimeMs = endDeadline();
+		endRoutedRequest(timedOutTimeMs < 0);
+		if (httpUrlConnection != null) {
+			httpUrlConnection.disconnect();
+			httpUrlConnection = null;
+		}
+	}
+	
+	/**
+	 * Stops enforcing the deadline of the current request, called once its response has been processed. Result parsers do not
+	 * necessarily read a response to its end, or may ignore a failure, so a timeout is detected here. Can be called repeatedly.
+	 * @return time the request was executed for until it has been aborted at its deadline, -1 if it has not timed out
+	 */
+	public long endDeadline() {
+		if (deadline == null || !deadline.complete()) {
+			return -1;
+		}
+		return deadline.getElapsedTimeMs();
+	}
+	
+	/**
+	 * @return HTTP response code of the last executed request, -1 if it has failed without a response
+	 */
+	public int getLastResponseCode() {
+		return lastResponseCode;
+	}
+	
+	private QueryTimeoutException newTimeoutException(long timedOutTimeMs) {
+		return new QueryTimeoutException("HttpConnectionBase : query has not completed within " + timeoutMilliseconds + " ms and has been aborted", timedOutTimeMs);
+	}
+	
+	/**
+	 * Completes the request when the end of its response has been reached
+	 */
+	private void completeRequest() throws QueryTimeoutException {
+		long timedOutTimeMs = endDeadline();
+		endRoutedRequest(timedOutTimeMs < 0);
+		if (timedOutTimeMs >= 0) {
+			throw newTimeoutException(timedOutTimeMs);
+		}
+	}
+	
+	/**
+	 * @return a QueryTimeoutException if the request has failed because it has been aborted at its deadline, given exception otherwise
+	 */
+	private IOException failRequest(IOException e) {
+		long timedOutTimeMs = endDeadline();
+		endRoutedRequest(false);
+		if (timedOutTimeMs < 0 || e instanceof QueryTimeoutException) {
+			return e;
+		}
+		QueryTimeoutException qte = newTimeoutException(timedOutTimeMs);
+		qte.initCause(e);
+		return qte;
+	}
+	
+	/**
+	 * Opens a connection to given URL, using the connection pool if enabled. A pooled connection left open from 
+	 * a previous request is released first, as a single HttpConnectionBase executes one request at a time.
+	 */
+	protected HttpURLConnection openConnection(URL url) throws IOException {
+		endDeadline();
+		deadline = null;
+		if (inProcessHandler != null) {
+			return openUnpooledConnection(url);
+		}
+		HttpConnectionPool pool = connectionPool;
+		if (pool != null) {
+			if (httpUrlConnection instanceof PooledHttpURLConnection) {
+				httpUrlConnection.disconnect();
+			}
+			return new PooledHttpURLConnection(url, pool);
+		}
+		return openUnpooledConnection(url);
+	}
+	
+	/**
+	 * Opens a connection to given URL with HttpURLConnection's default transport, or an in-process connection if in-process execution is enabled
+	 */
+	public static HttpURLConnection openUnpooledConnection(URL url) throws IOException {
+		SparqlRequestHandler handler = inProcessHandler;
+		if (handler != null) {
+			return new InProcessURLConnection(url, handler);
+		}
+		return (HttpURLConnection)url.openConnection();
+	}
+	
+	/**
+	 * Selects the endpoint of the next request before the request is prepared, the request is then routed to that endpoint
+	 * @param defaultUrl - returned when endpoint routing is not enabled
+	 * @return URL of the endpoint the next request is sent to
+	 */
+	protected String selectEndpoint(boolean update, String defaultUrl) {
+		EndpointRouter router = endpointRouter;
+		if (router == null) {
+			selectedEndpoint = null;
+			return defaultUrl;
+		}
+		selectedEndpoint = router.select(update);
+		return selectedEndpoint.getUrl();
+	}
+	
+	/**
+	 * Routes the next request to the endpoint selected by selectEndpoint(), or selects one when endpoint routing is enabled. The request 
+	 * is completed when its response has been read or closed, or when the connection is disconnected or prepared for the next request.
+	 * @param defaultUrl - returned when endpoint routing is not enabled
+	 * @return URL of the endpoint to send the request to
+	 */
+	protected String routeRequest(boolean update, String defaultUrl) {
+		endRoutedRequest(true);
+		EndpointRouter router = endpointRouter;
+		if (router == null) {
+			return defaultUrl;
+		}
+		routedEndpoint = selectedEndpoint != null ? selectedEndpoint : router.select(update);
+		selectedEndpoint = null;
+		routedRequestStartNanos = routedEndpoint.begin();
+		return routedEndpoint.getUrl();
+	}
+	
+	private void endRoutedRequest(boolean success) {
+		if (routedEndpoint != null) {
+			routedEndpoint.end(routedRequestStartNanos, success);
+			routedEndpoint = null;
+		}
+	}
+	
+	/**
+	 * Enables execution of all requests opened afterwards by given handler, in the driver's JVM
+	 */
+	public static void enableInProcessExecution(SparqlRequestHandler handler) {
+		inProcessHandler = handler;
+	}
+	
+	/**
+	 * @return the handler executing requests in-process or null if requests are sent over HTTP
+	 */
+	public static SparqlRequestHandler getInProcessHandler() {
+		return inProcessHandler;
+	}
+	
+	/**
+	 * Enables distribution of requests among the endpoints of given router for all requests prepared afterwards
+	 */
+	public static void enableEndpointRouting(EndpointRouter router) {
+		endpointRouter = router;
+	}
+	
+	/**
+	 * @return the endpoint router or null if requests are not routed
+	 */
+	public static EndpointRouter getEndpointRouter() {
+		return endpointRouter;
+	}
+	
+	/**
+	 * Enables pooling of keep-alive connections for all connections opened afterwards
+	 * @param maxConnectionsPerEndpoint - maximum number of connections in use for each endpoint
+	 * @param idleTimeoutMilliseconds - idle connections are closed after that time
+	 */
+	public static void enableConnectionPool(int maxConnectionsPerEndpoint, long idleTimeoutMilliseconds) {
+		connectionPool = new HttpConnectionPool(maxConnectionsPerEndpoint, idleTimeoutMilliseconds);
+	}
+	
+	/**
+	 * @return the connection pool or null if connections are not pooled
+	 */
+	public static HttpConnectionPool getConnectionPool() {
+		return connectionPool;
 	}
 	
 	/**
 	 * Must provide implementation for that method, and execute it before starting a query
 	 */
 	public abstract void prepareConnection(boolean setQueryToStream);
+	
+	/**
+	 * Completes the request when the end of the response is reached or the response is closed, a failure to read
+	 * the response after the deadline has passed is reported as a timeout. Time spent waiting in read calls is 
+	 * recorded as transfer time, and bytes read as the size of the response.
+	 */
+	private class ResponseInputStream extends FilterInputStream {
+		private ResponseInputStream(InputStream in) {
+			super(in);
+		}
+		
+		@Override
+		public int read() throws IOException {
+			int b;
+			long startNanos = System.nanoTime();
+			try {
+				b = super.read();
+			} catch (IOException e) {
+				throw failRequest(e);
+			} finally {
+				requestTimings.add(RequestTimings.Phase.TRANSFER, System.nanoTime() - startNanos);
+			}
+			if (b < 0) {
+				completeRequest();
+			} else {
+				requestTimings.addResponseBytes(1);
+			}
+			return b;
+		}
+		
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int read;
+			long startNanos = System.nanoTime();
+			try {
+				read = super.read(b, off, len);
+			} catch (IOException e) {
+				throw failRequest(e);
+			} finally {
+				requestTimings.add(RequestTimings.Phase.TRANSFER, System.nanoTime() - startNanos);
+			}
+			if (read < 0) {
+				completeRequest();
+			} else {
+				requestTimings.addResponseBytes(read);
+			}
+			return read;
+		}
+		
+		@Override
+		public void close() throws IOException {
+			long timedOutTimeMs = endDeadline();
+			endRoutedRequest(timedOutTimeMs < 0);
+			super.close();
+		}
+	}
 }
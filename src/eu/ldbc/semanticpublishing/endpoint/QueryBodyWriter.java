@@ -0,0 +1,12 @@
+package eu.ldbc.semanticpublishing.endpoint;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writes the query or update string of a request directly into its body, so that a large update is never held
+ * as a string. It is called when the request is sent.
+ */
+public interface QueryBodyWriter {
+	public void writeTo(Writer writer) throws IOException;
+}
@@ -0,0 +1,131 @@
+package eu.ldbc.semanticpublishing.endpoint;
+
+import java.net.HttpURLConnection;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import eu.ldbc.semanticpublishing.endpoint.embedded.InProcessURLConnection;
+import eu.ldbc.semanticpublishing.endpoint.pool.PooledHttpURLConnection;
+
+/**
+ * Enforces an absolute deadline on requests executed by blocking HttpURLConnections. A single daemon thread checks
+ * the registered deadlines periodically and aborts the connection of a request which has not completed in time,
+ * so that the thread waiting for the response fails instead of hanging on a slowly trickling response.
+ * Requests executed in-process can not be aborted, they are only marked as timed out.
+ */
+public class QueryDeadlineWatchdog {
+	private static final long CHECK_INTERVAL_MILLISECONDS = 100;
+
+	private static final Set<Deadline> deadlines = Collections.newSetFromMap(new ConcurrentHashMap<Deadline, Boolean>());
+	private static Thread watchdogThread = null;
+	//checked before locking, so that registering a deadline does not take a lock once the watchdog is running
+	private static volatile boolean started = false;
+
+	/**
+	 * Starts enforcing a deadline on the request of given connection
+	 * @param timeoutMilliseconds - the deadline is that time from now
+	 */
+	public static Deadline register(HttpURLConnection connection, long timeoutMilliseconds) {
+		if (!started) {
+			ensureStarted();
+		}
+		Deadline deadline = new Deadline(connection, timeoutMilliseconds);
+		deadlines.add(deadline);
+		return deadline;
+	}
+
+	private static synchronized void ensureStarted() {
+		if (watchdogThread != null) {
+			return;
+		}
+		watchdogThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				while (true) {
+					try {
+						Thread.sleep(CHECK_INTERVAL_MILLISECONDS);
+					} catch (InterruptedException ie) {
+						return;
+					}
+					long now = System.nanoTime();
+					for (Deadline deadline : deadlines) {
+						if (now - deadline.deadlineNanos > 0) {
+							deadlines.remove(deadline);
+							deadline.expire();
+						}
+					}
+				}
+			}
+		}, "QueryDeadlineWatchdog");
+		watchdogThread.setDaemon(true);
+		watchdogThread.start();
+		started = true;
+	}
+
+	/**
+	 * Deadline of a single request, either completed by the thread executing the request or expired by the watchdog, whichever comes first
+	 */
+	public static class Deadline {
+		private static final int PENDING = 0;
+		private static final int COMPLETED = 1;
+		private static final int EXPIRED = 2;
+
+		private final HttpURLConnection connection;
+		private final long timeoutMilliseconds;
+		private final long startNanos;
+		private final long deadlineNanos;
+		private final AtomicInteger state = new AtomicInteger(PENDING);
+		private volatile long endNanos;
+
+		private Deadline(HttpURLConnection connection, long timeoutMilliseconds) {
+			this.connection = connection;
+			this.timeoutMilliseconds = timeoutMilliseconds;
+			this.startNanos = System.nanoTime();
+			this.deadlineNanos = startNanos + timeoutMilliseconds * 1000000L;
+		}
+
+		private void expire() {
+			long now = System.nanoTime();
+			if (!state.compareAndSet(PENDING, EXPIRED)) {
+				return;
+			}
+			endNanos = now;
+			if (connection instanceof PooledHttpURLConnection) {
+				((PooledHttpURLConnection)connection).abort();
+			} else if (!(connection instanceof InProcessURLConnection)) {
+				//closes the socket of the JDK's implementation, also when called by another thread
+				connection.disconnect();
+			}
+		}
+
+		/**
+		 * Stops enforcing the deadline, can be called repeatedly. A request completed after its deadline, when it could not be aborted, has timed out as well.
+		 * @return true if the request has timed out
+		 */
+		public boolean complete() {
+			if (state.get() == PENDING) {
+				long now = System.nanoTime();
+				deadlines.remove(this);
+				int newState = now - deadlineNanos > 0 ? EXPIRED : COMPLETED;
+				if (state.compareAndSet(PENDING, newState)) {
+					endNanos = now;
+					return newState == EXPIRED;
+				}
+			}
+			return state.get() == EXPIRED;
+		}
+
+		/**
+		 * @return time from the start of the request until it completed or expired
+		 */
+		public long getElapsedTimeMs() {
+			return (endNanos - startNanos) / 1000000L;
+		}
+
+		public long getTimeoutMilliseconds() {
+			return timeoutMilliseconds;
+		}
+	}
+}
@@ -0,0 +1,183 @@
+package eu.ldbc.semanticpublishing.endpoint;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import eu.ldbc.semanticpublishing.endpoint.SparqlQueryConnection.QueryType;
+
+/**
+ * Executes queries with retries and a circuit breaker for each endpoint. A query failing because its endpoint is unavailable
+ * (no response or a server error) is retried after a backoff time growing exponentially with random jitter, so that agents
+ * do not retry in lockstep. After consecutive failures the circuit of the endpoint opens and queries wait for it to recover,
+ * instead of failing one after another against it. Queries which have timed out are not retried, neither are updates rendered
+ * directly into the body of their requests.
+ *
+ * Retry attempts are counted separately for each query type, they are not counted as executed queries.
+ */
+public class QueryExecutionPolicy {
+	private final int maxRetries;
+	private final long baseBackoffMilliseconds;
+	private final long maxBackoffMilliseconds;
+	private final int failureThreshold;
+	private final long openMilliseconds;
+
+	private final ConcurrentMap<String, CircuitBreaker> circuitBreakers = new ConcurrentHashMap<String, CircuitBreaker>();
+	//each thread draws jitter from its own generator, so that agents backing off do not contend for a shared one
+	private final ThreadLocal<Random> random = new ThreadLocal<Random>() {
+		@Override
+		protected Random initialValue() {
+			return new Random();
+		}
+	};
+
+	private final AtomicLongArray retriesCount = new AtomicLongArray(QueryType.values().length);
+	private final AtomicLongArray failedRetriesCount = new AtomicLongArray(QueryType.values().length);
+	private final AtomicLongArray suspendedCount = new AtomicLongArray(QueryType.values().length);
+
+	/**
+	 * @param maxRetries - retries of a failed query, zero for none
+	 * @param baseBackoffMilliseconds - backoff time before the first retry, doubled with each further retry
+	 * @param maxBackoffMilliseconds - upper bound of the backoff time
+	 * @param failureThreshold - consecutive failures opening the circuit of an endpoint, zero or less disables circuit breakers
+	 * @param openMilliseconds - time queries to an unavailable endpoint are suspended for before a probe query is sent
+	 */
+	public QueryExecutionPolicy(int maxRetries, long baseBackoffMilliseconds, long maxBackoffMilliseconds, int failureThreshold, long openMilliseconds) {
+		this.maxRetries = Math.max(0, maxRetries);
+		this.baseBackoffMilliseconds = Math.max(1, baseBackoffMilliseconds);
+		this.maxBackoffMilliseconds = Math.max(this.baseBackoffMilliseconds, maxBackoffMilliseconds);
+		this.failureThreshold = failureThreshold;
+		this.openMilliseconds = Math.max(1, openMilliseconds);
+	}
+
+	/**
+	 * Prepares the connection for its query and executes it, retrying as configured. The endpoint of each attempt is selected
+	 * before the request is prepared, so that the circuit breaker of the endpoint the request is routed to is applied.
+	 * @return the response of the query
+	 * @throws CircuitOpenException - if the endpoint has been unavailable for longer than the query could wait
+	 * @throws IOException - failure of the last attempt
+	 */
+	public InputStream execute(SparqlQueryConnection connection) throws IOException {
+		QueryType queryType = connection.getQueryType();
+		int attempt = 0;
+		while (true) {
+			CircuitBreaker circuitBreaker = getCircuitBreaker(connection.selectEndpoint());
+			if (circuitBreaker != null) {
+				try {
+					circuitBreaker.acquirePermission(openMilliseconds);
+				} catch (CircuitOpenException coe) {
+					suspendedCount.incrementAndGet(queryType.ordinal());
+					throw coe;
+				}
+			}
+
+			try {
+				connection.prepareConnection(true);
+				InputStream is = connection.execute();
+				if (circuitBreaker != null) {
+					circuitBreaker.onSuccess();
+				}
+				return is;
+			} catch (IOException e) {
+				boolean endpointFailure = isEndpointFailure(e, connection.getLastResponseCode());
+				if (circuitBreaker != null) {
+					if (endpointFailure) {
+						circuitBreaker.onFailure();
+					} else {
+						circuitBreaker.onSuccess();
+					}
+				}
+
+				//a body rendered while it is sent may differ when rendered again, such a request is not retried
+				if (attempt >= maxRetries || !(endpointFailure || e instanceof ServerBusyException) || !connection.isRepeatable()) {
+					if (attempt > 0) {
+						failedRetriesCount.incrementAndGet(queryType.ordinal());
+					}
+					throw e;
+				}
+
+				connection.disconnect();
+				long backoffMs = backoffMilliseconds(attempt);
+				if (e instanceof ServerBusyException) {
+					backoffMs = Math.max(backoffMs, ((ServerBusyException)e).getRetryAfterMilliseconds());
+				}
+				try {
+					Thread.sleep(backoffMs);
+				} catch (InterruptedException ie) {
+					throw e;
+				}
+
+				attempt++;
+				retriesCount.incrementAndGet(queryType.ordinal());
+			}
+		}
+	}
+
+	/**
+	 * @return true if given failure shows that the endpoint is unavailable, i.e. it could not be reached or has responded with a server error.
+	 * A query which has timed out or has been rejected by a healthy endpoint is not an endpoint failure.
+	 */
+	private static boolean isEndpointFailure(IOException e, int responseCode) {
+		if (e instanceof QueryTimeoutException || e instanceof ServerBusyException || e instanceof CircuitOpenException) {
+			return false;
+		}
+		return responseCode < 0 || responseCode >= 500;
+	}
+
+	/**
+	 * Full jitter : a random time up to the exponentially growing backoff time
+	 */
+	private long backoffMilliseconds(int attempt) {
+		long backoffMs = Math.min(maxBackoffMilliseconds, baseBackoffMilliseconds << Math.min(attempt, 16));
+		return 1 + (long)(random.get().nextDouble() * backoffMs);
+	}
+
+	private CircuitBreaker getCircuitBreaker(String endpointUrl) {
+		if (failureThreshold <= 0) {
+			return null;
+		}
+		CircuitBreaker circuitBreaker = circuitBreakers.get(endpointUrl);
+		if (circuitBreaker == null) {
+			CircuitBreaker newCircuitBreaker = new CircuitBreaker(endpointUrl, failureThreshold, openMilliseconds);
+			circuitBreaker = circuitBreakers.putIfAbsent(endpointUrl, newCircuitBreaker);
+			if (circuitBreaker == null) {
+				circuitBreaker = newCircuitBreaker;
+			}
+		}
+		return circuitBreaker;
+	}
+
+	public List<CircuitBreaker> getCircuitBreakers() {
+		return new ArrayList<CircuitBreaker>(circuitBreakers.values());
+	}
+
+	public int getMaxRetries() {
+		return maxRetries;
+	}
+
+	/**
+	 * @return retry attempts of queries of given type, successful or not
+	 */
+	public long getRetriesCount(QueryType queryType) {
+		return retriesCount.get(queryType.ordinal());
+	}
+
+	/**
+	 * @return queries of given type which have failed after being retried
+	 */
+	public long getFailedRetriesCount(QueryType queryType) {
+		return failedRetriesCount.get(queryType.ordinal());
+	}
+
+	/**
+	 * @return queries of given type which have not been sent as the circuit of their endpoint was open
+	 */
+	public long getSuspendedCount(QueryType queryType) {
+		return suspendedCount.get(queryType.ordinal());
+	}
+}
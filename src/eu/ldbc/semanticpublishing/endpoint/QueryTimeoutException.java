@@ -0,0 +1,28 @@
+package eu.ldbc.semanticpublishing.endpoint;
+
+import java.net.SocketTimeoutException;
+
+/**
+ * Thrown when a request has not completed before its deadline and has been aborted. Unlike a socket read timeout, the deadline
+ * is absolute, so a response trickling in slowly times out as well.
+ */
+public class QueryTimeoutException extends SocketTimeoutException {
+	private static final long serialVersionUID = 1L;
+
+	private final long elapsedTimeMs;
+
+	/**
+	 * @param elapsedTimeMs - time from sending the request until it has been aborted
+	 */
+	public QueryTimeoutException(String message, long elapsedTimeMs) {
+		super(message);
+		this.elapsedTimeMs = elapsedTimeMs;
+	}
+
+	/**
+	 * @return time from sending the request until it has been aborted
+	 */
+	public long getElapsedTimeMs() {
+		return elapsedTimeMs;
+	}
+}
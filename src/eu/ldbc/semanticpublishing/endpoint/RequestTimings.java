@@ -0,0 +1,86 @@
+package eu.ldbc.semanticpublishing.endpoint;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Breakdown of the latency of a single request into its phases, and its unique id. The id is sent in the X-Request-ID header,
+ * so that records of the driver can be joined with logs of the server.
+ *
+ * Time reading the response is split into transfer (waiting for the response body in read calls) and parse (processing of the
+ * read body by the driver, e.g. decompression and counting of results), as they are interleaved while a response is streamed.
+ * Not used by the connection concurrently, so no synchronization is needed.
+ */
+public class RequestTimings {
+	public static enum Phase {
+		COMPILE, ACQUIRE, SEND, FIRST_BYTE, TRANSFER, PARSE
+	}
+	
+	public static final String REQUEST_ID_HEADER = "X-Request-ID";
+
+	//distinguishes request ids of driver runs
+	private static final String RUN_ID = Long.toHexString(new Random().nextLong() & 0xFFFFFFFFFFFFL);
+	private static final AtomicLong requestsCount = new AtomicLong(0);
+
+	private final long[] phaseNanos = new long[Phase.values().length];
+	private long responseBytes = 0;
+	private String requestId = "";
+
+	/**
+	 * @return a new unique request id, the id of the driver run followed by the number of the request
+	 */
+	public static String newRequestId() {
+		return RUN_ID + "-" + requestsCount.incrementAndGet();
+	}
+
+	/**
+	 * Starts timing of a new request, the compile time measured before the request is kept
+	 */
+	void begin(String requestId) {
+		long compileNanos = phaseNanos[Phase.COMPILE.ordinal()];
+		for (int i = 0; i < phaseNanos.length; i++) {
+			phaseNanos[i] = 0;
+		}
+		phaseNanos[Phase.COMPILE.ordinal()] = compileNanos;
+		responseBytes = 0;
+		this.requestId = requestId;
+	}
+
+	public void add(Phase phase, long nanos) {
+		phaseNanos[phase.ordinal()] += nanos;
+	}
+
+	public void set(Phase phase, long nanos) {
+		phaseNanos[phase.ordinal()] = nanos;
+	}
+
+	public long get(Phase phase) {
+		return phaseNanos[phase.ordinal()];
+	}
+
+	/**
+	 * Sets the parse time from the time spent reading the response, time spent waiting for it is transfer time
+	 * @param consumeNanos - time from the start until the end of reading the response
+	 */
+	public void setParseFromConsumeTime(long consumeNanos) {
+		phaseNanos[Phase.PARSE.ordinal()] = Math.max(0, consumeNanos - phaseNanos[Phase.TRANSFER.ordinal()]);
+	}
+
+	void addResponseBytes(long bytes) {
+		responseBytes += bytes;
+	}
+
+	/**
+	 * @return bytes of the response read so far, as received
+	 */
+	public long getResponseBytes() {
+		return responseBytes;
+	}
+
+	/**
+	 * @return id of the current request, empty if none has been sent
+	 */
+	public String getRequestId() {
+		return requestId;
+	}
+}
@@ -0,0 +1,153 @@
+package eu.ldbc.semanticpublishing.endpoint;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import eu.ldbc.semanticpublishing.endpoint.SparqlQueryConnection.QueryType;
+import eu.ldbc.semanticpublishing.statistics.StripedCounter;
+
+/**
+ * Negotiation and streaming decompression of compressed query responses (Content-Encoding gzip or deflate).
+ * Responses are decompressed while being read, e.g. by a result counter, so the uncompressed response is never buffered.
+ * Compressed (as received) and uncompressed bytes of responses are counted for each query type, in striped counters,
+ * as all agents add to them while reading their responses.
+ */
+public class ResponseCompression {
+	public static final String ACCEPT_ENCODING = "gzip, deflate";
+	private static final int BUFFER_SIZE = 8 * 1024;
+
+	private static volatile boolean enabled = false;
+
+	private static final StripedCounter[] responsesCount = newCounters();
+	private static final StripedCounter[] compressedResponsesCount = newCounters();
+	private static final StripedCounter[] receivedBytes = newCounters();
+	private static final StripedCounter[] uncompressedBytes = newCounters();
+
+	private static StripedCounter[] newCounters() {
+		StripedCounter[] counters = new StripedCounter[QueryType.values().length];
+		for (int i = 0; i < counters.length; i++) {
+			counters[i] = new StripedCounter();
+		}
+		return counters;
+	}
+
+	/**
+	 * Enables the Accept-Encoding header for all queries prepared afterwards
+	 */
+	public static void enable() {
+		enabled = true;
+	}
+
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * @param contentEncoding - value of the Content-Encoding header of the response, may be null
+	 * @return a stream decompressing the response if it is encoded, the stream itself otherwise
+	 */
+	public static InputStream decode(InputStream is, String contentEncoding) throws IOException {
+		if (contentEncoding == null) {
+			return is;
+		}
+		String encoding = contentEncoding.trim().toLowerCase();
+		if (encoding.equals("gzip") || encoding.equals("x-gzip")) {
+			return new GZIPInputStream(is, BUFFER_SIZE);
+		}
+		if (encoding.equals("deflate")) {
+			//deflate should be zlib wrapped, though some servers send raw deflate data
+			PushbackInputStream pis = new PushbackInputStream(is, 2);
+			byte[] header = new byte[2];
+			int length = pis.read(header);
+			if (length <= 0) {
+				return pis;
+			}
+			pis.unread(header, 0, length);
+			boolean zlibWrapped = length == 2 && (header[0] & 0x0f) == 8 && (((header[0] & 0xff) << 8) | (header[1] & 0xff)) % 31 == 0;
+			return new InflaterInputStream(pis, new Inflater(!zlibWrapped), BUFFER_SIZE);
+		}
+		return is;
+	}
+
+	/**
+	 * Decodes the response as decode(is, contentEncoding) and counts its bytes for given query type while it is being read
+	 */
+	public static InputStream decode(InputStream is, String contentEncoding, QueryType queryType) throws IOException {
+		int index = queryType.ordinal();
+		responsesCount[index].increment();
+		InputStream received = new CountingInputStream(is, receivedBytes[index]);
+		InputStream decoded = decode(received, contentEncoding);
+		if (decoded != received) {
+			compressedResponsesCount[index].increment();
+		}
+		return new CountingInputStream(decoded, uncompressedBytes[index]);
+	}
+
+	public static long getResponsesCount(QueryType queryType) {
+		return responsesCount[queryType.ordinal()].sum();
+	}
+
+	public static long getCompressedResponsesCount(QueryType queryType) {
+		return compressedResponsesCount[queryType.ordinal()].sum();
+	}
+
+	/**
+	 * @return bytes received for given query type, compressed if the server compressed the responses
+	 */
+	public static long getReceivedBytes(QueryType queryType) {
+		return receivedBytes[queryType.ordinal()].sum();
+	}
+
+	public static long getUncompressedBytes(QueryType queryType) {
+		return uncompressedBytes[queryType.ordinal()].sum();
+	}
+
+	/**
+	 * Adds bytes read to a counter, as they are read, because result parsers do not necessarily read a response to its end
+	 */
+	private static class CountingInputStream extends FilterInputStream {
+		private final StripedCounter counter;
+
+		private CountingInputStream(InputStream in, StripedCounter counter) {
+			super(in);
+			this.counter = counter;
+		}
+
+		@Override
+		public int read() throws IOException {
+			int b = in.read();
+			if (b != -1) {
+				counter.increment();
+			}
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int length = in.read(b, off, len);
+			if (length > 0) {
+				counter.add(length);
+			}
+			return length;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			long skipped = in.skip(n);
+			if (skipped > 0) {
+				counter.add(skipped);
+			}
+			return skipped;
+		}
+
+		@Override
+		public boolean markSupported() {
+			return false;
+		}
+	}
+}
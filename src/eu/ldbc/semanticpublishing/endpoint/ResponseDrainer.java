@@ -0,0 +1,41 @@
+package eu.ldbc.semanticpublishing.endpoint;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.CRC32;
+
+/**
+ * Reads a query response to its end without keeping it, through a buffer reused between queries. A CRC32 checksum
+ * of the response is computed on the way, so responses can be compared without storing them.
+ * Not thread safe, each agent should use its own instance.
+ */
+public class ResponseDrainer {
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private final byte[] buffer = new byte[BUFFER_SIZE];
+	private final CRC32 crc32 = new CRC32();
+	private long checksum = 0;
+
+	/**
+	 * Reads the stream to its end, does not close it
+	 * @return count of bytes read
+	 */
+	public long drain(InputStream is) throws IOException {
+		crc32.reset();
+		long length = 0;
+		int read;
+		while ((read = is.read(buffer)) != -1) {
+			crc32.update(buffer, 0, read);
+			length += read;
+		}
+		checksum = crc32.getValue();
+		return length;
+	}
+
+	/**
+	 * @return CRC32 checksum of the last drained response
+	 */
+	public long getChecksum() {
+		return checksum;
+	}
+}
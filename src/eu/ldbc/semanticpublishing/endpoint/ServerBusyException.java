@@ -0,0 +1,70 @@
+package eu.ldbc.semanticpublishing.endpoint;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Thrown when the server rejects a request as it is overloaded or rate limited (HTTP 429 or 503), clients should
+ * back off before sending further requests.
+ */
+public class ServerBusyException extends IOException {
+	private static final long serialVersionUID = 1L;
+
+	private final int responseCode;
+	private final long retryAfterMilliseconds;
+
+	/**
+	 * @param retryAfterMilliseconds - time requested by the server to wait before retrying, -1 if not set
+	 */
+	public ServerBusyException(String message, int responseCode, long retryAfterMilliseconds) {
+		super(message);
+		this.responseCode = responseCode;
+		this.retryAfterMilliseconds = retryAfterMilliseconds;
+	}
+
+	/**
+	 * @return true if given HTTP response code signals that the server is overloaded
+	 */
+	public static boolean isServerBusy(int responseCode) {
+		return responseCode == 429 || responseCode == HttpURLConnection.HTTP_UNAVAILABLE;
+	}
+
+	/**
+	 * @param retryAfter - value of a Retry-After header, either seconds or an HTTP date, may be null
+	 * @return time to wait in milliseconds, -1 if not set or invalid
+	 */
+	public static long parseRetryAfter(String retryAfter) {
+		if (retryAfter == null || retryAfter.trim().isEmpty()) {
+			return -1;
+		}
+		try {
+			return Math.max(0, Long.parseLong(retryAfter.trim()) * 1000L);
+		} catch (NumberFormatException nfe) {
+			//not a number of seconds, e.g. Retry-After: Fri, 31 Dec 1999 23:59:59 GMT
+		}
+		SimpleDateFormat dateFormat = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+		dateFormat.setTimeZone(TimeZone.getTimeZone("GMT"));
+		try {
+			Date date = dateFormat.parse(retryAfter.trim());
+			return Math.max(0, date.getTime() - System.currentTimeMillis());
+		} catch (ParseException pe) {
+			return -1;
+		}
+	}
+
+	public int getResponseCode() {
+		return responseCode;
+	}
+
+	/**
+	 * @return time requested by the server to wait before retrying, -1 if not set
+	 */
+	public long getRetryAfterMilliseconds() {
+		return retryAfterMilliseconds;
+	}
+}
@@ -3,11 +3,14 @@ package eu.ldbc.semanticpublishing.endpoint;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.UnsupportedEncodingException;
-import java.net.HttpURLConnection;
+import java.io.Writer;
 import java.net.URL;
 import java.net.URLEncoder;
 
+import eu.ldbc.semanticpublishing.endpoint.pool.PooledHttpURLConnection;
+
 /**
  * Used to prepare an HttpUrlConnection for executing a SPARQL query against a remote endpoint
  */
@@ -16,8 +19,24 @@ public class SparqlQueryConnection extends HttpConnectionBase {
 		SELECT, CONSTRUCT, DESCRIBE, INSERT, UPDATE, DELETE
 	}
 	
+	/**
+	 * Body of update requests : FORM - a form encoded 'update' parameter, FORM_STREAMING - the same, rendered into the
+	 * body while it is sent, DIRECT - the update string itself (application/sparql-update), rendered into the body while it is sent
+	 */
+	public static enum UpdateRequestBody {
+		FORM, FORM_STREAMING, DIRECT
+	}
+	
+	public static final String CONTENT_TYPE_SPARQL_RESULTS_XML = "application/sparql-results+xml";
+	public static final String CONTENT_TYPE_FORM = "application/x-www-form-urlencoded; charset=utf-8";
+	public static final String CONTENT_TYPE_SPARQL_UPDATE = "application/sparql-update; charset=utf-8";
+	
+	private static volatile UpdateRequestBody updateRequestBody = UpdateRequestBody.FORM;
+	
 	private String queryString;
+	private QueryBodyWriter queryBodyWriter = null;
 	private QueryType queryType;
+	private String contentTypeForTupleQuery = CONTENT_TYPE_SPARQL_RESULTS_XML;
 
 	/**
 	 * Constructs a SparqlQueryConnection and writes query string to out stream
@@ -39,51 +58,49 @@ public class SparqlQueryConnection extends HttpConnectionBase {
 		prepareConnection(false);
 	}
 	
-	private String prepareEncodedUrlQueryString() throws UnsupportedEncodingException {
+	private String prepareEncodedUrlQueryString(boolean routeRequest) throws UnsupportedEncodingException {
 		String urlString = "";
 
-		if (queryType == QueryType.INSERT || queryType == QueryType.UPDATE || queryType == QueryType.DELETE) {
+		if (isUpdateQuery(queryType)) {
 			urlString = endpointUpdateUrl;
 		} else {
 			urlString = endpointUrl; // + "?" + "query=" + URLEncoder.encode(queryString, "UTF-8");
 		}
 		
-		return urlString;
+		//only a connection prepared for a query sends a request
+		return routeRequest ? routeRequest(isUpdateQuery(queryType), urlString) : urlString;
 	}	
 
 	@Override
 	public void prepareConnection(boolean setQueryToStream) {
 
 		try {
-			URL url = new URL(prepareEncodedUrlQueryString());
-			httpUrlConnection = (HttpURLConnection)url.openConnection();
+			URL url = new URL(prepareEncodedUrlQueryString(setQueryToStream));
+			httpUrlConnection = openConnection(url);
+			if (httpUrlConnection instanceof PooledHttpURLConnection) {
+				((PooledHttpURLConnection)httpUrlConnection).setRetryable(!isUpdateQuery(queryType));
+			}
 			httpUrlConnection.setDoOutput(true);
 			httpUrlConnection.setDefaultUseCaches(false);
 			httpUrlConnection.setUseCaches(false);
 			httpUrlConnection.setReadTimeout(timeoutMilliseconds);
 			httpUrlConnection.setConnectTimeout(timeoutMilliseconds);
 
-			boolean sparqlUpdate = queryType == QueryType.INSERT || queryType == QueryType.UPDATE || queryType == QueryType.DELETE;
-			boolean graphQuery = queryType == QueryType.DESCRIBE || queryType == QueryType.CONSTRUCT;
-			if (sparqlUpdate) {
-				httpUrlConnection.setRequestMethod("POST");
-				httpUrlConnection.setRequestProperty("Content-Type", "application/x-www-form-urlencoded; charset=utf-8");
-//				httpUrlConnection.setRequestProperty("Content-Type", "application/sparql-update");
-				httpUrlConnection.setRequestProperty("Accept", "*/*");
-			} else {
-//				httpUrlConnection.setRequestMethod("GET");
-				httpUrlConnection.setRequestMethod("POST");
-				httpUrlConnection.setRequestProperty("Content-Type", "application/x-www-form-urlencoded; charset=utf-8");
-//				httpUrlConnection.setRequestProperty("Content-Type", "application/sparql-query");
-				if (graphQuery) {					
-					httpUrlConnection.setRequestProperty("Accept", contentTypeForGraphQuery);
-//					httpUrlConnection.setRequestProperty("Accept", "application/rdf+xml");
-//					httpUrlConnection.setRequestProperty("Accept", "application/x-turtle");
-				} else {
-					httpUrlConnection.setRequestProperty("Accept", "application/sparql-results+xml");
-				}
+			httpUrlConnection.setRequestMethod("POST");
+			httpUrlConnection.setRequestProperty("Content-Type", getContentType(queryType));
+//			httpUrlConnection.setRequestProperty("Content-Type", "application/sparql-update");
+			httpUrlConnection.setRequestProperty("Accept", getAcceptContentType(queryType, contentTypeForTupleQuery, contentTypeForGraphQuery));
+			if (ResponseCompression.isEnabled() && !isUpdateQuery(queryType)) {
+				httpUrlConnection.setRequestProperty("Accept-Encoding", ResponseCompression.ACCEPT_ENCODING);
 			}
-			if (setQueryToStream && !queryString.isEmpty()) {
+			if (setQueryToStream) {
+				httpUrlConnection.setRequestProperty(RequestTimings.REQUEST_ID_HEADER, beginRequest());
+				//the body is sent while the request is prepared, connecting and sending it are within the deadline
+				startDeadline();
+			}
+			if (setQueryToStream && queryBodyWriter != null) {
+				streamOutput();
+			} else if (setQueryToStream && !queryString.isEmpty()) {
 				setOutputStream();
 			}
 		} catch (UnsupportedEncodingException uee) {
@@ -96,12 +113,15 @@ public class SparqlQueryConnection extends HttpConnectionBase {
 				//int responseCode = httpUrlConnection.getResponseCode();
 				InputStream es = httpUrlConnection.getErrorStream();
 	
-				byte[] buffer = new byte[10000];
-				// read the response body			
-				while ((es.read(buffer)) > 0) {
-					//consume ErrorStream's contents
+				//no error stream when the endpoint could not be reached at all
+				if (es != null) {
+					byte[] buffer = new byte[10000];
+					// read the response body			
+					while ((es.read(buffer)) > 0) {
+						//consume ErrorStream's contents
+					}
+					es.close();
 				}
-				es.close();
 			} catch (IOException e) {
 				//sink the exception, not interested if error stream produces it.
 				e.printStackTrace();
@@ -109,19 +129,145 @@ public class SparqlQueryConnection extends HttpConnectionBase {
 		}
 	}	
 	
-	private void setOutputStream() throws IOException {
-		boolean sparqlUpdate = queryType == QueryType.INSERT || queryType == QueryType.UPDATE || queryType == QueryType.DELETE;
-
-		OutputStream outStream = httpUrlConnection.getOutputStream();
-		if (sparqlUpdate) {
-			outStream.write("update=".getBytes());
+	/**
+	 * Executes the query, a compressed response is decompressed while being read
+	 */
+	@Override
+	public InputStream execute() throws IOException {
+		InputStream is = super.execute();
+		if (!ResponseCompression.isEnabled() || isUpdateQuery(queryType)) {
+			return is;
 		}
-		else {
-			outStream.write("query=".getBytes());
+		return ResponseCompression.decode(is, httpUrlConnection.getHeaderField("Content-Encoding"), queryType);
+	}
+	
+	/**
+	 * Renders the query into the body while it is sent in chunks, neither the query string nor its encoding is created
+	 */
+	private void streamOutput() throws IOException {
+		httpUrlConnection.setChunkedStreamingMode(0);
+		long startNanos = System.nanoTime();
+		OutputStream outStream = httpUrlConnection.getOutputStream();
+		long connectedNanos = System.nanoTime();
+		requestTimings.add(RequestTimings.Phase.ACQUIRE, connectedNanos - startNanos);
+		Writer writer;
+		if (updateRequestBody == UpdateRequestBody.DIRECT) {
+			writer = new OutputStreamWriter(outStream, "UTF-8");
+		} else {
+			outStream.write((isUpdateQuery(queryType) ? "update=" : "query=").getBytes("UTF-8"));
+			writer = new FormUrlEncodingWriter(outStream);
 		}
-		outStream.write(URLEncoder.encode(queryString, "UTF-8").getBytes());
+		queryBodyWriter.writeTo(writer);
+		writer.flush();
+		outStream.close();
+		//includes rendering of the query
+		requestTimings.add(RequestTimings.Phase.SEND, System.nanoTime() - connectedNanos);
+	}
+	
+	private void setOutputStream() throws IOException {
+		long startNanos = System.nanoTime();
+		OutputStream outStream = httpUrlConnection.getOutputStream();
+		long connectedNanos = System.nanoTime();
+		requestTimings.add(RequestTimings.Phase.ACQUIRE, connectedNanos - startNanos);
+		outStream.write(encodeRequestBody(queryString, queryType));
 		outStream.flush();
 		outStream.close();
+		requestTimings.add(RequestTimings.Phase.SEND, System.nanoTime() - connectedNanos);
+	}
+	
+	/**
+	 * Selects the endpoint the next request prepared for the query is sent to, one of the endpoints of a cluster if endpoint routing is enabled
+	 * @return URL of the endpoint
+	 */
+	public String selectEndpoint() {
+		return selectEndpoint(isUpdateQuery(queryType), isUpdateQuery(queryType) ? endpointUpdateUrl : endpointUrl);
+	}
+	
+	/**
+	 * @return true for query types executed against the update endpoint
+	 */
+	public static boolean isUpdateQuery(QueryType queryType) {
+		return queryType == QueryType.INSERT || queryType == QueryType.UPDATE || queryType == QueryType.DELETE;
+	}
+	
+	/**
+	 * @return true for query types returning an RDF graph
+	 */
+	public static boolean isGraphQuery(QueryType queryType) {
+		return queryType == QueryType.DESCRIBE || queryType == QueryType.CONSTRUCT;
+	}
+	
+	/**
+	 * @return value of the Accept header for given query type
+	 */
+	public static String getAcceptContentType(QueryType queryType, String contentTypeForGraphQuery) {
+		return getAcceptContentType(queryType, CONTENT_TYPE_SPARQL_RESULTS_XML, contentTypeForGraphQuery);
+	}
+	
+	/**
+	 * @param contentTypeForTupleQuery - requested format of SELECT results
+	 * @return value of the Accept header for given query type
+	 */
+	public static String getAcceptContentType(QueryType queryType, String contentTypeForTupleQuery, String contentTypeForGraphQuery) {
+		if (isUpdateQuery(queryType)) {
+			return "*/*";
+		}
+		if (isGraphQuery(queryType)) {
+			return contentTypeForGraphQuery;
+//			return "application/rdf+xml";
+//			return "application/x-turtle";
+		}
+		return contentTypeForTupleQuery;
+	}
+	
+	/**
+	 * @return form encoded request body (application/x-www-form-urlencoded) holding the query or update string, or the update string
+	 * itself if updates are sent directly
+	 */
+	public static byte[] encodeRequestBody(String queryString, QueryType queryType) throws UnsupportedEncodingException {
+		if (isUpdateQuery(queryType) && updateRequestBody == UpdateRequestBody.DIRECT) {
+			return queryString.getBytes("UTF-8");
+		}
+		return ((isUpdateQuery(queryType) ? "update=" : "query=") + URLEncoder.encode(queryString, "UTF-8")).getBytes("UTF-8");
+	}
+	
+	/**
+	 * @return value of the Content-Type header of the request body for given query type
+	 */
+	public static String getContentType(QueryType queryType) {
+		return isUpdateQuery(queryType) && updateRequestBody == UpdateRequestBody.DIRECT ? CONTENT_TYPE_SPARQL_UPDATE : CONTENT_TYPE_FORM;
+	}
+	
+	/**
+	 * @param body - one of form, form_streaming, direct (case insensitive)
+	 */
+	public static UpdateRequestBody parseUpdateRequestBody(String body) {
+		try {
+			return UpdateRequestBody.valueOf(body.trim().toUpperCase());
+		} catch (IllegalArgumentException iae) {
+			throw new IllegalArgumentException("SparqlQueryConnection : unsupported update request body : '" + body + "', supported : form, form_streaming, direct");
+		}
+	}
+	
+	/**
+	 * Sets the body of all update requests prepared afterwards
+	 */
+	public static void setUpdateRequestBody(UpdateRequestBody body) {
+		updateRequestBody = body;
+	}
+	
+	/**
+	 * @return true if updates can be rendered into the body of their requests, see setQueryBodyWriter()
+	 */
+	public static boolean isUpdateRequestBodyStreamed() {
+		return updateRequestBody != UpdateRequestBody.FORM;
+	}
+	
+	/**
+	 * @return true if the request can be sent again with the same body, a rendered body may differ each time it is rendered
+	 */
+	public boolean isRepeatable() {
+		return queryBodyWriter == null;
 	}
 	
 	public String getQueryString() {
@@ -130,6 +276,16 @@ public class SparqlQueryConnection extends HttpConnectionBase {
 	
 	public void setQueryString(String queryString) {
 		this.queryString = queryString;
+		this.queryBodyWriter = null;
+	}
+	
+	/**
+	 * Sets an update which is rendered into the body of the request when it is sent, instead of a query string.
+	 * Requires FORM_STREAMING or DIRECT update request bodies.
+	 */
+	public void setQueryBodyWriter(QueryBodyWriter queryBodyWriter) {
+		this.queryString = "";
+		this.queryBodyWriter = queryBodyWriter;
 	}
 	
 	public QueryType getQueryType() {
@@ -139,4 +295,11 @@ public class SparqlQueryConnection extends HttpConnectionBase {
 	public void setQueryType(QueryType queryType) {
 		this.queryType = queryType;
 	}
+	
+	/**
+	 * Sets the format requested for results of SELECT queries prepared afterwards, SPARQL XML by default
+	 */
+	public void setContentTypeForTupleQuery(String contentTypeForTupleQuery) {
+		this.contentTypeForTupleQuery = contentTypeForTupleQuery;
+	}
 }
@@ -2,9 +2,17 @@ package eu.ldbc.semanticpublishing.endpoint;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.StringWriter;
+import java.net.URL;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import eu.ldbc.semanticpublishing.endpoint.SparqlQueryConnection.QueryType;
+import eu.ldbc.semanticpublishing.endpoint.async.AsyncHttpClient;
+import eu.ldbc.semanticpublishing.endpoint.async.AsyncResponse;
+import eu.ldbc.semanticpublishing.endpoint.async.QueryCallback;
+import eu.ldbc.semanticpublishing.endpoint.async.QueryFuture;
 import eu.ldbc.semanticpublishing.resultanalyzers.sax.SAXResultTransformer;
 import eu.ldbc.semanticpublishing.util.RdfUtils;
 import eu.ldbc.semanticpublishing.util.StringUtil;
@@ -18,6 +26,10 @@ public class SparqlQueryExecuteManager {
 	private int queryTimeoutMilliseconds;
 	private int systemQueryTimeoutMilliseconds;
 	private boolean verbose;
+	private volatile AsyncHttpClient asyncHttpClient = null;
+	
+	//when set, queries executed through a connection are retried and guarded by circuit breakers
+	private static volatile QueryExecutionPolicy executionPolicy = null;
 	
 	public SparqlQueryExecuteManager(AtomicBoolean benchmarkState, String endpointUrl, String endpointUpdateUrl, int queryTimeoutMilliseconds, int systemQueryTimeoutMilliseconds, boolean verbose) {
 		this.endpointUrl = endpointUrl;
@@ -46,11 +58,7 @@ public class SparqlQueryExecuteManager {
 	 */
 	public String executeQueryWithStringResult(SparqlQueryConnection connection, String queryName, String queryString, QueryType queryType, boolean useInStatistics, boolean disconnect) throws IOException {
 		
-		connection.setQueryString(queryString);
-		connection.setQueryType(queryType);
-		connection.prepareConnection(true);
-		
-		InputStream is = connection.execute();
+		InputStream is = executeQuery(connection, queryString, queryType);
 		
 		String queryResult = StringUtil.iostreamToString(is);		
 		
@@ -61,17 +69,60 @@ public class SparqlQueryExecuteManager {
 		return queryResult;		
 	}
 	
+	/**
+	 * Executes a query by using an existing connection and reads the response without keeping it, requires an explicit disconnect.
+	 * Used when only the size of the result is needed, no result string is created.
+	 * @param drainer - reads the response through a reused buffer and computes its checksum
+	 * @return length of the response in bytes
+	 * @throws IOException
+	 */
+	public long executeQueryWithDrainedResult(SparqlQueryConnection connection, String queryName, String queryString, QueryType queryType, ResponseDrainer drainer) throws IOException {
+		
+		InputStream is = executeQuery(connection, queryString, queryType);
+		long consumeStartNanos = System.nanoTime();
+		try {
+			return drainer.drain(is);
+		} finally {
+			is.close();
+			connection.getRequestTimings().setParseFromConsumeTime(System.nanoTime() - consumeStartNanos);
+		}
+	}
+	
+	/**
+	 * Executes an update by using an existing connection and reads the response without keeping it, requires an explicit disconnect.
+	 * The update is rendered directly into the body of the request if update request bodies are streamed, into a string otherwise.
+	 * @param queryBodyWriter - renders the update
+	 * @return length of the response in bytes
+	 * @throws IOException
+	 */
+	public long executeQueryWithDrainedResult(SparqlQueryConnection connection, String queryName, QueryBodyWriter queryBodyWriter, QueryType queryType, ResponseDrainer drainer) throws IOException {
+		
+		InputStream is;
+		if (SparqlQueryConnection.isUpdateQuery(queryType) && SparqlQueryConnection.isUpdateRequestBodyStreamed()) {
+			connection.setQueryBodyWriter(queryBodyWriter);
+			connection.setQueryType(queryType);
+			is = executeQuery(connection, queryType);
+		} else {
+			StringWriter writer = new StringWriter();
+			queryBodyWriter.writeTo(writer);
+			is = executeQuery(connection, writer.toString(), queryType);
+		}
+		long consumeStartNanos = System.nanoTime();
+		try {
+			return drainer.drain(is);
+		} finally {
+			is.close();
+			connection.getRequestTimings().setParseFromConsumeTime(System.nanoTime() - consumeStartNanos);
+		}
+	}
+	
 	public String executeQueryWithInputStreamResult(String queryName, String queryString, QueryType queryType, String contentTypeForGraphQuery) throws IOException {
 		return executeQueryWithStringResult(new SparqlQueryConnection(endpointUrl, endpointUpdateUrl, contentTypeForGraphQuery, queryTimeoutMilliseconds, verbose), queryName, queryString, queryType, false, true);
 	}		
 	
 	public InputStream executeQueryWithInputStreamResult(SparqlQueryConnection connection, String queryName, String queryString, QueryType queryType, boolean useInStatistics, boolean disconnect) throws IOException {
 		
-		connection.setQueryString(queryString);
-		connection.setQueryType(queryType);
-		connection.prepareConnection(true);
-		
-		InputStream is = connection.execute();		
+		InputStream is = executeQuery(connection, queryString, queryType);		
 		
 		if (disconnect) {
 			connection.disconnect();
@@ -80,6 +131,34 @@ public class SparqlQueryExecuteManager {
 		return is;		
 	}
 	
+	/**
+	 * Executes the query by the connection, applying the execution policy if enabled
+	 */
+	private InputStream executeQuery(SparqlQueryConnection connection, String queryString, QueryType queryType) throws IOException {
+		
+		connection.setQueryString(queryString);
+		connection.setQueryType(queryType);
+		
+		return executeQuery(connection, queryType);
+	}
+	
+	/**
+	 * Executes the query already set to the connection, applying the execution policy if enabled
+	 */
+	private InputStream executeQuery(SparqlQueryConnection connection, QueryType queryType) throws IOException {
+		
+		//no request id until the request is prepared, e.g. if its circuit is open
+		connection.getRequestTimings().begin("");
+		
+		QueryExecutionPolicy policy = executionPolicy;
+		if (policy != null) {
+			return policy.execute(connection);
+		}
+		
+		connection.prepareConnection(true);
+		return connection.execute();
+	}
+	
 	/**
 	 * A service method for executing queries not related to the benchmark run.
 	 * Always executed in a new connection, used for execution of queries during ontologies and reference datasets loading only.
@@ -102,6 +181,111 @@ public class SparqlQueryExecuteManager {
 		sparqlQuery.disconnect();
 	}
 
+	/**
+	 * Starts the event loops used by executeQueryAsync(). Has no effect if already enabled.
+	 * @param eventLoopThreads - number of threads performing network I/O for all queries in flight
+	 * @param completionThreads - number of threads running completion callbacks, i.e. counting of query results
+	 * @param idleTimeoutMilliseconds - idle keep-alive connections are closed after that time
+	 */
+	public synchronized void enableAsynchronousExecution(int eventLoopThreads, int completionThreads, long idleTimeoutMilliseconds) throws IOException {
+		if (asyncHttpClient == null) {
+			asyncHttpClient = new AsyncHttpClient(eventLoopThreads, completionThreads, idleTimeoutMilliseconds);
+		}
+	}
+	
+	/**
+	 * Executes a query without blocking the calling thread, requires enableAsynchronousExecution() to be called first.
+	 * The whole result is received before the returned future completes, callbacks attached to it are executed in 
+	 * the completion pool of the client, which is the place for parsing results.
+	 * @return a future of the response
+	 * @throws IOException
+	 */
+	public QueryFuture executeQueryAsync(String queryName, String queryString, QueryType queryType, String contentTypeForGraphQuery) throws IOException {
+		return executeQueryAsync(queryName, queryString, queryType, SparqlQueryConnection.CONTENT_TYPE_SPARQL_RESULTS_XML, contentTypeForGraphQuery);
+	}
+	
+	/**
+	 * Executes a query without blocking the calling thread, as executeQueryAsync(queryName, queryString, queryType, contentTypeForGraphQuery)
+	 * @param contentTypeForTupleQuery - requested format of SELECT results
+	 */
+	public QueryFuture executeQueryAsync(String queryName, String queryString, QueryType queryType, String contentTypeForTupleQuery, String contentTypeForGraphQuery) throws IOException {
+		return executeQueryAsync(queryName, queryString, queryType, contentTypeForTupleQuery, contentTypeForGraphQuery, null);
+	}
+	
+	/**
+	 * Executes a query without blocking the calling thread, as executeQueryAsync(queryName, queryString, queryType, contentTypeForTupleQuery, contentTypeForGraphQuery)
+	 * @param routingKey - identifies the sender of the query when endpoint routing is sticky, as queries of many senders are sent from one thread
+	 */
+	public QueryFuture executeQueryAsync(String queryName, String queryString, QueryType queryType, String contentTypeForTupleQuery, String contentTypeForGraphQuery, String routingKey) throws IOException {
+		AsyncHttpClient client = asyncHttpClient;
+		if (client == null) {
+			throw new IllegalStateException("SparqlQueryExecuteManager : asynchronous execution has not been enabled");
+		}
+		
+		Map<String, String> headers = new LinkedHashMap<String, String>();
+		headers.put("Content-Type", SparqlQueryConnection.getContentType(queryType));
+		headers.put("Accept", SparqlQueryConnection.getAcceptContentType(queryType, contentTypeForTupleQuery, contentTypeForGraphQuery));
+		headers.put(RequestTimings.REQUEST_ID_HEADER, RequestTimings.newRequestId());
+		if (ResponseCompression.isEnabled() && !SparqlQueryConnection.isUpdateQuery(queryType)) {
+			headers.put("Accept-Encoding", ResponseCompression.ACCEPT_ENCODING);
+		}
+		
+		URL url = new URL(SparqlQueryConnection.isUpdateQuery(queryType) ? endpointUpdateUrl : endpointUrl);
+		
+		EndpointRouter router = HttpConnectionBase.getEndpointRouter();
+		if (router == null) {
+			return client.execute(url, "POST", headers, SparqlQueryConnection.encodeRequestBody(queryString, queryType), queryTimeoutMilliseconds);
+		}
+		
+		final EndpointRouter.Endpoint endpoint = router.select(SparqlQueryConnection.isUpdateQuery(queryType), routingKey);
+		final long startNanos = endpoint.begin();
+		try {
+			QueryFuture future = client.execute(new URL(endpoint.getUrl()), "POST", headers, SparqlQueryConnection.encodeRequestBody(queryString, queryType), queryTimeoutMilliseconds);
+			future.whenComplete(new QueryCallback() {
+				@Override
+				public void onSuccess(AsyncResponse response) {
+					endpoint.end(startNanos, response.getResponseEndNanos(), response.isSuccessful());
+				}
+				
+				@Override
+				public void onFailure(Throwable failure) {
+					endpoint.end(startNanos, false);
+				}
+			});
+			return future;
+		} catch (IOException e) {
+			endpoint.end(startNanos, false);
+			throw e;
+		}
+	}
+	
+	/**
+	 * Enables retries and circuit breakers for all queries executed through a connection afterwards, 
+	 * system queries and asynchronous queries are executed without them
+	 */
+	public static void enableExecutionPolicy(QueryExecutionPolicy policy) {
+		executionPolicy = policy;
+	}
+	
+	/**
+	 * @return the execution policy or null if queries are executed once, without circuit breakers
+	 */
+	public static QueryExecutionPolicy getExecutionPolicy() {
+		return executionPolicy;
+	}
+	
+	public AsyncHttpClient getAsyncHttpClient() {
+		return asyncHttpClient;
+	}
+	
+	public void shutdownAsynchronousExecution() {
+		AsyncHttpClient client = asyncHttpClient;
+		if (client != null) {
+			asyncHttpClient = null;
+			client.shutdown();
+		}
+	}
+
 /*	
 	private int countResultBytes(InputStream is) throws IOException {
 		int length = 0;
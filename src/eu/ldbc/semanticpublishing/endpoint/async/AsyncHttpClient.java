@@ -0,0 +1,495 @@
+package eu.ldbc.semanticpublishing.endpoint.async;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import eu.ldbc.semanticpublishing.endpoint.QueryTimeoutException;
+
+/**
+ * A non-blocking HTTP/1.1 client. A small number of event loop threads multiplex any number of requests
+ * in flight over NIO channels, connections are kept alive and reused by each event loop.
+ * Completed responses are handed to a separate completion pool, so that parsing of results never
+ * delays the event loops. Plain http endpoints are supported only.
+ */
+public class AsyncHttpClient {
+	private static final int READ_BUFFER_SIZE = 64 * 1024;
+	private static final long SELECT_TIMEOUT_MILLISECONDS = 50;
+
+	private final EventLoop[] eventLoops;
+	private final ExecutorService completionExecutor;
+	private final long idleTimeoutNanos;
+	private final AtomicInteger nextEventLoop = new AtomicInteger(0);
+
+	private final AtomicInteger inFlightCount = new AtomicInteger(0);
+	private final AtomicLong createdConnectionsCount = new AtomicLong(0);
+	private final AtomicLong reusedConnectionsCount = new AtomicLong(0);
+
+	/**
+	 * @param eventLoopThreads - number of threads performing network I/O
+	 * @param completionThreads - number of threads running completion callbacks, i.e. parsing of results
+	 * @param idleTimeoutMilliseconds - idle keep-alive connections are closed after that time
+	 */
+	public AsyncHttpClient(int eventLoopThreads, int completionThreads, long idleTimeoutMilliseconds) throws IOException {
+		if (eventLoopThreads <= 0 || completionThreads <= 0) {
+			throw new IllegalArgumentException("AsyncHttpClient : number of threads must be a positive number");
+		}
+		this.idleTimeoutNanos = idleTimeoutMilliseconds * 1000000L;
+		this.completionExecutor = Executors.newFixedThreadPool(completionThreads, new NamedDaemonThreadFactory("async-http-completion"));
+		this.eventLoops = new EventLoop[eventLoopThreads];
+		for (int i = 0; i < eventLoopThreads; i++) {
+			eventLoops[i] = new EventLoop(i);
+			eventLoops[i].start();
+		}
+	}
+
+	/**
+	 * Sends a request without blocking the calling thread
+	 * @param url - request URL
+	 * @param method - HTTP method, e.g. POST
+	 * @param headers - request headers, Host and Content-Length are added by the client
+	 * @param body - request body, can be null
+	 * @param timeoutMilliseconds - time allowed for the whole exchange, zero for no timeout
+	 * @return a future completed when the response has been fully received
+	 */
+	public QueryFuture execute(URL url, String method, Map<String, String> headers, byte[] body, int timeoutMilliseconds) {
+		QueryFuture future = new QueryFuture(completionExecutor);
+		inFlightCount.incrementAndGet();
+
+		if (!"http".equalsIgnoreCase(url.getProtocol())) {
+			inFlightCount.decrementAndGet();
+			future.fail(new IOException("AsyncHttpClient : unsupported protocol : " + url.getProtocol() + ", only http endpoints can be used with asynchronous execution"));
+			return future;
+		}
+
+		Exchange exchange = new Exchange(url, "HEAD".equalsIgnoreCase(method), buildRequest(url, method, headers, body), timeoutMilliseconds, future);
+		eventLoops[(nextEventLoop.getAndIncrement() & Integer.MAX_VALUE) % eventLoops.length].submit(exchange);
+		return future;
+	}
+
+	/**
+	 * Stops the event loops, requests in flight are failed.
+	 */
+	public void shutdown() {
+		for (EventLoop eventLoop : eventLoops) {
+			eventLoop.shutdown();
+		}
+		for (EventLoop eventLoop : eventLoops) {
+			try {
+				eventLoop.join(5000);
+			} catch (InterruptedException ie) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		completionExecutor.shutdown();
+	}
+
+	/**
+	 * @return number of requests sent and not completed yet
+	 */
+	public int getInFlightCount() {
+		return inFlightCount.get();
+	}
+
+	public int getEventLoopThreads() {
+		return eventLoops.length;
+	}
+
+	public long getCreatedConnectionsCount() {
+		return createdConnectionsCount.get();
+	}
+
+	public long getReusedConnectionsCount() {
+		return reusedConnectionsCount.get();
+	}
+
+	private static byte[] buildRequest(URL url, String method, Map<String, String> headers, byte[] body) {
+		StringBuilder head = new StringBuilder(256);
+		String file = url.getFile();
+		head.append(method).append(' ').append(file.isEmpty() ? "/" : file).append(" HTTP/1.1\r\n");
+		head.append("Host: ").append(url.getHost());
+		if (url.getPort() != -1) {
+			head.append(':').append(url.getPort());
+		}
+		head.append("\r\n");
+
+		boolean userAgentSet = false;
+		if (headers != null) {
+			for (Map.Entry<String, String> header : headers.entrySet()) {
+				head.append(header.getKey()).append(": ").append(header.getValue()).append("\r\n");
+				userAgentSet |= header.getKey().equalsIgnoreCase("User-Agent");
+			}
+		}
+		if (!userAgentSet) {
+			head.append("User-Agent: ldbc-spb-driver\r\n");
+		}
+		head.append("Content-Length: ").append(body != null ? body.length : 0).append("\r\n\r\n");
+
+		ByteArrayOutputStream request = new ByteArrayOutputStream(head.length() + (body != null ? body.length : 0));
+		for (int i = 0; i < head.length(); i++) {
+			request.write((byte)head.charAt(i));
+		}
+		if (body != null) {
+			request.write(body, 0, body.length);
+		}
+		return request.toByteArray();
+	}
+
+	/**
+	 * State of a single request/response exchange, owned by one event loop.
+	 */
+	private static class Exchange {
+		private final String endpointKey;
+		private final InetSocketAddress address;
+		private final boolean headRequest;
+		private final ByteBuffer request;
+		private final int timeoutMilliseconds;
+		private final long deadlineNanos;
+		private final long startNanos;
+		private final QueryFuture future;
+
+		private SocketChannel channel;
+		private ResponseParser parser;
+		private boolean reusedChannel = false;
+		private boolean retried = false;
+
+		private Exchange(URL url, boolean headRequest, byte[] request, int timeoutMilliseconds, QueryFuture future) {
+			int port = url.getPort() != -1 ? url.getPort() : url.getDefaultPort();
+			this.endpointKey = url.getHost().toLowerCase() + ":" + port;
+			this.address = new InetSocketAddress(url.getHost(), port);
+			this.headRequest = headRequest;
+			this.request = ByteBuffer.wrap(request);
+			this.timeoutMilliseconds = timeoutMilliseconds;
+			this.startNanos = System.nanoTime();
+			this.deadlineNanos = timeoutMilliseconds > 0 ? startNanos + timeoutMilliseconds * 1000000L : 0;
+			this.future = future;
+		}
+	}
+
+	/**
+	 * A keep-alive connection waiting for its next request. Stays registered for reading, so that
+	 * a connection closed by the server is discarded right away.
+	 */
+	private static class IdleChannel {
+		private final String endpointKey;
+		private final SocketChannel channel;
+		private final long idleSinceNanos;
+
+		private IdleChannel(String endpointKey, SocketChannel channel) {
+			this.endpointKey = endpointKey;
+			this.channel = channel;
+			this.idleSinceNanos = System.nanoTime();
+		}
+	}
+
+	private class EventLoop extends Thread {
+		private final Selector selector;
+		private final ConcurrentLinkedQueue<Exchange> pendingExchanges = new ConcurrentLinkedQueue<Exchange>();
+		//accessed by the event loop thread only
+		private final Map<String, LinkedList<IdleChannel>> idleChannels = new HashMap<String, LinkedList<IdleChannel>>();
+		private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+		private volatile boolean running = true;
+
+		private EventLoop(int index) throws IOException {
+			super("async-http-event-loop-" + index);
+			setDaemon(true);
+			this.selector = Selector.open();
+		}
+
+		/**
+		 * Queues the exchange for the event loop, it is failed right away if the event loop has stopped
+		 */
+		private void submit(Exchange exchange) {
+			if (running) {
+				pendingExchanges.add(exchange);
+				selector.wakeup();
+				//the event loop fails pending exchanges when it stops, unless it has stopped after that already
+				if (running || !pendingExchanges.remove(exchange)) {
+					return;
+				}
+			}
+			inFlightCount.decrementAndGet();
+			exchange.future.fail(new IOException("AsyncHttpClient : event loop " + getName() + " has stopped"));
+		}
+
+		private void shutdown() {
+			running = false;
+			selector.wakeup();
+		}
+
+		@Override
+		public void run() {
+			try {
+				while (running) {
+					selector.select(SELECT_TIMEOUT_MILLISECONDS);
+
+					//selected keys are handled first, so that idle connections closed by the server are discarded before new exchanges could reuse them
+					Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+					while (iterator.hasNext()) {
+						SelectionKey key = iterator.next();
+						iterator.remove();
+						if (key.isValid()) {
+							handle(key);
+						}
+					}
+
+					Exchange exchange;
+					while ((exchange = pendingExchanges.poll()) != null) {
+						start(exchange, false);
+					}
+
+					expire();
+				}
+			} catch (Throwable t) {
+				System.out.println("AsyncHttpClient : event loop " + getName() + " has failed : " + t.getMessage());
+				t.printStackTrace();
+			} finally {
+				running = false;
+				close();
+			}
+		}
+
+		private void start(Exchange exchange, boolean forceNew) {
+			try {
+				IdleChannel idle = forceNew ? null : pollIdle(exchange.endpointKey);
+				if (idle != null) {
+					exchange.channel = idle.channel;
+					exchange.reusedChannel = true;
+					exchange.request.rewind();
+					reusedConnectionsCount.incrementAndGet();
+					SelectionKey key = idle.channel.keyFor(selector);
+					key.attach(exchange);
+					key.interestOps(SelectionKey.OP_WRITE);
+					return;
+				}
+
+				SocketChannel channel = SocketChannel.open();
+				exchange.channel = channel;
+				exchange.reusedChannel = false;
+				exchange.request.rewind();
+				channel.configureBlocking(false);
+				channel.socket().setTcpNoDelay(true);
+				channel.socket().setKeepAlive(true);
+				createdConnectionsCount.incrementAndGet();
+				if (exchange.address.isUnresolved()) {
+					throw new IOException("AsyncHttpClient : unable to resolve host : " + exchange.address.getHostName());
+				}
+				boolean connected = channel.connect(exchange.address);
+				channel.register(selector, connected ? SelectionKey.OP_WRITE : SelectionKey.OP_CONNECT, exchange);
+			} catch (IOException ioe) {
+				fail(exchange, ioe);
+			} catch (RuntimeException re) {
+				//e.g. a connection closed concurrently, only this exchange fails
+				fail(exchange, re);
+			}
+		}
+
+		private void handle(SelectionKey key) {
+			Object attachment = key.attachment();
+			if (attachment == null) {
+				return;
+			}
+			if (attachment instanceof IdleChannel) {
+				//an idle connection has become readable, i.e. it was closed by the server or has sent unexpected data
+				IdleChannel idle = (IdleChannel)attachment;
+				LinkedList<IdleChannel> idleList = idleChannels.get(idle.endpointKey);
+				if (idleList != null) {
+					idleList.remove(idle);
+				}
+				closeChannel(idle.channel);
+				return;
+			}
+
+			Exchange exchange = (Exchange)attachment;
+			try {
+				if (key.isConnectable()) {
+					if (exchange.channel.finishConnect()) {
+						key.interestOps(SelectionKey.OP_WRITE);
+					}
+				} else if (key.isWritable()) {
+					exchange.channel.write(exchange.request);
+					if (!exchange.request.hasRemaining()) {
+						exchange.parser = new ResponseParser(exchange.headRequest);
+						key.interestOps(SelectionKey.OP_READ);
+					}
+				} else if (key.isReadable()) {
+					if (exchange.parser == null) {
+						//a reused connection has been closed by the server, or has sent data, before the request was sent
+						throw new IOException("AsyncHttpClient : connection became readable before the request was sent");
+					}
+					readBuffer.clear();
+					int length = exchange.channel.read(readBuffer);
+					if (length == -1) {
+						if (exchange.parser.endOfStream()) {
+							complete(exchange, key, false);
+						} else {
+							throw new IOException("AsyncHttpClient : connection closed by server before the response was complete");
+						}
+					} else if (length > 0) {
+						readBuffer.flip();
+						if (exchange.parser.feed(readBuffer)) {
+							//bytes after the end of response can not be matched to a request, the connection can not be reused then
+							complete(exchange, key, exchange.parser.isKeepAlive() && !readBuffer.hasRemaining());
+						}
+					}
+				}
+			} catch (IOException ioe) {
+				key.attach(null);
+				closeChannel(exchange.channel);
+				//a kept alive connection might have been closed by the server just before sending the request, retry once on a new one
+				if (exchange.reusedChannel && !exchange.retried && (exchange.parser == null || !exchange.parser.hasReceivedBytes())) {
+					exchange.retried = true;
+					exchange.parser = null;
+					start(exchange, true);
+				} else {
+					fail(exchange, ioe);
+				}
+			} catch (RuntimeException re) {
+				//only the exchange of this connection fails, the event loop keeps serving the others
+				key.attach(null);
+				fail(exchange, re);
+			}
+		}
+
+		private void complete(Exchange exchange, SelectionKey key, boolean reusable) {
+			long endNanos = System.nanoTime();
+			if (reusable && running) {
+				IdleChannel idle = new IdleChannel(exchange.endpointKey, exchange.channel);
+				key.attach(idle);
+				key.interestOps(SelectionKey.OP_READ);
+				LinkedList<IdleChannel> idleList = idleChannels.get(exchange.endpointKey);
+				if (idleList == null) {
+					idleList = new LinkedList<IdleChannel>();
+					idleChannels.put(exchange.endpointKey, idleList);
+				}
+				idleList.addFirst(idle);
+			} else {
+				//a cancelled key stays in the key set until the next select, the exchange must not be found there anymore
+				key.attach(null);
+				closeChannel(exchange.channel);
+			}
+			inFlightCount.decrementAndGet();
+			exchange.future.complete(exchange.parser.toResponse(exchange.startNanos, endNanos));
+		}
+
+		private void fail(Exchange exchange, Throwable failure) {
+			if (exchange.channel != null) {
+				SelectionKey key = exchange.channel.keyFor(selector);
+				if (key != null) {
+					key.attach(null);
+				}
+				closeChannel(exchange.channel);
+			}
+			//a failure while completing the future, e.g. a rejected callback, leaves it completed
+			if (exchange.future.isDone()) {
+				return;
+			}
+			inFlightCount.decrementAndGet();
+			exchange.future.fail(failure);
+		}
+
+		private IdleChannel pollIdle(String endpointKey) {
+			LinkedList<IdleChannel> idleList = idleChannels.get(endpointKey);
+			while (idleList != null && !idleList.isEmpty()) {
+				IdleChannel idle = idleList.removeFirst();
+				if (idle.channel.isOpen() && idle.channel.isConnected()) {
+					return idle;
+				}
+				closeChannel(idle.channel);
+			}
+			return null;
+		}
+
+		/**
+		 * Fails exchanges which have exceeded their timeout and closes connections idle for too long
+		 */
+		private void expire() {
+			long now = System.nanoTime();
+			for (SelectionKey key : selector.keys()) {
+				//keys cancelled since the last select belong to completed exchanges or closed connections
+				Object attachment = key.attachment();
+				if (!key.isValid() || attachment == null) {
+					continue;
+				}
+				if (attachment instanceof Exchange) {
+					Exchange exchange = (Exchange)attachment;
+					if (exchange.deadlineNanos != 0 && now - exchange.deadlineNanos > 0) {
+						key.attach(null);
+						fail(exchange, new QueryTimeoutException("AsyncHttpClient : response not received within " + exchange.timeoutMilliseconds + " ms", (now - exchange.startNanos) / 1000000L));
+					}
+				} else if (attachment instanceof IdleChannel) {
+					IdleChannel idle = (IdleChannel)attachment;
+					if (idleTimeoutNanos > 0 && now - idle.idleSinceNanos > idleTimeoutNanos) {
+						key.attach(null);
+						LinkedList<IdleChannel> idleList = idleChannels.get(idle.endpointKey);
+						if (idleList != null) {
+							idleList.remove(idle);
+						}
+						closeChannel(idle.channel);
+					}
+				}
+			}
+		}
+
+		private void close() {
+			IOException shutdownException = new IOException("AsyncHttpClient : client has been shut down");
+			for (SelectionKey key : selector.keys()) {
+				Object attachment = key.attachment();
+				if (attachment instanceof Exchange) {
+					fail((Exchange)attachment, shutdownException);
+				} else {
+					closeChannel((SocketChannel)key.channel());
+				}
+			}
+			Exchange exchange;
+			while ((exchange = pendingExchanges.poll()) != null) {
+				fail(exchange, shutdownException);
+			}
+			idleChannels.clear();
+			try {
+				selector.close();
+			} catch (IOException e) {
+				//sink the exception, selector is being discarded anyway
+			}
+		}
+
+		private void closeChannel(SocketChannel channel) {
+			try {
+				channel.close();
+			} catch (IOException e) {
+				//sink the exception, channel is being discarded anyway
+			}
+		}
+	}
+
+	private static class NamedDaemonThreadFactory implements ThreadFactory {
+		private final String prefix;
+		private final AtomicInteger counter = new AtomicInteger(0);
+
+		private NamedDaemonThreadFactory(String prefix) {
+			this.prefix = prefix;
+		}
+
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, prefix + "-" + counter.getAndIncrement());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
@@ -0,0 +1,126 @@
+package eu.ldbc.semanticpublishing.endpoint.async;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A fully received HTTP response of an asynchronous request. The body is kept as the list of chunks
+ * it has been received in, so it is never copied into a single array.
+ */
+public class AsyncResponse {
+	private final int responseCode;
+	private final String responseMessage;
+	private final Map<String, String> headers;
+	private final List<byte[]> bodyChunks;
+	private final long bodyLength;
+	private final long requestStartNanos;
+	private final long responseEndNanos;
+
+	AsyncResponse(int responseCode, String responseMessage, Map<String, String> headers, List<byte[]> bodyChunks, long bodyLength, long requestStartNanos, long responseEndNanos) {
+		this.responseCode = responseCode;
+		this.responseMessage = responseMessage;
+		this.headers = headers != null ? headers : new HashMap<String, String>();
+		this.bodyChunks = bodyChunks != null ? bodyChunks : new ArrayList<byte[]>();
+		this.bodyLength = bodyLength;
+		this.requestStartNanos = requestStartNanos;
+		this.responseEndNanos = responseEndNanos;
+	}
+
+	public int getResponseCode() {
+		return responseCode;
+	}
+
+	public String getResponseMessage() {
+		return responseMessage;
+	}
+
+	public boolean isSuccessful() {
+		return responseCode >= 200 && responseCode < 300;
+	}
+
+	/**
+	 * @param name - header name, case insensitive
+	 * @return value of the header or null if not present
+	 */
+	public String getHeaderField(String name) {
+		return headers.get(name.toLowerCase());
+	}
+
+	public long getBodyLength() {
+		return bodyLength;
+	}
+
+	/**
+	 * @return time from submitting the request until the last byte of the response has been received, in microseconds
+	 */
+	public long getElapsedTimeMicroseconds() {
+		return (responseEndNanos - requestStartNanos) / 1000L;
+	}
+
+	/**
+	 * @return time the last byte of the response has been received, comparable to System.nanoTime()
+	 */
+	public long getResponseEndNanos() {
+		return responseEndNanos;
+	}
+
+	/**
+	 * @return a new stream over the response body, can be called more than once
+	 */
+	public InputStream getBodyInputStream() {
+		return new ChunkListInputStream(bodyChunks);
+	}
+
+	/**
+	 * Reads a list of byte arrays as a single stream.
+	 */
+	private static class ChunkListInputStream extends InputStream {
+		private final List<byte[]> chunks;
+		private int chunkIndex = 0;
+		private int position = 0;
+
+		private ChunkListInputStream(List<byte[]> chunks) {
+			this.chunks = chunks;
+		}
+
+		@Override
+		public int read() throws IOException {
+			if (!advance()) {
+				return -1;
+			}
+			return chunks.get(chunkIndex)[position++] & 0xff;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (len == 0) {
+				return 0;
+			}
+			if (!advance()) {
+				return -1;
+			}
+			byte[] chunk = chunks.get(chunkIndex);
+			int length = Math.min(len, chunk.length - position);
+			System.arraycopy(chunk, position, b, off, length);
+			position += length;
+			return length;
+		}
+
+		@Override
+		public int available() throws IOException {
+			return advance() ? chunks.get(chunkIndex).length - position : 0;
+		}
+
+		private boolean advance() {
+			while (chunkIndex < chunks.size() && position >= chunks.get(chunkIndex).length) {
+				chunkIndex++;
+				position = 0;
+			}
+			return chunkIndex < chunks.size();
+		}
+	}
+}
@@ -0,0 +1,11 @@
+package eu.ldbc.semanticpublishing.endpoint.async;
+
+/**
+ * Receives the outcome of an asynchronously executed query. Exactly one of the methods is called,
+ * on a thread of the client's completion pool and never on an event loop thread.
+ */
+public interface QueryCallback {
+	public void onSuccess(AsyncResponse response);
+
+	public void onFailure(Throwable failure);
+}
@@ -0,0 +1,128 @@
+package eu.ldbc.semanticpublishing.endpoint.async;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Result of an asynchronously executed query. Can be waited for as a Future, or have callbacks
+ * attached with whenComplete(), called once the response has been fully received (or request has failed).
+ */
+public class QueryFuture implements Future<AsyncResponse> {
+	private final CountDownLatch doneLatch = new CountDownLatch(1);
+	private final Executor callbackExecutor;
+	private final List<QueryCallback> callbacks = new ArrayList<QueryCallback>();
+	private volatile AsyncResponse response;
+	private volatile Throwable failure;
+	private boolean done = false;
+
+	QueryFuture(Executor callbackExecutor) {
+		this.callbackExecutor = callbackExecutor;
+	}
+
+	/**
+	 * Attaches a callback, if the future has already completed the callback is scheduled immediately
+	 * @return this future
+	 */
+	public QueryFuture whenComplete(QueryCallback callback) {
+		boolean notifyNow;
+		synchronized (callbacks) {
+			notifyNow = done;
+			if (!notifyNow) {
+				callbacks.add(callback);
+			}
+		}
+		if (notifyNow) {
+			dispatch(callback);
+		}
+		return this;
+	}
+
+	void complete(AsyncResponse response) {
+		this.response = response;
+		finish();
+	}
+
+	void fail(Throwable failure) {
+		this.failure = failure;
+		finish();
+	}
+
+	private void finish() {
+		List<QueryCallback> toNotify;
+		synchronized (callbacks) {
+			if (done) {
+				return;
+			}
+			done = true;
+			toNotify = new ArrayList<QueryCallback>(callbacks);
+			callbacks.clear();
+		}
+		doneLatch.countDown();
+		for (QueryCallback callback : toNotify) {
+			dispatch(callback);
+		}
+	}
+
+	private void dispatch(final QueryCallback callback) {
+		callbackExecutor.execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					if (failure != null) {
+						callback.onFailure(failure);
+					} else {
+						callback.onSuccess(response);
+					}
+				} catch (Throwable t) {
+					System.out.println("QueryFuture : callback has thrown an exception : " + t.getMessage());
+					t.printStackTrace();
+				}
+			}
+		});
+	}
+
+	/**
+	 * Cancelling a request in flight is not supported, use the request timeout instead.
+	 */
+	@Override
+	public boolean cancel(boolean mayInterruptIfRunning) {
+		return false;
+	}
+
+	@Override
+	public boolean isCancelled() {
+		return false;
+	}
+
+	@Override
+	public boolean isDone() {
+		return doneLatch.getCount() == 0;
+	}
+
+	@Override
+	public AsyncResponse get() throws InterruptedException, ExecutionException {
+		doneLatch.await();
+		return result();
+	}
+
+	@Override
+	public AsyncResponse get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+		if (!doneLatch.await(timeout, unit)) {
+			throw new TimeoutException("QueryFuture : response not received within " + unit.toMillis(timeout) + " ms");
+		}
+		return result();
+	}
+
+	private AsyncResponse result() throws ExecutionException {
+		if (failure != null) {
+			throw new ExecutionException(failure);
+		}
+		return response;
+	}
+}
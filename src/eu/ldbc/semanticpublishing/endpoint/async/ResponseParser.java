@@ -0,0 +1,225 @@
+package eu.ldbc.semanticpublishing.endpoint.async;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Incremental parser of an HTTP/1.1 response. Bytes are fed as they are read from a non-blocking channel,
+ * the response may be split at any position. Supports bodies framed by Content-Length, chunked transfer
+ * encoding and bodies delimited by closing the connection.
+ */
+class ResponseParser {
+	private static enum State {
+		STATUS_AND_HEADERS, FIXED_LENGTH_BODY, CHUNK_SIZE, CHUNK_DATA, CHUNK_DATA_END, TRAILERS, UNTIL_CLOSE_BODY, DONE
+	}
+
+	private static final int MAX_HEAD_LENGTH = 64 * 1024;
+
+	private final boolean headRequest;
+	private State state = State.STATUS_AND_HEADERS;
+	private final ByteArrayOutputStream lineBuffer = new ByteArrayOutputStream(256);
+	private final List<String> headLines = new ArrayList<String>();
+	private int headLength = 0;
+
+	private int responseCode = -1;
+	private String responseMessage = "";
+	private Map<String, String> headers = new HashMap<String, String>();
+	private boolean keepAlive = true;
+
+	private final List<byte[]> bodyChunks = new ArrayList<byte[]>();
+	private long bodyLength = 0;
+	private long remaining = 0;
+	private boolean bytesReceived = false;
+
+	ResponseParser(boolean headRequest) {
+		this.headRequest = headRequest;
+	}
+
+	/**
+	 * Consumes available bytes from the buffer
+	 * @return true when the response is complete
+	 */
+	boolean feed(ByteBuffer buffer) throws IOException {
+		if (buffer.hasRemaining()) {
+			bytesReceived = true;
+		}
+
+		while (buffer.hasRemaining() && state != State.DONE) {
+			switch (state) {
+				case STATUS_AND_HEADERS :
+				case CHUNK_SIZE :
+				case CHUNK_DATA_END :
+				case TRAILERS :
+					String line = readLine(buffer);
+					if (line != null) {
+						processLine(line);
+					}
+					break;
+				case FIXED_LENGTH_BODY :
+				case CHUNK_DATA :
+					int length = (int)Math.min(remaining, buffer.remaining());
+					appendBody(buffer, length);
+					remaining -= length;
+					if (remaining == 0) {
+						state = (state == State.FIXED_LENGTH_BODY) ? State.DONE : State.CHUNK_DATA_END;
+					}
+					break;
+				case UNTIL_CLOSE_BODY :
+					appendBody(buffer, buffer.remaining());
+					break;
+				default :
+					break;
+			}
+		}
+
+		return state == State.DONE;
+	}
+
+	/**
+	 * Called when the server has closed the connection
+	 * @return true if the response is complete, i.e. its body was delimited by closing the connection
+	 */
+	boolean endOfStream() {
+		if (state == State.UNTIL_CLOSE_BODY) {
+			state = State.DONE;
+			keepAlive = false;
+		}
+		return state == State.DONE;
+	}
+
+	private void processLine(String line) throws IOException {
+		switch (state) {
+			case STATUS_AND_HEADERS :
+				headLength += line.length() + 2;
+				if (headLength > MAX_HEAD_LENGTH) {
+					throw new IOException("ResponseParser : response head exceeds " + MAX_HEAD_LENGTH + " bytes");
+				}
+				if (!line.isEmpty()) {
+					headLines.add(line);
+				} else if (!headLines.isEmpty()) {
+					processHead();
+				}
+				break;
+			case CHUNK_SIZE :
+				int extension = line.indexOf(';');
+				String size = (extension >= 0 ? line.substring(0, extension) : line).trim();
+				try {
+					remaining = Long.parseLong(size, 16);
+				} catch (NumberFormatException nfe) {
+					throw new IOException("ResponseParser : invalid chunk size : " + line);
+				}
+				state = (remaining == 0) ? State.TRAILERS : State.CHUNK_DATA;
+				break;
+			case CHUNK_DATA_END :
+				state = State.CHUNK_SIZE;
+				break;
+			case TRAILERS :
+				if (line.isEmpty()) {
+					state = State.DONE;
+				}
+				break;
+			default :
+				break;
+		}
+	}
+
+	private void processHead() throws IOException {
+		String statusLine = headLines.get(0);
+		String[] tokens = statusLine.split(" ", 3);
+		if (tokens.length < 2 || !tokens[0].startsWith("HTTP/")) {
+			throw new IOException("ResponseParser : invalid status line : " + statusLine);
+		}
+		try {
+			responseCode = Integer.parseInt(tokens[1].trim());
+		} catch (NumberFormatException nfe) {
+			throw new IOException("ResponseParser : invalid status line : " + statusLine);
+		}
+		responseMessage = tokens.length > 2 ? tokens[2] : "";
+
+		headers = new HashMap<String, String>();
+		for (int i = 1; i < headLines.size(); i++) {
+			String header = headLines.get(i);
+			int colon = header.indexOf(':');
+			if (colon > 0) {
+				headers.put(header.substring(0, colon).trim().toLowerCase(), header.substring(colon + 1).trim());
+			}
+		}
+		headLines.clear();
+		headLength = 0;
+
+		//interim responses (e.g. 100 Continue) are followed by the final one
+		if (responseCode >= 100 && responseCode < 200) {
+			return;
+		}
+
+		String connection = headers.get("connection");
+		keepAlive = tokens[0].equals("HTTP/1.1") ? !"close".equalsIgnoreCase(connection) : "keep-alive".equalsIgnoreCase(connection);
+
+		String transferEncoding = headers.get("transfer-encoding");
+		String contentLength = headers.get("content-length");
+
+		if (headRequest || responseCode == 204 || responseCode == 304) {
+			state = State.DONE;
+		} else if (transferEncoding != null && transferEncoding.toLowerCase().contains("chunked")) {
+			state = State.CHUNK_SIZE;
+		} else if (contentLength != null) {
+			try {
+				remaining = Long.parseLong(contentLength);
+			} catch (NumberFormatException nfe) {
+				throw new IOException("ResponseParser : invalid Content-Length : " + contentLength);
+			}
+			state = (remaining == 0) ? State.DONE : State.FIXED_LENGTH_BODY;
+		} else {
+			state = State.UNTIL_CLOSE_BODY;
+		}
+	}
+
+	/**
+	 * @return a complete line without its CRLF, or null if more bytes are needed
+	 */
+	private String readLine(ByteBuffer buffer) {
+		while (buffer.hasRemaining()) {
+			byte b = buffer.get();
+			if (b == '\n') {
+				byte[] bytes = lineBuffer.toByteArray();
+				lineBuffer.reset();
+				int length = (bytes.length > 0 && bytes[bytes.length - 1] == '\r') ? bytes.length - 1 : bytes.length;
+				try {
+					return new String(bytes, 0, length, "ISO-8859-1");
+				} catch (UnsupportedEncodingException e) {
+					return new String(bytes, 0, length);
+				}
+			}
+			lineBuffer.write(b);
+		}
+		return null;
+	}
+
+	private void appendBody(ByteBuffer buffer, int length) {
+		byte[] chunk = new byte[length];
+		buffer.get(chunk);
+		bodyChunks.add(chunk);
+		bodyLength += length;
+	}
+
+	/**
+	 * @return true if any byte of the response has been received
+	 */
+	boolean hasReceivedBytes() {
+		return bytesReceived;
+	}
+
+	boolean isKeepAlive() {
+		return keepAlive && state == State.DONE;
+	}
+
+	AsyncResponse toResponse(long requestStartNanos, long responseEndNanos) {
+		return new AsyncResponse(responseCode, responseMessage, headers, bodyChunks, bodyLength, requestStartNanos, responseEndNanos);
+	}
+}
@@ -0,0 +1,99 @@
+package eu.ldbc.semanticpublishing.endpoint.embedded;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+
+import org.openrdf.rio.RDFFormat;
+
+/**
+ * Answers every query with a prepared response of a fixed size after a fixed delay, updates and RDF data are discarded.
+ * Used to measure the overhead of the driver, as the cost of executing a request is close to zero.
+ */
+public class CannedResponseRequestHandler extends SparqlRequestHandler {
+	private final int responseSizeBytes;
+	private final long responseDelayMilliseconds;
+	private final byte[] cannedTupleResponse;
+	private final byte[] cannedGraphResponse;
+
+	/**
+	 * @param responseSizeBytes - approximate size of each query response
+	 * @param responseDelayMilliseconds - time each request is delayed before responding
+	 */
+	public CannedResponseRequestHandler(int responseSizeBytes, long responseDelayMilliseconds) {
+		this.responseSizeBytes = responseSizeBytes;
+		this.responseDelayMilliseconds = responseDelayMilliseconds;
+		this.cannedTupleResponse = buildCannedTupleResponse(responseSizeBytes);
+		this.cannedGraphResponse = buildCannedGraphResponse(responseSizeBytes);
+	}
+
+	@Override
+	protected void executeQuery(String queryString, String accept, Response response) throws Exception {
+		delay();
+		boolean graphResponse = accept != null && !accept.contains(CONTENT_TYPE_SPARQL_RESULTS_XML) && !accept.equals("*/*");
+		byte[] body = graphResponse ? cannedGraphResponse : cannedTupleResponse;
+		OutputStream out = response.send(200, graphResponse ? CONTENT_TYPE_RDFXML : CONTENT_TYPE_SPARQL_RESULTS_XML, body.length);
+		out.write(body);
+		out.flush();
+	}
+
+	@Override
+	protected void executeUpdate(String updateString) throws Exception {
+		delay();
+	}
+
+	@Override
+	protected void addStatements(InputStream body, RDFFormat format) throws Exception {
+		readFully(body);
+		delay();
+	}
+
+	private void delay() throws InterruptedException {
+		if (responseDelayMilliseconds > 0) {
+			Thread.sleep(responseDelayMilliseconds);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%d bytes per response, %d ms delay", responseSizeBytes, responseDelayMilliseconds);
+	}
+
+	/**
+	 * Builds a SPARQL XML result of single variable rows, large enough to reach given size
+	 */
+	private static byte[] buildCannedTupleResponse(int sizeBytes) {
+		StringBuilder sb = new StringBuilder();
+		sb.append("<?xml version='1.0' encoding='UTF-8'?>\n");
+		sb.append("<sparql xmlns='http://www.w3.org/2005/sparql-results#'>\n\t<head>\n\t\t<variable name='thing'/>\n\t</head>\n\t<results>\n");
+		String footer = "\t</results>\n</sparql>\n";
+		for (int i = 0; sb.length() + footer.length() < sizeBytes; i++) {
+			sb.append("\t\t<result>\n\t\t\t<binding name='thing'>\n\t\t\t\t<uri>http://www.bbc.co.uk/things/").append(i).append("#id</uri>\n\t\t\t</binding>\n\t\t</result>\n");
+		}
+		sb.append(footer);
+		return toBytes(sb);
+	}
+
+	/**
+	 * Builds an RDF/XML document of labelled resources, large enough to reach given size
+	 */
+	private static byte[] buildCannedGraphResponse(int sizeBytes) {
+		StringBuilder sb = new StringBuilder();
+		sb.append("<?xml version='1.0' encoding='UTF-8'?>\n");
+		sb.append("<rdf:RDF xmlns:rdf='http://www.w3.org/1999/02/22-rdf-syntax-ns#' xmlns:rdfs='http://www.w3.org/2000/01/rdf-schema#'>\n");
+		String footer = "</rdf:RDF>\n";
+		for (int i = 0; sb.length() + footer.length() < sizeBytes; i++) {
+			sb.append("\t<rdf:Description rdf:about='http://www.bbc.co.uk/things/").append(i).append("#id'>\n\t\t<rdfs:label>thing ").append(i).append("</rdfs:label>\n\t</rdf:Description>\n");
+		}
+		sb.append(footer);
+		return toBytes(sb);
+	}
+
+	private static byte[] toBytes(StringBuilder sb) {
+		try {
+			return sb.toString().getBytes("UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
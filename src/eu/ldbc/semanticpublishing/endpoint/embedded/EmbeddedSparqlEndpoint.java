@@ -0,0 +1,208 @@
+package eu.ldbc.semanticpublishing.endpoint.embedded;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * A lightweight SPARQL endpoint running inside the driver's JVM, or as a separate process, used to measure the overhead
+ * of the driver itself without an external database. Supported modes :
+ *   memory - queries and updates are executed against an in-memory Sesame store, RDF files posted to the endpoint are added to it
+ *   null   - the endpoint returns canned responses of a configured size after a configured delay, updates and RDF files are discarded
+ * Requests are executed by a SparqlRequestHandler, which is shared with in-process execution.
+ */
+public class EmbeddedSparqlEndpoint {
+	public static enum Mode {
+		MEMORY, NULL
+	}
+
+	private static final String CONTEXT_PATH = "/repositories/embedded";
+	private static final String STATEMENTS_PATH = CONTEXT_PATH + "/statements";
+	private static final String LOOPBACK_ADDRESS = "127.0.0.1";
+	private static final String ANY_ADDRESS = "0.0.0.0";
+
+	//the endpoint started by the driver, null if not running
+	private static volatile EmbeddedSparqlEndpoint runningEndpoint = null;
+
+	private final Mode mode;
+	private final int responseSizeBytes;
+	private final long responseDelayMilliseconds;
+	private final AtomicLong requestsCount = new AtomicLong(0);
+	private HttpServer server;
+	private ExecutorService executor;
+	private SparqlRequestHandler handler;
+	private String urlHost;
+
+	/**
+	 * @param responseSizeBytes - null mode only : approximate size of each query response
+	 * @param responseDelayMilliseconds - null mode only : time each request is delayed before responding
+	 */
+	public EmbeddedSparqlEndpoint(Mode mode, int responseSizeBytes, long responseDelayMilliseconds) {
+		this.mode = mode;
+		this.responseSizeBytes = responseSizeBytes;
+		this.responseDelayMilliseconds = responseDelayMilliseconds;
+	}
+
+	/**
+	 * @param mode - memory or null (case insensitive)
+	 */
+	public static Mode parseMode(String mode) {
+		try {
+			return Mode.valueOf(mode.trim().toUpperCase());
+		} catch (IllegalArgumentException iae) {
+			throw new IllegalArgumentException("EmbeddedSparqlEndpoint : unsupported mode : '" + mode + "', supported : memory, null");
+		}
+	}
+
+	/**
+	 * Starts the endpoint on given port of the loopback interface
+	 * @param port - 0 selects a free port
+	 */
+	public void start(int port) throws IOException {
+		start(LOOPBACK_ADDRESS, port);
+	}
+
+	/**
+	 * @param bindAddress - address of the interface to listen on, 0.0.0.0 for all interfaces
+	 * @param port - 0 selects a free port
+	 */
+	public synchronized void start(String bindAddress, int port) throws IOException {
+		if (mode == Mode.MEMORY) {
+			try {
+				handler = RepositoryRequestHandler.create(RepositoryRequestHandler.StoreType.MEMORY, null);
+			} catch (Exception e) {
+				throw new IOException("EmbeddedSparqlEndpoint : failed to initialize the in-memory store : " + e.getMessage());
+			}
+		} else {
+			handler = new CannedResponseRequestHandler(responseSizeBytes, responseDelayMilliseconds);
+		}
+
+		executor = Executors.newCachedThreadPool(new ThreadFactory() {
+			private final AtomicInteger threadsCount = new AtomicInteger(0);
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "EmbeddedSparqlEndpoint-" + threadsCount.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		server = HttpServer.create(new InetSocketAddress(bindAddress, port), 0);
+		urlHost = bindAddress.equals(ANY_ADDRESS) ? InetAddress.getLocalHost().getHostName() : bindAddress;
+		server.createContext(CONTEXT_PATH, new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				handleExchange(exchange);
+			}
+		});
+		server.setExecutor(executor);
+		server.start();
+	}
+
+	public synchronized void stop() {
+		if (server != null) {
+			server.stop(0);
+			executor.shutdownNow();
+			server = null;
+		}
+		if (handler != null) {
+			handler.shutDown();
+			handler = null;
+		}
+	}
+
+	/**
+	 * @return URL for queries, as endpointURL
+	 */
+	public String getQueryUrl() {
+		return "http://" + urlHost + ":" + server.getAddress().getPort() + CONTEXT_PATH;
+	}
+
+	/**
+	 * @return URL for updates and RDF data, as endpointUpdateURL
+	 */
+	public String getUpdateUrl() {
+		return "http://" + urlHost + ":" + server.getAddress().getPort() + STATEMENTS_PATH;
+	}
+
+	public Mode getMode() {
+		return mode;
+	}
+
+	public long getRequestsCount() {
+		return requestsCount.get();
+	}
+
+	public static void setRunningEndpoint(EmbeddedSparqlEndpoint endpoint) {
+		runningEndpoint = endpoint;
+	}
+
+	/**
+	 * @return the endpoint started by the driver in its own JVM, or null
+	 */
+	public static EmbeddedSparqlEndpoint getRunningEndpoint() {
+		return runningEndpoint;
+	}
+
+	@Override
+	public String toString() {
+		return mode == Mode.NULL ? String.format("null mode, %d bytes per response, %d ms delay", responseSizeBytes, responseDelayMilliseconds) : "memory mode";
+	}
+
+	private void handleExchange(final HttpExchange exchange) throws IOException {
+		requestsCount.incrementAndGet();
+		try {
+			handler.handle(exchange.getRequestMethod(),
+						   exchange.getRequestURI().getRawQuery(),
+						   exchange.getRequestHeaders().getFirst("Content-Type"),
+						   exchange.getRequestHeaders().getFirst("Content-Encoding"),
+						   exchange.getRequestHeaders().getFirst("Accept"),
+						   exchange.getRequestBody(),
+						   new SparqlRequestHandler.Response() {
+				@Override
+				public OutputStream send(int code, String contentType, long length) throws IOException {
+					exchange.getResponseHeaders().set("Content-Type", contentType);
+					//a length of 0 selects chunked encoding
+					exchange.sendResponseHeaders(code, length < 0 ? 0 : length);
+					return exchange.getResponseBody();
+				}
+
+				@Override
+				public void sendEmpty(int code) throws IOException {
+					exchange.sendResponseHeaders(code, -1);
+				}
+			});
+		} catch (IOException e) {
+			//response headers have been sent already, the client sees a truncated response
+		} finally {
+			exchange.close();
+		}
+	}
+
+	/**
+	 * Runs the endpoint as a separate process, e.g. on another machine than the driver
+	 * Arguments : mode (memory or null) port [response size in bytes] [response delay in ms]
+	 */
+	public static void main(String[] args) throws Exception {
+		if (args.length < 2) {
+			System.out.println("Usage : EmbeddedSparqlEndpoint <memory|null> <port> [responseSizeBytes] [responseDelayMs]");
+			System.exit(0);
+		}
+		EmbeddedSparqlEndpoint endpoint = new EmbeddedSparqlEndpoint(parseMode(args[0]),
+																	 args.length > 2 ? Integer.parseInt(args[2]) : 4096,
+																	 args.length > 3 ? Long.parseLong(args[3]) : 0);
+		endpoint.start(ANY_ADDRESS, Integer.parseInt(args[1]));
+		System.out.println("Embedded SPARQL endpoint (" + endpoint + ") started, endpointURL=" + endpoint.getQueryUrl() + ", endpointUpdateURL=" + endpoint.getUpdateUrl());
+		//request threads are daemon threads, keep the process alive
+		Thread.sleep(Long.MAX_VALUE);
+	}
+}
@@ -0,0 +1,149 @@
+package eu.ldbc.semanticpublishing.endpoint.embedded;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.ProtocolException;
+import java.net.URL;
+
+/**
+ * An HttpURLConnection implementation executing requests by a SparqlRequestHandler in the driver's JVM, without a network
+ * transport. The request body is buffered and the request is executed when the response is first accessed, the response
+ * body is buffered as well. Only the path and the query string of the URL are used, the host is ignored.
+ */
+public class InProcessURLConnection extends HttpURLConnection {
+	private final SparqlRequestHandler handler;
+	private ByteArrayOutputStream requestBody;
+	private String requestContentType;
+	private String requestContentEncoding;
+	private String requestAccept;
+	private String responseContentType;
+	private byte[] responseBody;
+	private boolean requestExecuted;
+
+	public InProcessURLConnection(URL url, SparqlRequestHandler handler) {
+		super(url);
+		this.handler = handler;
+	}
+
+	@Override
+	public void connect() throws IOException {
+		if (connected) {
+			return;
+		}
+		//request properties can not be read once connected
+		requestContentType = getRequestProperty("Content-Type");
+		requestContentEncoding = getRequestProperty("Content-Encoding");
+		requestAccept = getRequestProperty("Accept");
+		connected = true;
+	}
+
+	private void executeRequest() throws IOException {
+		if (requestExecuted) {
+			return;
+		}
+		connect();
+		requestExecuted = true;
+
+		final ByteArrayOutputStream response = new ByteArrayOutputStream();
+		InputStream body = new ByteArrayInputStream(requestBody != null ? requestBody.toByteArray() : new byte[0]);
+		requestBody = null;
+
+		handler.handle(method, url.getQuery(), requestContentType, requestContentEncoding, requestAccept, body,
+					   new SparqlRequestHandler.Response() {
+			@Override
+			public OutputStream send(int code, String contentType, long length) throws IOException {
+				responseCode = code;
+				responseContentType = contentType;
+				return response;
+			}
+
+			@Override
+			public void sendEmpty(int code) throws IOException {
+				responseCode = code;
+			}
+		});
+		if (responseCode == -1) {
+			throw new IOException("InProcessURLConnection : no response produced for URL: " + url);
+		}
+		responseMessage = "";
+		responseBody = response.toByteArray();
+	}
+
+	@Override
+	public OutputStream getOutputStream() throws IOException {
+		if (!doOutput) {
+			throw new ProtocolException("cannot write to a URLConnection if doOutput=false - call setDoOutput(true)");
+		}
+		if (requestExecuted) {
+			throw new ProtocolException("Cannot write output after reading input.");
+		}
+		if (method.equals("GET")) {
+			method = "POST";
+		}
+		if (requestBody == null) {
+			requestBody = new ByteArrayOutputStream();
+		}
+		return requestBody;
+	}
+
+	@Override
+	public InputStream getInputStream() throws IOException {
+		executeRequest();
+		if (responseCode >= 400) {
+			if (responseCode == HTTP_NOT_FOUND || responseCode == HTTP_GONE) {
+				throw new FileNotFoundException(url.toString());
+			}
+			throw new IOException("Server returned HTTP response code: " + responseCode + " for URL: " + url);
+		}
+		return new ByteArrayInputStream(responseBody);
+	}
+
+	@Override
+	public InputStream getErrorStream() {
+		if (requestExecuted && responseCode >= 400) {
+			return new ByteArrayInputStream(responseBody);
+		}
+		return null;
+	}
+
+	@Override
+	public int getResponseCode() throws IOException {
+		executeRequest();
+		return responseCode;
+	}
+
+	@Override
+	public String getResponseMessage() throws IOException {
+		executeRequest();
+		return responseMessage;
+	}
+
+	@Override
+	public String getHeaderField(String name) {
+		if (!requestExecuted || name == null) {
+			return null;
+		}
+		if (name.equalsIgnoreCase("Content-Type")) {
+			return responseContentType;
+		}
+		if (name.equalsIgnoreCase("Content-Length")) {
+			return Integer.toString(responseBody.length);
+		}
+		return null;
+	}
+
+	@Override
+	public void disconnect() {
+		responseBody = null;
+	}
+
+	@Override
+	public boolean usingProxy() {
+		return false;
+	}
+}
@@ -0,0 +1,176 @@
+package eu.ldbc.semanticpublishing.endpoint.embedded;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.openrdf.query.BooleanQuery;
+import org.openrdf.query.GraphQuery;
+import org.openrdf.query.Query;
+import org.openrdf.query.QueryLanguage;
+import org.openrdf.query.TupleQuery;
+import org.openrdf.query.resultio.QueryResultIO;
+import org.openrdf.query.resultio.TupleQueryResultFormat;
+import org.openrdf.query.resultio.sparqlxml.SPARQLBooleanXMLWriter;
+import org.openrdf.repository.Repository;
+import org.openrdf.repository.RepositoryConnection;
+import org.openrdf.repository.RepositoryException;
+import org.openrdf.repository.sail.SailRepository;
+import org.openrdf.rio.RDFFormat;
+import org.openrdf.rio.Rio;
+import org.openrdf.sail.memory.MemoryStore;
+import org.openrdf.sail.nativerdf.NativeStore;
+
+/**
+ * Executes requests against a Sesame repository through the RepositoryConnection API, a connection is opened for each request.
+ */
+public class RepositoryRequestHandler extends SparqlRequestHandler {
+	public static enum StoreType {
+		/** statements are kept in memory only */
+		MEMORY,
+		/** statements are stored on disk in a data directory and kept between runs */
+		NATIVE
+	}
+
+	private static final String BASE_URI = "http://www.ldbc.eu/embedded/";
+
+	private static final ConcurrentHashMap<TupleQueryResultFormat, Boolean> availableWriters = new ConcurrentHashMap<TupleQueryResultFormat, Boolean>();
+
+	private final Repository repository;
+	private final String description;
+
+	public RepositoryRequestHandler(Repository repository) {
+		this(repository, repository.getClass().getSimpleName());
+	}
+
+	private RepositoryRequestHandler(Repository repository, String description) {
+		this.repository = repository;
+		this.description = description;
+	}
+
+	/**
+	 * @param storeType - memory or native (case insensitive)
+	 */
+	public static StoreType parseStoreType(String storeType) {
+		try {
+			return StoreType.valueOf(storeType.trim().toUpperCase());
+		} catch (IllegalArgumentException iae) {
+			throw new IllegalArgumentException("RepositoryRequestHandler : unsupported store type : '" + storeType + "', supported : memory, native");
+		}
+	}
+
+	/**
+	 * Creates and initializes a repository of given type
+	 * @param dataDir - data directory of a native store
+	 */
+	public static RepositoryRequestHandler create(StoreType storeType, String dataDir) throws RepositoryException {
+		Repository repository;
+		String description;
+		if (storeType == StoreType.NATIVE) {
+			if (dataDir == null || dataDir.trim().isEmpty()) {
+				throw new IllegalArgumentException("RepositoryRequestHandler : a data directory is required for a native store");
+			}
+			repository = new SailRepository(new NativeStore(new File(dataDir.trim())));
+			description = "native, " + dataDir.trim();
+		} else {
+			repository = new SailRepository(new MemoryStore());
+			description = "memory";
+		}
+		repository.initialize();
+		return new RepositoryRequestHandler(repository, description);
+	}
+
+	@Override
+	protected void executeQuery(String queryString, String accept, Response response) throws Exception {
+		RepositoryConnection connection = repository.getConnection();
+		try {
+			Query query = connection.prepareQuery(QueryLanguage.SPARQL, queryString, BASE_URI);
+			if (query instanceof GraphQuery) {
+				RDFFormat format = RDFFormat.RDFXML;
+				for (String mediaType : acceptedMediaTypes(accept)) {
+					if (Rio.getWriterFormatForMIMEType(mediaType) != null) {
+						format = Rio.getWriterFormatForMIMEType(mediaType);
+						break;
+					}
+				}
+				OutputStream out = response.send(200, format.getDefaultMIMEType(), -1);
+				((GraphQuery)query).evaluate(Rio.createWriter(format, out));
+				out.flush();
+			} else if (query instanceof BooleanQuery) {
+				boolean result = ((BooleanQuery)query).evaluate();
+				OutputStream out = response.send(200, CONTENT_TYPE_SPARQL_RESULTS_XML, -1);
+				new SPARQLBooleanXMLWriter(out).write(result);
+				out.flush();
+			} else {
+				TupleQueryResultFormat format = TupleQueryResultFormat.SPARQL;
+				for (String mediaType : acceptedMediaTypes(accept)) {
+					if (isWriterAvailable(QueryResultIO.getWriterFormatForMIMEType(mediaType))) {
+						format = QueryResultIO.getWriterFormatForMIMEType(mediaType);
+						break;
+					}
+				}
+				OutputStream out = response.send(200, format.getDefaultMIMEType(), -1);
+				((TupleQuery)query).evaluate(QueryResultIO.createWriter(format, out));
+				out.flush();
+			}
+		} finally {
+			connection.close();
+		}
+	}
+
+	/**
+	 * Some writers depend on libraries which may not be on the classpath, e.g. the JSON writer
+	 */
+	private static boolean isWriterAvailable(TupleQueryResultFormat format) {
+		if (format == null) {
+			return false;
+		}
+		Boolean available = availableWriters.get(format);
+		if (available == null) {
+			try {
+				QueryResultIO.createWriter(format, new ByteArrayOutputStream());
+				available = Boolean.TRUE;
+			} catch (Throwable t) {
+				available = Boolean.FALSE;
+			}
+			availableWriters.put(format, available);
+		}
+		return available.booleanValue();
+	}
+
+	@Override
+	protected void executeUpdate(String updateString) throws Exception {
+		RepositoryConnection connection = repository.getConnection();
+		try {
+			connection.prepareUpdate(QueryLanguage.SPARQL, updateString, BASE_URI).execute();
+		} finally {
+			connection.close();
+		}
+	}
+
+	@Override
+	protected void addStatements(InputStream body, RDFFormat format) throws Exception {
+		RepositoryConnection connection = repository.getConnection();
+		try {
+			connection.add(body, BASE_URI, format);
+		} finally {
+			connection.close();
+		}
+	}
+
+	@Override
+	public String toString() {
+		return description;
+	}
+
+	@Override
+	public void shutDown() {
+		try {
+			repository.shutDown();
+		} catch (RepositoryException e) {
+			System.out.println("RepositoryRequestHandler : failed to shut down the repository : " + e.getMessage());
+		}
+	}
+}
@@ -0,0 +1,171 @@
+package eu.ldbc.semanticpublishing.endpoint.embedded;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+import org.openrdf.query.MalformedQueryException;
+import org.openrdf.rio.RDFFormat;
+import org.openrdf.rio.Rio;
+
+/**
+ * Handles a request of the SPARQL protocol independently of the transport, used by the embedded HTTP endpoint and for
+ * in-process execution. Queries and updates are accepted as form encoded 'query' and 'update' parameters (or as
+ * application/sparql-query and application/sparql-update bodies), any other content type is treated as RDF data to be
+ * added. Requests may be gzip encoded.
+ */
+public abstract class SparqlRequestHandler {
+	public static final String CONTENT_TYPE_SPARQL_RESULTS_XML = "application/sparql-results+xml";
+	public static final String CONTENT_TYPE_RDFXML = "application/rdf+xml";
+	private static final String CONTENT_TYPE_FORM = "application/x-www-form-urlencoded";
+	private static final String CONTENT_TYPE_SPARQL_QUERY = "application/sparql-query";
+	private static final String CONTENT_TYPE_SPARQL_UPDATE = "application/sparql-update";
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	/**
+	 * Receives the response of a request, only one of the methods is called for each request
+	 */
+	public interface Response {
+		/**
+		 * @param length - length of the body, -1 if not known in advance
+		 * @return stream for the response body
+		 */
+		public OutputStream send(int code, String contentType, long length) throws IOException;
+
+		/**
+		 * Sends a response without a body
+		 */
+		public void sendEmpty(int code) throws IOException;
+	}
+
+	/**
+	 * @param method - GET or POST
+	 * @param rawQueryString - URL encoded query string of a GET request, may be null
+	 * @param contentType - content type of the request body, may be null
+	 * @param contentEncoding - content encoding of the request body, may be null
+	 * @param accept - requested content type of the response, may be null
+	 */
+	public void handle(String method, String rawQueryString, String contentType, String contentEncoding, String accept, InputStream body, Response response) throws IOException {
+		try {
+			if (contentEncoding != null && contentEncoding.equalsIgnoreCase("gzip")) {
+				body = new GZIPInputStream(body, BUFFER_SIZE);
+			}
+			String mediaType = mediaType(contentType);
+
+			String queryString = null;
+			String updateString = null;
+			if (method.equalsIgnoreCase("GET")) {
+				queryString = parseForm(rawQueryString).get("query");
+			} else if (mediaType.equals(CONTENT_TYPE_FORM)) {
+				Map<String, String> form = parseForm(new String(readFully(body), "UTF-8"));
+				queryString = form.get("query");
+				updateString = form.get("update");
+			} else if (mediaType.equals(CONTENT_TYPE_SPARQL_QUERY)) {
+				queryString = new String(readFully(body), "UTF-8");
+			} else if (mediaType.equals(CONTENT_TYPE_SPARQL_UPDATE)) {
+				updateString = new String(readFully(body), "UTF-8");
+			}
+
+			if (queryString != null) {
+				executeQuery(queryString, accept, response);
+			} else if (updateString != null) {
+				executeUpdate(updateString);
+				response.sendEmpty(204);
+			} else if (method.equalsIgnoreCase("POST")) {
+				RDFFormat format = Rio.getParserFormatForMIMEType(mediaType);
+				if (format == null) {
+					sendError(response, 415, "Unsupported content type : " + contentType);
+					return;
+				}
+				addStatements(body, format);
+				response.sendEmpty(204);
+			} else {
+				sendError(response, 400, "Missing query parameter");
+			}
+		} catch (MalformedQueryException e) {
+			sendError(response, 400, "Malformed query : " + e.getMessage());
+		} catch (IOException e) {
+			throw e;
+		} catch (Exception e) {
+			sendError(response, 500, e.getClass().getSimpleName() + " : " + e.getMessage());
+		}
+	}
+
+	/**
+	 * @param accept - value of the Accept header, may be null
+	 */
+	protected abstract void executeQuery(String queryString, String accept, Response response) throws Exception;
+
+	protected abstract void executeUpdate(String updateString) throws Exception;
+
+	protected abstract void addStatements(InputStream body, RDFFormat format) throws Exception;
+
+	/**
+	 * Releases resources held by the handler
+	 */
+	public void shutDown() {
+	}
+
+	private static void sendError(Response response, int code, String message) throws IOException {
+		byte[] body = message.getBytes("UTF-8");
+		OutputStream out = response.send(code, "text/plain; charset=utf-8", body.length);
+		out.write(body);
+		out.flush();
+	}
+
+	/**
+	 * @return the media type without parameters, lower case, empty string if not set
+	 */
+	protected static String mediaType(String contentType) {
+		if (contentType == null) {
+			return "";
+		}
+		int semicolon = contentType.indexOf(';');
+		return (semicolon >= 0 ? contentType.substring(0, semicolon) : contentType).trim().toLowerCase();
+	}
+
+	/**
+	 * @param accept - value of an Accept header, may be null
+	 * @return media types of the header without parameters, in their order
+	 */
+	protected static List<String> acceptedMediaTypes(String accept) {
+		List<String> mediaTypes = new ArrayList<String>();
+		if (accept != null) {
+			for (String contentType : accept.split(",")) {
+				mediaTypes.add(mediaType(contentType));
+			}
+		}
+		return mediaTypes;
+	}
+
+	private static Map<String, String> parseForm(String form) throws IOException {
+		Map<String, String> parameters = new HashMap<String, String>();
+		if (form == null) {
+			return parameters;
+		}
+		for (String pair : form.split("&")) {
+			int equals = pair.indexOf('=');
+			if (equals > 0) {
+				parameters.put(URLDecoder.decode(pair.substring(0, equals), "UTF-8"), URLDecoder.decode(pair.substring(equals + 1), "UTF-8"));
+			}
+		}
+		return parameters;
+	}
+
+	protected static byte[] readFully(InputStream is) throws IOException {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		byte[] buffer = new byte[BUFFER_SIZE];
+		int read;
+		while ((read = is.read(buffer)) != -1) {
+			baos.write(buffer, 0, read);
+		}
+		return baos.toByteArray();
+	}
+}
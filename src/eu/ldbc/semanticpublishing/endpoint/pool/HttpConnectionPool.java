@@ -0,0 +1,256 @@
+package eu.ldbc.semanticpublishing.endpoint.pool;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URL;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ * A pool of keep-alive HTTP connections. Connections are grouped by endpoint (scheme, host and port),
+ * each endpoint is bounded to a maximum number of connections in use. Idle connections are reused in
+ * LIFO order and are evicted when kept idle longer than the configured idle timeout.
+ */
+public class HttpConnectionPool {
+	private final int maxConnectionsPerEndpoint;
+	private final long idleTimeoutMilliseconds;
+	private final long idleTimeoutNanos;
+	private final ConcurrentHashMap<String, EndpointPool> endpointPools;
+
+	private final AtomicLong createdCount = new AtomicLong(0);
+	private final AtomicLong reusedCount = new AtomicLong(0);
+	private final AtomicLong evictedCount = new AtomicLong(0);
+
+	public HttpConnectionPool(int maxConnectionsPerEndpoint, long idleTimeoutMilliseconds) {
+		if (maxConnectionsPerEndpoint <= 0) {
+			throw new IllegalArgumentException("Maximum connections per endpoint must be a positive number : " + maxConnectionsPerEndpoint);
+		}
+		this.maxConnectionsPerEndpoint = maxConnectionsPerEndpoint;
+		this.idleTimeoutMilliseconds = idleTimeoutMilliseconds;
+		this.idleTimeoutNanos = idleTimeoutMilliseconds * 1000000L;
+		this.endpointPools = new ConcurrentHashMap<String, EndpointPool>();
+	}
+
+	/**
+	 * Leases a connection to the endpoint of given URL. An idle connection is reused if available, otherwise a new one is opened.
+	 * Every leased connection must be returned with release().
+	 * @param url - the requested URL
+	 * @param timeoutMilliseconds - time to wait for a free connection slot, also used as a connect timeout
+	 * @param forceNew - skip idle connections and open a new one, e.g. when a reused connection turned out to be stale
+	 * @throws IOException if no connection slot became available in time or connection could not be established
+	 */
+	public PooledConnection acquire(URL url, int timeoutMilliseconds, boolean forceNew) throws IOException {
+		String endpointKey = endpointKey(url);
+		EndpointPool endpointPool = getEndpointPool(endpointKey);
+
+		try {
+			if (timeoutMilliseconds > 0) {
+				if (!endpointPool.permits.tryAcquire(timeoutMilliseconds, TimeUnit.MILLISECONDS)) {
+					throw new IOException("HttpConnectionPool : no free connection to " + endpointKey + " within " + timeoutMilliseconds + " ms, pool limit : " + maxConnectionsPerEndpoint);
+				}
+			} else {
+				endpointPool.permits.acquire();
+			}
+		} catch (InterruptedException ie) {
+			throw new IOException("HttpConnectionPool : interrupted while waiting for a free connection to " + endpointKey);
+		}
+
+		try {
+			PooledConnection connection = null;
+			if (!forceNew) {
+				connection = pollIdle(endpointPool);
+			}
+
+			if (connection != null) {
+				connection.setReused(true);
+				reusedCount.incrementAndGet();
+				return connection;
+			}
+
+			connection = openConnection(endpointKey, url, timeoutMilliseconds);
+			createdCount.incrementAndGet();
+			return connection;
+		} catch (IOException ioe) {
+			endpointPool.permits.release();
+			throw ioe;
+		} catch (RuntimeException re) {
+			endpointPool.permits.release();
+			throw re;
+		}
+	}
+
+	/**
+	 * Returns a leased connection to the pool.
+	 * @param connection - the connection
+	 * @param reusable - false if the connection can not be used for another request (e.g. response was not fully read or server requested a close), it is closed then
+	 */
+	public void release(PooledConnection connection, boolean reusable) {
+		EndpointPool endpointPool = getEndpointPool(connection.getEndpointKey());
+
+		if (reusable && connection.isOpen()) {
+			connection.setLastUsedNanos(System.nanoTime());
+			endpointPool.idleConnections.offerFirst(connection);
+		} else {
+			connection.close();
+		}
+
+		endpointPool.permits.release();
+		evictExpired(endpointPool);
+	}
+
+	/**
+	 * Closes all idle connections which have exceeded the idle timeout.
+	 */
+	public void evictIdleConnections() {
+		for (EndpointPool endpointPool : endpointPools.values()) {
+			evictExpired(endpointPool);
+		}
+	}
+
+	/**
+	 * Closes all idle connections, connections in use are closed when released.
+	 */
+	public void shutdown() {
+		for (EndpointPool endpointPool : endpointPools.values()) {
+			PooledConnection connection;
+			while ((connection = endpointPool.idleConnections.pollFirst()) != null) {
+				connection.close();
+			}
+		}
+	}
+
+	private PooledConnection pollIdle(EndpointPool endpointPool) {
+		PooledConnection connection;
+		long now = System.nanoTime();
+
+		while ((connection = endpointPool.idleConnections.pollFirst()) != null) {
+			if (isExpired(connection, now) || !connection.isOpen()) {
+				connection.close();
+				evictedCount.incrementAndGet();
+				continue;
+			}
+			return connection;
+		}
+		return null;
+	}
+
+	private void evictExpired(EndpointPool endpointPool) {
+		long now = System.nanoTime();
+
+		//least recently used connections are at the tail of the deque
+		Iterator<PooledConnection> iterator = endpointPool.idleConnections.descendingIterator();
+		while (iterator.hasNext()) {
+			PooledConnection connection = iterator.next();
+			if (!isExpired(connection, now)) {
+				break;
+			}
+			if (endpointPool.idleConnections.removeLastOccurrence(connection)) {
+				connection.close();
+				evictedCount.incrementAndGet();
+			}
+		}
+	}
+
+	private boolean isExpired(PooledConnection connection, long now) {
+		return idleTimeoutNanos > 0 && (now - connection.getLastUsedNanos()) > idleTimeoutNanos;
+	}
+
+	private PooledConnection openConnection(String endpointKey, URL url, int timeoutMilliseconds) throws IOException {
+		boolean https = "https".equalsIgnoreCase(url.getProtocol());
+		int port = url.getPort() != -1 ? url.getPort() : url.getDefaultPort();
+
+		Socket socket = new Socket();
+		try {
+			socket.setTcpNoDelay(true);
+			socket.setKeepAlive(true);
+			socket.connect(new InetSocketAddress(url.getHost(), port), timeoutMilliseconds);
+			if (https) {
+				socket = ((SSLSocketFactory)SSLSocketFactory.getDefault()).createSocket(socket, url.getHost(), port, true);
+			}
+			return new PooledConnection(endpointKey, socket);
+		} catch (IOException ioe) {
+			try {
+				socket.close();
+			} catch (IOException e) {
+				//sink the exception, reporting the original one
+			}
+			throw ioe;
+		}
+	}
+
+	private EndpointPool getEndpointPool(String endpointKey) {
+		EndpointPool endpointPool = endpointPools.get(endpointKey);
+		if (endpointPool == null) {
+			endpointPools.putIfAbsent(endpointKey, new EndpointPool(maxConnectionsPerEndpoint));
+			endpointPool = endpointPools.get(endpointKey);
+		}
+		return endpointPool;
+	}
+
+	private static String endpointKey(URL url) {
+		int port = url.getPort() != -1 ? url.getPort() : url.getDefaultPort();
+		return url.getProtocol().toLowerCase() + "://" + url.getHost().toLowerCase() + ":" + port;
+	}
+
+	public int getMaxConnectionsPerEndpoint() {
+		return maxConnectionsPerEndpoint;
+	}
+
+	public long getIdleTimeoutMilliseconds() {
+		return idleTimeoutMilliseconds;
+	}
+
+	/**
+	 * @return number of connections opened by the pool
+	 */
+	public long getCreatedCount() {
+		return createdCount.get();
+	}
+
+	/**
+	 * @return number of times an idle connection has been reused for a request
+	 */
+	public long getReusedCount() {
+		return reusedCount.get();
+	}
+
+	/**
+	 * @return number of idle connections closed because of idle timeout or being closed by the server
+	 */
+	public long getEvictedCount() {
+		return evictedCount.get();
+	}
+
+	public int getLeasedCount() {
+		int leased = 0;
+		for (EndpointPool endpointPool : endpointPools.values()) {
+			leased += maxConnectionsPerEndpoint - endpointPool.permits.availablePermits();
+		}
+		return leased;
+	}
+
+	public int getIdleCount() {
+		int idle = 0;
+		for (EndpointPool endpointPool : endpointPools.values()) {
+			idle += endpointPool.idleConnections.size();
+		}
+		return idle;
+	}
+
+	private static class EndpointPool {
+		private final Semaphore permits;
+		private final LinkedBlockingDeque<PooledConnection> idleConnections;
+
+		private EndpointPool(int maxConnections) {
+			this.permits = new Semaphore(maxConnections, true);
+			this.idleConnections = new LinkedBlockingDeque<PooledConnection>();
+		}
+	}
+}
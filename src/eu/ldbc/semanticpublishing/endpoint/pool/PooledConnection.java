@@ -0,0 +1,80 @@
+package eu.ldbc.semanticpublishing.endpoint.pool;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+
+/**
+ * A socket kept open between HTTP requests, owned by an HttpConnectionPool.
+ * Input and output streams are buffered once and reused for the whole life of the socket.
+ */
+public class PooledConnection {
+	private static final int BUFFER_SIZE_BYTES = 16 * 1024;
+
+	private final String endpointKey;
+	private final Socket socket;
+	private final InputStream inputStream;
+	private final OutputStream outputStream;
+	//System.nanoTime() of the last release, so that idle time is not affected by changes of the wall clock
+	private long lastUsedNanos;
+	private boolean reused;
+
+	public PooledConnection(String endpointKey, Socket socket) throws IOException {
+		this.endpointKey = endpointKey;
+		this.socket = socket;
+		this.inputStream = new BufferedInputStream(socket.getInputStream(), BUFFER_SIZE_BYTES);
+		this.outputStream = new BufferedOutputStream(socket.getOutputStream(), BUFFER_SIZE_BYTES);
+		this.lastUsedNanos = System.nanoTime();
+		this.reused = false;
+	}
+
+	public String getEndpointKey() {
+		return endpointKey;
+	}
+
+	public Socket getSocket() {
+		return socket;
+	}
+
+	public InputStream getInputStream() {
+		return inputStream;
+	}
+
+	public OutputStream getOutputStream() {
+		return outputStream;
+	}
+
+	public long getLastUsedNanos() {
+		return lastUsedNanos;
+	}
+
+	public void setLastUsedNanos(long lastUsedNanos) {
+		this.lastUsedNanos = lastUsedNanos;
+	}
+
+	/**
+	 * @return true if the connection has already served a request before the current one
+	 */
+	public boolean isReused() {
+		return reused;
+	}
+
+	public void setReused(boolean reused) {
+		this.reused = reused;
+	}
+
+	public boolean isOpen() {
+		return !socket.isClosed() && socket.isConnected() && !socket.isInputShutdown() && !socket.isOutputShutdown();
+	}
+
+	public void close() {
+		try {
+			socket.close();
+		} catch (IOException e) {
+			//sink the exception, connection is being discarded anyway
+		}
+	}
+}
@@ -0,0 +1,751 @@
+package eu.ldbc.semanticpublishing.endpoint.pool;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.ProtocolException;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * An HttpURLConnection executing HTTP/1.1 requests over keep-alive connections leased from an HttpConnectionPool.
+ * The request body is buffered and sent on connect(), or sent while being written in chunked streaming mode.
+ * The connection is returned to the pool once the response body has been read, or on disconnect(), which unlike
+ * the JDK's implementation does not close a connection which can still be reused.
+ */
+public class PooledHttpURLConnection extends HttpURLConnection {
+	private static final String CRLF = "\r\n";
+	private static final byte[] CRLF_BYTES = { '\r', '\n' };
+	private static final byte[] LAST_CHUNK_BYTES = { '0', '\r', '\n', '\r', '\n' };
+	private static final int MAX_DRAIN_ON_CLOSE_BYTES = 64 * 1024;
+
+	private final HttpConnectionPool pool;
+	//released by abort() from another thread, read once into a local variable before use
+	private volatile PooledConnection pooledConnection;
+	private final ReentrantLock releaseLock = new ReentrantLock();
+	private ByteArrayOutputStream requestBody;
+	private ChunkedOutputStream streamingRequestBody;
+	private Map<String, List<String>> responseHeaders;
+	private List<String> responseHeaderKeys;
+	private List<String> responseHeaderValues;
+	private ResponseBodyInputStream responseBody;
+	private boolean keepAlive;
+	private boolean requestSent;
+	private volatile boolean aborted;
+	private boolean retryable;
+	private boolean reusedConnection;
+	private boolean responseStarted;
+	private boolean closedBeforeResponse;
+	private long acquireNanos;
+	private long sendNanos;
+
+	public PooledHttpURLConnection(URL url, HttpConnectionPool pool) {
+		super(url);
+		this.pool = pool;
+	}
+
+	@Override
+	public void connect() throws IOException {
+		if (requestSent) {
+			return;
+		}
+		if (streamingRequestBody != null) {
+			completeStreamingRequest();
+			return;
+		}
+		Map<String, List<String>> requestProperties = getRequestProperties();
+		connected = true;
+
+		try {
+			executeRequest(requestProperties, false);
+		} catch (IOException ioe) {
+			releaseConnection(false);
+			if (!isStaleConnectionFailure(ioe)) {
+				throw ioe;
+			}
+			try {
+				executeRequest(requestProperties, true);
+			} catch (IOException ioe2) {
+				releaseConnection(false);
+				throw ioe2;
+			}
+		}
+	}
+
+	/**
+	 * A connection kept idle could have been closed by the server in the meantime. Such a failure is detected by the connection
+	 * being closed or reset before any byte of the response has been received, a timeout means the server is processing the request.
+	 * @return true if the request can be sent once more on a new connection
+	 */
+	private boolean isStaleConnectionFailure(IOException ioe) {
+		if (!retryable || aborted || !reusedConnection || responseStarted || ioe instanceof SocketTimeoutException) {
+			return false;
+		}
+		return closedBeforeResponse || ioe instanceof SocketException;
+	}
+
+	private void executeRequest(Map<String, List<String>> requestProperties, boolean forceNewConnection) throws IOException {
+		long startNanos = System.nanoTime();
+		reusedConnection = false;
+		PooledConnection connection = pool.acquire(url, getConnectTimeout(), forceNewConnection);
+		pooledConnection = connection;
+		reusedConnection = connection.isReused();
+		long acquiredNanos = System.nanoTime();
+		acquireNanos += acquiredNanos - startNanos;
+		if (aborted) {
+			throw new IOException("PooledHttpURLConnection : request to " + url + " has been aborted");
+		}
+		connection.getSocket().setSoTimeout(getReadTimeout());
+
+		byte[] body = requestBody != null ? requestBody.toByteArray() : null;
+
+		OutputStream out = connection.getOutputStream();
+		writeRequestHead(out, requestProperties, body != null ? body.length : (method.equals("POST") || method.equals("PUT") ? 0 : -1));
+		if (body != null) {
+			out.write(body);
+		}
+		out.flush();
+		sendNanos += System.nanoTime() - acquiredNanos;
+
+		readResponseHead(connection.getInputStream());
+		requestSent = true;
+	}
+
+	/**
+	 * Sends the head of a request with a chunked body, the body is written to the connection directly
+	 */
+	private void beginStreamingRequest() throws IOException {
+		setRequestProperty("Transfer-Encoding", "chunked");
+		Map<String, List<String>> requestProperties = getRequestProperties();
+		connected = true;
+		PooledConnection connection;
+		try {
+			connection = pool.acquire(url, getConnectTimeout(), false);
+			pooledConnection = connection;
+			if (aborted) {
+				throw new IOException("PooledHttpURLConnection : request to " + url + " has been aborted");
+			}
+			connection.getSocket().setSoTimeout(getReadTimeout());
+			writeRequestHead(connection.getOutputStream(), requestProperties, -1);
+		} catch (IOException ioe) {
+			releaseConnection(false);
+			throw ioe;
+		}
+		streamingRequestBody = new ChunkedOutputStream(connection.getOutputStream(), chunkLength);
+	}
+
+	private void completeStreamingRequest() throws IOException {
+		try {
+			streamingRequestBody.close();
+			PooledConnection connection = pooledConnection;
+			if (connection == null) {
+				throw new IOException("PooledHttpURLConnection : request to " + url + " has been aborted");
+			}
+			readResponseHead(connection.getInputStream());
+		} catch (IOException ioe) {
+			releaseConnection(false);
+			throw ioe;
+		}
+		requestSent = true;
+	}
+
+	private void writeRequestHead(OutputStream out, Map<String, List<String>> requestProperties, long contentLength) throws IOException {
+		StringBuilder sb = new StringBuilder();
+
+		String file = url.getFile();
+		sb.append(method).append(' ').append(file.isEmpty() ? "/" : file).append(" HTTP/1.1").append(CRLF);
+		sb.append("Host: ").append(url.getHost());
+		if (url.getPort() != -1 && url.getPort() != url.getDefaultPort()) {
+			sb.append(':').append(url.getPort());
+		}
+		sb.append(CRLF);
+
+		boolean userAgentSet = false;
+		for (Map.Entry<String, List<String>> entry : requestProperties.entrySet()) {
+			if (entry.getKey() == null || entry.getKey().equalsIgnoreCase("Content-Length") || entry.getKey().equalsIgnoreCase("Host")) {
+				continue;
+			}
+			if (entry.getKey().equalsIgnoreCase("User-Agent")) {
+				userAgentSet = true;
+			}
+			for (String value : entry.getValue()) {
+				sb.append(entry.getKey()).append(": ").append(value).append(CRLF);
+			}
+		}
+		if (!userAgentSet) {
+			sb.append("User-Agent: Java/").append(System.getProperty("java.version")).append(CRLF);
+		}
+		if (contentLength >= 0) {
+			sb.append("Content-Length: ").append(contentLength).append(CRLF);
+		}
+		sb.append(CRLF);
+
+		out.write(sb.toString().getBytes("ISO-8859-1"));
+	}
+
+	private void readResponseHead(InputStream in) throws IOException {
+		responseStarted = false;
+		closedBeforeResponse = false;
+		int firstByte = in.read();
+		if (firstByte == -1) {
+			closedBeforeResponse = true;
+			throw new IOException("PooledHttpURLConnection : connection closed by server before a response was received from " + url);
+		}
+		responseStarted = true;
+		String remainder = readLine(in);
+		String statusLine = (char)firstByte + (remainder != null ? remainder : "");
+		while (true) {
+			parseStatusLine(statusLine);
+			readHeaders(in);
+			//skip interim responses, e.g. 100 Continue
+			if (responseCode < 100 || responseCode >= 200) {
+				break;
+			}
+			statusLine = readLine(in);
+			if (statusLine == null) {
+				throw new IOException("PooledHttpURLConnection : connection closed by server before a response was received from " + url);
+			}
+		}
+
+		boolean http11 = statusLine.startsWith("HTTP/1.1");
+		String connectionHeader = getHeaderField("Connection");
+		if (http11) {
+			keepAlive = connectionHeader == null || !connectionHeader.equalsIgnoreCase("close");
+		} else {
+			keepAlive = connectionHeader != null && connectionHeader.equalsIgnoreCase("keep-alive");
+		}
+
+		String transferEncoding = getHeaderField("Transfer-Encoding");
+		String contentLength = getHeaderField("Content-Length");
+
+		InputStream bodyStream;
+		if (method.equals("HEAD") || responseCode == HTTP_NO_CONTENT || responseCode == HTTP_NOT_MODIFIED) {
+			bodyStream = new FixedLengthInputStream(in, 0);
+		} else if (transferEncoding != null && transferEncoding.toLowerCase().contains("chunked")) {
+			bodyStream = new ChunkedInputStream(in);
+		} else if (contentLength != null) {
+			try {
+				bodyStream = new FixedLengthInputStream(in, Long.parseLong(contentLength.trim()));
+			} catch (NumberFormatException nfe) {
+				throw new IOException("PooledHttpURLConnection : invalid Content-Length : " + contentLength);
+			}
+		} else {
+			//body is delimited by closing the connection
+			keepAlive = false;
+			bodyStream = in;
+		}
+
+		responseBody = new ResponseBodyInputStream(bodyStream);
+	}
+
+	private void parseStatusLine(String statusLine) throws IOException {
+		//e.g. HTTP/1.1 200 OK
+		String[] tokens = statusLine.split(" ", 3);
+		if (tokens.length < 2 || !tokens[0].startsWith("HTTP/")) {
+			throw new IOException("PooledHttpURLConnection : invalid status line received : " + statusLine);
+		}
+		try {
+			responseCode = Integer.parseInt(tokens[1].trim());
+		} catch (NumberFormatException nfe) {
+			throw new IOException("PooledHttpURLConnection : invalid status line received : " + statusLine);
+		}
+		responseMessage = tokens.length > 2 ? tokens[2] : "";
+
+		responseHeaders = new LinkedHashMap<String, List<String>>();
+		responseHeaderKeys = new ArrayList<String>();
+		responseHeaderValues = new ArrayList<String>();
+		responseHeaderKeys.add(null);
+		responseHeaderValues.add(statusLine);
+	}
+
+	private void readHeaders(InputStream in) throws IOException {
+		String line;
+		while ((line = readLine(in)) != null && !line.isEmpty()) {
+			int colon = line.indexOf(':');
+			if (colon <= 0) {
+				continue;
+			}
+			String key = line.substring(0, colon).trim();
+			String value = line.substring(colon + 1).trim();
+
+			responseHeaderKeys.add(key);
+			responseHeaderValues.add(value);
+
+			List<String> values = null;
+			for (Map.Entry<String, List<String>> entry : responseHeaders.entrySet()) {
+				if (entry.getKey().equalsIgnoreCase(key)) {
+					values = entry.getValue();
+					break;
+				}
+			}
+			if (values == null) {
+				values = new ArrayList<String>();
+				responseHeaders.put(key, values);
+			}
+			values.add(value);
+		}
+	}
+
+	/**
+	 * Reads an ISO-8859-1 line terminated by CRLF (or LF)
+	 * @return the line without the terminator or null if end of stream was reached before reading any character
+	 */
+	static String readLine(InputStream in) throws IOException {
+		StringBuilder sb = new StringBuilder();
+		int c;
+		while ((c = in.read()) != -1) {
+			if (c == '\n') {
+				int length = sb.length();
+				if (length > 0 && sb.charAt(length - 1) == '\r') {
+					sb.setLength(length - 1);
+				}
+				return sb.toString();
+			}
+			sb.append((char)c);
+		}
+		return sb.length() > 0 ? sb.toString() : null;
+	}
+
+	@Override
+	public OutputStream getOutputStream() throws IOException {
+		if (!doOutput) {
+			throw new ProtocolException("cannot write to a URLConnection if doOutput=false - call setDoOutput(true)");
+		}
+		if (requestSent) {
+			throw new ProtocolException("Cannot write output after reading input.");
+		}
+		if (method.equals("GET")) {
+			method = "POST";
+		}
+		if (chunkLength > 0) {
+			if (streamingRequestBody == null) {
+				beginStreamingRequest();
+			}
+			return streamingRequestBody;
+		}
+		if (requestBody == null) {
+			requestBody = new ByteArrayOutputStream();
+		}
+		return requestBody;
+	}
+
+	@Override
+	public InputStream getInputStream() throws IOException {
+		connect();
+		if (responseCode >= 400) {
+			if (responseCode == HTTP_NOT_FOUND || responseCode == HTTP_GONE) {
+				throw new FileNotFoundException(url.toString());
+			}
+			throw new IOException("Server returned HTTP response code: " + responseCode + " for URL: " + url);
+		}
+		return responseBody;
+	}
+
+	@Override
+	public InputStream getErrorStream() {
+		if (requestSent && responseCode >= 400) {
+			return responseBody;
+		}
+		return null;
+	}
+
+	@Override
+	public int getResponseCode() throws IOException {
+		connect();
+		return responseCode;
+	}
+
+	@Override
+	public String getResponseMessage() throws IOException {
+		connect();
+		return responseMessage;
+	}
+
+	@Override
+	public String getHeaderField(String name) {
+		if (responseHeaders == null || name == null) {
+			return null;
+		}
+		for (Map.Entry<String, List<String>> entry : responseHeaders.entrySet()) {
+			if (entry.getKey().equalsIgnoreCase(name)) {
+				List<String> values = entry.getValue();
+				return values.get(values.size() - 1);
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public Map<String, List<String>> getHeaderFields() {
+		if (responseHeaders == null) {
+			return Collections.emptyMap();
+		}
+		return Collections.unmodifiableMap(responseHeaders);
+	}
+
+	@Override
+	public String getHeaderFieldKey(int n) {
+		if (responseHeaderKeys == null || n < 0 || n >= responseHeaderKeys.size()) {
+			return null;
+		}
+		return responseHeaderKeys.get(n);
+	}
+
+	@Override
+	public String getHeaderField(int n) {
+		if (responseHeaderValues == null || n < 0 || n >= responseHeaderValues.size()) {
+			return null;
+		}
+		return responseHeaderValues.get(n);
+	}
+
+	/**
+	 * Allows a request failing on a stale keep-alive connection to be sent once more on a new connection. Only requests which
+	 * can be repeated without side effects, i.e. queries, should be retried, an update could have been applied already.
+	 */
+	public void setRetryable(boolean retryable) {
+		this.retryable = retryable;
+	}
+
+	/**
+	 * @return time spent acquiring a connection from the pool by connect(), including a retry on a new connection
+	 */
+	public long getAcquireNanos() {
+		return acquireNanos;
+	}
+
+	/**
+	 * @return time spent writing the buffered request by connect()
+	 */
+	public long getSendNanos() {
+		return sendNanos;
+	}
+
+	/**
+	 * Returns the connection to the pool. If the response body has not been fully read, the underlying
+	 * connection is closed as it can not be used for another request.
+	 */
+	@Override
+	public void disconnect() {
+		if (responseBody != null && !responseBody.isCompleted()) {
+			releaseConnection(false);
+		} else {
+			releaseConnection(keepAlive);
+		}
+	}
+
+	/**
+	 * Closes the underlying connection, may be called by another thread while a request is in progress,
+	 * which then fails with an IOException
+	 */
+	public void abort() {
+		aborted = true;
+		releaseConnection(false);
+	}
+
+	@Override
+	public boolean usingProxy() {
+		return false;
+	}
+
+	private void releaseConnection(boolean reusable) {
+		releaseLock.lock();
+		try {
+			if (pooledConnection != null) {
+				pool.release(pooledConnection, reusable);
+				pooledConnection = null;
+			}
+		} finally {
+			releaseLock.unlock();
+		}
+	}
+
+	/**
+	 * Wraps the framed response body, returns the connection to the pool when end of the body has been reached
+	 */
+	private class ResponseBodyInputStream extends InputStream {
+		private final InputStream in;
+		private boolean completed = false;
+		private boolean closed = false;
+
+		private ResponseBodyInputStream(InputStream in) {
+			this.in = in;
+		}
+
+		@Override
+		public int read() throws IOException {
+			if (completed || closed) {
+				return -1;
+			}
+			return readBody(null, 0, 1);
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (completed || closed) {
+				return -1;
+			}
+			if (len == 0) {
+				return 0;
+			}
+			return readBody(b, off, len);
+		}
+
+		private int readBody(byte[] b, int off, int len) throws IOException {
+			int result;
+			try {
+				result = (b == null) ? in.read() : in.read(b, off, len);
+			} catch (IOException ioe) {
+				closed = true;
+				releaseConnection(false);
+				throw ioe;
+			}
+			if (result == -1) {
+				completed = true;
+				releaseConnection(keepAlive);
+			}
+			return result;
+		}
+
+		@Override
+		public int available() throws IOException {
+			if (completed || closed) {
+				return 0;
+			}
+			return in.available();
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			if (completed) {
+				return;
+			}
+
+			//try to consume a small remainder of the body, so that the connection can be reused
+			long drained = 0;
+			try {
+				byte[] buffer = new byte[4096];
+				int length;
+				while (drained < MAX_DRAIN_ON_CLOSE_BYTES && (length = in.read(buffer)) != -1) {
+					drained += length;
+				}
+				completed = drained < MAX_DRAIN_ON_CLOSE_BYTES;
+			} catch (IOException ioe) {
+				completed = false;
+			}
+			releaseConnection(completed && keepAlive);
+		}
+
+		private boolean isCompleted() {
+			return completed;
+		}
+	}
+
+	/**
+	 * Writes a request body with 'Transfer-Encoding: chunked', the last chunk is written on close()
+	 */
+	static class ChunkedOutputStream extends OutputStream {
+		private final OutputStream out;
+		private final byte[] buffer;
+		private int count = 0;
+		private boolean closed = false;
+
+		ChunkedOutputStream(OutputStream out, int chunkSize) {
+			this.out = out;
+			this.buffer = new byte[chunkSize];
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			if (closed) {
+				throw new IOException("PooledHttpURLConnection : request body has already been closed");
+			}
+			if (count == buffer.length) {
+				writeChunk();
+			}
+			buffer[count++] = (byte)b;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			if (closed) {
+				throw new IOException("PooledHttpURLConnection : request body has already been closed");
+			}
+			while (len > 0) {
+				if (count == buffer.length) {
+					writeChunk();
+				}
+				int length = Math.min(len, buffer.length - count);
+				System.arraycopy(b, off, buffer, count, length);
+				count += length;
+				off += length;
+				len -= length;
+			}
+		}
+
+		private void writeChunk() throws IOException {
+			if (count > 0) {
+				out.write((Integer.toHexString(count) + CRLF).getBytes("ISO-8859-1"));
+				out.write(buffer, 0, count);
+				out.write(CRLF_BYTES);
+				count = 0;
+			}
+		}
+
+		@Override
+		public void flush() throws IOException {
+			writeChunk();
+			out.flush();
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			writeChunk();
+			out.write(LAST_CHUNK_BYTES);
+			out.flush();
+		}
+	}
+
+	/**
+	 * Reads a body with a known length, given by the Content-Length header
+	 */
+	static class FixedLengthInputStream extends InputStream {
+		private final InputStream in;
+		private long remaining;
+
+		FixedLengthInputStream(InputStream in, long length) {
+			this.in = in;
+			this.remaining = length;
+		}
+
+		@Override
+		public int read() throws IOException {
+			if (remaining <= 0) {
+				return -1;
+			}
+			int b = in.read();
+			if (b == -1) {
+				throw new IOException("PooledHttpURLConnection : premature end of response body, " + remaining + " bytes missing");
+			}
+			remaining--;
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (remaining <= 0) {
+				return -1;
+			}
+			int length = in.read(b, off, (int)Math.min(len, remaining));
+			if (length == -1) {
+				throw new IOException("PooledHttpURLConnection : premature end of response body, " + remaining + " bytes missing");
+			}
+			remaining -= length;
+			return length;
+		}
+
+		@Override
+		public int available() throws IOException {
+			return (int)Math.min(in.available(), remaining);
+		}
+	}
+
+	/**
+	 * Reads a body sent with 'Transfer-Encoding: chunked'
+	 */
+	static class ChunkedInputStream extends InputStream {
+		private final InputStream in;
+		private long chunkRemaining = 0;
+		private boolean eof = false;
+
+		ChunkedInputStream(InputStream in) {
+			this.in = in;
+		}
+
+		private boolean nextChunk() throws IOException {
+			if (eof) {
+				return false;
+			}
+			if (chunkRemaining == 0) {
+				String sizeLine = readLine(in);
+				//CRLF terminating previous chunk's data
+				if (sizeLine != null && sizeLine.isEmpty()) {
+					sizeLine = readLine(in);
+				}
+				if (sizeLine == null) {
+					throw new IOException("PooledHttpURLConnection : premature end of chunked response body");
+				}
+				int extension = sizeLine.indexOf(';');
+				if (extension >= 0) {
+					sizeLine = sizeLine.substring(0, extension);
+				}
+				try {
+					chunkRemaining = Long.parseLong(sizeLine.trim(), 16);
+				} catch (NumberFormatException nfe) {
+					throw new IOException("PooledHttpURLConnection : invalid chunk size : " + sizeLine);
+				}
+				if (chunkRemaining == 0) {
+					//skip trailers
+					String trailer;
+					while ((trailer = readLine(in)) != null && !trailer.isEmpty()) {
+					}
+					eof = true;
+					return false;
+				}
+			}
+			return true;
+		}
+
+		@Override
+		public int read() throws IOException {
+			if (!nextChunk()) {
+				return -1;
+			}
+			int b = in.read();
+			if (b == -1) {
+				throw new IOException("PooledHttpURLConnection : premature end of chunked response body");
+			}
+			chunkRemaining--;
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (!nextChunk()) {
+				return -1;
+			}
+			int length = in.read(b, off, (int)Math.min(len, chunkRemaining));
+			if (length == -1) {
+				throw new IOException("PooledHttpURLConnection : premature end of chunked response body");
+			}
+			chunkRemaining -= length;
+			return length;
+		}
+
+		@Override
+		public int available() throws IOException {
+			if (eof) {
+				return 0;
+			}
+			return (int)Math.min(in.available(), chunkRemaining);
+		}
+	}
+}
@@ -76,6 +76,7 @@ public class CorrelationsWorker extends RandomWorker {
 
 		int cwsInFileCount = 0;
 		int currentTriplesCount = 0;
+		long fileStartNanos = 0;
 		int thirdEntityCountdown = 0;
 		int thirdEntityOutsideCorrelationCountdown = 0;
 		int correlationsMagnitudeForIteration = this.correlationsMagnitude;
@@ -86,6 +87,7 @@ public class CorrelationsWorker extends RandomWorker {
 		int thirdEntityInCorrelationOccurences = (int) ((365 * dataGenerationPeriodYears * correlationDurationPercent) / 10);
 		int thirdEntityOutsideCorrelationOccurences = (int) ((365 * dataGenerationPeriodYears * (correlationEntityLifespanPercent * 2 - correlationDurationPercent)) / 10) / 2;
 		
+		fileStartNanos = beginGeneratedFile();
 		os = new BufferedOutputStream(new FileOutputStream(fileName));
 		
 		//pick a random date starting from 1.Jan to the value of totalCorrelationPeriodDays
@@ -108,6 +110,7 @@ public class CorrelationsWorker extends RandomWorker {
 						if (compress) {
 							CompressionUtil.compressFile(fileName, true);
 						}
+						recordGeneratedFile(fileName, currentTriplesCount, fileStartNanos);
 						if (!silent && cwsInFileCount > 0) {
 							System.out.println(Thread.currentThread().getName() + " " + this.getClass().getSimpleName() + " :: Saving " + (compress ? "compressed " : "") + "file #" + currentFilesCount + " with " + String.format("%,d", cwsInFileCount) + " Creative Works. Generated triples so far: " + String.format("%,d", triplesGeneratedSoFar.get()) + ". Target: " + String.format("%,d", targetTriples) + " triples");
 						}
@@ -118,6 +121,7 @@ public class CorrelationsWorker extends RandomWorker {
 						currentFilesCount = filesCount.incrementAndGet();
 						fileName = String.format(FILENAME_FORMAT + rdfFormat.getDefaultFileExtension(), destinationPath, File.separator, currentFilesCount);
 	
+						fileStartNanos = beginGeneratedFile();
 						os = new BufferedOutputStream(new FileOutputStream(fileName));
 					}
 					
@@ -185,6 +189,7 @@ public class CorrelationsWorker extends RandomWorker {
 			if (compress) {
 				CompressionUtil.compressFile(fileName, true);
 			}
+			recordGeneratedFile(fileName, currentTriplesCount, fileStartNanos);
 			if (!silent && cwsInFileCount > 0) {
 				System.out.println(Thread.currentThread().getName() + " " + this.getClass().getSimpleName() + " :: Saving " + (compress ? "compressed " : "") + "file #" + currentFilesCount + " with " + String.format("%,d", cwsInFileCount) + " Creative Works. Generated triples so far: " + String.format("%,d", triplesGeneratedSoFar.get()) + ". Target: " + String.format("%,d", targetTriples) + " triples");
 			}
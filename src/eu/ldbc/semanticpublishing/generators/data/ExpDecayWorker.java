@@ -50,6 +50,7 @@ public class ExpDecayWorker extends RandomWorker {
 
 		int cwsInFileCount = 0;
 		int currentTriplesCount = 0;
+		long fileStartNanos = 0;
 
 		long currentFilesCount = filesCount.incrementAndGet();
 		String fileName = String.format(FILENAME_FORMAT + rdfFormat.getDefaultFileExtension(), destinationPath, File.separator, currentFilesCount);
@@ -64,6 +65,7 @@ public class ExpDecayWorker extends RandomWorker {
 		long iterationStep = 0;
 		
 		try {
+			fileStartNanos = beginGeneratedFile();
 			os = new BufferedOutputStream(new FileOutputStream(fileName));
 
 			for (int i = 0; i < exponentialDecayIerations.size(); i++) {
@@ -75,6 +77,7 @@ public class ExpDecayWorker extends RandomWorker {
 						if (compress) {
 							CompressionUtil.compressFile(fileName, true);
 						}
+						recordGeneratedFile(fileName, currentTriplesCount, fileStartNanos);
 						if (!silent && cwsInFileCount > 0) {
 							System.out.println(Thread.currentThread().getName() + " " + this.getClass().getSimpleName() + " :: Saving " + (compress ? "compressed " : "") + "file #" + currentFilesCount + " with " + String.format("%,d", cwsInFileCount) + " Creative Works. Generated triples so far: " + String.format("%,d", triplesGeneratedSoFar.get()) + ". Target: " + String.format("%,d", targetTriples) + " triples");
 						}
@@ -85,6 +88,7 @@ public class ExpDecayWorker extends RandomWorker {
 						currentFilesCount = filesCount.incrementAndGet();
 						fileName = String.format(FILENAME_FORMAT + rdfFormat.getDefaultFileExtension(), destinationPath, File.separator, currentFilesCount);						
 						
+						fileStartNanos = beginGeneratedFile();
 						os = new BufferedOutputStream(new FileOutputStream(fileName));
 					}
 					
@@ -119,6 +123,7 @@ public class ExpDecayWorker extends RandomWorker {
 			if (compress) {
 				CompressionUtil.compressFile(fileName, true);
 			}
+			recordGeneratedFile(fileName, currentTriplesCount, fileStartNanos);
 			if (!silent && cwsInFileCount > 0) {
 				System.out.println(Thread.currentThread().getName() + " " + this.getClass().getSimpleName() + " :: Saving " + (compress ? "compressed " : "") + "file #" + currentFilesCount + " with " + String.format("%,d", cwsInFileCount) + " Creative Works. Generated triples so far: " + String.format("%,d", triplesGeneratedSoFar.get()) + ". Target: " + String.format("%,d", targetTriples) + " triples");
 			}
@@ -13,6 +13,7 @@ import org.openrdf.rio.RDFHandlerException;
 import org.openrdf.rio.Rio;
 
 import eu.ldbc.semanticpublishing.generators.data.sesamemodelbuilders.CreativeWorkBuilder;
+import eu.ldbc.semanticpublishing.statistics.FlightRecorderEvents;
 import eu.ldbc.semanticpublishing.util.CompressionUtil;
 import eu.ldbc.semanticpublishing.util.RandomUtil;
 import eu.ldbc.semanticpublishing.util.SesameUtils;
@@ -34,6 +35,7 @@ public class RandomWorker extends AbstractAsynchronousWorker {
 	protected Object lock;
 	protected boolean compress;
 	protected boolean silent;
+	protected FlightRecorderEvents.Event generatedFileEvent;
 	
 	public RandomWorker(RandomUtil ru, Object lock, AtomicLong filesCount, long totalTriples, long triplesPerFile, AtomicLong triplesGeneratedSoFar, String destinationPath, String serializationFormat, boolean compress, boolean silent) {
 		this.ru = ru;
@@ -58,6 +60,7 @@ public class RandomWorker extends AbstractAsynchronousWorker {
 		
 		int cwsInFileCount = 0;
 		int currentTriplesCount = 0;
+		long fileStartNanos = 0;
 		
 		//skip data generation if targetTriples size has already been reached 
 		if (triplesGeneratedSoFar.get() > targetTriples) {
@@ -72,6 +75,7 @@ public class RandomWorker extends AbstractAsynchronousWorker {
 			}
 			
 			try {
+				fileStartNanos = beginGeneratedFile();
 				os = new BufferedOutputStream(new FileOutputStream(fileName));
 				
 				Model sesameModel;
@@ -102,6 +106,7 @@ public class RandomWorker extends AbstractAsynchronousWorker {
 				if (compress) {
 					CompressionUtil.compressFile(fileName, true);
 				}
+				recordGeneratedFile(fileName, currentTriplesCount, fileStartNanos);
 				if (!silent && cwsInFileCount > 0) {
 					System.out.println(Thread.currentThread().getName() + " " + this.getClass().getSimpleName() + " :: Saving " + (compress ? "compressed " : "") + "file #" + currentFilesCount + " with " + String.format("%,d", cwsInFileCount) + " Creative Works. Generated triples so far: " + String.format("%,d", triplesGeneratedSoFar.get()) + ". Target: " + String.format("%,d", targetTriples) + " triples");
 				}
@@ -121,6 +126,24 @@ public class RandomWorker extends AbstractAsynchronousWorker {
 		}
 	}
 	
+	/**
+	 * Begins a Flight Recorder event of a file, called when the file is opened
+	 * @return time the file has been opened at
+	 */
+	protected long beginGeneratedFile() {
+		generatedFileEvent = FlightRecorderEvents.beginGeneratedFile();
+		return System.nanoTime();
+	}
+	
+	/**
+	 * Records the Flight Recorder event of a written file, after it has been compressed if enabled
+	 * @param fileStartNanos - time the file has been opened at
+	 */
+	protected void recordGeneratedFile(String fileName, long triples, long fileStartNanos) {
+		FlightRecorderEvents.commitGeneratedFile(generatedFileEvent, compress ? fileName + ".gz" : fileName, triples, (System.nanoTime() - fileStartNanos) / 1000L);
+		generatedFileEvent = null;
+	}
+	
 	protected synchronized void flushClose(OutputStream fos) throws IOException {
 		if (fos != null) {
 			fos.flush();
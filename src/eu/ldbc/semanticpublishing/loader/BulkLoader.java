@@ -0,0 +1,469 @@
+package eu.ldbc.semanticpublishing.loader;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.GZIPInputStream;
+
+import org.openrdf.rio.RDFFormat;
+import org.openrdf.rio.RDFHandlerException;
+import org.openrdf.rio.RDFParseException;
+import org.openrdf.rio.RDFParser;
+import org.openrdf.rio.Rio;
+
+import eu.ldbc.semanticpublishing.util.RdfUtils;
+import eu.ldbc.semanticpublishing.util.UploadStatistics;
+import eu.ldbc.semanticpublishing.util.sesame.ChunkingRDFHandler;
+
+/**
+ * Loads RDF files into the database through a number of concurrent upload streams. Files are read by the calling
+ * thread and put into a bounded queue, so that only a limited number of chunks is kept in memory, and uploaded by
+ * the upload streams. Optionally files are split into chunks of a fixed number of statements, N-Quads files line by line,
+ * Turtle files are parsed and each chunk is serialized as a Turtle document. Statements with blank nodes are uploaded together
+ * in the last chunk of their file, as blank nodes are scoped to a request. A failed upload is retried with the same chunk.
+ * Progress is reported periodically, in bytes only if statements of whole files could not be counted.
+ * Compressed files (.nq.gz, .ttl.gz) are either sent as they are with Content-Encoding: gzip, or decompressed while
+ * being uploaded, no temporary files are created.
+ * Request bodies are streamed, the memory used by an upload does not depend on the size of the file. Read and send rates of
+ * each file are reported at the end.
+ */
+public class BulkLoader {
+	private static final long RETRY_BACKOFF_MILLISECONDS = 1000;
+	private static final int GZIP_BUFFER_SIZE_BYTES = 64 * 1024;
+	private static final String GZIP_EXTENSION = ".gz";
+	private static final String GZIP_CONTENT_ENCODING = "gzip";
+
+	private final String endpoint;
+	private final int uploadStreams;
+	private final int queueCapacity;
+	private final long statementsPerRequest;
+	private final int maxRetries;
+	private final int reportIntervalSeconds;
+	//cleared when the endpoint rejects compressed requests, files are decompressed afterwards
+	private final AtomicBoolean gzipContentEncoding;
+
+	private final AtomicLong loadedStatements = new AtomicLong(0);
+	private final AtomicLong loadedBytes = new AtomicLong(0);
+	private final AtomicLong loadedChunks = new AtomicLong(0);
+	private final AtomicLong retriedChunks = new AtomicLong(0);
+	//set when a whole file has been uploaded without counting its statements, i.e. a Turtle file or a compressed file sent as it is
+	private final AtomicBoolean uncountedStatements = new AtomicBoolean(false);
+	private final AtomicReference<IOException> failure = new AtomicReference<IOException>();
+	//upload statistics of each file, in the order of loading
+	private final Map<File, UploadStatistics> filesStatistics = new LinkedHashMap<File, UploadStatistics>();
+
+	//marks the end of the work queue for upload streams
+	private static final LoadChunk END_OF_QUEUE = new LoadChunk(null, -1, new byte[0], 0, null);
+
+	/**
+	 * @param endpoint - update endpoint statements are posted to
+	 * @param uploadStreams - number of concurrent uploads
+	 * @param queueCapacity - maximum number of chunks waiting for upload
+	 * @param statementsPerRequest - files are split into chunks of that many statements, 0 uploads whole files
+	 * @param maxRetries - number of times a failed upload is retried before loading is aborted
+	 * @param reportIntervalSeconds - interval of progress reports, 0 disables them
+	 * @param gzipContentEncoding - send compressed files with Content-Encoding: gzip instead of decompressing them, applies to whole files only
+	 */
+	public BulkLoader(String endpoint, int uploadStreams, int queueCapacity, long statementsPerRequest, int maxRetries, int reportIntervalSeconds, boolean gzipContentEncoding) {
+		this.endpoint = endpoint;
+		this.uploadStreams = Math.max(1, uploadStreams);
+		this.queueCapacity = Math.max(1, queueCapacity);
+		this.statementsPerRequest = statementsPerRequest;
+		this.maxRetries = Math.max(0, maxRetries);
+		this.reportIntervalSeconds = reportIntervalSeconds;
+		this.gzipContentEncoding = new AtomicBoolean(gzipContentEncoding);
+	}
+
+	/**
+	 * Loads given files, files with extension other than .nq, .ttl, .nq.gz or .ttl.gz are skipped. Blocks until all files are loaded.
+	 * @return number of loaded files
+	 * @throws IOException if a chunk could not be loaded after all retries
+	 */
+	public int load(List<File> files) throws IOException {
+		final BlockingQueue<LoadChunk> queue = new ArrayBlockingQueue<LoadChunk>(queueCapacity);
+		final CountDownLatch uploadStreamsLatch = new CountDownLatch(uploadStreams);
+		for (int i = 0; i < uploadStreams; i++) {
+			Thread uploadStream = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						upload(queue);
+					} finally {
+						uploadStreamsLatch.countDown();
+					}
+				}
+			}, "BulkLoader-" + i);
+			uploadStream.setDaemon(true);
+			uploadStream.start();
+		}
+
+		final long startTime = System.currentTimeMillis();
+		ScheduledExecutorService reporter = null;
+		if (reportIntervalSeconds > 0) {
+			reporter = Executors.newSingleThreadScheduledExecutor();
+			reporter.scheduleAtFixedRate(new Runnable() {
+				private long previousStatements = 0;
+				private long previousBytes = 0;
+				@Override
+				public void run() {
+					long statements = loadedStatements.get();
+					long bytes = loadedBytes.get();
+					long timeMs = Math.max(1, System.currentTimeMillis() - startTime);
+					if (uncountedStatements.get()) {
+						System.out.println(String.format("\t%.1f MB loaded (%.1f MB per second, %.1f MB per second average)", bytes / (1024.0 * 1024.0), (bytes - previousBytes) / (1024.0 * 1024.0) / reportIntervalSeconds, bytes * 1000.0 / (1024.0 * 1024.0) / timeMs));
+					} else {
+						System.out.println(String.format("\t%,d statements, %.1f MB loaded (%.1f statements per second, %.1f statements per second average)", statements, bytes / (1024.0 * 1024.0), (double)(statements - previousStatements) / reportIntervalSeconds, statements * 1000.0 / timeMs));
+					}
+					previousStatements = statements;
+					previousBytes = bytes;
+				}
+			}, reportIntervalSeconds, reportIntervalSeconds, TimeUnit.SECONDS);
+		}
+
+		int filesCount = 0;
+		try {
+			try {
+				for (File file : files) {
+					if (failure.get() != null) {
+						break;
+					}
+					String contentType = getContentType(file);
+					if (contentType == null) {
+						continue;
+					}
+					System.out.println("\tloading " + file.getName());
+					enqueueFile(queue, file, contentType);
+					filesCount++;
+				}
+			} catch (IOException e) {
+				//upload streams skip the remaining chunks
+				failure.compareAndSet(null, e);
+			} finally {
+				for (int i = 0; i < uploadStreams; i++) {
+					queue.put(END_OF_QUEUE);
+				}
+			}
+			uploadStreamsLatch.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("BulkLoader : interrupted while loading files");
+		} finally {
+			if (reporter != null) {
+				reporter.shutdownNow();
+			}
+		}
+
+		if (failure.get() != null) {
+			throw failure.get();
+		}
+
+		reportFilesStatistics();
+
+		long timeMs = Math.max(1, System.currentTimeMillis() - startTime);
+		if (uncountedStatements.get()) {
+			System.out.println(String.format("\t%.1f MB loaded from %d files in %d chunks (%d retried), %.1f MB per second, statements of Turtle or compressed files uploaded whole are not counted", loadedBytes.get() / (1024.0 * 1024.0), filesCount, loadedChunks.get(), retriedChunks.get(), loadedBytes.get() * 1000.0 / (1024.0 * 1024.0) / timeMs));
+		} else {
+			System.out.println(String.format("\t%,d statements, %.1f MB loaded from %d files in %d chunks (%d retried), %.1f statements per second", loadedStatements.get(), loadedBytes.get() / (1024.0 * 1024.0), filesCount, loadedChunks.get(), retriedChunks.get(), loadedStatements.get() * 1000.0 / timeMs));
+		}
+		return filesCount;
+	}
+
+	public long getLoadedStatementsCount() {
+		return loadedStatements.get();
+	}
+
+	private void enqueueFile(final BlockingQueue<LoadChunk> queue, final File file, final String contentType) throws IOException, InterruptedException {
+		synchronized (filesStatistics) {
+			filesStatistics.put(file, new UploadStatistics());
+		}
+		if (statementsPerRequest <= 0) {
+			queue.put(new LoadChunk(file, contentType, isCompressed(file)));
+		} else if (contentType.equals(RdfUtils.CONTENT_TYPE_TURTLE)) {
+			enqueueTurtleChunks(queue, file, contentType);
+		} else {
+			enqueueLineChunks(queue, file, contentType);
+		}
+	}
+
+	/**
+	 * Splits a line based file (N-Quads), where each line holds a single statement. Lines with a blank node are kept in a separate chunk, enqueued last.
+	 */
+	private void enqueueLineChunks(BlockingQueue<LoadChunk> queue, File file, String contentType) throws IOException, InterruptedException {
+		BufferedReader reader = new BufferedReader(new InputStreamReader(openFile(file), "UTF-8"));
+		try {
+			int chunkIndex = 0;
+			ByteArrayOutputStream chunkStream = new ByteArrayOutputStream();
+			Writer chunkWriter = new OutputStreamWriter(chunkStream, "UTF-8");
+			long chunkStatementsCount = 0;
+			ByteArrayOutputStream blankNodesChunkStream = new ByteArrayOutputStream();
+			Writer blankNodesChunkWriter = new OutputStreamWriter(blankNodesChunkStream, "UTF-8");
+			long blankNodesStatementsCount = 0;
+			String line;
+			while ((line = reader.readLine()) != null && failure.get() == null) {
+				if (isStatementLine(line) && hasBlankNode(line)) {
+					blankNodesChunkWriter.write(line);
+					blankNodesChunkWriter.write('\n');
+					blankNodesStatementsCount++;
+					continue;
+				}
+				chunkWriter.write(line);
+				chunkWriter.write('\n');
+				if (isStatementLine(line) && ++chunkStatementsCount >= statementsPerRequest) {
+					chunkWriter.flush();
+					queue.put(new LoadChunk(file, chunkIndex++, chunkStream.toByteArray(), chunkStatementsCount, contentType));
+					chunkStream.reset();
+					chunkStatementsCount = 0;
+				}
+			}
+			chunkWriter.flush();
+			if (chunkStatementsCount > 0) {
+				queue.put(new LoadChunk(file, chunkIndex++, chunkStream.toByteArray(), chunkStatementsCount, contentType));
+			}
+			blankNodesChunkWriter.flush();
+			if (blankNodesStatementsCount > 0 && failure.get() == null) {
+				queue.put(new LoadChunk(file, chunkIndex, blankNodesChunkStream.toByteArray(), blankNodesStatementsCount, contentType));
+			}
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Splits a Turtle file, statements can not be split by lines so the file is parsed
+	 */
+	private void enqueueTurtleChunks(final BlockingQueue<LoadChunk> queue, final File file, final String contentType) throws IOException, InterruptedException {
+		InputStream inputStream = openFile(file);
+		try {
+			RDFParser rdfParser = Rio.createParser(RDFFormat.TURTLE);
+			rdfParser.setRDFHandler(new ChunkingRDFHandler(RDFFormat.TURTLE, statementsPerRequest) {
+				private int chunkIndex = 0;
+				@Override
+				protected void handleChunk(byte[] chunk, long statementsCount) throws RDFHandlerException {
+					if (failure.get() != null) {
+						throw new RDFHandlerException("loading has been aborted");
+					}
+					try {
+						queue.put(new LoadChunk(file, chunkIndex++, chunk, statementsCount, contentType));
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						throw new RDFHandlerException(e);
+					}
+				}
+			});
+			rdfParser.parse(inputStream, file.toURI().toString());
+		} catch (RDFParseException pe) {
+			throw new IOException("BulkLoader : failed to parse " + file.getName() + " : " + pe.getMessage());
+		} catch (RDFHandlerException he) {
+			if (Thread.currentThread().isInterrupted()) {
+				throw new InterruptedException();
+			}
+			if (failure.get() == null) {
+				throw new IOException("BulkLoader : failed to split " + file.getName() + " : " + he.getMessage());
+			}
+		} finally {
+			inputStream.close();
+		}
+	}
+
+	/**
+	 * Executed by each upload stream until the end of the queue is reached
+	 */
+	private void upload(BlockingQueue<LoadChunk> queue) {
+		try {
+			LoadChunk chunk;
+			while ((chunk = queue.take()) != END_OF_QUEUE) {
+				if (failure.get() != null) {
+					//loading has been aborted, keep taking chunks so that the reading thread is not blocked
+					continue;
+				}
+				uploadWithRetries(chunk);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void uploadWithRetries(LoadChunk chunk) throws InterruptedException {
+		for (int attempt = 0; ; attempt++) {
+			CountingInputStream input = null;
+			boolean sendCompressed = chunk.isCompressed() && gzipContentEncoding.get();
+			try {
+				InputStream stream = chunk.openStream();
+				if (chunk.isCompressed() && !sendCompressed) {
+					stream = new GZIPInputStream(stream, GZIP_BUFFER_SIZE_BYTES);
+				}
+				//statements of whole line based files are counted while uploading, unless sent compressed
+				boolean countLines = chunk.isWholeFile() && !sendCompressed && !chunk.getContentType().equals(RdfUtils.CONTENT_TYPE_TURTLE);
+				input = new CountingInputStream(stream, countLines);
+				//length is not known in advance when decompressing
+				long contentLength = (chunk.isCompressed() && !sendCompressed) ? -1 : chunk.getContentLength();
+				UploadStatistics uploadStatistics = RdfUtils.postStatements(endpoint, chunk.getContentType(), sendCompressed ? GZIP_CONTENT_ENCODING : null, input, contentLength);
+				getFileStatistics(chunk.getFile()).add(uploadStatistics);
+				if (chunk.isWholeFile() && !countLines) {
+					uncountedStatements.set(true);
+				}
+				loadedStatements.addAndGet(chunk.getStatementsCount());
+				loadedChunks.incrementAndGet();
+				return;
+			} catch (RdfUtils.UnsupportedContentEncodingException e) {
+				input.revertCounts();
+				if (gzipContentEncoding.compareAndSet(true, false)) {
+					System.out.println("BulkLoader : endpoint does not accept compressed requests, compressed files will be decompressed while uploading");
+				}
+				//not counted as a failed attempt
+				attempt--;
+			} catch (IOException e) {
+				if (input != null) {
+					input.revertCounts();
+				}
+				if (attempt >= maxRetries) {
+					failure.compareAndSet(null, new IOException("BulkLoader : failed to load " + chunk + " after " + (attempt + 1) + " attempt(s) : " + e.getMessage(), e));
+					return;
+				}
+				System.out.println("BulkLoader : failed to load " + chunk + ", retrying : " + e.getMessage());
+				retriedChunks.incrementAndGet();
+				Thread.sleep(RETRY_BACKOFF_MILLISECONDS * (attempt + 1));
+			}
+		}
+	}
+
+	private UploadStatistics getFileStatistics(File file) {
+		synchronized (filesStatistics) {
+			return filesStatistics.get(file);
+		}
+	}
+
+	/**
+	 * Reports bytes per second read from disk and sent to the endpoint for each file. Chunks are read from memory,
+	 * so for split files only the send rate is reported.
+	 */
+	private void reportFilesStatistics() {
+		synchronized (filesStatistics) {
+			for (Map.Entry<File, UploadStatistics> entry : filesStatistics.entrySet()) {
+				UploadStatistics statistics = entry.getValue();
+				StringBuilder sb = new StringBuilder();
+				sb.append(String.format("\t%s : %.1f MB", entry.getKey().getName(), statistics.getBytes() / (1024.0 * 1024.0)));
+				if (statementsPerRequest <= 0) {
+					sb.append(String.format(", read %.1f MB/s", statistics.getReadBytesPerSecond() / (1024.0 * 1024.0)));
+				}
+				sb.append(String.format(", sent %.1f MB/s, %,d ms waiting for the endpoint", statistics.getSendBytesPerSecond() / (1024.0 * 1024.0), statistics.getResponseTimeMs()));
+				System.out.println(sb.toString());
+			}
+			filesStatistics.clear();
+		}
+	}
+
+	private static boolean isCompressed(File file) {
+		return file.getName().endsWith(GZIP_EXTENSION);
+	}
+
+	/**
+	 * @return stream of the file contents, decompressed if the file is compressed
+	 */
+	private static InputStream openFile(File file) throws IOException {
+		InputStream inputStream = new FileInputStream(file);
+		return isCompressed(file) ? new GZIPInputStream(inputStream, GZIP_BUFFER_SIZE_BYTES) : inputStream;
+	}
+
+	private static boolean isStatementLine(String line) {
+		String trimmed = line.trim();
+		return !trimmed.isEmpty() && !trimmed.startsWith("#");
+	}
+
+	/**
+	 * A blank node label (_:label) can only start a term, a literal containing such text is at worst loaded in the chunk of blank nodes
+	 */
+	private static boolean hasBlankNode(String line) {
+		return line.startsWith("_:") || line.contains(" _:") || line.contains("\t_:");
+	}
+
+	/**
+	 * @return content type for supported files, null otherwise
+	 */
+	private static String getContentType(File file) {
+		String name = isCompressed(file) ? file.getName().substring(0, file.getName().length() - GZIP_EXTENSION.length()) : file.getName();
+		if (name.endsWith(".nq")) {
+			return RdfUtils.CONTENT_TYPE_SESAME_NQUADS;
+		}
+		if (name.endsWith(".ttl")) {
+			return RdfUtils.CONTENT_TYPE_TURTLE;
+		}
+		return null;
+	}
+
+	/**
+	 * Counts uploaded bytes while a file is streamed, and statements of line based files by counting line ends
+	 */
+	private class CountingInputStream extends FilterInputStream {
+		private final boolean countLines;
+		private long bytesCount = 0;
+		private long linesCount = 0;
+
+		private CountingInputStream(InputStream in, boolean countLines) {
+			super(in);
+			this.countLines = countLines;
+		}
+
+		@Override
+		public int read() throws IOException {
+			int b = super.read();
+			if (b >= 0) {
+				count(b == '\n' ? 1 : 0, 1);
+			}
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int read = super.read(b, off, len);
+			if (read > 0) {
+				long lines = 0;
+				if (countLines) {
+					for (int i = off; i < off + read; i++) {
+						if (b[i] == '\n') {
+							lines++;
+						}
+					}
+				}
+				count(lines, read);
+			}
+			return read;
+		}
+
+		private void count(long lines, long bytes) {
+			bytesCount += bytes;
+			loadedBytes.addAndGet(bytes);
+			if (countLines) {
+				linesCount += lines;
+				loadedStatements.addAndGet(lines);
+			}
+		}
+
+		private void revertCounts() {
+			loadedBytes.addAndGet(-bytesCount);
+			loadedStatements.addAndGet(-linesCount);
+			bytesCount = 0;
+			linesCount = 0;
+		}
+	}
+}
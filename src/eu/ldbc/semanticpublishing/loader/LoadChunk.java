@@ -0,0 +1,90 @@
+package eu.ldbc.semanticpublishing.loader;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * A unit of work of the BulkLoader : either a whole file which is streamed from disk, or a part of a file
+ * holding a fixed number of statements kept in memory.
+ */
+public class LoadChunk {
+	private final File file;
+	private final int chunkIndex;
+	private final byte[] data;
+	private final long statementsCount;
+	private final String contentType;
+	private final boolean compressed;
+
+	/**
+	 * A whole file, uploaded as it is
+	 * @param compressed - file is gzip compressed
+	 */
+	public LoadChunk(File file, String contentType, boolean compressed) {
+		this.file = file;
+		this.chunkIndex = -1;
+		this.data = null;
+		this.statementsCount = 0;
+		this.contentType = contentType;
+		this.compressed = compressed;
+	}
+
+	/**
+	 * A part of a file
+	 * @param chunkIndex - position of the chunk in the file, starting from 0
+	 * @param data - serialized statements
+	 * @param statementsCount - number of statements in data
+	 */
+	public LoadChunk(File file, int chunkIndex, byte[] data, long statementsCount, String contentType) {
+		this.file = file;
+		this.chunkIndex = chunkIndex;
+		this.data = data;
+		this.statementsCount = statementsCount;
+		this.contentType = contentType;
+		this.compressed = false;
+	}
+
+	/**
+	 * @return a new stream over the contents of the chunk, can be called again to retry an upload
+	 */
+	public InputStream openStream() throws IOException {
+		return data != null ? new ByteArrayInputStream(data) : new FileInputStream(file);
+	}
+
+	/**
+	 * @return length in bytes of the stream returned by openStream()
+	 */
+	public long getContentLength() {
+		return data != null ? data.length : file.length();
+	}
+
+	public boolean isWholeFile() {
+		return data == null;
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	public long getStatementsCount() {
+		return statementsCount;
+	}
+
+	public String getContentType() {
+		return contentType;
+	}
+
+	/**
+	 * @return true if the stream returned by openStream() is gzip compressed
+	 */
+	public boolean isCompressed() {
+		return compressed;
+	}
+
+	@Override
+	public String toString() {
+		return isWholeFile() ? file.getName() : (file.getName() + " (part " + (chunkIndex + 1) + ")");
+	}
+}
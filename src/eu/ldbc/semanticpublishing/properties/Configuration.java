@@ -70,6 +70,46 @@ public class Configuration {
 	public static final String CURRENT_RATE_REPORT_PERIOD_SECONDS = "currentRateReportPeriodSeconds";
 	public static final String SAVE_DETAILED_QUERY_LOGS = "saveDetailedQueryLogs";
 	public static final String REPORT_INTERVAL_SECONDS = "reportIntervalSeconds";
+	public static final String HTTP_CONNECTION_POOLING = "httpConnectionPooling";
+	public static final String HTTP_CONNECTION_POOL_MAX_PER_ENDPOINT = "httpConnectionPoolMaxPerEndpoint";
+	public static final String HTTP_CONNECTION_POOL_IDLE_TIMEOUT_SECONDS = "httpConnectionPoolIdleTimeoutSeconds";
+	public static final String ASYNCHRONOUS_QUERY_EXECUTION = "asynchronousQueryExecution";
+	public static final String ASYNCHRONOUS_EVENT_LOOP_THREADS = "asynchronousEventLoopThreads";
+	public static final String AGENTS_VIRTUAL_THREADS = "agentsVirtualThreads";
+	public static final String ARRIVAL_RATE_MODE = "arrivalRateMode";
+	public static final String AGGREGATION_ARRIVAL_RATE = "aggregationArrivalRate";
+	public static final String EDITORIAL_ARRIVAL_RATE = "editorialArrivalRate";
+	public static final String ARRIVAL_RATE_STEPS = "arrivalRateSteps";
+	public static final String SAVE_LATENCY_HISTOGRAM_LOG = "saveLatencyHistogramLog";
+	public static final String EDITORIAL_DETAILED_LOG_SAMPLING_INTERVAL = "editorialDetailedLogSamplingInterval";
+	public static final String LOADER_UPLOAD_STREAMS = "loaderUploadStreams";
+	public static final String LOADER_QUEUE_CAPACITY = "loaderQueueCapacity";
+	public static final String LOADER_STATEMENTS_PER_REQUEST = "loaderStatementsPerRequest";
+	public static final String LOADER_MAX_RETRIES = "loaderMaxRetries";
+	public static final String LOADER_REPORT_INTERVAL_SECONDS = "loaderReportIntervalSeconds";
+	public static final String LOADER_GZIP_CONTENT_ENCODING = "loaderGzipContentEncoding";
+	public static final String EDITORIAL_BATCH_SIZE = "editorialBatchSize";
+	public static final String EDITORIAL_BATCH_WINDOW_MS = "editorialBatchWindowMs";
+	public static final String ENDPOINT_ROUTING = "endpointRouting";
+	public static final String EMBEDDED_ENDPOINT = "embeddedEndpoint";
+	public static final String EMBEDDED_ENDPOINT_PORT = "embeddedEndpointPort";
+	public static final String EMBEDDED_ENDPOINT_RESPONSE_SIZE_BYTES = "embeddedEndpointResponseSizeBytes";
+	public static final String EMBEDDED_ENDPOINT_RESPONSE_DELAY_MS = "embeddedEndpointResponseDelayMs";
+	public static final String IN_PROCESS_REPOSITORY = "inProcessRepository";
+	public static final String IN_PROCESS_REPOSITORY_DATA_DIR = "inProcessRepositoryDataDir";
+	public static final String HTTP_RESPONSE_COMPRESSION = "httpResponseCompression";
+	public static final String SELECT_RESULT_FORMAT = "selectResultFormat";
+	public static final String GRAPH_RESULT_FORMAT = "graphResultFormat";
+	public static final String MAX_UPDATE_RATE_BURST_OPS = "maxUpdateRateBurstOps";
+	public static final String QUERY_RETRIES = "queryRetries";
+	public static final String QUERY_RETRY_BACKOFF_MS = "queryRetryBackoffMs";
+	public static final String QUERY_RETRY_MAX_BACKOFF_MS = "queryRetryMaxBackoffMs";
+	public static final String CIRCUIT_BREAKER_FAILURE_THRESHOLD = "circuitBreakerFailureThreshold";
+	public static final String CIRCUIT_BREAKER_OPEN_MS = "circuitBreakerOpenMs";
+	public static final String UPDATE_REQUEST_BODY = "updateRequestBody";
+	public static final String INTERVAL_SERIES_LOG = "intervalSeriesLog";
+	public static final String METRICS_PORT = "metricsPort";
+	public static final String METRICS_BIND_ADDRESS = "metricsBindAddress";
 	
 	/**
 	 * Initialise and set default values for parameters that make sense.
@@ -127,6 +167,46 @@ public class Configuration {
 		properties.setProperty(SAVE_DETAILED_QUERY_LOGS, "true");
 		
 		properties.setProperty(REPORT_INTERVAL_SECONDS, "1");
+		properties.setProperty(HTTP_CONNECTION_POOLING, "false");
+		properties.setProperty(HTTP_CONNECTION_POOL_MAX_PER_ENDPOINT, "64");
+		properties.setProperty(HTTP_CONNECTION_POOL_IDLE_TIMEOUT_SECONDS, "30");
+		properties.setProperty(ASYNCHRONOUS_QUERY_EXECUTION, "false");
+		properties.setProperty(ASYNCHRONOUS_EVENT_LOOP_THREADS, "2");
+		properties.setProperty(AGENTS_VIRTUAL_THREADS, "false");
+		properties.setProperty(ARRIVAL_RATE_MODE, "closed");
+		properties.setProperty(AGGREGATION_ARRIVAL_RATE, "0");
+		properties.setProperty(EDITORIAL_ARRIVAL_RATE, "0");
+		properties.setProperty(ARRIVAL_RATE_STEPS, "1:60");
+		properties.setProperty(SAVE_LATENCY_HISTOGRAM_LOG, "true");
+		properties.setProperty(EDITORIAL_DETAILED_LOG_SAMPLING_INTERVAL, "0");
+		properties.setProperty(LOADER_UPLOAD_STREAMS, "1");
+		properties.setProperty(LOADER_QUEUE_CAPACITY, "16");
+		properties.setProperty(LOADER_STATEMENTS_PER_REQUEST, "0");
+		properties.setProperty(LOADER_MAX_RETRIES, "3");
+		properties.setProperty(LOADER_REPORT_INTERVAL_SECONDS, "10");
+		properties.setProperty(LOADER_GZIP_CONTENT_ENCODING, "false");
+		properties.setProperty(EDITORIAL_BATCH_SIZE, "1");
+		properties.setProperty(EDITORIAL_BATCH_WINDOW_MS, "0");
+		properties.setProperty(ENDPOINT_ROUTING, "round_robin");
+		properties.setProperty(EMBEDDED_ENDPOINT, "");
+		properties.setProperty(EMBEDDED_ENDPOINT_PORT, "0");
+		properties.setProperty(EMBEDDED_ENDPOINT_RESPONSE_SIZE_BYTES, "4096");
+		properties.setProperty(EMBEDDED_ENDPOINT_RESPONSE_DELAY_MS, "0");
+		properties.setProperty(IN_PROCESS_REPOSITORY, "");
+		properties.setProperty(IN_PROCESS_REPOSITORY_DATA_DIR, "");
+		properties.setProperty(HTTP_RESPONSE_COMPRESSION, "false");
+		properties.setProperty(SELECT_RESULT_FORMAT, "xml");
+		properties.setProperty(GRAPH_RESULT_FORMAT, "rdfxml");
+		properties.setProperty(MAX_UPDATE_RATE_BURST_OPS, "1");
+		properties.setProperty(QUERY_RETRIES, "0");
+		properties.setProperty(QUERY_RETRY_BACKOFF_MS, "100");
+		properties.setProperty(QUERY_RETRY_MAX_BACKOFF_MS, "5000");
+		properties.setProperty(CIRCUIT_BREAKER_FAILURE_THRESHOLD, "0");
+		properties.setProperty(CIRCUIT_BREAKER_OPEN_MS, "5000");
+		properties.setProperty(UPDATE_REQUEST_BODY, "form");
+		properties.setProperty(INTERVAL_SERIES_LOG, "none");
+		properties.setProperty(METRICS_PORT, "0");
+		properties.setProperty(METRICS_BIND_ADDRESS, "0.0.0.0");
 	}
 	
 	/**
@@ -174,6 +254,15 @@ public class Configuration {
 		return value;
 	}
 
+	/**
+	 * Set a configuration parameter's value, overriding the value read from the configuration file
+	 * @param key
+	 * @param value
+	 */
+	public void setString(String key, String value) {
+		properties.setProperty(key, value);
+	}
+
 	/**
 	 * Read a configuration parameter's value as a boolean
 	 * @param key
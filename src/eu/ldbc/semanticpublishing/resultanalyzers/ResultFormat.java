@@ -0,0 +1,81 @@
+package eu.ldbc.semanticpublishing.resultanalyzers;
+
+import eu.ldbc.semanticpublishing.resultanalyzers.sax.SPARQLResultStatementsCounter;
+import eu.ldbc.semanticpublishing.resultanalyzers.sesame.BinaryResultStatementsCounter;
+import eu.ldbc.semanticpublishing.resultanalyzers.sesame.RDFXMLResultStatementsCounter;
+import eu.ldbc.semanticpublishing.resultanalyzers.stream.JSONResultStatementsCounter;
+import eu.ldbc.semanticpublishing.resultanalyzers.stream.LineResultStatementsCounter;
+
+/**
+ * Formats of query results requested by the aggregation agents, each with a streaming counter of its results.
+ * XML and RDF/XML are parsed, the other formats are counted by scanning the response, e.g. a line per result.
+ */
+public enum ResultFormat {
+	XML("application/sparql-results+xml", false),
+	JSON("application/sparql-results+json", false),
+	TSV("text/tab-separated-values", false),
+	BINARY("application/x-binary-rdf-results-table", false),
+	RDFXML("application/rdf+xml", true),
+	//Sesame 2.x servers produce N-Triples as text/plain
+	NTRIPLES("application/n-triples, text/plain;q=0.9", true);
+	
+	private final String acceptContentType;
+	private final boolean graphFormat;
+	
+	private ResultFormat(String acceptContentType, boolean graphFormat) {
+		this.acceptContentType = acceptContentType;
+		this.graphFormat = graphFormat;
+	}
+	
+	/**
+	 * @return value of the Accept header requesting the format
+	 */
+	public String getAcceptContentType() {
+		return acceptContentType;
+	}
+	
+	/**
+	 * @return true for formats of CONSTRUCT and DESCRIBE results, false for formats of SELECT results
+	 */
+	public boolean isGraphFormat() {
+		return graphFormat;
+	}
+	
+	/**
+	 * @return a new counter of results in this format, counters are not thread safe
+	 */
+	public ResultStatementsCounter createCounter() {
+		switch (this) {
+			case JSON :
+				return new JSONResultStatementsCounter();
+			case TSV :
+				//first line holds the variable names
+				return new LineResultStatementsCounter(true);
+			case BINARY :
+				return new BinaryResultStatementsCounter();
+			case RDFXML :
+				return new RDFXMLResultStatementsCounter();
+			case NTRIPLES :
+				return new LineResultStatementsCounter(false);
+			default :
+				return new SPARQLResultStatementsCounter();
+		}
+	}
+	
+	/**
+	 * @param name - name of the format, case insensitive
+	 * @param graphFormat - true if a format of CONSTRUCT and DESCRIBE results is expected
+	 */
+	public static ResultFormat parse(String name, boolean graphFormat) {
+		ResultFormat format;
+		try {
+			format = valueOf(name.trim().toUpperCase());
+		} catch (IllegalArgumentException iae) {
+			format = null;
+		}
+		if (format == null || format.isGraphFormat() != graphFormat) {
+			throw new IllegalArgumentException("ResultFormat : unsupported format : '" + name + "', supported : " + (graphFormat ? "rdfxml, ntriples" : "xml, json, tsv, binary"));
+		}
+		return format;
+	}
+}
@@ -0,0 +1,13 @@
+package eu.ldbc.semanticpublishing.resultanalyzers;
+
+import java.io.InputStream;
+
+/**
+ * Counts the results (solutions or statements) of a query response in a given format
+ */
+public interface ResultStatementsCounter {
+	/**
+	 * @return number of results in the response, counted so far if the response could not be read to its end
+	 */
+	public long getStatementsCount(InputStream is);
+}
@@ -13,7 +13,9 @@ import org.xml.sax.SAXException;
 import org.xml.sax.XMLReader;
 import org.xml.sax.helpers.DefaultHandler;
 
-public class SPARQLResultStatementsCounter extends DefaultHandler {
+import eu.ldbc.semanticpublishing.resultanalyzers.ResultStatementsCounter;
+
+public class SPARQLResultStatementsCounter extends DefaultHandler implements ResultStatementsCounter {
 	private boolean resultElementBeginFlag = false;
 	private long statementsCount = 0;
 	
@@ -72,6 +74,7 @@ public class SPARQLResultStatementsCounter extends DefaultHandler {
 		} 
 	}
 	
+	@Override
 	public long getStatementsCount(InputStream is) {
 		try {
 			long currentTime = System.currentTimeMillis();			
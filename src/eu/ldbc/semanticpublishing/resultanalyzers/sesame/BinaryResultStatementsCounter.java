@@ -0,0 +1,59 @@
+package eu.ldbc.semanticpublishing.resultanalyzers.sesame;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.TupleQueryResultHandlerBase;
+import org.openrdf.query.TupleQueryResultHandlerException;
+import org.openrdf.query.resultio.QueryResultParseException;
+import org.openrdf.query.resultio.binary.BinaryQueryResultParser;
+
+import eu.ldbc.semanticpublishing.resultanalyzers.ResultStatementsCounter;
+
+/**
+ * Counts the records of Sesame's binary query results format (application/x-binary-rdf-results-table), 
+ * which are read without any text parsing
+ */
+public class BinaryResultStatementsCounter implements ResultStatementsCounter {
+	private final BinaryQueryResultParser parser;
+	private final SolutionsCounter solutionsCounter;
+	
+	public BinaryResultStatementsCounter() {
+		solutionsCounter = new SolutionsCounter();
+		parser = new BinaryQueryResultParser();
+		parser.setTupleQueryResultHandler(solutionsCounter);
+	}
+	
+	@Override
+	public long getStatementsCount(InputStream is) {
+		try {
+			solutionsCounter.resetSolutionsCount();
+			parser.parse(is);
+		} catch (QueryResultParseException qrpe) {
+			qrpe.printStackTrace();
+		} catch (TupleQueryResultHandlerException tqrhe) {
+			tqrhe.printStackTrace();
+		} catch (IOException ioe) {
+			ioe.printStackTrace();
+		}
+		return solutionsCounter.getSolutionsCount();
+	}
+	
+	static class SolutionsCounter extends TupleQueryResultHandlerBase {
+		private long countedSolutions = 0;
+		
+		@Override
+		public void handleSolution(BindingSet bindingSet) {
+			countedSolutions++;
+		}
+		
+		public void resetSolutionsCount() {
+			countedSolutions = 0;
+		}
+		
+		public long getSolutionsCount() {
+			return countedSolutions;
+		}
+	}
+}
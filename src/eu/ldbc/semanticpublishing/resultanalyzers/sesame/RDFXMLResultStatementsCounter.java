@@ -11,7 +11,9 @@ import org.openrdf.rio.RDFParser;
 import org.openrdf.rio.Rio;
 import org.openrdf.rio.helpers.RDFHandlerBase;
 
-public class RDFXMLResultStatementsCounter {
+import eu.ldbc.semanticpublishing.resultanalyzers.ResultStatementsCounter;
+
+public class RDFXMLResultStatementsCounter implements ResultStatementsCounter {
 	private final RDFParser rdfParser;
 	private final StatementsCounter statementsCounter;
 	
@@ -26,6 +28,7 @@ public class RDFXMLResultStatementsCounter {
 		rdfParser.setRDFHandler(statementsCounter);
 	}
 	
+	@Override
 	public long getStatementsCount(InputStream is) {
 		try {
 			statementsCounter.resetStatementsCount();
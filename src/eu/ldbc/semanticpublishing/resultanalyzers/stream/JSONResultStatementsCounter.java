@@ -0,0 +1,100 @@
+package eu.ldbc.semanticpublishing.resultanalyzers.stream;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import eu.ldbc.semanticpublishing.resultanalyzers.ResultStatementsCounter;
+
+/**
+ * Counts solutions of SPARQL JSON results by scanning tokens, without building a tree or decoding strings. 
+ * A solution is an object directly inside the array of the "bindings" member.
+ */
+public class JSONResultStatementsCounter implements ResultStatementsCounter {
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private static final byte[] BINDINGS_KEY = { 'b', 'i', 'n', 'd', 'i', 'n', 'g', 's' };
+	
+	private final byte[] buffer = new byte[BUFFER_SIZE];
+	
+	@Override
+	public long getStatementsCount(InputStream is) {
+		long solutionsCount = 0;
+		int depth = 0;
+		//depth of the bindings array's elements, 0 if outside of it
+		int bindingsDepth = 0;
+		boolean inString = false;
+		boolean escaped = false;
+		//position matched in BINDINGS_KEY by the current string, -1 if it differs
+		int keyMatch = 0;
+		boolean bindingsKey = false;
+		boolean bindingsValue = false;
+		try {
+			int length;
+			while ((length = is.read(buffer)) != -1) {
+				for (int i = 0; i < length; i++) {
+					byte b = buffer[i];
+					if (inString) {
+						if (escaped) {
+							escaped = false;
+							keyMatch = -1;
+						} else if (b == '\\') {
+							escaped = true;
+						} else if (b == '"') {
+							inString = false;
+							bindingsKey = keyMatch == BINDINGS_KEY.length;
+						} else if (keyMatch >= 0) {
+							keyMatch = (keyMatch < BINDINGS_KEY.length && b == BINDINGS_KEY[keyMatch]) ? keyMatch + 1 : -1;
+						}
+						continue;
+					}
+					switch (b) {
+						case '"' :
+							inString = true;
+							keyMatch = 0;
+							bindingsValue = false;
+							break;
+						case ':' :
+							bindingsValue = bindingsKey;
+							bindingsKey = false;
+							break;
+						case '{' :
+							if (bindingsDepth > 0 && depth == bindingsDepth) {
+								solutionsCount++;
+							}
+							depth++;
+							bindingsKey = false;
+							bindingsValue = false;
+							break;
+						case '[' :
+							depth++;
+							if (bindingsValue) {
+								bindingsDepth = depth;
+							}
+							bindingsKey = false;
+							bindingsValue = false;
+							break;
+						case '}' :
+						case ']' :
+							if (depth == bindingsDepth) {
+								bindingsDepth = 0;
+							}
+							depth--;
+							bindingsKey = false;
+							bindingsValue = false;
+							break;
+						case ' ' :
+						case '\t' :
+						case '\r' :
+						case '\n' :
+							break;
+						default :
+							bindingsKey = false;
+							bindingsValue = false;
+					}
+				}
+			}
+		} catch (IOException ioe) {
+			ioe.printStackTrace();
+		}
+		return solutionsCount;
+	}
+}
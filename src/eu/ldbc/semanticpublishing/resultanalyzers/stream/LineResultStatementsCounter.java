@@ -0,0 +1,59 @@
+package eu.ldbc.semanticpublishing.resultanalyzers.stream;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import eu.ldbc.semanticpublishing.resultanalyzers.ResultStatementsCounter;
+
+/**
+ * Counts results of line based formats without parsing them, e.g. TSV results (a line per solution) or N-Triples (a line per statement).
+ * Empty lines and comment lines starting with '#' are not counted.
+ */
+public class LineResultStatementsCounter implements ResultStatementsCounter {
+	private static final int BUFFER_SIZE = 64 * 1024;
+	
+	private final boolean skipHeaderLine;
+	private final byte[] buffer = new byte[BUFFER_SIZE];
+	
+	/**
+	 * @param skipHeaderLine - true if the first line is a header, not a result
+	 */
+	public LineResultStatementsCounter(boolean skipHeaderLine) {
+		this.skipHeaderLine = skipHeaderLine;
+	}
+	
+	@Override
+	public long getStatementsCount(InputStream is) {
+		long linesCount = 0;
+		boolean lineHasContent = false;
+		boolean lineIsComment = false;
+		try {
+			int length;
+			while ((length = is.read(buffer)) != -1) {
+				for (int i = 0; i < length; i++) {
+					byte b = buffer[i];
+					if (b == '\n') {
+						if (lineHasContent && !lineIsComment) {
+							linesCount++;
+						}
+						lineHasContent = false;
+						lineIsComment = false;
+					} else if (!lineHasContent && b != ' ' && b != '\t' && b != '\r') {
+						lineHasContent = true;
+						lineIsComment = b == '#';
+					}
+				}
+			}
+		} catch (IOException ioe) {
+			ioe.printStackTrace();
+		}
+		//last line may not be terminated
+		if (lineHasContent && !lineIsComment) {
+			linesCount++;
+		}
+		if (skipHeaderLine && linesCount > 0) {
+			linesCount--;
+		}
+		return linesCount;
+	}
+}
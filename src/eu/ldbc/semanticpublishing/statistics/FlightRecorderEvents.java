@@ -0,0 +1,209 @@
+package eu.ldbc.semanticpublishing.statistics;
+
+import java.io.File;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Java Flight Recorder events of the driver, recorded when the JVM is started with -XX:StartFlightRecording :
+ *   eu.ldbc.semanticpublishing.Query         - each aggregation and editorial query : name, id, latency, results count, bytes received and outcome
+ *   eu.ldbc.semanticpublishing.GeneratedFile - each file of generated Creative Works : name, triples, generation time and size
+ * so that profiles of the driver can be correlated with its workload, without writing each query to the detailed log.
+ *
+ * The driver is compiled for Java 6, so event types are defined when the class is loaded through jdk.jfr.EventFactory, using reflection.
+ * An event is begun when a query is sent or a file is opened and committed when it completes, so that its duration in a recording
+ * spans the query or the generation of the file.
+ * Whether a recording of an event type is in progress is checked through reflection at most once in ENABLED_CHECK_PERIOD_NANOS,
+ * on JVMs without the JFR API, or when no recording is in progress, beginning an event costs a check of that cached state.
+ * Values of a recorded event are set through reflection, which costs a few reflective calls per event.
+ */
+public class FlightRecorderEvents {
+	public static enum Outcome {
+		SUCCESS, FAILURE, TIMEOUT
+	}
+
+	private static final String CATEGORY = "LDBC SPB";
+	private static final String TIMESPAN_ANNOTATION = "jdk.jfr.Timespan";
+	private static final String DATA_AMOUNT_ANNOTATION = "jdk.jfr.DataAmount";
+	private static final long ENABLED_CHECK_PERIOD_NANOS = 1000000000L;
+
+	private static final EventType queryEventType;
+	private static final EventType generatedFileEventType;
+
+	static {
+		EventType queryType = null;
+		EventType generatedFileType = null;
+		try {
+			queryType = new EventType("eu.ldbc.semanticpublishing.Query", "Query", "A query executed by an aggregation or editorial agent",
+									  field("queryName", String.class, "Query Name", null, null),
+									  field("queryId", long.class, "Query Id", null, null),
+									  field("latency", long.class, "Latency", TIMESPAN_ANNOTATION, "MICROSECONDS"),
+									  field("resultsCount", long.class, "Results Count", null, null),
+									  field("bytes", long.class, "Bytes Received", DATA_AMOUNT_ANNOTATION, "BYTES"),
+									  field("outcome", String.class, "Outcome", null, null));
+			generatedFileType = new EventType("eu.ldbc.semanticpublishing.GeneratedFile", "Generated File", "A file of Creative Works written by the data generator",
+											  field("fileName", String.class, "File Name", null, null),
+											  field("triples", long.class, "Triples", null, null),
+											  field("generationTime", long.class, "Generation Time", TIMESPAN_ANNOTATION, "MICROSECONDS"),
+											  field("bytes", long.class, "Size", DATA_AMOUNT_ANNOTATION, "BYTES"));
+		} catch (ClassNotFoundException cnfe) {
+			//the JFR API is not available in this JVM, events are not recorded
+		} catch (Exception e) {
+			System.out.println("FlightRecorderEvents : failed to define event types, events are not recorded : " + e);
+		}
+		queryEventType = queryType;
+		generatedFileEventType = generatedFileType;
+	}
+
+	/**
+	 * Begins an event of a query, called when the query is sent
+	 * @return the begun event, or null if events of queries are not recorded
+	 */
+	public static Event beginQuery() {
+		return queryEventType != null ? queryEventType.begin() : null;
+	}
+
+	/**
+	 * @param event - event begun by beginQuery(), nothing is recorded if null
+	 * @param queryName - name of the query type, as in the statistics of the driver, e.g. AGGREGATE_1 or INSERT
+	 * @param latencyMicros - execution time of a completed query, time until it has been aborted otherwise
+	 * @param bytes - bytes of the response as received
+	 */
+	public static void commitQuery(Event event, String queryName, long queryId, long latencyMicros, long resultsCount, long bytes, Outcome outcome) {
+		if (event != null) {
+			event.commit(queryName, Long.valueOf(queryId), Long.valueOf(latencyMicros), Long.valueOf(resultsCount), Long.valueOf(bytes), outcome.toString());
+		}
+	}
+
+	/**
+	 * Begins an event of a generated file, called when the file is opened
+	 * @return the begun event, or null if events of generated files are not recorded
+	 */
+	public static Event beginGeneratedFile() {
+		return generatedFileEventType != null ? generatedFileEventType.begin() : null;
+	}
+
+	/**
+	 * @param event - event begun by beginGeneratedFile(), nothing is recorded if null
+	 * @param filePath - path of the written file, its size is read only while the event is recorded
+	 * @param generationTimeMicros - time from opening until closing of the file
+	 */
+	public static void commitGeneratedFile(Event event, String filePath, long triples, long generationTimeMicros) {
+		if (event != null) {
+			event.commit(new File(filePath).getName(), Long.valueOf(triples), Long.valueOf(generationTimeMicros), Long.valueOf(new File(filePath).length()));
+		}
+	}
+
+	/**
+	 * @param contentTypeAnnotation - name of an annotation telling how values are displayed, e.g. jdk.jfr.Timespan, or null
+	 */
+	private static Object field(String name, Class<?> type, String label, String contentTypeAnnotation, String contentTypeValue) throws Exception {
+		List<Object> annotations = new ArrayList<Object>();
+		annotations.add(annotation("jdk.jfr.Label", label));
+		if (contentTypeAnnotation != null) {
+			annotations.add(annotation(contentTypeAnnotation, contentTypeValue));
+		}
+		Constructor<?> constructor = Class.forName("jdk.jfr.ValueDescriptor").getConstructor(Class.class, String.class, List.class);
+		return constructor.newInstance(type, name, annotations);
+	}
+
+	private static Object annotation(String annotationClassName, Object value) throws Exception {
+		Constructor<?> constructor = Class.forName("jdk.jfr.AnnotationElement").getConstructor(Class.class, Object.class);
+		return constructor.newInstance(Class.forName(annotationClassName), value);
+	}
+
+	/**
+	 * An event type created by jdk.jfr.EventFactory, values of its fields are set in the order they have been defined
+	 */
+	private static class EventType {
+		private final Object factory;
+		private final Object jfrEventType;
+		private final Method newEventMethod;
+		private final Method isEnabledMethod;
+		private final Method beginMethod;
+		private final Method setMethod;
+		private final Method commitMethod;
+
+		private volatile boolean enabled;
+		private volatile long enabledCheckedNanos = System.nanoTime() - ENABLED_CHECK_PERIOD_NANOS;
+
+		private EventType(String name, String label, String description, Object... fields) throws Exception {
+			List<Object> annotations = new ArrayList<Object>();
+			annotations.add(annotation("jdk.jfr.Name", name));
+			annotations.add(annotation("jdk.jfr.Label", label));
+			annotations.add(annotation("jdk.jfr.Description", description));
+			annotations.add(annotation("jdk.jfr.Category", new String[] { CATEGORY }));
+			//stack traces would show the reflective commit only, and are costly
+			annotations.add(annotation("jdk.jfr.StackTrace", Boolean.FALSE));
+
+			Class<?> factoryClass = Class.forName("jdk.jfr.EventFactory");
+			Class<?> eventClass = Class.forName("jdk.jfr.Event");
+			factory = factoryClass.getMethod("create", List.class, List.class).invoke(null, annotations, Arrays.asList(fields));
+			jfrEventType = factoryClass.getMethod("getEventType").invoke(factory);
+			newEventMethod = factoryClass.getMethod("newEvent");
+			isEnabledMethod = Class.forName("jdk.jfr.EventType").getMethod("isEnabled");
+			beginMethod = eventClass.getMethod("begin");
+			setMethod = eventClass.getMethod("set", int.class, Object.class);
+			commitMethod = eventClass.getMethod("commit");
+		}
+
+		/**
+		 * @return true if a recording of the event type is in progress, as checked at most once in ENABLED_CHECK_PERIOD_NANOS
+		 */
+		private boolean isEnabled() {
+			long now = System.nanoTime();
+			if (now - enabledCheckedNanos >= ENABLED_CHECK_PERIOD_NANOS) {
+				enabledCheckedNanos = now;
+				try {
+					enabled = ((Boolean) isEnabledMethod.invoke(jfrEventType)).booleanValue();
+				} catch (Exception e) {
+					enabled = false;
+				}
+			}
+			return enabled;
+		}
+
+		/**
+		 * @return a new event with its start time set, or null if the event type is not recorded
+		 */
+		private Event begin() {
+			if (!isEnabled()) {
+				return null;
+			}
+			try {
+				Object event = newEventMethod.invoke(factory);
+				beginMethod.invoke(event);
+				return new Event(this, event);
+			} catch (Exception e) {
+				return null;
+			}
+		}
+	}
+
+	/**
+	 * An event which has been begun, values of its fields are set when it is committed
+	 */
+	public static class Event {
+		private final EventType eventType;
+		private final Object jfrEvent;
+
+		private Event(EventType eventType, Object jfrEvent) {
+			this.eventType = eventType;
+			this.jfrEvent = jfrEvent;
+		}
+
+		private void commit(Object... values) {
+			try {
+				for (int i = 0; i < values.length; i++) {
+					eventType.setMethod.invoke(jfrEvent, Integer.valueOf(i), values[i]);
+				}
+				eventType.commitMethod.invoke(jfrEvent);
+			} catch (Exception e) {
+				//an event which could not be recorded does not affect the run
+			}
+		}
+	}
+}
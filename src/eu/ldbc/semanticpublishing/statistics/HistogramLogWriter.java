@@ -0,0 +1,80 @@
+package eu.ldbc.semanticpublishing.statistics;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * Writes interval histograms to a text file in the histogram log format of HdrHistogram (.hlog), so that
+ * latencies of different runs can be compared offline, e.g. with HistogramLogProcessor or HdrHistogram's log analyzers.
+ * Each interval is tagged with the name of the query type it belongs to.
+ */
+public class HistogramLogWriter {
+	private static final String LOG_FORMAT_VERSION = "1.3";
+	private static final char[] BASE64_ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+
+	private final Writer writer;
+	private final long baseTimeMs;
+	private final double maxValueUnitRatio;
+
+	/**
+	 * @param file - log file, overwritten if exists
+	 * @param baseTimeMs - start time of the run, interval timestamps are relative to it
+	 * @param maxValueUnitRatio - divisor of the interval max column, e.g. 1000.0 for values recorded in microseconds and reported in milliseconds
+	 */
+	public HistogramLogWriter(File file, long baseTimeMs, double maxValueUnitRatio) throws IOException {
+		if (file.getParentFile() != null) {
+			file.getParentFile().mkdirs();
+		}
+		this.writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "US-ASCII"));
+		this.baseTimeMs = baseTimeMs;
+		this.maxValueUnitRatio = maxValueUnitRatio;
+
+		writer.write("#[Histogram log format version " + LOG_FORMAT_VERSION + "]\n");
+		writer.write(String.format(Locale.US, "#[StartTime: %.3f (seconds since epoch), %s]\n", baseTimeMs / 1000.0, new Date(baseTimeMs)));
+		writer.write(String.format(Locale.US, "#[BaseTime: %.3f (seconds since epoch)]\n", baseTimeMs / 1000.0));
+		writer.write("\"StartTimestamp\",\"Interval_Length\",\"Interval_Max\",\"Interval_Compressed_Histogram\"\n");
+		writer.flush();
+	}
+
+	/**
+	 * @param tag - name of the histogram, must not contain commas or white space
+	 * @param interval - values recorded during the interval
+	 * @param startTimeMs - start of the interval
+	 * @param endTimeMs - end of the interval
+	 */
+	public void writeInterval(String tag, HistogramSnapshot interval, long startTimeMs, long endTimeMs) throws IOException {
+		writer.write(String.format(Locale.US, "Tag=%s,%.3f,%.3f,%.3f,%s\n", tag,
+																		  (startTimeMs - baseTimeMs) / 1000.0,
+																		  (endTimeMs - startTimeMs) / 1000.0,
+																		  interval.getMaxValue() / maxValueUnitRatio,
+																		  encodeBase64(interval.encodeCompressed())));
+	}
+
+	public void flush() throws IOException {
+		writer.flush();
+	}
+
+	public void close() throws IOException {
+		writer.close();
+	}
+
+	private static String encodeBase64(byte[] data) {
+		StringBuilder sb = new StringBuilder(((data.length + 2) / 3) * 4);
+		for (int i = 0; i < data.length; i += 3) {
+			int b0 = data[i] & 0xff;
+			int b1 = i + 1 < data.length ? data[i + 1] & 0xff : 0;
+			int b2 = i + 2 < data.length ? data[i + 2] & 0xff : 0;
+			sb.append(BASE64_ALPHABET[b0 >> 2]);
+			sb.append(BASE64_ALPHABET[((b0 & 0x03) << 4) | (b1 >> 4)]);
+			sb.append(i + 1 < data.length ? BASE64_ALPHABET[((b1 & 0x0f) << 2) | (b2 >> 6)] : '=');
+			sb.append(i + 2 < data.length ? BASE64_ALPHABET[b2 & 0x3f] : '=');
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,205 @@
+package eu.ldbc.semanticpublishing.statistics;
+
+import java.nio.ByteBuffer;
+import java.util.zip.Deflater;
+
+/**
+ * An immutable copy of the values recorded by a LatencyHistogram. Snapshots of histograms with the same layout
+ * can be merged and subtracted, e.g. to get the values recorded during an interval.
+ */
+public class HistogramSnapshot {
+	//cookies of the HdrHistogram V2 encoding, the 0x10 flag stands for ZigZag LEB128 encoded counts
+	private static final int V2_ENCODING_COOKIE = 0x1c849303 | 0x10;
+	private static final int V2_COMPRESSED_ENCODING_COOKIE = 0x1c849304 | 0x10;
+	private static final int ENCODING_HEADER_SIZE = 40;
+	private static final int MAX_ZIGZAG_LEB128_SIZE = 9;
+
+	private final LatencyHistogram layout;
+	private final long[] counts;
+	private final long totalCount;
+	private final long totalValue;
+	private final long minValue;
+	private final long maxValue;
+
+	HistogramSnapshot(LatencyHistogram layout, long[] counts, long totalCount, long totalValue, long minValue, long maxValue) {
+		this.layout = layout;
+		this.counts = counts;
+		this.totalCount = totalCount;
+		this.totalValue = totalValue;
+		this.minValue = minValue;
+		this.maxValue = maxValue;
+	}
+
+	public long getTotalCount() {
+		return totalCount;
+	}
+
+	public long getMinValue() {
+		return minValue;
+	}
+
+	public long getMaxValue() {
+		return maxValue;
+	}
+
+	public long getMean() {
+		return totalCount == 0 ? 0 : totalValue / totalCount;
+	}
+
+	/**
+	 * @return sum of the recorded values
+	 */
+	public long getTotalValue() {
+		return totalValue;
+	}
+
+	/**
+	 * @return number of recorded values not greater than given value, values are compared at the precision of the histogram
+	 */
+	public long getCountAtOrBelow(long value) {
+		long count = 0;
+		for (int i = 0; i < counts.length; i++) {
+			if (counts[i] != 0) {
+				if (layout.valueFromIndex(i) > value) {
+					break;
+				}
+				count += counts[i];
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * @param percentile - 0.0 to 100.0
+	 * @return the highest value below which given percentage of recorded values fall, 0 if no values have been recorded
+	 */
+	public long getValueAtPercentile(double percentile) {
+		if (totalCount == 0) {
+			return 0;
+		}
+		double requestedPercentile = Math.min(Math.max(percentile, 0.0), 100.0);
+		long countAtPercentile = Math.max(1, (long) (((requestedPercentile / 100.0) * totalCount) + 0.5));
+		long totalToCurrentIndex = 0;
+		for (int i = 0; i < counts.length; i++) {
+			totalToCurrentIndex += counts[i];
+			if (totalToCurrentIndex >= countAtPercentile) {
+				long value = layout.valueFromIndex(i);
+				//reported values do not exceed the exactly tracked extremes
+				return requestedPercentile == 0.0 ? Math.max(value, minValue) : Math.min(layout.highestEquivalentValue(value), maxValue);
+			}
+		}
+		return maxValue;
+	}
+
+	/**
+	 * @return a snapshot containing the values of this and the other snapshot
+	 */
+	public HistogramSnapshot add(HistogramSnapshot other) {
+		checkLayout(other);
+		if (other.totalCount == 0) {
+			return this;
+		}
+		if (totalCount == 0) {
+			return other;
+		}
+		long[] sum = new long[counts.length];
+		for (int i = 0; i < counts.length; i++) {
+			sum[i] = counts[i] + other.counts[i];
+		}
+		return new HistogramSnapshot(layout, sum, totalCount + other.totalCount, totalValue + other.totalValue, Math.min(minValue, other.minValue), Math.max(maxValue, other.maxValue));
+	}
+
+	/**
+	 * @param earlier - a snapshot of the same histogram taken before this one
+	 * @return a snapshot containing the values recorded after the earlier snapshot has been taken
+	 */
+	public HistogramSnapshot minus(HistogramSnapshot earlier) {
+		checkLayout(earlier);
+		long[] difference = new long[counts.length];
+		long differenceTotalCount = 0;
+		for (int i = 0; i < counts.length; i++) {
+			difference[i] = Math.max(0, counts[i] - earlier.counts[i]);
+			differenceTotalCount += difference[i];
+		}
+		if (differenceTotalCount == 0) {
+			return new HistogramSnapshot(layout, difference, 0, 0, 0, 0);
+		}
+		long min = layout.valueFromIndex(LatencyHistogram.firstNonZeroIndex(difference));
+		long max = layout.highestEquivalentValue(layout.valueFromIndex(LatencyHistogram.lastNonZeroIndex(difference)));
+		return new HistogramSnapshot(layout, difference, differenceTotalCount, Math.max(0, totalValue - earlier.totalValue), Math.max(min, minValue), Math.min(max, maxValue));
+	}
+
+	/**
+	 * Encodes the snapshot in the compressed V2 format of HdrHistogram, so that histogram logs can be processed
+	 * by HdrHistogram tools (e.g. HistogramLogProcessor).
+	 */
+	public byte[] encodeCompressed() {
+		int countsLimit = totalCount == 0 ? 1 : layout.countsArrayIndex(maxValue) + 1;
+		ByteBuffer buffer = ByteBuffer.allocate(ENCODING_HEADER_SIZE + countsLimit * MAX_ZIGZAG_LEB128_SIZE);
+		buffer.putInt(V2_ENCODING_COOKIE);
+		buffer.putInt(0); //payload length, set below
+		buffer.putInt(0); //normalizing index offset
+		buffer.putInt(layout.getNumberOfSignificantValueDigits());
+		buffer.putLong(1); //lowest discernible value
+		buffer.putLong(layout.getHighestTrackableValue());
+		buffer.putDouble(1.0); //integer to double value conversion ratio
+
+		//runs of empty buckets are encoded as a single negative number
+		int index = 0;
+		while (index < countsLimit) {
+			long count = counts[index++];
+			if (count == 0) {
+				long zerosCount = 1;
+				while (index < countsLimit && counts[index] == 0) {
+					zerosCount++;
+					index++;
+				}
+				putZigZagLong(buffer, zerosCount > 1 ? -zerosCount : 0);
+			} else {
+				putZigZagLong(buffer, count);
+			}
+		}
+		buffer.putInt(4, buffer.position() - ENCODING_HEADER_SIZE);
+
+		Deflater deflater = new Deflater();
+		deflater.setInput(buffer.array(), 0, buffer.position());
+		deflater.finish();
+		byte[] compressed = new byte[8 + buffer.position() + 64];
+		int compressedLength = 0;
+		while (!deflater.finished()) {
+			if (8 + compressedLength == compressed.length) {
+				byte[] larger = new byte[compressed.length * 2];
+				System.arraycopy(compressed, 0, larger, 0, compressed.length);
+				compressed = larger;
+			}
+			compressedLength += deflater.deflate(compressed, 8 + compressedLength, compressed.length - 8 - compressedLength);
+		}
+		deflater.end();
+
+		ByteBuffer result = ByteBuffer.wrap(compressed, 0, 8);
+		result.putInt(V2_COMPRESSED_ENCODING_COOKIE);
+		result.putInt(compressedLength);
+		byte[] encoded = new byte[8 + compressedLength];
+		System.arraycopy(compressed, 0, encoded, 0, encoded.length);
+		return encoded;
+	}
+
+	private static void putZigZagLong(ByteBuffer buffer, long value) {
+		value = (value << 1) ^ (value >> 63);
+		for (int i = 0; i < 8; i++) {
+			if ((value >>> 7) == 0) {
+				buffer.put((byte) value);
+				return;
+			}
+			buffer.put((byte) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		buffer.put((byte) value);
+	}
+
+	private void checkLayout(HistogramSnapshot other) {
+		if (!layout.hasSameLayout(other.layout)) {
+			throw new IllegalArgumentException("HistogramSnapshot : histograms with different layouts can not be combined");
+		}
+	}
+}
@@ -0,0 +1,217 @@
+package eu.ldbc.semanticpublishing.statistics;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Writes a time series of the statistics of each query type to a CSV or JSON lines file, one row per query type and interval :
+ * operations, errors and timeouts completed during the interval, p50 and p99 of their execution times and bytes of their responses.
+ * Intervals are timed with the monotonic clock, wall-clock time only labels the rows.
+ *
+ * Rows are written to the file by a background thread, so that a slow disk never delays the reporter. When the writer falls behind
+ * by more than QUEUE_CAPACITY rows, further rows are dropped and counted, rather than held in memory.
+ */
+public class IntervalSeriesWriter {
+	public static enum Format {
+		NONE, CSV, JSONL
+	}
+
+	private static final int QUEUE_CAPACITY = 16384;
+	private static final String CSV_HEADER = "timestamp_ms,elapsed_s,interval_s,query,ops,errors,timeouts,p50_ms,p99_ms,bytes_received\n";
+	private static final String END_OF_SERIES = "";
+
+	private final Writer writer;
+	private final Format format;
+	private final long baseNanos;
+	private final BlockingQueue<String> rowsQueue = new LinkedBlockingQueue<String>(QUEUE_CAPACITY);
+	private final AtomicLong droppedRowsCount = new AtomicLong(0);
+	private final Thread writerThread;
+	private volatile IOException writeFailure = null;
+
+	//totals of each query type at the end of the previous interval
+	private final Map<QueryStatistics, IntervalStart> intervalStarts = new HashMap<QueryStatistics, IntervalStart>();
+
+	/**
+	 * @param file - series file, overwritten if exists
+	 * @param format - CSV or JSONL
+	 * @param baseNanos - start of the run by System.nanoTime(), elapsed times of intervals are relative to it
+	 */
+	public IntervalSeriesWriter(File file, Format format, long baseNanos) throws IOException {
+		if (format == Format.NONE) {
+			throw new IllegalArgumentException("IntervalSeriesWriter : format of the series is not set");
+		}
+		if (file.getParentFile() != null) {
+			file.getParentFile().mkdirs();
+		}
+		this.writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+		this.format = format;
+		this.baseNanos = baseNanos;
+
+		if (format == Format.CSV) {
+			rowsQueue.offer(CSV_HEADER);
+		}
+
+		writerThread = new Thread("IntervalSeriesWriter") {
+			@Override
+			public void run() {
+				writeRows();
+			}
+		};
+		writerThread.setDaemon(true);
+		writerThread.start();
+	}
+
+	/**
+	 * @param value - one of none, csv, jsonl, case insensitive
+	 */
+	public static Format parseFormat(String value) {
+		if (value == null || value.trim().isEmpty()) {
+			return Format.NONE;
+		}
+		try {
+			return Format.valueOf(value.trim().toUpperCase(Locale.US));
+		} catch (IllegalArgumentException iae) {
+			System.out.println("IntervalSeriesWriter : unknown format of the interval series : " + value + ", the series is not written");
+			return Format.NONE;
+		}
+	}
+
+	/**
+	 * @return extension of series files in given format
+	 */
+	public static String getFileExtension(Format format) {
+		return format == Format.JSONL ? "jsonl" : "csv";
+	}
+
+	/**
+	 * Queues a row with the statistics of a query type recorded since its previous row, or since the start of the run.
+	 * Called by a single thread (the reporter).
+	 * @param qs - statistics of the query type
+	 * @param intervalExecutionTimes - execution times recorded during the interval, see LatencyHistogram.getIntervalSnapshot()
+	 * @param endTimeMs - wall-clock time of the end of the interval, written as its timestamp
+	 * @param endNanos - end of the interval by System.nanoTime()
+	 * @throws IOException - if writing of previous rows has failed
+	 */
+	public void writeInterval(QueryStatistics qs, HistogramSnapshot intervalExecutionTimes, long endTimeMs, long endNanos) throws IOException {
+		if (writeFailure != null) {
+			throw writeFailure;
+		}
+
+		IntervalStart start = intervalStarts.get(qs);
+		if (start == null) {
+			start = new IntervalStart(baseNanos);
+			intervalStarts.put(qs, start);
+		}
+
+		long runs = qs.getRunsCount();
+		long failures = qs.getFailuresCount();
+		long timeouts = qs.getTimeoutsCount();
+		long bytes = qs.getBytesReceived();
+		boolean hasValues = intervalExecutionTimes.getTotalCount() > 0;
+
+		String row = formatRow(qs.getQueryName(), endTimeMs, start.nanos, endNanos, runs - start.runs, failures - start.failures, timeouts - start.timeouts,
+							   hasValues ? intervalExecutionTimes.getValueAtPercentile(50.0) : 0, hasValues ? intervalExecutionTimes.getValueAtPercentile(99.0) : 0, bytes - start.bytes);
+		if (!rowsQueue.offer(row)) {
+			droppedRowsCount.incrementAndGet();
+		}
+
+		start.nanos = endNanos;
+		start.runs = runs;
+		start.failures = failures;
+		start.timeouts = timeouts;
+		start.bytes = bytes;
+	}
+
+	private String formatRow(String queryName, long endTimeMs, long startNanos, long endNanos, long ops, long errors, long timeouts, long p50Micros, long p99Micros, long bytes) {
+		double elapsedSeconds = (endNanos - baseNanos) / 1000000000.0;
+		double intervalSeconds = (endNanos - startNanos) / 1000000000.0;
+		if (format == Format.JSONL) {
+			return String.format(Locale.US, "{\"timestamp_ms\":%d,\"elapsed_s\":%.3f,\"interval_s\":%.3f,\"query\":\"%s\",\"ops\":%d,\"errors\":%d,\"timeouts\":%d,\"p50_ms\":%.3f,\"p99_ms\":%.3f,\"bytes_received\":%d}\n",
+								 endTimeMs, elapsedSeconds, intervalSeconds, queryName, ops, errors, timeouts, p50Micros / 1000.0, p99Micros / 1000.0, bytes);
+		}
+		return String.format(Locale.US, "%d,%.3f,%.3f,%s,%d,%d,%d,%.3f,%.3f,%d\n", endTimeMs, elapsedSeconds, intervalSeconds, queryName, ops, errors, timeouts, p50Micros / 1000.0, p99Micros / 1000.0, bytes);
+	}
+
+	/**
+	 * Writes queued rows until the series is closed, the file is flushed whenever the queue has been drained
+	 */
+	private void writeRows() {
+		try {
+			while (true) {
+				String row = rowsQueue.poll(1, TimeUnit.SECONDS);
+				if (row == null) {
+					continue;
+				}
+				if (row == END_OF_SERIES) {
+					break;
+				}
+				writer.write(row);
+				if (rowsQueue.isEmpty()) {
+					writer.flush();
+				}
+			}
+		} catch (IOException e) {
+			writeFailure = e;
+			rowsQueue.clear();
+		} catch (InterruptedException ie) {
+			//closed without waiting for queued rows
+		} finally {
+			try {
+				writer.close();
+			} catch (IOException e) {
+				if (writeFailure == null) {
+					writeFailure = e;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Waits until queued rows have been written, and closes the file
+	 * @param maxWaitMilliseconds - time to wait for the writer thread
+	 */
+	public void close(long maxWaitMilliseconds) {
+		try {
+			rowsQueue.put(END_OF_SERIES);
+			writerThread.join(maxWaitMilliseconds);
+		} catch (InterruptedException ie) {
+			writerThread.interrupt();
+		}
+		if (writeFailure != null) {
+			System.out.println("IntervalSeriesWriter : failed to write the interval series : " + writeFailure.getMessage());
+		}
+		if (droppedRowsCount.get() > 0) {
+			System.out.println("IntervalSeriesWriter : " + droppedRowsCount.get() + " rows have been dropped, as the series could not be written fast enough");
+		}
+	}
+
+	/**
+	 * @return rows which have not been written, as the writer has fallen behind
+	 */
+	public long getDroppedRowsCount() {
+		return droppedRowsCount.get();
+	}
+
+	private static class IntervalStart {
+		private long nanos;
+		private long runs = 0;
+		private long failures = 0;
+		private long timeouts = 0;
+		private long bytes = 0;
+
+		private IntervalStart(long nanos) {
+			this.nanos = nanos;
+		}
+	}
+}
@@ -0,0 +1,38 @@
+package eu.ldbc.semanticpublishing.statistics;
+
+import eu.ldbc.semanticpublishing.endpoint.RequestTimings;
+import eu.ldbc.semanticpublishing.endpoint.RequestTimings.Phase;
+
+/**
+ * Sums the latency phases of the requests of a query, to tell whether time is spent in the driver, the network or the server
+ */
+public class LatencyBreakdown {
+	//a counter for each phase, as counters next to each other in an array would share cache lines
+	private final StripedCounter[] phaseNanos = new StripedCounter[Phase.values().length];
+	private final StripedCounter requestsCount = new StripedCounter();
+
+	public LatencyBreakdown() {
+		for (int i = 0; i < phaseNanos.length; i++) {
+			phaseNanos[i] = new StripedCounter();
+		}
+	}
+
+	public void record(RequestTimings timings) {
+		for (Phase phase : Phase.values()) {
+			phaseNanos[phase.ordinal()].add(timings.get(phase));
+		}
+		requestsCount.increment();
+	}
+
+	public long getRequestsCount() {
+		return requestsCount.sum();
+	}
+
+	/**
+	 * @return average time of given phase per request in milliseconds
+	 */
+	public double getAvgTimeMs(Phase phase) {
+		long count = requestsCount.sum();
+		return count > 0 ? phaseNanos[phase.ordinal()].sum() / 1000000.0 / count : 0.0;
+	}
+}
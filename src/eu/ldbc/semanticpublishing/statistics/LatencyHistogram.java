@@ -0,0 +1,215 @@
+package eu.ldbc.semanticpublishing.statistics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free histogram of latency values with the bucket layout of HdrHistogram : values are kept with a fixed
+ * number of significant decimal digits in logarithmically growing buckets, so the memory footprint does not
+ * depend on the number of recorded values. Values are recorded concurrently without locking, readers take
+ * snapshots which can be queried for percentiles, merged or written to a histogram log.
+ */
+public class LatencyHistogram {
+	/** one hour in microseconds, larger values are recorded as the highest trackable value */
+	public static final long DEFAULT_HIGHEST_TRACKABLE_VALUE = 3600L * 1000L * 1000L;
+	public static final int DEFAULT_SIGNIFICANT_VALUE_DIGITS = 3;
+
+	private final long highestTrackableValue;
+	private final int numberOfSignificantValueDigits;
+	private final int subBucketHalfCountMagnitude;
+	private final int subBucketHalfCount;
+	private final int subBucketCount;
+	private final long subBucketMask;
+	private final int leadingZeroCountBase;
+	private final int countsArrayLength;
+
+	//counts of values close to each other share cache lines, but values spread over buckets. The total is updated by every
+	//recorded value, it is striped. Min and max are written only when they change.
+	private final AtomicLongArray counts;
+	private final StripedCounter totalValue = new StripedCounter();
+	private final AtomicLong minValue = new AtomicLong(Long.MAX_VALUE);
+	private final AtomicLong maxValue = new AtomicLong(0);
+
+	//last snapshot taken by getIntervalSnapshot()
+	private HistogramSnapshot lastIntervalSnapshot;
+
+	public LatencyHistogram() {
+		this(DEFAULT_HIGHEST_TRACKABLE_VALUE, DEFAULT_SIGNIFICANT_VALUE_DIGITS);
+	}
+
+	/**
+	 * @param highestTrackableValue - highest value to be tracked, at least 2
+	 * @param numberOfSignificantValueDigits - precision of recorded values, 1 to 5
+	 */
+	public LatencyHistogram(long highestTrackableValue, int numberOfSignificantValueDigits) {
+		if (highestTrackableValue < 2) {
+			throw new IllegalArgumentException("LatencyHistogram : highest trackable value must be at least 2");
+		}
+		if (numberOfSignificantValueDigits < 1 || numberOfSignificantValueDigits > 5) {
+			throw new IllegalArgumentException("LatencyHistogram : number of significant value digits must be between 1 and 5");
+		}
+		this.highestTrackableValue = highestTrackableValue;
+		this.numberOfSignificantValueDigits = numberOfSignificantValueDigits;
+
+		//values up to largestValueWithSingleUnitResolution are kept exactly, larger ones with the same relative precision
+		long largestValueWithSingleUnitResolution = 2 * (long) Math.pow(10, numberOfSignificantValueDigits);
+		int subBucketCountMagnitude = (int) Math.ceil(Math.log(largestValueWithSingleUnitResolution) / Math.log(2));
+		subBucketHalfCountMagnitude = Math.max(subBucketCountMagnitude, 1) - 1;
+		subBucketCount = 1 << (subBucketHalfCountMagnitude + 1);
+		subBucketHalfCount = subBucketCount / 2;
+		subBucketMask = subBucketCount - 1;
+		leadingZeroCountBase = 64 - subBucketHalfCountMagnitude - 1;
+
+		int bucketsCount = 1;
+		long smallestUntrackableValue = subBucketCount;
+		while (smallestUntrackableValue <= highestTrackableValue) {
+			if (smallestUntrackableValue > Long.MAX_VALUE / 2) {
+				bucketsCount++;
+				break;
+			}
+			smallestUntrackableValue <<= 1;
+			bucketsCount++;
+		}
+		countsArrayLength = (bucketsCount + 1) * subBucketHalfCount;
+		counts = new AtomicLongArray(countsArrayLength);
+	}
+
+	/**
+	 * Records a value, negative values are recorded as zero and values above the highest trackable value as the highest trackable value
+	 */
+	public void recordValue(long value) {
+		if (value < 0) {
+			value = 0;
+		} else if (value > highestTrackableValue) {
+			value = highestTrackableValue;
+		}
+
+		counts.incrementAndGet(countsArrayIndex(value));
+		totalValue.add(value);
+
+		long min;
+		while ((min = minValue.get()) > value) {
+			if (minValue.compareAndSet(min, value)) {
+				break;
+			}
+		}
+
+		long max;
+		while ((max = maxValue.get()) < value) {
+			if (maxValue.compareAndSet(max, value)) {
+				break;
+			}
+		}
+	}
+
+	/**
+	 * @return a copy of all values recorded so far
+	 */
+	public HistogramSnapshot getSnapshot() {
+		long[] countsCopy = new long[countsArrayLength];
+		long totalCount = 0;
+		for (int i = 0; i < countsArrayLength; i++) {
+			countsCopy[i] = counts.get(i);
+			totalCount += countsCopy[i];
+		}
+		if (totalCount == 0) {
+			return new HistogramSnapshot(this, countsCopy, 0, 0, 0, 0);
+		}
+		//a value recorded while copying may be missing from the copied counts, keep min and max within the copied buckets
+		long min = Math.max(minValue.get(), valueFromIndex(firstNonZeroIndex(countsCopy)));
+		long max = Math.min(maxValue.get(), highestEquivalentValue(valueFromIndex(lastNonZeroIndex(countsCopy))));
+		return new HistogramSnapshot(this, countsCopy, totalCount, totalValue.sum(), min, max);
+	}
+
+	/**
+	 * Values recorded since the previous call of this method, to be called by a single reader (e.g. the reporter thread).
+	 * @return values recorded since the previous call, or since creation of the histogram on first call
+	 */
+	public synchronized HistogramSnapshot getIntervalSnapshot() {
+		HistogramSnapshot snapshot = getSnapshot();
+		HistogramSnapshot interval = lastIntervalSnapshot == null ? snapshot : snapshot.minus(lastIntervalSnapshot);
+		lastIntervalSnapshot = snapshot;
+		return interval;
+	}
+
+	public long getTotalValue() {
+		return totalValue.sum();
+	}
+
+	/**
+	 * @return lowest recorded value, 0 if no values have been recorded
+	 */
+	public long getMinValue() {
+		long min = minValue.get();
+		return min == Long.MAX_VALUE ? 0 : min;
+	}
+
+	/**
+	 * @return highest recorded value, 0 if no values have been recorded
+	 */
+	public long getMaxValue() {
+		return maxValue.get();
+	}
+
+	long getHighestTrackableValue() {
+		return highestTrackableValue;
+	}
+
+	int getNumberOfSignificantValueDigits() {
+		return numberOfSignificantValueDigits;
+	}
+
+	int getCountsArrayLength() {
+		return countsArrayLength;
+	}
+
+	boolean hasSameLayout(LatencyHistogram other) {
+		return highestTrackableValue == other.highestTrackableValue && numberOfSignificantValueDigits == other.numberOfSignificantValueDigits;
+	}
+
+	int countsArrayIndex(long value) {
+		int bucketIndex = leadingZeroCountBase - Long.numberOfLeadingZeros(value | subBucketMask);
+		int subBucketIndex = (int) (value >>> bucketIndex);
+		int bucketBaseIndex = (bucketIndex + 1) << subBucketHalfCountMagnitude;
+		return bucketBaseIndex + subBucketIndex - subBucketHalfCount;
+	}
+
+	long valueFromIndex(int index) {
+		int bucketIndex = (index >> subBucketHalfCountMagnitude) - 1;
+		int subBucketIndex = (index & (subBucketHalfCount - 1)) + subBucketHalfCount;
+		if (bucketIndex < 0) {
+			subBucketIndex -= subBucketHalfCount;
+			bucketIndex = 0;
+		}
+		return ((long) subBucketIndex) << bucketIndex;
+	}
+
+	/**
+	 * @return highest value which is recorded in the same bucket as given value
+	 */
+	long highestEquivalentValue(long value) {
+		int bucketIndex = leadingZeroCountBase - Long.numberOfLeadingZeros(value | subBucketMask);
+		int subBucketIndex = (int) (value >>> bucketIndex);
+		int adjustedBucketIndex = (subBucketIndex >= subBucketCount) ? bucketIndex + 1 : bucketIndex;
+		long lowestEquivalentValue = ((long) subBucketIndex) << bucketIndex;
+		return lowestEquivalentValue + (1L << adjustedBucketIndex) - 1;
+	}
+
+	static int firstNonZeroIndex(long[] counts) {
+		for (int i = 0; i < counts.length; i++) {
+			if (counts[i] != 0) {
+				return i;
+			}
+		}
+		return 0;
+	}
+
+	static int lastNonZeroIndex(long[] counts) {
+		for (int i = counts.length - 1; i >= 0; i--) {
+			if (counts[i] != 0) {
+				return i;
+			}
+		}
+		return 0;
+	}
+}
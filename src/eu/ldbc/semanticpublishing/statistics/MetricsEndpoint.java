@@ -0,0 +1,293 @@
+package eu.ldbc.semanticpublishing.statistics;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import eu.ldbc.semanticpublishing.agents.AbstractAsynchronousAgent;
+import eu.ldbc.semanticpublishing.endpoint.CircuitBreaker;
+import eu.ldbc.semanticpublishing.endpoint.EndpointRouter;
+import eu.ldbc.semanticpublishing.endpoint.HttpConnectionBase;
+import eu.ldbc.semanticpublishing.endpoint.QueryExecutionPolicy;
+import eu.ldbc.semanticpublishing.endpoint.SparqlQueryExecuteManager;
+import eu.ldbc.semanticpublishing.endpoint.pool.HttpConnectionPool;
+
+/**
+ * Exposes the statistics of the running driver at /metrics in the Prometheus text format, so that a run can be watched
+ * next to the metrics of the store : counters and execution time histograms of each query type, editorial operations per second,
+ * agents, connections and endpoints, heap and garbage collection of the driver's JVM.
+ *
+ * A scrape only reads counters and copies histogram buckets, none of which blocks recording by the agents. Scrapes are served
+ * one at a time by a single thread, so frequent or concurrent scrapes cannot take more than a core from the workload.
+ */
+public class MetricsEndpoint {
+	private static final String CONTEXT_PATH = "/metrics";
+	private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+	private static final String ANY_ADDRESS = "0.0.0.0";
+
+	//upper bounds of the histogram buckets in seconds, as latencies of SPARQL queries span from sub-millisecond to minutes
+	private static final double[] BUCKET_BOUNDS_SECONDS = { 0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1.0, 2.5, 5.0, 10.0, 30.0, 60.0 };
+
+	private final List<AbstractAsynchronousAgent> aggregationAgents;
+	private final List<AbstractAsynchronousAgent> editorialAgents;
+	private final long startNanos = System.nanoTime();
+	private HttpServer server;
+	private ExecutorService executor;
+	private String urlHost;
+
+	/**
+	 * @param aggregationAgents - agents of the run, not modified while the endpoint is running
+	 * @param editorialAgents - agents of the run, not modified while the endpoint is running
+	 */
+	public MetricsEndpoint(List<AbstractAsynchronousAgent> aggregationAgents, List<AbstractAsynchronousAgent> editorialAgents) {
+		this.aggregationAgents = aggregationAgents;
+		this.editorialAgents = editorialAgents;
+	}
+
+	/**
+	 * @param bindAddress - address of the interface to listen on, 0.0.0.0 for all interfaces
+	 * @param port - 0 selects a free port
+	 */
+	public synchronized void start(String bindAddress, int port) throws IOException {
+		executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "MetricsEndpoint");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		server = HttpServer.create(new InetSocketAddress(bindAddress, port), 0);
+		urlHost = bindAddress.equals(ANY_ADDRESS) ? InetAddress.getLocalHost().getHostName() : bindAddress;
+		server.createContext(CONTEXT_PATH, new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				handleExchange(exchange);
+			}
+		});
+		server.setExecutor(executor);
+		server.start();
+	}
+
+	public synchronized void stop() {
+		if (server != null) {
+			server.stop(0);
+			executor.shutdownNow();
+			server = null;
+		}
+	}
+
+	public String getUrl() {
+		return "http://" + urlHost + ":" + server.getAddress().getPort() + CONTEXT_PATH;
+	}
+
+	private void handleExchange(HttpExchange exchange) throws IOException {
+		try {
+			if (!exchange.getRequestMethod().equalsIgnoreCase("GET")) {
+				exchange.sendResponseHeaders(405, -1);
+				return;
+			}
+			byte[] body = formatMetrics().getBytes("UTF-8");
+			exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+			exchange.sendResponseHeaders(200, body.length);
+			OutputStream os = exchange.getResponseBody();
+			os.write(body);
+		} finally {
+			exchange.close();
+		}
+	}
+
+	/**
+	 * @return current values of all metrics in the Prometheus text format
+	 */
+	public String formatMetrics() {
+		StringBuilder sb = new StringBuilder(64 * 1024);
+		appendQueries(sb);
+		appendDriver(sb);
+		appendConnections(sb);
+		appendJvm(sb);
+		return sb.toString();
+	}
+
+	private void appendQueries(StringBuilder sb) {
+		QueryStatistics[] queries = new QueryStatistics[Statistics.AGGREGATE_QUERIES_COUNT + 4];
+		System.arraycopy(Statistics.aggregateQueriesArray, 0, queries, 0, Statistics.AGGREGATE_QUERIES_COUNT);
+		queries[Statistics.AGGREGATE_QUERIES_COUNT] = Statistics.insertCreativeWorksQueryStatistics;
+		queries[Statistics.AGGREGATE_QUERIES_COUNT + 1] = Statistics.updateCreativeWorksQueryStatistics;
+		queries[Statistics.AGGREGATE_QUERIES_COUNT + 2] = Statistics.deleteCreativeWorksQueryStatistics;
+		queries[Statistics.AGGREGATE_QUERIES_COUNT + 3] = Statistics.editorialBatchesQueryStatistics;
+
+		appendHeader(sb, "spb_query_runs_total", "counter", "Queries completed successfully");
+		for (QueryStatistics qs : queries) {
+			appendSample(sb, "spb_query_runs_total", "query", qs.getQueryName(), qs.getRunsCount());
+		}
+		appendHeader(sb, "spb_query_failures_total", "counter", "Queries failed");
+		for (QueryStatistics qs : queries) {
+			appendSample(sb, "spb_query_failures_total", "query", qs.getQueryName(), qs.getFailuresCount());
+		}
+		appendHeader(sb, "spb_query_timeouts_total", "counter", "Queries aborted at their deadline");
+		for (QueryStatistics qs : queries) {
+			appendSample(sb, "spb_query_timeouts_total", "query", qs.getQueryName(), qs.getTimeoutsCount());
+		}
+		appendHeader(sb, "spb_query_received_bytes_total", "counter", "Bytes of query responses as received");
+		for (QueryStatistics qs : queries) {
+			appendSample(sb, "spb_query_received_bytes_total", "query", qs.getQueryName(), qs.getBytesReceived());
+		}
+
+		appendHeader(sb, "spb_query_execution_seconds", "histogram", "Execution times of successful queries");
+		for (QueryStatistics qs : queries) {
+			appendHistogram(sb, "spb_query_execution_seconds", qs.getQueryName(), qs.getExecutionTimeHistogram().getSnapshot());
+		}
+	}
+
+	/**
+	 * Appends cumulative buckets of a snapshot, values are in microseconds
+	 */
+	private void appendHistogram(StringBuilder sb, String name, String queryName, HistogramSnapshot snapshot) {
+		String labels = "query=\"" + escapeLabelValue(queryName) + "\"";
+		for (double bound : BUCKET_BOUNDS_SECONDS) {
+			long count = snapshot.getTotalCount() == 0 ? 0 : snapshot.getCountAtOrBelow((long) (bound * 1000000.0));
+			sb.append(name).append("_bucket{").append(labels).append(",le=\"").append(formatDouble(bound)).append("\"} ").append(count).append('\n');
+		}
+		sb.append(name).append("_bucket{").append(labels).append(",le=\"+Inf\"} ").append(snapshot.getTotalCount()).append('\n');
+		sb.append(name).append("_sum{").append(labels).append("} ").append(formatDouble(snapshot.getTotalValue() / 1000000.0)).append('\n');
+		sb.append(name).append("_count{").append(labels).append("} ").append(snapshot.getTotalCount()).append('\n');
+	}
+
+	private void appendDriver(StringBuilder sb) {
+		appendHeader(sb, "spb_query_mix_runs_started_total", "counter", "Query mixes started by aggregation agents");
+		appendSample(sb, "spb_query_mix_runs_started_total", Statistics.totalStartedQueryMixRuns.get());
+		appendHeader(sb, "spb_query_mix_runs_completed_total", "counter", "Query mixes completed by aggregation agents");
+		appendSample(sb, "spb_query_mix_runs_completed_total", Statistics.totalCompletedQueryMixRuns.get());
+
+		long editorialOperations = Statistics.insertCreativeWorksQueryStatistics.getRunsCount() + Statistics.updateCreativeWorksQueryStatistics.getRunsCount() + Statistics.deleteCreativeWorksQueryStatistics.getRunsCount();
+		double seconds = (System.nanoTime() - startNanos) / 1000000000.0;
+		appendHeader(sb, "spb_editorial_operations_per_second", "gauge", "Average rate of editorial operations since the start of the endpoint");
+		appendSample(sb, "spb_editorial_operations_per_second", seconds > 0 ? editorialOperations / seconds : 0.0);
+
+		appendHeader(sb, "spb_agents", "gauge", "Agents of the run");
+		appendSample(sb, "spb_agents", "kind", "aggregation", aggregationAgents.size());
+		appendSample(sb, "spb_agents", "kind", "editorial", editorialAgents.size());
+		appendHeader(sb, "spb_agents_running", "gauge", "Agents started and not terminated");
+		appendSample(sb, "spb_agents_running", "kind", "aggregation", countRunning(aggregationAgents));
+		appendSample(sb, "spb_agents_running", "kind", "editorial", countRunning(editorialAgents));
+	}
+
+	private static int countRunning(List<AbstractAsynchronousAgent> agents) {
+		int running = 0;
+		for (AbstractAsynchronousAgent agent : agents) {
+			if (agent.isAlive()) {
+				running++;
+			}
+		}
+		return running;
+	}
+
+	private void appendConnections(StringBuilder sb) {
+		HttpConnectionPool connectionPool = HttpConnectionBase.getConnectionPool();
+		if (connectionPool != null) {
+			appendHeader(sb, "spb_http_connections_created_total", "counter", "Connections opened by the pool");
+			appendSample(sb, "spb_http_connections_created_total", connectionPool.getCreatedCount());
+			appendHeader(sb, "spb_http_connections_reused_total", "counter", "Requests sent over an idle pooled connection");
+			appendSample(sb, "spb_http_connections_reused_total", connectionPool.getReusedCount());
+			appendHeader(sb, "spb_http_connections_evicted_total", "counter", "Idle connections closed by the pool or the server");
+			appendSample(sb, "spb_http_connections_evicted_total", connectionPool.getEvictedCount());
+			appendHeader(sb, "spb_http_connections_leased", "gauge", "Connections in use by requests");
+			appendSample(sb, "spb_http_connections_leased", connectionPool.getLeasedCount());
+			appendHeader(sb, "spb_http_connections_idle", "gauge", "Connections kept for reuse");
+			appendSample(sb, "spb_http_connections_idle", connectionPool.getIdleCount());
+		}
+
+		EndpointRouter router = HttpConnectionBase.getEndpointRouter();
+		if (router != null) {
+			appendHeader(sb, "spb_endpoint_requests_total", "counter", "Requests routed to the endpoint");
+			for (EndpointRouter.Endpoint endpoint : router.getEndpoints()) {
+				appendSample(sb, "spb_endpoint_requests_total", "endpoint", endpoint.getUrl(), endpoint.getRequestsCount());
+			}
+			appendHeader(sb, "spb_endpoint_failures_total", "counter", "Requests to the endpoint which have failed");
+			for (EndpointRouter.Endpoint endpoint : router.getEndpoints()) {
+				appendSample(sb, "spb_endpoint_failures_total", "endpoint", endpoint.getUrl(), endpoint.getFailuresCount());
+			}
+			appendHeader(sb, "spb_endpoint_outstanding_requests", "gauge", "Requests to the endpoint in progress");
+			for (EndpointRouter.Endpoint endpoint : router.getEndpoints()) {
+				appendSample(sb, "spb_endpoint_outstanding_requests", "endpoint", endpoint.getUrl(), endpoint.getOutstandingRequests());
+			}
+		}
+
+		QueryExecutionPolicy executionPolicy = SparqlQueryExecuteManager.getExecutionPolicy();
+		if (executionPolicy != null && !executionPolicy.getCircuitBreakers().isEmpty()) {
+			appendHeader(sb, "spb_circuit_breaker_open", "gauge", "1 if requests to the endpoint are suspended");
+			for (CircuitBreaker circuitBreaker : executionPolicy.getCircuitBreakers()) {
+				appendSample(sb, "spb_circuit_breaker_open", "endpoint", circuitBreaker.getEndpointUrl(), circuitBreaker.getState() == CircuitBreaker.State.CLOSED ? 0 : 1);
+			}
+			appendHeader(sb, "spb_circuit_breaker_opens_total", "counter", "Times the circuit of the endpoint has opened");
+			for (CircuitBreaker circuitBreaker : executionPolicy.getCircuitBreakers()) {
+				appendSample(sb, "spb_circuit_breaker_opens_total", "endpoint", circuitBreaker.getEndpointUrl(), circuitBreaker.getOpensCount());
+			}
+		}
+	}
+
+	private void appendJvm(StringBuilder sb) {
+		MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+		appendHeader(sb, "spb_jvm_heap_used_bytes", "gauge", "Heap used by the driver");
+		appendSample(sb, "spb_jvm_heap_used_bytes", heap.getUsed());
+		appendHeader(sb, "spb_jvm_heap_committed_bytes", "gauge", "Heap committed by the driver's JVM");
+		appendSample(sb, "spb_jvm_heap_committed_bytes", heap.getCommitted());
+		appendHeader(sb, "spb_jvm_heap_max_bytes", "gauge", "Maximum heap of the driver's JVM, -1 if undefined");
+		appendSample(sb, "spb_jvm_heap_max_bytes", heap.getMax());
+
+		List<GarbageCollectorMXBean> collectors = ManagementFactory.getGarbageCollectorMXBeans();
+		appendHeader(sb, "spb_jvm_gc_collections_total", "counter", "Garbage collections of the driver's JVM");
+		for (GarbageCollectorMXBean collector : collectors) {
+			appendSample(sb, "spb_jvm_gc_collections_total", "gc", collector.getName(), Math.max(0, collector.getCollectionCount()));
+		}
+		appendHeader(sb, "spb_jvm_gc_collection_seconds_total", "counter", "Time spent in garbage collections of the driver's JVM");
+		for (GarbageCollectorMXBean collector : collectors) {
+			appendSample(sb, "spb_jvm_gc_collection_seconds_total", "gc", collector.getName(), Math.max(0, collector.getCollectionTime()) / 1000.0);
+		}
+
+		appendHeader(sb, "spb_jvm_threads", "gauge", "Live threads of the driver's JVM");
+		appendSample(sb, "spb_jvm_threads", ManagementFactory.getThreadMXBean().getThreadCount());
+	}
+
+	private static void appendHeader(StringBuilder sb, String name, String type, String help) {
+		sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+		sb.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+	}
+
+	private static void appendSample(StringBuilder sb, String name, long value) {
+		sb.append(name).append(' ').append(value).append('\n');
+	}
+
+	private static void appendSample(StringBuilder sb, String name, double value) {
+		sb.append(name).append(' ').append(formatDouble(value)).append('\n');
+	}
+
+	private static void appendSample(StringBuilder sb, String name, String label, String labelValue, long value) {
+		sb.append(name).append('{').append(label).append("=\"").append(escapeLabelValue(labelValue)).append("\"} ").append(value).append('\n');
+	}
+
+	private static void appendSample(StringBuilder sb, String name, String label, String labelValue, double value) {
+		sb.append(name).append('{').append(label).append("=\"").append(escapeLabelValue(labelValue)).append("\"} ").append(formatDouble(value)).append('\n');
+	}
+
+	private static String formatDouble(double value) {
+		return Double.toString(value);
+	}
+
+	private static String escapeLabelValue(String value) {
+		return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+	}
+}
@@ -2,35 +2,89 @@ package eu.ldbc.semanticpublishing.statistics;
 
 import java.util.concurrent.atomic.AtomicLong;
 
+import eu.ldbc.semanticpublishing.endpoint.RequestTimings;
+
 /**
  * A class for holding individual statistics for each query type.
  */
 public class QueryStatistics {
 	private String queryName;
 	private AtomicLong queryId;
-	private AtomicLong runsCount;
-	private AtomicLong failuresCount;
 	
-	private long minExecutionTimeMs = 0;
-	private long maxExecutionTimeMs = 0;
-	private long avgExecutionTimeMs = 0;
+	//updated by all agents, striped so that agents on many cores do not contend on shared cache lines
+	private final StripedCounter runsCount = new StripedCounter();
+	private final StripedCounter failuresCount = new StripedCounter();
+	private final StripedCounter timeoutsCount = new StripedCounter();
+	
+	//wall-clock time spent by agents on queries which have timed out, capacity lost without completing a query
+	private final StripedCounter timeoutsTimeMs = new StripedCounter();
+	
+	//recorded in microseconds without locking, so that agents running on virtual threads never block their carrier thread.
+	//Latencies are measured with System.nanoTime(), sub-millisecond queries are kept exactly.
+	private final LatencyHistogram executionTimeHistogram = new LatencyHistogram();
+	
+	//response time is measured from the intended start of a query, differs from execution (service) time in open loop runs only
+	private final LatencyHistogram responseTimeHistogram = new LatencyHistogram();
+	
+	//phases of successful requests, from compiling the query until parsing its results
+	private final LatencyBreakdown latencyBreakdown = new LatencyBreakdown();
+	
+	//bytes of responses of successful requests, as received (i.e. compressed if compression is enabled)
+	private final StripedCounter bytesReceived = new StripedCounter();
 
 	public QueryStatistics(String queryName) {
 		this.queryName = queryName;
 		queryId = new AtomicLong(0);
-		runsCount = new AtomicLong(0);
-		failuresCount = new AtomicLong(0);
 	}
 	
-	public synchronized void reportSuccess(long currentExecutionTimeMs) {
-		runsCount.incrementAndGet();
-		minExecutionTimeMs = (minExecutionTimeMs == 0) ? currentExecutionTimeMs : (minExecutionTimeMs > currentExecutionTimeMs ? currentExecutionTimeMs : minExecutionTimeMs);
-		maxExecutionTimeMs = (currentExecutionTimeMs > maxExecutionTimeMs) ? currentExecutionTimeMs : maxExecutionTimeMs;
-		avgExecutionTimeMs += currentExecutionTimeMs;
+	public void reportSuccess(long currentExecutionTimeMicros) {
+		reportSuccess(currentExecutionTimeMicros, currentExecutionTimeMicros);
+	}
+	
+	/**
+	 * @param currentExecutionTimeMicros - service time, i.e. from sending the query until the response has been received
+	 * @param currentResponseTimeMicros - from the intended start time of the query until the response has been received
+	 */
+	public void reportSuccess(long currentExecutionTimeMicros, long currentResponseTimeMicros) {
+		executionTimeHistogram.recordValue(currentExecutionTimeMicros);
+		responseTimeHistogram.recordValue(currentResponseTimeMicros);
+		runsCount.increment();
 	}
 	
 	public void reportFailure() {
-		failuresCount.incrementAndGet();
+		failuresCount.increment();
+	}
+	
+	/**
+	 * A query which has not completed before its deadline, counted separately from failures
+	 * @param elapsedTimeMs - time from sending the query until it has been aborted
+	 */
+	public void reportTimeout(long elapsedTimeMs) {
+		timeoutsCount.increment();
+		timeoutsTimeMs.add(elapsedTimeMs);
+	}
+	
+	/**
+	 * Adds the phases of a successful request to the latency breakdown, and the bytes of its response
+	 */
+	public void reportPhases(RequestTimings timings) {
+		latencyBreakdown.record(timings);
+		bytesReceived.add(timings.getResponseBytes());
+	}
+	
+	/**
+	 * Adds the bytes of the response of a successful request which has not been timed by phases
+	 */
+	public void reportBytesReceived(long bytes) {
+		bytesReceived.add(bytes);
+	}
+	
+	public long getBytesReceived() {
+		return bytesReceived.sum();
+	}
+	
+	public LatencyBreakdown getLatencyBreakdown() {
+		return latencyBreakdown;
 	}
 	
 	public String getQueryName() {
@@ -38,33 +92,71 @@ public class QueryStatistics {
 	}
 	
 	public long getRunsCount() {
-		return runsCount.get();
+		return runsCount.sum();
 	}
 	
 	public long getFailuresCount() {
-		return failuresCount.get();
+		return failuresCount.sum();
 	}	
 	
-	public long getMinExecutionTimeMs() {
-		return minExecutionTimeMs;
+	public long getTimeoutsCount() {
+		return timeoutsCount.sum();
+	}
+	
+	/**
+	 * @return total time spent on queries which have timed out
+	 */
+	public long getTimeoutsTimeMs() {
+		return timeoutsTimeMs.sum();
+	}
+	
+	public long getMinExecutionTimeMicros() {
+		return executionTimeHistogram.getMinValue();
+	}
+	
+	public long getMaxExecutionTimeMicros() {
+		return executionTimeHistogram.getMaxValue();
 	}
 	
-	public long getMaxExecutionTimeMs() {
-		return maxExecutionTimeMs;
+	public long getAvgExecutionTimeMicros() {
+		long runs = runsCount.sum();
+		if (runs == 0) {
+			return 0;
+		}
+		return executionTimeHistogram.getTotalValue() / runs;
 	}
 	
-	public long getAvgExecutionTimeMs() {
-		if (runsCount.get() == 0) {
+	public long getAvgResponseTimeMicros() {
+		long runs = runsCount.sum();
+		if (runs == 0) {
 			return 0;
 		}
-		return avgExecutionTimeMs / runsCount.get();
+		return responseTimeHistogram.getTotalValue() / runs;
+	}
+	
+	public long getMaxResponseTimeMicros() {
+		return responseTimeHistogram.getMaxValue();
+	}
+	
+	/**
+	 * @return histogram of execution times in microseconds
+	 */
+	public LatencyHistogram getExecutionTimeHistogram() {
+		return executionTimeHistogram;
+	}
+	
+	/**
+	 * @return histogram of response times in microseconds
+	 */
+	public LatencyHistogram getResponseTimeHistogram() {
+		return responseTimeHistogram;
 	}
 	
 	public long getNewQueryId() {
 		return queryId.getAndIncrement();
 	}
 	
-	public AtomicLong getRunsCountAtomicLong() {
+	public StripedCounter getRunsCounter() {
 		return runsCount;
 	}
 }
@@ -7,6 +7,7 @@ public class Statistics {
 	private static final String UPDATE_QUERIES_STATISTICS = "UPDATE";
 	private static final String DELETE_QUERIES_STATISTICS = "DELETE";
 	private static final String AGGREGATE_QUERIES_STATISTICS = "AGGREGATE";
+	private static final String EDITORIAL_BATCHES_STATISTICS = "EDITORIAL_BATCH";
 	
 	public static final int AGGREGATE_QUERIES_COUNT = 12;
 	public static final int EDITORIAL_QUERIES_COUNT = 3;
@@ -14,7 +15,6 @@ public class Statistics {
 	public static final String AGGREGATE_QUERY_NAME = "query";
 	public static final QueryStatistics[] aggregateQueriesArray;
 	
-	public static final AtomicLong timeCorrectionsMS = new AtomicLong(0);
 	public static final AtomicLong totalStartedQueryMixRuns = new AtomicLong(0);
 	public static final AtomicLong totalCompletedQueryMixRuns = new AtomicLong(0);
 	
@@ -31,4 +31,6 @@ public class Statistics {
 	public static final QueryStatistics updateCreativeWorksQueryStatistics = new QueryStatistics(UPDATE_QUERIES_STATISTICS);
 	public static final QueryStatistics deleteCreativeWorksQueryStatistics = new QueryStatistics(DELETE_QUERIES_STATISTICS);
 	public static final QueryStatistics totalAggregateQueryStatistics = new QueryStatistics(AGGREGATE_QUERIES_STATISTICS);
+	//editorial operations sent together in a single request, when batching is enabled
+	public static final QueryStatistics editorialBatchesQueryStatistics = new QueryStatistics(EDITORIAL_BATCHES_STATISTICS);
 }
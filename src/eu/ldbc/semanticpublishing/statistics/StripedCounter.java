@@ -0,0 +1,114 @@
+package eu.ldbc.semanticpublishing.statistics;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A counter updated by many threads, summed by readers at report time (the design of Java 8's LongAdder). While updates do not
+ * contend it is a single AtomicLong. When an update fails because of a concurrent one, the counter is split into cells, each on
+ * its own cache line, and every thread adds to the cell selected by its probe. A thread colliding with another one in a cell
+ * moves on to another cell, so threads spread over the cells and updates do not bounce a shared cache line between cores.
+ *
+ * The sum is not an atomic snapshot, updates made while summing may or may not be included.
+ */
+public class StripedCounter {
+	//longs from one cell to the next, so that cells do not share a cache line nor its adjacent line, which may be prefetched with it
+	private static final int CELL_STRIDE = 16;
+	private static final int MAX_CELLS = 256;
+	private static final int CELLS_COUNT = cellsCount(Runtime.getRuntime().availableProcessors());
+
+	//probes of threads, seeded apart from each other and rehashed on collisions
+	private static final AtomicInteger probeSeed = new AtomicInteger(0);
+	private static final ThreadLocal<int[]> threadProbe = new ThreadLocal<int[]>() {
+		@Override
+		protected int[] initialValue() {
+			int probe = probeSeed.addAndGet(0x9E3779B9);
+			return new int[] { probe == 0 ? 1 : probe };
+		}
+	};
+
+	private final AtomicLong base;
+	private volatile AtomicLongArray cells = null;
+
+	public StripedCounter() {
+		this(0);
+	}
+
+	public StripedCounter(long initialValue) {
+		base = new AtomicLong(initialValue);
+	}
+
+	public void increment() {
+		add(1);
+	}
+
+	public void add(long x) {
+		AtomicLongArray cs = cells;
+		if (cs == null) {
+			long b = base.get();
+			if (base.compareAndSet(b, b + x)) {
+				return;
+			}
+			cs = splitIntoCells();
+		}
+
+		int[] probe = threadProbe.get();
+		int index = (probe[0] & (CELLS_COUNT - 1)) * CELL_STRIDE;
+		long v = cs.get(index);
+		if (cs.compareAndSet(index, v, v + x)) {
+			return;
+		}
+
+		//another thread is updating the same cell, move to another cell for this and following updates
+		probe[0] = rehash(probe[0]);
+		cs.addAndGet((probe[0] & (CELLS_COUNT - 1)) * CELL_STRIDE, x);
+	}
+
+	/**
+	 * @return sum of all updates, updates made concurrently may be missing
+	 */
+	public long sum() {
+		long sum = base.get();
+		AtomicLongArray cs = cells;
+		if (cs != null) {
+			for (int i = 0; i < CELLS_COUNT; i++) {
+				sum += cs.get(i * CELL_STRIDE);
+			}
+		}
+		return sum;
+	}
+
+	private synchronized AtomicLongArray splitIntoCells() {
+		if (cells == null) {
+			cells = new AtomicLongArray(CELLS_COUNT * CELL_STRIDE);
+		}
+		return cells;
+	}
+
+	/**
+	 * Marsaglia's xorshift, never returns zero for a non-zero probe
+	 */
+	private static int rehash(int probe) {
+		probe ^= probe << 13;
+		probe ^= probe >>> 17;
+		probe ^= probe << 5;
+		return probe;
+	}
+
+	/**
+	 * @return a power of two of at least twice the number of processors, so that threads find a free cell after few collisions
+	 */
+	private static int cellsCount(int processors) {
+		int count = 1;
+		while (count < processors * 2 && count < MAX_CELLS) {
+			count <<= 1;
+		}
+		return count;
+	}
+
+	@Override
+	public String toString() {
+		return Long.toString(sum());
+	}
+}
@@ -2,6 +2,7 @@ package eu.ldbc.semanticpublishing.statistics.querypool;
 
 import java.util.ArrayList;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * A class storing collection of items. On each invocation of setItemUnavailable() for a specific item,
@@ -10,9 +11,11 @@ import java.util.concurrent.atomic.AtomicLong;
 public class Pool {
 	private int unavailableItemsCount;
 	private ArrayList<PoolItem> items;
-	private boolean inProgress;
+	private volatile boolean inProgress;
 	private final AtomicLong totalStartsCount;
 	private final AtomicLong totalResetsCount;
+	//a lock instead of synchronized methods, waiting for it does not pin virtual threads to their carrier
+	private final ReentrantLock lock = new ReentrantLock();
 	
 	public Pool(String poolDefinition, AtomicLong totalStartsCount, AtomicLong totalResetsCount) {
 		this.unavailableItemsCount = 0;
@@ -132,20 +135,30 @@ public class Pool {
 		return false;
 	}
 
-	public synchronized void setItemUnavailable(int itemId) {
-		PoolItem item = getItem(itemId);
-		if (item != null) {
-			if (unavailableItemsCount == 0) {
-				this.inProgress = true;
-				totalStartsCount.incrementAndGet();				
+	public void setItemUnavailable(int itemId) {
+		lock.lock();
+		try {
+			PoolItem item = getItem(itemId);
+			if (item != null) {
+				if (unavailableItemsCount == 0) {
+					this.inProgress = true;
+					totalStartsCount.incrementAndGet();				
+				}
+				item.setUnavailable();
 			}
-			item.setUnavailable();
+		} finally {
+			lock.unlock();
 		}
 	}	
 	
-	public synchronized void incrementUnavailableItemsCount() {
-		unavailableItemsCount++;
-		checkAndResetAllItems();
+	public void incrementUnavailableItemsCount() {
+		lock.lock();
+		try {
+			unavailableItemsCount++;
+			checkAndResetAllItems();
+		} finally {
+			lock.unlock();
+		}
 	}
 	
 	private void checkAndResetAllItems() {
@@ -167,13 +180,18 @@ public class Pool {
 	 * @param itemId - id of the item to be set unavailable
 	 * @return - true if operation succeeded. false - if item was not available 
 	 */
-	public synchronized boolean checkAndSetItemUnavailable(int itemId) {
+	public boolean checkAndSetItemUnavailable(int itemId) {
 		if (items.size() > 0) {
-			if (itemIsAvailable(itemId)) {
-				setItemUnavailable(itemId);
-				return true;
-			} else {
-				return false;
+			lock.lock();
+			try {
+				if (itemIsAvailable(itemId)) {
+					setItemUnavailable(itemId);
+					return true;
+				} else {
+					return false;
+				}
+			} finally {
+				lock.unlock();
 			}
 		}
 		
@@ -181,7 +199,7 @@ public class Pool {
 		return true;
 	}
 	
-	public synchronized void releaseUnavailableItem(int itemId) {
+	public void releaseUnavailableItem(int itemId) {
 		if (items.size() > 0) {
 			incrementUnavailableItemsCount();
 		}	
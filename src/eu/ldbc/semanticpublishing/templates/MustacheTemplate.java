@@ -1,13 +1,17 @@
 package eu.ldbc.semanticpublishing.templates;
 
+import java.io.IOException;
 import java.io.StringReader;
 import java.io.StringWriter;
+import java.io.Writer;
 import java.util.HashMap;
 
 import com.github.mustachejava.DefaultMustacheFactory;
 import com.github.mustachejava.Mustache;
+import com.github.mustachejava.MustacheException;
 import com.github.mustachejava.MustacheFactory;
 
+import eu.ldbc.semanticpublishing.endpoint.QueryBodyWriter;
 import eu.ldbc.semanticpublishing.endpoint.SparqlQueryConnection.QueryType;
 
 /**
@@ -15,7 +19,7 @@ import eu.ldbc.semanticpublishing.endpoint.SparqlQueryConnection.QueryType;
  * corresponding to a template file saved in Configuration.QUERIES_PATH/aggregation and 
  * editorial folders. Model consists of class members and methods that conform to the Mustache Java model.
  */
-public abstract class MustacheTemplate {
+public abstract class MustacheTemplate implements QueryBodyWriter {
 	public static final MustacheFactory mustacheFactory = new DefaultMustacheFactory();
 	
 	/**
@@ -36,14 +40,37 @@ public abstract class MustacheTemplate {
 	 * Method will return a compiled query string, ready for execution
 	 */
 	public String compileMustacheTemplate() {
-		StringReader reader = new StringReader(queryTemplates.get(getTemplateFileName()));
-		Mustache mustache = mustacheFactory.compile(reader, getTemplateFileName());
 		StringWriter writer = new StringWriter();
-		mustache.execute(writer, this);
+		compileMustacheTemplate(writer);
 		writer.flush();
 		return writer.toString();		
 	}
 	
+	/**
+	 * Writes the compiled query to given writer, e.g. directly into the body of a request
+	 */
+	public void compileMustacheTemplate(Writer writer) {
+		StringReader reader = new StringReader(queryTemplates.get(getTemplateFileName()));
+		Mustache mustache = mustacheFactory.compile(reader, getTemplateFileName());
+		mustache.execute(writer, this);
+	}
+	
+	/**
+	 * Renders the query into the body of a request while it is sent
+	 */
+	@Override
+	public void writeTo(Writer writer) throws IOException {
+		try {
+			compileMustacheTemplate(writer);
+		} catch (MustacheException e) {
+			//a failure to send the request is reported as such
+			if (e.getCause() instanceof IOException) {
+				throw (IOException)e.getCause();
+			}
+			throw e;
+		}
+	}
+	
 	/**
 	 * Returns the file name of the mustache template, for which the model will be built.
 	 * Kindly forces implementors to store template file name in an instance member.
@@ -0,0 +1,129 @@
+package eu.ldbc.semanticpublishing.tools;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import eu.ldbc.semanticpublishing.endpoint.RequestTimings;
+import eu.ldbc.semanticpublishing.statistics.QueryStatistics;
+import eu.ldbc.semanticpublishing.statistics.StripedCounter;
+
+/**
+ * Measures how the throughput of recording query statistics scales with the number of threads, as agents of the driver record
+ * into the same statistics. For each number of threads (1, 2, 4... up to the maximum) reports records per second of :
+ *   - a QueryStatistics, every record being a successful query with its latency phases
+ *   - a StripedCounter incremented by all threads
+ *   - an AtomicLong incremented by all threads, the counter statistics were kept in before
+ *
+ * Usage : java -cp semantic_publishing_benchmark.jar eu.ldbc.semanticpublishing.tools.StatisticsRecordBenchmark [maxThreads] [secondsPerRun]
+ */
+public class StatisticsRecordBenchmark {
+	private static final int DEFAULT_MAX_THREADS = 128;
+	private static final int DEFAULT_SECONDS_PER_RUN = 2;
+
+	//read by all threads but written only at the end of a run, so checking it does not contend
+	private static volatile boolean stopped = false;
+
+	private static abstract class Recorder {
+		abstract void record(long i);
+	}
+
+	public static void main(String[] args) throws InterruptedException {
+		int maxThreads = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_MAX_THREADS;
+		int secondsPerRun = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_SECONDS_PER_RUN;
+
+		final RequestTimings timings = new RequestTimings();
+		for (RequestTimings.Phase phase : RequestTimings.Phase.values()) {
+			timings.set(phase, 1000000L);
+		}
+
+		System.out.println("Processors : " + Runtime.getRuntime().availableProcessors() + ", " + secondsPerRun + " s per run, records per second :");
+		System.out.println(String.format("%8s %18s %18s %18s", "threads", "QueryStatistics", "StripedCounter", "AtomicLong"));
+
+		//a short run of each recorder first, so that measured runs are compiled
+		runAll(2, 1, timings);
+
+		for (int threads = 1; threads <= maxThreads; threads *= 2) {
+			long[] rates = runAll(threads, secondsPerRun, timings);
+			System.out.println(String.format("%8d %18d %18d %18d", threads, rates[0], rates[1], rates[2]));
+		}
+	}
+
+	private static long[] runAll(int threads, int seconds, final RequestTimings timings) throws InterruptedException {
+		final QueryStatistics queryStatistics = new QueryStatistics("BENCHMARK");
+		final StripedCounter stripedCounter = new StripedCounter();
+		final AtomicLong atomicLong = new AtomicLong(0);
+
+		long[] rates = new long[3];
+		rates[0] = run(threads, seconds, new Recorder() {
+			void record(long i) {
+				queryStatistics.reportSuccess(1 + (i & 1023), 1 + (i & 1023));
+				queryStatistics.reportPhases(timings);
+			}
+		});
+		rates[1] = run(threads, seconds, new Recorder() {
+			void record(long i) {
+				stripedCounter.increment();
+			}
+		});
+		rates[2] = run(threads, seconds, new Recorder() {
+			void record(long i) {
+				atomicLong.incrementAndGet();
+			}
+		});
+
+		if (queryStatistics.getRunsCount() == 0 || stripedCounter.sum() == 0 || atomicLong.get() == 0) {
+			System.out.println("StatisticsRecordBenchmark : nothing has been recorded");
+		}
+		return rates;
+	}
+
+	/**
+	 * @return records per second of all threads together
+	 */
+	private static long run(int threads, int seconds, final Recorder recorder) throws InterruptedException {
+		final CountDownLatch startLatch = new CountDownLatch(1);
+		stopped = false;
+		final long[] recordsCounts = new long[threads];
+		Thread[] workers = new Thread[threads];
+
+		for (int t = 0; t < threads; t++) {
+			final int index = t;
+			workers[t] = new Thread("StatisticsRecordBenchmark-" + t) {
+				@Override
+				public void run() {
+					try {
+						startLatch.await();
+					} catch (InterruptedException ie) {
+						return;
+					}
+					long i = 0;
+					while (true) {
+						for (int k = 0; k < 1024; k++) {
+							recorder.record(i++);
+						}
+						if (stopped) {
+							break;
+						}
+					}
+					recordsCounts[index] = i;
+				}
+			};
+			workers[t].start();
+		}
+
+		long startNanos = System.nanoTime();
+		startLatch.countDown();
+		Thread.sleep(seconds * 1000L);
+		stopped = true;
+		for (Thread worker : workers) {
+			worker.join();
+		}
+		long elapsedNanos = System.nanoTime() - startNanos;
+
+		long total = 0;
+		for (long count : recordsCounts) {
+			total += count;
+		}
+		return (long)(total * 1000000000.0 / elapsedNanos);
+	}
+}
@@ -32,7 +32,7 @@ public class LoggingUtil {
 	private static final String LAYOUT = ">> %d{HH:mm:ss.SSS} [%c{1}:%t] : %m\n";
 	private static final String LAYOUT_SIMPLE = "%d{HH:mm:ss.SSS} : %m\n";
 	
-	private static final String LOGS_FOLDER = "logs";
+	public static final String LOGS_FOLDER = "logs";
 	
 	public static void Configure(Configuration configuration) {
 		if (!configuration.getBoolean(Configuration.ENABLE_LOGS)) {
@@ -1,5 +1,6 @@
 package eu.ldbc.semanticpublishing.util;
 
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -13,6 +14,7 @@ import org.openrdf.rio.RDFParseException;
 import org.openrdf.rio.RDFParser;
 import org.openrdf.rio.Rio;
 
+import eu.ldbc.semanticpublishing.endpoint.HttpConnectionBase;
 import eu.ldbc.semanticpublishing.util.sesame.CroppingRDFHandler;
 
 /**
@@ -31,28 +33,67 @@ public class RdfUtils {
 	private static String[] NAMESPACES = {"cwork:", "<http://www.bbc.co.uk/ontologies/creativework/>",
 										  "bbc:"  , "<http://www.bbc.co.uk/ontologies/bbc/>"};
 
-	public static void postStatements(String endpoint, String contentType, InputStream input) throws IOException {
+	public static UploadStatistics postStatements(String endpoint, String contentType, InputStream input) throws IOException {
+		return postStatements(endpoint, contentType, null, input, -1);
+	}
+	
+	/**
+	 * Posts the contents of a file with a fixed length request body
+	 */
+	public static UploadStatistics postFile(String endpoint, String contentType, File file) throws IOException {
+		return postStatements(endpoint, contentType, null, new FileInputStream(file), file.length());
+	}
+	
+	/**
+	 * Streams the input into the request body, either with a fixed length or in chunks when the length is not known in advance,
+	 * so only a single read buffer is kept in memory regardless of the size of the input.
+	 * @param contentEncoding - encoding of the input, e.g. gzip, sent as Content-Encoding header. Null if not encoded
+	 * @param contentLength - length of the input in bytes, -1 if not known
+	 * @return bytes sent and time spent reading, sending and waiting for the response
+	 * @throws UnsupportedContentEncodingException if the server does not accept the content encoding
+	 */
+	public static UploadStatistics postStatements(String endpoint, String contentType, String contentEncoding, InputStream input, long contentLength) throws IOException {
 		
 		URL url = new URL(endpoint);
-		HttpURLConnection httpUrlConnection = (HttpURLConnection)url.openConnection();
+		HttpURLConnection httpUrlConnection = HttpConnectionBase.openUnpooledConnection(url);
 		httpUrlConnection.setDefaultUseCaches(false);
 		httpUrlConnection.setUseCaches(false);
 		httpUrlConnection.setDoOutput(input != null);
 
 		httpUrlConnection.setRequestMethod("POST");
 		httpUrlConnection.setRequestProperty("Content-Type", contentType);
+		if (contentEncoding != null) {
+			httpUrlConnection.setRequestProperty("Content-Encoding", contentEncoding);
+		}
 //		httpUrlConnection.setRequestProperty("Accept", "*/*");
 
+		long bytes = 0;
+		long readNanos = 0;
+		long sendNanos = 0;
 		if(input != null) {
+			//without a streaming mode HttpURLConnection keeps the whole request body in memory
+			if (contentLength >= 0 && contentLength <= Integer.MAX_VALUE) {
+				httpUrlConnection.setFixedLengthStreamingMode((int)contentLength);
+			} else {
+				httpUrlConnection.setChunkedStreamingMode(READ_BUFFER_SIZE_BYTES);
+			}
+			
 			OutputStream outStream = httpUrlConnection.getOutputStream();
 			
 			try {
 				int b; 
 				byte[] buffer = new byte[READ_BUFFER_SIZE_BYTES];
+				long time = System.nanoTime();
 				while((b = input.read(buffer)) >= 0) {
+					long readTime = System.nanoTime();
+					readNanos += readTime - time;
 					outStream.write(buffer, 0, b);
+					bytes += b;
+					time = System.nanoTime();
+					sendNanos += time - readTime;
 				}
 				outStream.flush();
+				sendNanos += System.nanoTime() - time;
 			}
 			finally {
 				input.close();
@@ -60,12 +101,17 @@ public class RdfUtils {
 			}
 		}
 		
+		long responseStartTime = System.nanoTime();
 		int code = httpUrlConnection.getResponseCode();
+		if (contentEncoding != null && code == HttpURLConnection.HTTP_UNSUPPORTED_TYPE) {
+			throw new UnsupportedContentEncodingException("Posting statements received error code : " + code + " from server, content encoding " + contentEncoding + " may not be supported.");
+		}
 		if (code < 200 || code >= 300) {
 			throw new IOException("Posting statements received error code : " + code + " from server.");
 		}
 		
 		httpUrlConnection.getInputStream().close();
+		return new UploadStatistics(bytes, readNanos, sendNanos, System.nanoTime() - responseStartTime);
 	}
 	
 	/**
@@ -120,4 +166,15 @@ public class RdfUtils {
 		}
 		return str;
 	}	
+	
+	/**
+	 * Thrown when the server rejects statements sent with a Content-Encoding header
+	 */
+	public static class UnsupportedContentEncodingException extends IOException {
+		private static final long serialVersionUID = 1L;
+
+		public UnsupportedContentEncodingException(String message) {
+			super(message);
+		}
+	}
 }
@@ -1,5 +1,11 @@
 package eu.ldbc.semanticpublishing.util;
 
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
 /**
  * A utility class for thread related actions. 
  */
@@ -25,4 +31,50 @@ public class ThreadUtil {
 		} catch (InterruptedException e) {
 		}
 	}
+
+	/**
+	 * Creates an executor which starts a new thread for each task. Virtual threads are used if requested and
+	 * supported by the running JVM (Java 21 or later), otherwise platform threads.
+	 * @param virtualThreads - use virtual threads if available
+	 */
+	public static ExecutorService newThreadPerTaskExecutor(boolean virtualThreads) {
+		if (virtualThreads && virtualThreadsSupported()) {
+			try {
+				//looked up at runtime, the driver is built for older Java versions
+				Method factoryMethod = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+				return (ExecutorService) factoryMethod.invoke(null);
+			} catch (Exception e) {
+				System.out.println("ThreadUtil : failed to create an executor of virtual threads, using platform threads instead : " + e);
+			}
+		} else if (virtualThreads) {
+			System.out.println("ThreadUtil : virtual threads are not supported by the running JVM (" + System.getProperty("java.version") + "), using platform threads instead");
+		}
+		return Executors.newCachedThreadPool();
+	}
+
+	/**
+	 * @return true if the running JVM supports virtual threads
+	 */
+	public static boolean virtualThreadsSupported() {
+		try {
+			Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return true;
+		} catch (NoSuchMethodException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * @return CPU time used by the JVM process in nanoseconds, -1 if not supported by the running JVM
+	 */
+	public static long getProcessCpuTimeNanos() {
+		try {
+			//com.sun.management.OperatingSystemMXBean is not part of the standard API
+			OperatingSystemMXBean operatingSystemBean = ManagementFactory.getOperatingSystemMXBean();
+			Method cpuTimeMethod = Class.forName("com.sun.management.OperatingSystemMXBean").getMethod("getProcessCpuTime");
+			return ((Long) cpuTimeMethod.invoke(operatingSystemBean)).longValue();
+		} catch (Exception e) {
+			return -1;
+		}
+	}
 }
@@ -0,0 +1,62 @@
+package eu.ldbc.semanticpublishing.util;
+
+/**
+ * Bytes and time spent while posting statements, split into reading the input (disk, decompression),
+ * sending the request body (network) and waiting for the response of the server. Comparing the read and send rates
+ * shows whether the disk or the network limits an upload.
+ */
+public class UploadStatistics {
+	private long bytes = 0;
+	private long readNanos = 0;
+	private long sendNanos = 0;
+	private long responseNanos = 0;
+
+	public UploadStatistics() {
+	}
+
+	public UploadStatistics(long bytes, long readNanos, long sendNanos, long responseNanos) {
+		this.bytes = bytes;
+		this.readNanos = readNanos;
+		this.sendNanos = sendNanos;
+		this.responseNanos = responseNanos;
+	}
+
+	/**
+	 * Adds statistics of another upload, e.g. of another chunk of the same file
+	 */
+	public synchronized void add(UploadStatistics other) {
+		bytes += other.bytes;
+		readNanos += other.readNanos;
+		sendNanos += other.sendNanos;
+		responseNanos += other.responseNanos;
+	}
+
+	public synchronized long getBytes() {
+		return bytes;
+	}
+
+	/**
+	 * @return bytes per second read from the input
+	 */
+	public synchronized double getReadBytesPerSecond() {
+		return bytesPerSecond(readNanos);
+	}
+
+	/**
+	 * @return bytes per second written to the connection
+	 */
+	public synchronized double getSendBytesPerSecond() {
+		return bytesPerSecond(sendNanos);
+	}
+
+	/**
+	 * @return time spent waiting for the server to respond after the request body has been sent
+	 */
+	public synchronized long getResponseTimeMs() {
+		return responseNanos / 1000000;
+	}
+
+	private double bytesPerSecond(long nanos) {
+		return nanos > 0 ? bytes * 1000000000.0 / nanos : 0.0;
+	}
+}
@@ -0,0 +1,89 @@
+package eu.ldbc.semanticpublishing.util.sesame;
+
+import java.io.ByteArrayOutputStream;
+
+import org.openrdf.model.BNode;
+import org.openrdf.model.Statement;
+import org.openrdf.rio.RDFFormat;
+import org.openrdf.rio.RDFHandlerException;
+import org.openrdf.rio.RDFWriter;
+import org.openrdf.rio.Rio;
+import org.openrdf.rio.helpers.RDFHandlerBase;
+
+/**
+ * Custom implementation of the RDFHandlerBase class, used to split parsed statements into serialized chunks
+ * of a fixed number of statements. Each chunk is a complete document in the output format.
+ * Blank nodes are scoped to a document, so statements with a blank node are kept in a single chunk, handled last.
+ */
+public abstract class ChunkingRDFHandler extends RDFHandlerBase {
+	private final RDFFormat outputFormat;
+	private final long statementsPerChunk;
+	private ByteArrayOutputStream chunkStream;
+	private RDFWriter rdfWriter;
+	private long chunkStatementsCount = 0;
+	private ByteArrayOutputStream blankNodesChunkStream;
+	private RDFWriter blankNodesRdfWriter;
+	private long blankNodesStatementsCount = 0;
+
+	public ChunkingRDFHandler(RDFFormat outputFormat, long statementsPerChunk) {
+		this.outputFormat = outputFormat;
+		this.statementsPerChunk = statementsPerChunk;
+	}
+
+	/**
+	 * Called for each serialized chunk
+	 * @param chunk - serialized statements
+	 * @param statementsCount - number of statements in the chunk
+	 */
+	protected abstract void handleChunk(byte[] chunk, long statementsCount) throws RDFHandlerException;
+
+	@Override
+	public void handleStatement(Statement st) throws RDFHandlerException {
+		if (st.getSubject() instanceof BNode || st.getObject() instanceof BNode || st.getContext() instanceof BNode) {
+			if (blankNodesRdfWriter == null) {
+				blankNodesChunkStream = new ByteArrayOutputStream();
+				blankNodesRdfWriter = Rio.createWriter(outputFormat, blankNodesChunkStream);
+				blankNodesRdfWriter.startRDF();
+			}
+			blankNodesRdfWriter.handleStatement(st);
+			blankNodesStatementsCount++;
+			return;
+		}
+		if (rdfWriter == null) {
+			chunkStream = new ByteArrayOutputStream();
+			rdfWriter = Rio.createWriter(outputFormat, chunkStream);
+			rdfWriter.startRDF();
+		}
+		rdfWriter.handleStatement(st);
+		if (++chunkStatementsCount >= statementsPerChunk) {
+			flushChunk();
+		}
+	}
+
+	@Override
+	public void endRDF() throws RDFHandlerException {
+		flushChunk();
+		if (blankNodesRdfWriter != null) {
+			blankNodesRdfWriter.endRDF();
+			byte[] chunk = blankNodesChunkStream.toByteArray();
+			long statementsCount = blankNodesStatementsCount;
+			blankNodesRdfWriter = null;
+			blankNodesChunkStream = null;
+			blankNodesStatementsCount = 0;
+			handleChunk(chunk, statementsCount);
+		}
+	}
+
+	private void flushChunk() throws RDFHandlerException {
+		if (rdfWriter == null) {
+			return;
+		}
+		rdfWriter.endRDF();
+		long statementsCount = chunkStatementsCount;
+		byte[] chunk = chunkStream.toByteArray();
+		rdfWriter = null;
+		chunkStream = null;
+		chunkStatementsCount = 0;
+		handleChunk(chunk, statementsCount);
+	}
+}
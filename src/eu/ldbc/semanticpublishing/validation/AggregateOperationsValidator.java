@@ -2,7 +2,6 @@ package eu.ldbc.semanticpublishing.validation;
 
 import java.io.ByteArrayInputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.lang.reflect.Constructor;
@@ -130,8 +129,7 @@ public class AggregateOperationsValidator extends Validator {
 		Arrays.sort(files);
 		for( File file : files ) {
 			if( file.getName().endsWith(".nq")) {
-				InputStream input = new FileInputStream(file);
-				RdfUtils.postStatements(endpoint, RdfUtils.CONTENT_TYPE_SESAME_NQUADS, input);
+				RdfUtils.postFile(endpoint, RdfUtils.CONTENT_TYPE_SESAME_NQUADS, file);
 				processedNQfiles++;
 			}
 		}
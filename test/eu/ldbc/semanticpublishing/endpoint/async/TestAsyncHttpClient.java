@@ -0,0 +1,119 @@
+package eu.ldbc.semanticpublishing.endpoint.async;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestAsyncHttpClient {
+	private static final byte[] RESPONSE = "HTTP/1.1 200 OK\r\nContent-Length: 2\r\n\r\nok".getBytes();
+
+	private ServerSocket serverSocket;
+	private Thread serverThread;
+	private final AtomicInteger acceptedCount = new AtomicInteger(0);
+	private URL url;
+
+	@Before
+	public void startServer() throws IOException {
+		serverSocket = new ServerSocket(0);
+		url = new URL("http://localhost:" + serverSocket.getLocalPort() + "/sparql");
+		//answers a single request on each connection and closes it, as a server closing idle keep-alive connections would
+		serverThread = new Thread() {
+			@Override
+			public void run() {
+				while (!serverSocket.isClosed()) {
+					try {
+						Socket socket = serverSocket.accept();
+						acceptedCount.incrementAndGet();
+						try {
+							readRequest(socket.getInputStream());
+							OutputStream os = socket.getOutputStream();
+							os.write(RESPONSE);
+							os.flush();
+						} finally {
+							socket.close();
+						}
+					} catch (IOException e) {
+						//server socket closed, or a connection closed by the client
+					}
+				}
+			}
+		};
+		serverThread.setDaemon(true);
+		serverThread.start();
+	}
+
+	@After
+	public void stopServer() throws Exception {
+		serverSocket.close();
+		serverThread.join(5000);
+	}
+
+	@Test
+	public void testServerClosingIdleConnections() throws Exception {
+		AsyncHttpClient client = new AsyncHttpClient(1, 1, 60000);
+		try {
+			for (int i = 0; i < 50; i++) {
+				AsyncResponse response = client.execute(url, "POST", null, "query=ASK{}".getBytes(), 5000).get(10, TimeUnit.SECONDS);
+				assertEquals(200, response.getResponseCode());
+				assertEquals(2, response.getBodyLength());
+				//let the close of the connection by the server arrive at different points of the next exchange
+				Thread.sleep(i % 5);
+			}
+			assertEquals(0, client.getInFlightCount());
+			assertTrue(acceptedCount.get() >= 50);
+		} finally {
+			client.shutdown();
+		}
+	}
+
+	@Test
+	public void testExecuteAfterShutdownFails() throws Exception {
+		AsyncHttpClient client = new AsyncHttpClient(1, 1, 60000);
+		client.shutdown();
+		QueryFuture future = client.execute(url, "POST", null, "query=ASK{}".getBytes(), 5000);
+		try {
+			future.get(1, TimeUnit.SECONDS);
+			fail("a request sent after shutdown has completed");
+		} catch (ExecutionException ee) {
+			assertTrue(ee.getCause() instanceof IOException);
+		}
+		assertEquals(0, client.getInFlightCount());
+	}
+
+	/**
+	 * Reads a request head and a body of its Content-Length
+	 */
+	private static void readRequest(InputStream is) throws IOException {
+		StringBuilder head = new StringBuilder();
+		int b;
+		while ((b = is.read()) != -1) {
+			head.append((char)b);
+			if (head.length() >= 4 && head.substring(head.length() - 4).equals("\r\n\r\n")) {
+				break;
+			}
+		}
+		int contentLength = 0;
+		for (String line : head.toString().split("\r\n")) {
+			if (line.toLowerCase().startsWith("content-length:")) {
+				contentLength = Integer.parseInt(line.substring("content-length:".length()).trim());
+			}
+		}
+		for (int i = 0; i < contentLength && is.read() != -1; i++) {
+			//discard the body
+		}
+	}
+}
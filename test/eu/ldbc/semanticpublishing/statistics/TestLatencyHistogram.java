@@ -0,0 +1,80 @@
+package eu.ldbc.semanticpublishing.statistics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class TestLatencyHistogram {
+
+	@Test
+	public void testPercentiles() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (long value = 1; value <= 100000; value++) {
+			histogram.recordValue(value);
+		}
+		HistogramSnapshot snapshot = histogram.getSnapshot();
+
+		assertEquals(100000, snapshot.getTotalCount());
+		assertEquals(1, snapshot.getMinValue());
+		assertEquals(100000, snapshot.getMaxValue());
+		assertEquals(50000, snapshot.getMean());
+		checkWithinPrecision(50000, snapshot.getValueAtPercentile(50.0));
+		checkWithinPrecision(99000, snapshot.getValueAtPercentile(99.0));
+		checkWithinPrecision(99900, snapshot.getValueAtPercentile(99.9));
+		assertEquals(100000, snapshot.getValueAtPercentile(100.0));
+	}
+
+	@Test
+	public void testSmallValuesAreExact() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (long value = 0; value < 2000; value++) {
+			histogram.recordValue(value);
+		}
+		assertEquals(999, histogram.getSnapshot().getValueAtPercentile(50.0));
+	}
+
+	@Test
+	public void testIntervalSnapshot() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		histogram.recordValue(10);
+		histogram.recordValue(20);
+		assertEquals(2, histogram.getIntervalSnapshot().getTotalCount());
+
+		histogram.recordValue(5000);
+		HistogramSnapshot interval = histogram.getIntervalSnapshot();
+		assertEquals(1, interval.getTotalCount());
+		checkWithinPrecision(5000, interval.getMinValue());
+		checkWithinPrecision(5000, interval.getMaxValue());
+
+		assertEquals(0, histogram.getIntervalSnapshot().getTotalCount());
+		assertEquals(3, histogram.getSnapshot().getTotalCount());
+	}
+
+	@Test
+	public void testAdd() {
+		LatencyHistogram first = new LatencyHistogram();
+		LatencyHistogram second = new LatencyHistogram();
+		first.recordValue(100);
+		second.recordValue(300);
+		HistogramSnapshot merged = first.getSnapshot().add(second.getSnapshot());
+
+		assertEquals(2, merged.getTotalCount());
+		assertEquals(100, merged.getMinValue());
+		assertEquals(300, merged.getMaxValue());
+		assertEquals(200, merged.getMean());
+	}
+
+	@Test
+	public void testOutOfRangeValues() {
+		LatencyHistogram histogram = new LatencyHistogram(1000000, 3);
+		histogram.recordValue(-1);
+		histogram.recordValue(5000000);
+		assertEquals(0, histogram.getMinValue());
+		assertEquals(1000000, histogram.getMaxValue());
+	}
+
+	private void checkWithinPrecision(long expected, long actual) {
+		assertTrue("expected " + expected + " but was " + actual, Math.abs(expected - actual) <= expected / 1000 + 1);
+	}
+}